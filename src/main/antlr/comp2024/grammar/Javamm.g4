@@ -68,15 +68,12 @@ classDecl
         LCURLY
         varDecl*
         methodDecl*
-        mainMethodDecl?
-        methodDecl*
+        (mainMethodDecl methodDecl*)?
         RCURLY
     ;
 
 varDecl
-    : type name=ID SEMI
-    | type name='main' SEMI
-    | type name='length' SEMI
+    : type name=(ID | 'main' | 'length') SEMI
     ;
 
 type
@@ -0,0 +1,204 @@
+package pt.up.fe.comp2024;
+
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.comp2024.JmmCompiler.CompilationResult;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compiles many .jmm files, running the per-file pipelines concurrently on a fixed-size worker pool.
+ * <p>
+ * For each input, the OLLIR and Jasmin code are written to the output directory (keeping the folder structure when
+ * the input is a directory). The input can also be a file listing one path per line, where relative paths are resolved
+ * against the folder of the list. A summary with the reports of every file is printed and saved as 'summary.txt'.
+ */
+public class BatchCompiler {
+
+    private static final String NL = "\n";
+
+    private final Map<String, String> config;
+    private final File outputDir;
+    private final int threads;
+    private final CompilationCache cache;
+
+    public BatchCompiler(Map<String, String> config) {
+        this(config, CompilerConfig.getCacheDir(config).isPresent() ? CompilationCache.fromConfig(config) : null);
+    }
+
+    /**
+     * @param cache cache shared by all compilations, or null to always run the pipeline
+     */
+    public BatchCompiler(Map<String, String> config, CompilationCache cache) {
+        this.config = config;
+        this.outputDir = CompilerConfig.getOutputDir(config);
+        this.threads = CompilerConfig.getThreads(config);
+        this.cache = cache;
+    }
+
+    public boolean run() {
+        return run(System.out);
+    }
+
+    /**
+     * @param out where the summary is printed
+     * @return true if all files compiled without errors
+     */
+    public boolean run(PrintStream out) {
+        var batchInput = CompilerConfig.getBatchInput(config).orElseThrow();
+        var baseDir = batchInput.isDirectory() ? batchInput : null;
+        var inputs = collectInputs(batchInput);
+
+        long start = System.nanoTime();
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, Math.max(inputs.size(), 1)));
+        List<Future<FileResult>> futures = new ArrayList<>();
+        try {
+            for (var input : inputs) {
+                futures.add(pool.submit(() -> compileFile(input, baseDir)));
+            }
+
+            List<FileResult> results = new ArrayList<>();
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    throw new RuntimeException("Could not compile '" + inputs.get(i) + "'", e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Batch compilation was interrupted", e);
+                }
+            }
+
+            long wallMillis = (System.nanoTime() - start) / 1_000_000;
+            var summary = buildSummary(results, wallMillis);
+            out.print(summary);
+            SpecsIo.write(new File(outputDir, "summary.txt"), summary);
+
+            return results.stream().allMatch(result -> result.result.isSuccess());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private FileResult compileFile(File input, File baseDir) {
+        long start = System.nanoTime();
+
+        // Each compilation gets its own copy of the config, pointing to its input file
+        var fileConfig = new HashMap<>(config);
+        fileConfig.put("inputFile", input.getAbsolutePath());
+
+        var outFolder = outputDir;
+        if (baseDir != null) {
+            var relativeParent = baseDir.toPath().relativize(input.getParentFile().toPath()).toString();
+            outFolder = relativeParent.isEmpty() ? outputDir : new File(outputDir, relativeParent);
+        }
+        var baseName = SpecsIo.removeExtension(input.getName());
+
+        // The cache stores the Jasmin code, the compiler alone writes it to the output as it is generated
+        var code = SpecsIo.read(input);
+        var result = cache != null ? cache.compile(code, fileConfig)
+                : JmmCompiler.compile(code, fileConfig, new File(outFolder, baseName + ".j"));
+
+        JmmCompiler.writeOutputs(result, outFolder, baseName);
+
+        return new FileResult(input, result, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static List<File> collectInputs(File batchInput) {
+        List<File> inputs = new ArrayList<>();
+
+        if (batchInput.isDirectory()) {
+            inputs.addAll(SpecsIo.getFilesRecursive(batchInput, "jmm"));
+        } else {
+            for (var line : SpecsIo.read(batchInput).split("\\R")) {
+                var path = line.strip();
+                if (path.isEmpty() || path.startsWith("#")) {
+                    continue;
+                }
+                // Relative paths are relative to the list, not to the working directory, which differs on a server
+                var file = new File(path);
+                if (!file.isAbsolute()) {
+                    file = new File(batchInput.getAbsoluteFile().getParentFile(), path);
+                }
+                if (!file.isFile()) {
+                    throw new RuntimeException("Could not find input file '" + path + "' listed in '" + batchInput + "'");
+                }
+                inputs.add(file);
+            }
+        }
+
+        // Keep the summary order stable, regardless of the order in which the files finish
+        inputs.sort(File::compareTo);
+        return inputs;
+    }
+
+    private String buildSummary(List<FileResult> results, long wallMillis) {
+        var code = new StringBuilder();
+        int failed = 0;
+        long cpuMillis = 0;
+
+        for (var fileResult : results) {
+            var result = fileResult.result;
+            cpuMillis += fileResult.millis;
+
+            long errors = countReports(result, ReportType.ERROR);
+            long warnings = countReports(result, ReportType.WARNING);
+
+            code.append(result.isSuccess() ? "OK     " : "FAILED ")
+                    .append(fileResult.input.getPath())
+                    .append(" (").append(fileResult.millis).append(" ms, ")
+                    .append(errors).append(" errors, ").append(warnings).append(" warnings)");
+            if (!result.isSuccess()) {
+                failed++;
+                code.append(" at stage ").append(result.getFailedStage());
+            }
+            code.append(NL);
+
+            for (var report : result.getReports()) {
+                if (report.getType() == ReportType.ERROR || report.getType() == ReportType.WARNING) {
+                    code.append("    ").append(report).append(NL);
+                }
+            }
+        }
+
+        code.append(NL)
+                .append("Compiled ").append(results.size()).append(" files, ")
+                .append(results.size() - failed).append(" succeeded, ")
+                .append(failed).append(" failed").append(NL)
+                .append("Wall time: ").append(wallMillis).append(" ms, ")
+                .append("sum of per-file times: ").append(cpuMillis).append(" ms, ")
+                .append("threads: ").append(threads).append(NL);
+
+        if (cache != null) {
+            code.append(cache.getStats()).append(NL);
+        }
+
+        return code.toString();
+    }
+
+    private static long countReports(CompilationResult result, ReportType type) {
+        return result.getReports().stream().filter(report -> report.getType() == type).count();
+    }
+
+    private static class FileResult {
+        private final File input;
+        private final CompilationResult result;
+        private final long millis;
+
+        private FileResult(File input, CompilationResult result, long millis) {
+            this.input = input;
+            this.result = result;
+            this.millis = millis;
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package pt.up.fe.comp2024;
+
+import com.google.gson.Gson;
+import org.objectweb.asm.ClassWriter;
+import org.specs.comp.ollir.ClassUnit;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.comp2024.JmmCompiler.CompilationResult;
+import pt.up.fe.comp2024.utils.PhaseProfiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * On-disk cache of compilation results, addressed by a SHA-256 of the source code, the options that change the
+ * generated code and a fingerprint of the compiler build.
+ * <p>
+ * Only successful compilations without warnings are stored, together with their log reports, so a hit can skip every
+ * stage without losing reports. With timing enabled, a hit is profiled as a single 'cacheHit' phase.
+ * <p>
+ * Entries are evicted by least recent use (the modification time is refreshed on each hit) once the total size goes
+ * above the configured bound. Several threads, and several processes, can share the same cache folder. The size is
+ * read from the folder when the cache is created and before each eviction, and otherwise tracked per process, so
+ * processes sharing a folder can together go above the bound until one of them evicts.
+ */
+public class CompilationCache {
+
+    /**
+     * Classes of the code that generates the output: the compiler itself, the OLLIR library that parses and represents
+     * the OLLIR code, and the assemblers.
+     */
+    private static final List<Class<?>> GENERATOR_CLASSES = List.of(CompilationCache.class, ClassUnit.class,
+            OllirResult.class, jasmin.ClassFile.class, ClassWriter.class);
+
+    private static final String ENTRY_EXTENSION = ".entry";
+
+    private static final Gson GSON = new Gson();
+
+    // Computed once, the classes cannot change while the compiler runs
+    private static volatile String compilerFingerprint;
+
+    private final File cacheDir;
+    private final long maxBytes;
+
+    private final AtomicLong currentBytes;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public CompilationCache(File cacheDir, long maxBytes) {
+        this.cacheDir = cacheDir;
+        this.maxBytes = maxBytes;
+
+        if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+            throw new RuntimeException("Could not create cache folder '" + cacheDir + "'");
+        }
+
+        this.currentBytes = new AtomicLong(listEntries().stream().mapToLong(File::length).sum());
+    }
+
+    public static CompilationCache fromConfig(Map<String, String> config) {
+        return new CompilationCache(CompilerConfig.getCacheDir(config).orElseThrow(),
+                CompilerConfig.getCacheSizeMb(config) * 1024 * 1024);
+    }
+
+    /**
+     * Returns the cached result for the given source and options, or runs the pipeline and stores its result.
+     */
+    public CompilationResult compile(String code, Map<String, String> config) {
+        var key = computeKey(code, config);
+        var entryFile = getEntryFile(key);
+
+        var profiler = CompilerConfig.getTiming(config) ? PhaseProfiler.start() : null;
+        CompilationResult cached;
+        try {
+            cached = PhaseProfiler.measure("cacheHit", () -> read(entryFile));
+        } finally {
+            if (profiler != null) {
+                PhaseProfiler.stop();
+            }
+        }
+
+        if (cached != null) {
+            hits.incrementAndGet();
+            cached.setProfile(profiler);
+            return cached;
+        }
+
+        misses.incrementAndGet();
+        var result = JmmCompiler.compile(code, config);
+
+        if (result.isSuccess() && result.getReports().stream().noneMatch(CompilationCache::isWarningOrError)) {
+            write(entryFile, result);
+        }
+
+        return result;
+    }
+
+    public static String computeKey(String code, Map<String, String> config) {
+        return computeKey(code, config, getCompilerFingerprint());
+    }
+
+    static String computeKey(String code, Map<String, String> config, String compilerFingerprint) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            digest.update(compilerFingerprint.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            // Use the parsed values, so that equivalent spellings of an option share the same entry
+            digest.update(Boolean.toString(CompilerConfig.getOptimize(config)).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(Integer.toString(CompilerConfig.getRegisterAllocation(config)).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(Boolean.toString(CompilerConfig.getDirectOllir(config)).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(Boolean.toString(CompilerConfig.getOllirDump(config)).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(Boolean.toString(CompilerConfig.getClassFile(config)).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(Boolean.toString(CompilerConfig.getClosedWorld(config)).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(code.getBytes(StandardCharsets.UTF_8));
+
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Part of every key, so that the entries of a different build of the compiler, or of its libraries, are not used.
+     *
+     * @return a SHA-256 of the jars or class folders the generator classes are loaded from
+     */
+    public static String getCompilerFingerprint() {
+        var fingerprint = compilerFingerprint;
+        if (fingerprint == null) {
+            fingerprint = computeFingerprint(getCompilerLocations());
+            compilerFingerprint = fingerprint;
+        }
+
+        return fingerprint;
+    }
+
+    /**
+     * @return the jars or class folders the generator classes are loaded from
+     */
+    static Set<Path> getCompilerLocations() {
+        var locations = new LinkedHashSet<Path>();
+        for (var generatorClass : GENERATOR_CLASSES) {
+            locations.add(getLocation(generatorClass));
+        }
+
+        return locations;
+    }
+
+    /**
+     * @return a SHA-256 of the paths and contents of the files in the jars or folders given
+     */
+    static String computeFingerprint(Collection<Path> locations) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            for (var location : locations) {
+                List<Path> files;
+                try (Stream<Path> walk = Files.walk(location)) {
+                    files = walk.filter(Files::isRegularFile).sorted().toList();
+                }
+
+                for (var file : files) {
+                    digest.update(location.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+                    digest.update((byte) 0);
+                    digest.update(Files.readAllBytes(file));
+                    digest.update((byte) 0);
+                }
+            }
+
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 is not available", e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read the compiler classes", e);
+        }
+    }
+
+    static Path getLocation(Class<?> generatorClass) {
+        var message = "Could not find where class '" + generatorClass.getName() + "' is loaded from";
+        var codeSource = generatorClass.getProtectionDomain().getCodeSource();
+        if (codeSource == null) {
+            throw new RuntimeException(message);
+        }
+
+        try {
+            return Path.of(codeSource.getLocation().toURI());
+        } catch (URISyntaxException e) {
+            throw new RuntimeException(message, e);
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getSizeBytes() {
+        return currentBytes.get();
+    }
+
+    public String getStats() {
+        long total = hits.get() + misses.get();
+        long hitRate = total == 0 ? 0 : hits.get() * 100 / total;
+
+        return "Cache: " + hits.get() + " hits, " + misses.get() + " misses (" + hitRate + "% hit rate), "
+                + evictions.get() + " evictions, " + currentBytes.get() / 1024 + " KB in '" + cacheDir + "'";
+    }
+
+    private File getEntryFile(String key) {
+        // Spread the entries over subfolders, to keep folder listings small
+        return new File(new File(cacheDir, key.substring(0, 2)), key + ENTRY_EXTENSION);
+    }
+
+    private CompilationResult read(File entryFile) {
+        try {
+            var json = Files.readString(entryFile.toPath(), StandardCharsets.UTF_8);
+            var entry = GSON.fromJson(json, CacheEntry.class);
+
+            // Refresh the last use, for the LRU eviction
+            Files.setLastModifiedTime(entryFile.toPath(), FileTime.fromMillis(System.currentTimeMillis()));
+
+            var classFile = entry.classFile == null ? null : Base64.getDecoder().decode(entry.classFile);
+
+            List<Report> reports = new ArrayList<>();
+            if (entry.reports != null) {
+                for (var report : entry.reports) {
+                    reports.add(new Report(report.type, report.stage, report.line, report.column, report.message));
+                }
+            }
+
+            return new CompilationResult(null, entry.className, entry.ollirCode, entry.jasminCode, classFile,
+                    reports);
+        } catch (IOException | RuntimeException e) {
+            // Missing, concurrently evicted or corrupted entry, treated as a miss
+            return null;
+        }
+    }
+
+    private void write(File entryFile, CompilationResult result) {
+        var classFile = result.getClassFile() == null ? null : Base64.getEncoder().encodeToString(result.getClassFile());
+        var reports = result.getReports().stream().map(CachedReport::new).toList();
+        var json = GSON.toJson(new CacheEntry(result.getClassName(), result.getOllirCode(), result.getJasminCode(),
+                classFile, reports));
+
+        try {
+            var folder = entryFile.getParentFile().toPath();
+            Files.createDirectories(folder);
+
+            // Write to a temporary file first, so that readers never see a partial entry
+            var tempFile = Files.createTempFile(folder, "entry", ".tmp");
+            Files.writeString(tempFile, json, StandardCharsets.UTF_8);
+            long previousSize = entryFile.length();
+            Files.move(tempFile, entryFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            if (currentBytes.addAndGet(entryFile.length() - previousSize) > maxBytes) {
+                evict();
+            }
+        } catch (IOException e) {
+            // The cache is only an accelerator, a failed store does not fail the compilation
+            System.err.println("Could not store cache entry '" + entryFile + "': " + e.getMessage());
+        }
+    }
+
+    private synchronized void evict() {
+        if (currentBytes.get() <= maxBytes) {
+            return;
+        }
+
+        // Other processes sharing the folder may have stored or evicted entries since the size was last read
+        var entries = listEntries();
+        currentBytes.set(entries.stream().mapToLong(File::length).sum());
+        entries.sort(Comparator.comparingLong(File::lastModified));
+
+        for (var entry : entries) {
+            if (currentBytes.get() <= maxBytes) {
+                break;
+            }
+
+            long size = entry.length();
+            if (entry.delete()) {
+                currentBytes.addAndGet(-size);
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private List<File> listEntries() {
+        try (Stream<Path> files = Files.walk(cacheDir.toPath())) {
+            return new ArrayList<>(files.map(Path::toFile)
+                    .filter(file -> file.isFile() && file.getName().endsWith(ENTRY_EXTENSION))
+                    .toList());
+        } catch (IOException e) {
+            throw new RuntimeException("Could not list cache folder '" + cacheDir + "'", e);
+        }
+    }
+
+    private static boolean isWarningOrError(Report report) {
+        return switch (report.getType()) {
+            case ERROR, WARNING -> true;
+            default -> false;
+        };
+    }
+
+    private static class CacheEntry {
+        private final String className;
+        private final String ollirCode;
+        private final String jasminCode;
+        // Base64, as Gson would write the bytes as a list of numbers
+        private final String classFile;
+        private final List<CachedReport> reports;
+
+        private CacheEntry(String className, String ollirCode, String jasminCode, String classFile,
+                           List<CachedReport> reports) {
+            this.className = className;
+            this.ollirCode = ollirCode;
+            this.jasminCode = jasminCode;
+            this.classFile = classFile;
+            this.reports = reports;
+        }
+    }
+
+    /**
+     * A report without its exception, which only errors and warnings have and those are never stored.
+     */
+    private static class CachedReport {
+        private final ReportType type;
+        private final Stage stage;
+        private final int line;
+        private final int column;
+        private final String message;
+
+        private CachedReport(Report report) {
+            this.type = report.getType();
+            this.stage = report.getStage();
+            this.line = report.getLine();
+            this.column = report.getColumn();
+            this.message = report.getMessage();
+        }
+    }
+}
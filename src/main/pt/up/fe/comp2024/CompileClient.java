@@ -0,0 +1,109 @@
+package pt.up.fe.comp2024;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Thin client for {@link CompileServer}. Forwards the arguments to a running server and prints its answer.
+ * <p>
+ * Only depends on the JDK and {@link CompilerConfig}, so that starting it does not load the rest of the compiler.
+ */
+public class CompileClient {
+
+    private static final String CLIENT_PREFIX = "-c=";
+
+    /**
+     * @return the client address if the arguments request client mode, null otherwise
+     */
+    public static String findAddress(String[] args) {
+        for (var arg : args) {
+            if (arg.startsWith(CLIENT_PREFIX)) {
+                return arg.substring(CLIENT_PREFIX.length());
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the exit status, 0 if the compilation succeeded
+     */
+    public static int run(String address, String[] args) {
+        List<String> forwarded = new ArrayList<>();
+        for (var arg : args) {
+            if (arg.startsWith(CLIENT_PREFIX)) {
+                continue;
+            }
+            forwarded.add(toAbsolutePaths(arg));
+        }
+
+        try (var channel = connect(address);
+             var writer = new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8);
+             var reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8))) {
+
+            for (var arg : forwarded) {
+                writer.write(arg + "\n");
+            }
+            writer.write("\n");
+            writer.flush();
+
+            String status = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                System.out.println(line);
+                status = line;
+            }
+
+            return status != null && status.startsWith("OK") ? 0 : 1;
+
+        } catch (IOException e) {
+            System.err.println("Could not reach compile server at '" + address + "': " + e.getMessage());
+            return 2;
+        }
+    }
+
+    /**
+     * @return the address of the server, a port number on localhost or the path of a Unix-domain socket
+     */
+    static SocketAddress toSocketAddress(String address) {
+        if (address.chars().allMatch(Character::isDigit)) {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(address));
+        }
+
+        return UnixDomainSocketAddress.of(address);
+    }
+
+    private static SocketChannel connect(String address) throws IOException {
+        var socketAddress = toSocketAddress(address);
+        var channel = socketAddress instanceof UnixDomainSocketAddress ?
+                SocketChannel.open(StandardProtocolFamily.UNIX) :
+                SocketChannel.open();
+        channel.connect(socketAddress);
+        return channel;
+    }
+
+    /**
+     * The server can run on a different working directory, paths are resolved on the client side.
+     */
+    private static String toAbsolutePaths(String arg) {
+        if (arg.length() <= 3 || arg.charAt(2) != '='
+                || !CompilerConfig.isPathOption(arg.substring(1, 2), arg.substring(3))) {
+            return arg;
+        }
+
+        return arg.substring(0, 3) + new File(arg.substring(3)).getAbsolutePath();
+    }
+}
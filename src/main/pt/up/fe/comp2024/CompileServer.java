@@ -0,0 +1,175 @@
+package pt.up.fe.comp2024;
+
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Long-running compile server. Keeps the pipeline classes loaded, the JIT warm and the ANTLR DFA cache of the parser
+ * populated, so each request only pays for the compilation itself.
+ * <p>
+ * The address is either a port number (binds to localhost) or a path (binds a Unix-domain socket).
+ * <p>
+ * Protocol, one request per connection: the client sends the compiler arguments, one per line, followed by an empty
+ * line. The paths in the arguments must be absolute. The server answers with the error and warning reports, one per
+ * line, followed by a status line: 'OK &lt;class name&gt;' or 'FAILED &lt;stage&gt;'. Outputs are written to the
+ * folder given with '-d', if any. When the server is started with '-k', all requests share that compilation cache.
+ */
+public class CompileServer {
+
+    private static final String NL = "\n";
+
+    private static final String WARM_UP_CODE = """
+            class WarmUp {
+                int[] values;
+                public int sum(int[] a, int n) {
+                    int i;
+                    int total;
+                    i = 0;
+                    total = 0;
+                    while (i < n) {
+                        if (a[i] < 0 && !(a[i] < 0 - 10)) {
+                            total = total - a[i];
+                        } else {
+                            total = total + a[i] * 2 / 1;
+                        }
+                        i = i + 1;
+                    }
+                    return total;
+                }
+                public static void main(String[] args) {
+                }
+            }
+            """;
+
+    private static final int WARM_UP_ROUNDS = 20;
+
+    private final String address;
+    private final ExecutorService workers;
+    private final CompilationCache cache;
+
+    /**
+     * @param cache cache shared by all requests, or null to always run the pipeline
+     */
+    public CompileServer(String address, int threads, CompilationCache cache) {
+        this.address = address;
+        this.workers = Executors.newFixedThreadPool(threads);
+        this.cache = cache;
+    }
+
+    /**
+     * Serves requests until the process is terminated.
+     */
+    public void run() {
+        warmUp();
+
+        var socketAddress = CompileClient.toSocketAddress(address);
+        var isUnix = socketAddress instanceof UnixDomainSocketAddress;
+
+        try (var server = isUnix ? ServerSocketChannel.open(StandardProtocolFamily.UNIX) : ServerSocketChannel.open()) {
+            if (isUnix) {
+                // Remove a socket file left behind by a previous server
+                Files.deleteIfExists(Path.of(address));
+            }
+            server.bind(socketAddress);
+            System.out.println("Compile server listening on " + address);
+
+            while (true) {
+                var client = server.accept();
+                workers.submit(() -> handle(client));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Compile server on '" + address + "' stopped", e);
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Compiles a small program a few times, so that the first real request already finds the classes loaded, the
+     * parser DFA populated and the hot paths compiled by the JIT.
+     */
+    private static void warmUp() {
+        var config = CompilerConfig.getDefault();
+        for (int i = 0; i < WARM_UP_ROUNDS; i++) {
+            config.put("optimize", Boolean.toString(i % 2 == 0));
+            JmmCompiler.compile(WARM_UP_CODE, config);
+        }
+    }
+
+    private void handle(SocketChannel client) {
+        try (client;
+             var reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(client), StandardCharsets.UTF_8));
+             var writer = new OutputStreamWriter(Channels.newOutputStream(client), StandardCharsets.UTF_8)) {
+
+            List<String> args = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null && !line.isEmpty()) {
+                args.add(line);
+            }
+
+            try {
+                serve(CompilerConfig.parseArgs(args.toArray(new String[0])), writer);
+            } catch (RuntimeException e) {
+                writer.write("ERROR " + e.getMessage() + NL);
+                writer.write("FAILED arguments" + NL);
+            }
+            writer.flush();
+
+        } catch (IOException e) {
+            System.err.println("Could not answer compile request: " + e.getMessage());
+        }
+    }
+
+    private void serve(Map<String, String> config, Writer writer) throws IOException {
+        if (CompilerConfig.getBatchInput(config).isPresent()) {
+            var summary = new ByteArrayOutputStream();
+            var success = new BatchCompiler(config, cache).run(new PrintStream(summary, true, StandardCharsets.UTF_8));
+            writer.write(summary.toString(StandardCharsets.UTF_8));
+            writer.write(success ? "OK" + NL : "FAILED batch" + NL);
+            return;
+        }
+
+        var inputFile = CompilerConfig.getInputFile(config).orElseThrow();
+        var baseName = SpecsIo.removeExtension(inputFile.getName());
+        var outputDir = config.containsKey("outputDir") ? CompilerConfig.getOutputDir(config) : null;
+
+        // The cache stores the Jasmin code, the compiler alone writes it to the output as it is generated
+        var code = SpecsIo.read(inputFile);
+        var jasminFile = outputDir != null ? new File(outputDir, baseName + ".j") : null;
+        var result = cache != null ? cache.compile(code, config) : JmmCompiler.compile(code, config, jasminFile);
+
+        for (var report : result.getReports()) {
+            if (report.getType() == ReportType.ERROR || report.getType() == ReportType.WARNING) {
+                writer.write(report + NL);
+            }
+        }
+
+        if (outputDir != null) {
+            JmmCompiler.writeOutputs(result, outputDir, baseName);
+        }
+
+        writer.write(result.isSuccess() ? "OK " + result.getClassName() + NL : "FAILED " + result.getFailedStage() + NL);
+    }
+}
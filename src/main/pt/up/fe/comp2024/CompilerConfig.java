@@ -4,20 +4,54 @@ import java.io.File;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 public class CompilerConfig {
 
     private static final String INPUT_FILE = "inputFile";
     private static final String OPTIMIZE = "optimize";
     private static final String REGISTER = "registerAllocation";
+    private static final String BATCH_INPUT = "batchInput";
+    private static final String THREADS = "threads";
+    private static final String OUTPUT_DIR = "outputDir";
+    private static final String SERVER = "server";
+    private static final String CLIENT = "client";
+    private static final String CACHE_DIR = "cacheDir";
+    private static final String CACHE_SIZE = "cacheSize";
+    private static final String TIMING = "timing";
+    private static final String DIRECT_OLLIR = "directOllir";
+    private static final String OLLIR_DUMP = "ollirDump";
+    private static final String CLASS_FILE = "classFile";
+    private static final String RUN = "run";
+    private static final String PARSER_PROFILE = "parserProfile";
+    private static final String PARALLEL_ANALYSIS = "parallelAnalysis";
+    private static final String CLOSED_WORLD = "closedWorld";
 
 
     static Map<String, String> shortToLong = new HashMap<>();
 
+    // Options whose value is a file or folder, resolved against the working directory
+    private static final Set<String> PATH_OPTIONS = Set.of("i", "b", "d", "k", "t");
+
     static {
         shortToLong.put("i", CompilerConfig.INPUT_FILE);
         shortToLong.put("o", CompilerConfig.OPTIMIZE);
         shortToLong.put("r", CompilerConfig.REGISTER);
+        shortToLong.put("b", CompilerConfig.BATCH_INPUT);
+        shortToLong.put("j", CompilerConfig.THREADS);
+        shortToLong.put("d", CompilerConfig.OUTPUT_DIR);
+        shortToLong.put("s", CompilerConfig.SERVER);
+        shortToLong.put("c", CompilerConfig.CLIENT);
+        shortToLong.put("k", CompilerConfig.CACHE_DIR);
+        shortToLong.put("m", CompilerConfig.CACHE_SIZE);
+        shortToLong.put("t", CompilerConfig.TIMING);
+        shortToLong.put("g", CompilerConfig.DIRECT_OLLIR);
+        shortToLong.put("l", CompilerConfig.OLLIR_DUMP);
+        shortToLong.put("f", CompilerConfig.CLASS_FILE);
+        shortToLong.put("x", CompilerConfig.RUN);
+        shortToLong.put("p", CompilerConfig.PARSER_PROFILE);
+        shortToLong.put("a", CompilerConfig.PARALLEL_ANALYSIS);
+        shortToLong.put("w", CompilerConfig.CLOSED_WORLD);
     }
 
 
@@ -32,6 +66,131 @@ public class CompilerConfig {
         return Optional.of(new File(inputFile));
     }
 
+    /**
+     * @return a directory with .jmm files, or a text file listing one .jmm path per line
+     */
+    public static Optional<File> getBatchInput(Map<String, String> config) {
+        var batchInput = config.get(BATCH_INPUT);
+
+        if (batchInput == null) {
+            return Optional.empty();
+        }
+
+        return Optional.of(new File(batchInput));
+    }
+
+    public static int getThreads(Map<String, String> config) {
+        var threads = config.get(THREADS);
+
+        if (threads == null) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+
+        return Integer.parseInt(threads);
+    }
+
+    public static File getOutputDir(Map<String, String> config) {
+        return new File(config.getOrDefault(OUTPUT_DIR, "out"));
+    }
+
+    /**
+     * @return the port or Unix-domain socket path the compile server should listen on
+     */
+    public static Optional<String> getServerAddress(Map<String, String> config) {
+        return Optional.ofNullable(config.get(SERVER));
+    }
+
+    /**
+     * @return the port or Unix-domain socket path of a running compile server to send the request to
+     */
+    public static Optional<String> getClientAddress(Map<String, String> config) {
+        return Optional.ofNullable(config.get(CLIENT));
+    }
+
+    /**
+     * @return the folder of the compilation cache, if caching is enabled
+     */
+    public static Optional<File> getCacheDir(Map<String, String> config) {
+        return Optional.ofNullable(config.get(CACHE_DIR)).map(File::new);
+    }
+
+    /**
+     * @return the maximum size of the compilation cache, in megabytes
+     */
+    public static long getCacheSizeMb(Map<String, String> config) {
+        return Long.parseLong(config.getOrDefault(CACHE_SIZE, "256"));
+    }
+
+    /**
+     * @return true if the time and allocations of each phase should be recorded
+     */
+    public static boolean getTiming(Map<String, String> config) {
+        return config.containsKey(TIMING) && !config.get(TIMING).equals("false");
+    }
+
+    /**
+     * @return the file where the phase timings should be written, or empty to print them
+     */
+    public static Optional<File> getTimingFile(Map<String, String> config) {
+        var timing = config.get(TIMING);
+
+        if (timing == null || timing.equals("true") || timing.equals("false")) {
+            return Optional.empty();
+        }
+
+        return Optional.of(new File(timing));
+    }
+
+    /**
+     * @return true if the OLLIR class should be built directly from the AST, instead of generating and parsing OLLIR code
+     */
+    public static boolean getDirectOllir(Map<String, String> config) {
+        return Boolean.parseBoolean(config.getOrDefault(DIRECT_OLLIR, "false"));
+    }
+
+    /**
+     * @return true if the OLLIR code should also be printed when the OLLIR class is built directly
+     */
+    public static boolean getOllirDump(Map<String, String> config) {
+        return Boolean.parseBoolean(config.getOrDefault(OLLIR_DUMP, "false"));
+    }
+
+    /**
+     * @return true if the backend should write the class file directly, instead of generating Jasmin code
+     */
+    public static boolean getClassFile(Map<String, String> config) {
+        return Boolean.parseBoolean(config.getOrDefault(CLASS_FILE, "false"));
+    }
+
+    /**
+     * @return true if the compiled program should be run inside the compiler JVM
+     */
+    public static boolean getRun(Map<String, String> config) {
+        return Boolean.parseBoolean(config.getOrDefault(RUN, "false"));
+    }
+
+    /**
+     * @return true if the parser should report the statistics of its prediction decisions
+     */
+    public static boolean getParserProfile(Map<String, String> config) {
+        return Boolean.parseBoolean(config.getOrDefault(PARSER_PROFILE, "false"));
+    }
+
+    /**
+     * @return true if the methods of the class should be analysed concurrently
+     */
+    public static boolean getParallelAnalysis(Map<String, String> config) {
+        return Boolean.parseBoolean(config.getOrDefault(PARALLEL_ANALYSIS, "false"));
+    }
+
+    /**
+     * @return true if no other class extends the one compiled, so that the optimizations can assume the methods called
+     * on 'this' are not overridden
+     */
+    public static boolean getClosedWorld(Map<String, String> config) {
+        return Boolean.parseBoolean(config.getOrDefault(CLOSED_WORLD, "false"));
+    }
+
     public static boolean getOptimize(Map<String, String> config) {
         return Boolean.parseBoolean(config.getOrDefault(OPTIMIZE, "false"));
     }
@@ -41,6 +200,18 @@ public class CompilerConfig {
     }
 
 
+    /**
+     * @return true if the value of the short option is a path, which depends on the working directory
+     */
+    public static boolean isPathOption(String shortOpt, String value) {
+        if (!PATH_OPTIONS.contains(shortOpt)) {
+            return false;
+        }
+
+        // The timing option is also a flag
+        return !shortOpt.equals("t") || !(value.equals("true") || value.equals("false"));
+    }
+
     public static Map<String, String> getDefault() {
 
         var config = new HashMap<String, String>();
@@ -89,23 +260,47 @@ public class CompilerConfig {
             config.put(getLongOpt(shortOption), value);
         }
 
-        if (!config.containsKey(INPUT_FILE)) {
+        if (config.containsKey(SERVER)) {
 
-            throw new RuntimeException("Expected an input file, use '-i=<PATH_TO_FILE>'");
-        }
+            // the server receives the input files with each request
+            if (config.containsKey(INPUT_FILE) || config.containsKey(BATCH_INPUT)) {
+                throw new RuntimeException("Option '-s' cannot be combined with '-i' or '-b'");
+            }
+        } else if (config.containsKey(BATCH_INPUT)) {
 
-        // make sure we save the absolute path of the input file
-        var inputFile = new File(config.get(INPUT_FILE));
-        if (!inputFile.isFile()) {
-            throw new RuntimeException("Could not find input file '" + inputFile + "'");
-        }
+            // make sure we save the absolute path of the batch input
+            var batchInput = new File(config.get(BATCH_INPUT));
+            if (!batchInput.exists()) {
+                throw new RuntimeException("Could not find batch input '" + batchInput + "'");
+            }
 
-        var absolutePath = inputFile.getAbsolutePath();
-        config.put(INPUT_FILE, absolutePath);
+            config.put(BATCH_INPUT, batchInput.getAbsolutePath());
+        } else {
+
+            if (!config.containsKey(INPUT_FILE)) {
+
+                throw new RuntimeException("Expected an input file, use '-i=<PATH_TO_FILE>' or '-b=<DIR_OR_LIST>'");
+            }
+
+            // make sure we save the absolute path of the input file
+            var inputFile = new File(config.get(INPUT_FILE));
+            if (!inputFile.isFile()) {
+                throw new RuntimeException("Could not find input file '" + inputFile + "'");
+            }
+
+            var absolutePath = inputFile.getAbsolutePath();
+            config.put(INPUT_FILE, absolutePath);
+        }
 
         // Verify if values are valid
         getOptimize(config);
         getRegisterAllocation(config);
+        if (getThreads(config) < 1) {
+            throw new RuntimeException("Option '-j' expects a positive number of threads");
+        }
+        if (getCacheSizeMb(config) < 1) {
+            throw new RuntimeException("Option '-m' expects a positive cache size, in megabytes");
+        }
 
         return config;
     }
@@ -0,0 +1,242 @@
+package pt.up.fe.comp2024;
+
+import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
+import pt.up.fe.comp.jmm.jasmin.JasminResult;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp.jmm.parser.JmmParserResult;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.comp2024.analysis.JmmAnalysisImpl;
+import pt.up.fe.comp2024.backend.ClassFileResult;
+import pt.up.fe.comp2024.backend.JasminBackendImpl;
+import pt.up.fe.comp2024.optimization.JmmOptimizationImpl;
+import pt.up.fe.comp2024.parser.JmmParserImpl;
+import pt.up.fe.comp2024.utils.PhaseProfiler;
+import pt.up.fe.comp2024.utils.ReportUtils;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the whole pipeline (parse, semantic analysis, OLLIR generation, Jasmin generation) over a single source.
+ * <p>
+ * Every call creates its own stage instances, so several compilations can run at the same time.
+ */
+public class JmmCompiler {
+
+    public static CompilationResult compile(String code, Map<String, String> config) {
+        return compile(code, config, null);
+    }
+
+    /**
+     * Like {@link #compile(String, Map)}, but writes the Jasmin code to the given file as it is generated, so that the
+     * code of the whole class is never kept in memory. The result then has no Jasmin code.
+     *
+     * @param jasminFile the file for the Jasmin code, or null to keep the code in the result
+     */
+    public static CompilationResult compile(String code, Map<String, String> config, File jasminFile) {
+        if (!CompilerConfig.getTiming(config)) {
+            return runPipeline(code, config, jasminFile);
+        }
+
+        PhaseProfiler.start();
+        try {
+            var result = runPipeline(code, config, jasminFile);
+            result.setProfile(PhaseProfiler.stop());
+            return result;
+        } finally {
+            // In case the pipeline did not return normally
+            PhaseProfiler.stop();
+        }
+    }
+
+    private static CompilationResult runPipeline(String code, Map<String, String> config, File jasminFile) {
+        List<Report> reports = new ArrayList<>();
+        Stage stage = Stage.SYNTATIC;
+
+        try {
+            // Parsing stage
+            JmmParserImpl parser = new JmmParserImpl();
+            JmmParserResult parserResult = parser.parse(code, config);
+            reports.addAll(parserResult.getReports());
+            if (ReportUtils.anyError(reports)) {
+                return new CompilationResult(Stage.SYNTATIC, null, null, null, reports);
+            }
+
+            // Semantic Analysis stage
+            stage = Stage.SEMANTIC;
+            JmmAnalysisImpl sema = new JmmAnalysisImpl();
+            JmmSemanticsResult semanticsResult = sema.semanticAnalysis(parserResult);
+            reports.clear();
+            reports.addAll(semanticsResult.getReports());
+            if (ReportUtils.anyError(reports)) {
+                return new CompilationResult(Stage.SEMANTIC, null, null, null, reports);
+            }
+
+            // Optimization stage
+            stage = Stage.OPTIMIZATION;
+            JmmOptimizationImpl ollirGen = new JmmOptimizationImpl();
+            semanticsResult = ollirGen.optimize(semanticsResult);
+            OllirResult ollirResult = ollirGen.toOllir(semanticsResult);
+            ollirResult = ollirGen.optimize(ollirResult);
+            reports.clear();
+            reports.addAll(ollirResult.getReports());
+            if (ReportUtils.anyError(reports)) {
+                return new CompilationResult(Stage.OPTIMIZATION, null, ollirResult.getOllirCode(), null, reports);
+            }
+
+            // Code generation stage
+            stage = Stage.GENERATION;
+            JasminBackendImpl jasminGen = new JasminBackendImpl();
+            if (jasminFile != null && !CompilerConfig.getClassFile(config)) {
+                reports.clear();
+                reports.addAll(writeJasmin(jasminGen, ollirResult, jasminFile));
+                var className = ollirResult.getOllirClass().getClassName();
+                var failedStage = ReportUtils.anyError(reports) ? Stage.GENERATION : null;
+
+                return new CompilationResult(failedStage, className, ollirResult.getOllirCode(), null, reports);
+            }
+
+            JasminResult jasminResult = jasminGen.toJasmin(ollirResult);
+            reports.clear();
+            reports.addAll(jasminResult.getReports());
+            var className = ollirResult.getOllirClass().getClassName();
+            if (ReportUtils.anyError(reports)) {
+                return new CompilationResult(Stage.GENERATION, className, ollirResult.getOllirCode(), null, reports);
+            }
+
+            var classFile = jasminResult instanceof ClassFileResult classFileResult ? classFileResult.getClassFile() : null;
+
+            return new CompilationResult(null, className, ollirResult.getOllirCode(), jasminResult.getJasminCode(),
+                    classFile, reports);
+
+        } catch (Exception e) {
+            reports.add(Report.newError(stage, -1, -1, "Exception during compilation: " + e.getMessage(), e));
+            return new CompilationResult(stage, null, null, null, reports);
+        }
+    }
+
+    private static List<Report> writeJasmin(JasminBackendImpl jasminGen, OllirResult ollirResult, File jasminFile)
+            throws IOException {
+        var folder = jasminFile.getAbsoluteFile().getParentFile();
+        if (folder != null) {
+            Files.createDirectories(folder.toPath());
+        }
+
+        // A failed generation leaves no partial file behind
+        List<Report> reports;
+        try (var writer = Files.newBufferedWriter(jasminFile.toPath(), StandardCharsets.UTF_8)) {
+            reports = jasminGen.toJasmin(ollirResult, writer);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(jasminFile.toPath());
+            throw e;
+        }
+
+        if (ReportUtils.anyError(reports)) {
+            Files.deleteIfExists(jasminFile.toPath());
+        }
+
+        return reports;
+    }
+
+    /**
+     * Writes the generated OLLIR and Jasmin code (when available) as '<baseName>.ollir' and '<baseName>.j', the class
+     * file as '<className>.class' when it was generated directly, and the phase timings as '<baseName>.timing.json'
+     * when they were recorded.
+     */
+    public static void writeOutputs(CompilationResult result, File outputDir, String baseName) {
+        if (result.getOllirCode() != null) {
+            SpecsIo.write(new File(outputDir, baseName + ".ollir"), result.getOllirCode());
+        }
+        if (result.getJasminCode() != null) {
+            SpecsIo.write(new File(outputDir, baseName + ".j"), result.getJasminCode());
+        }
+        if (result.getClassFile() != null) {
+            try {
+                Files.write(new File(outputDir, result.getClassName() + ".class").toPath(), result.getClassFile());
+            } catch (IOException e) {
+                throw new RuntimeException("Could not write class file of '" + baseName + "'", e);
+            }
+        }
+        if (result.getProfile() != null) {
+            SpecsIo.write(new File(outputDir, baseName + ".timing.json"), result.getProfile().toJson());
+        }
+    }
+
+    /**
+     * Outcome of a single compilation. When a stage fails, the artifacts of that stage and the following ones are null.
+     */
+    public static class CompilationResult {
+
+        private final Stage failedStage;
+        private final String className;
+        private final String ollirCode;
+        private final String jasminCode;
+        private final byte[] classFile;
+        private final List<Report> reports;
+        private PhaseProfiler profile;
+
+        public CompilationResult(Stage failedStage, String className, String ollirCode, String jasminCode,
+                                 List<Report> reports) {
+            this(failedStage, className, ollirCode, jasminCode, null, reports);
+        }
+
+        public CompilationResult(Stage failedStage, String className, String ollirCode, String jasminCode,
+                                 byte[] classFile, List<Report> reports) {
+            this.failedStage = failedStage;
+            this.className = className;
+            this.ollirCode = ollirCode;
+            this.jasminCode = jasminCode;
+            this.classFile = classFile;
+            this.reports = reports;
+        }
+
+        public boolean isSuccess() {
+            return failedStage == null;
+        }
+
+        public Stage getFailedStage() {
+            return failedStage;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        public String getOllirCode() {
+            return ollirCode;
+        }
+
+        public String getJasminCode() {
+            return jasminCode;
+        }
+
+        /**
+         * @return the class file, or null if the backend generated Jasmin code
+         */
+        public byte[] getClassFile() {
+            return classFile;
+        }
+
+        public List<Report> getReports() {
+            return reports;
+        }
+
+        void setProfile(PhaseProfiler profile) {
+            this.profile = profile;
+        }
+
+        /**
+         * @return the phase timings, or null if timing was not enabled
+         */
+        public PhaseProfiler getProfile() {
+            return profile;
+        }
+    }
+}
@@ -5,33 +5,82 @@ import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
 import pt.up.fe.comp.jmm.jasmin.JasminResult;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
 import pt.up.fe.comp.jmm.parser.JmmParserResult;
+import pt.up.fe.comp.jmm.report.ReportType;
 import pt.up.fe.comp2024.analysis.JmmAnalysisImpl;
+import pt.up.fe.comp2024.backend.InProcessRunner;
 import pt.up.fe.comp2024.backend.JasminBackendImpl;
 import pt.up.fe.comp2024.optimization.JmmOptimizationImpl;
 import pt.up.fe.comp2024.parser.JmmParserImpl;
 import pt.up.fe.specs.util.SpecsIo;
 import pt.up.fe.specs.util.SpecsSystem;
 
+import java.io.Writer;
+import java.util.Collections;
 import java.util.Map;
 
 public class Launcher {
 
     public static void main(String[] args) {
+        // Client mode, sends the request to a running compile server without loading the compiler
+        var clientAddress = CompileClient.findAddress(args);
+        if (clientAddress != null) {
+            System.exit(CompileClient.run(clientAddress, args));
+        }
+
         SpecsSystem.programStandardInit();
 
         Map<String, String> config = CompilerConfig.parseArgs(args);
 
+        // Server mode, compiles the requests of clients until terminated
+        var serverAddress = CompilerConfig.getServerAddress(config);
+        if (serverAddress.isPresent()) {
+            var cache = CompilerConfig.getCacheDir(config).isPresent() ? CompilationCache.fromConfig(config) : null;
+            new CompileServer(serverAddress.get(), CompilerConfig.getThreads(config), cache).run();
+            return;
+        }
+
+        // Batch mode, compiles several files concurrently
+        if (CompilerConfig.getBatchInput(config).isPresent()) {
+            var success = new BatchCompiler(config).run();
+            if (!success) {
+                System.exit(1);
+            }
+            return;
+        }
+
         var inputFile = CompilerConfig.getInputFile(config).orElseThrow();
         if (!inputFile.isFile()) {
             throw new RuntimeException("Option '-i' expects a path to an existing input file, got '" + args[0] + "'.");
         }
         String code = SpecsIo.read(inputFile);
 
+        // Timing mode, runs the whole pipeline and reports the time and allocations of each phase as JSON
+        if (CompilerConfig.getTiming(config)) {
+            var result = JmmCompiler.compile(code, config);
+            TestUtils.noErrors(result.getReports());
+
+            var json = result.getProfile().toJson();
+            var timingFile = CompilerConfig.getTimingFile(config);
+            if (timingFile.isPresent()) {
+                SpecsIo.write(timingFile.get(), json);
+            } else {
+                System.out.println(json);
+            }
+            return;
+        }
+
         // Parsing stage
         JmmParserImpl parser = new JmmParserImpl();
         JmmParserResult parserResult = parser.parse(code, config);
         TestUtils.noErrors(parserResult.getReports());
 
+        // Print the prediction statistics of the parser
+        if (CompilerConfig.getParserProfile(config)) {
+            parserResult.getReports().stream()
+                    .filter(report -> report.getType() == ReportType.LOG)
+                    .forEach(report -> System.out.println(report.getMessage()));
+        }
+
         // Print AST
         //System.out.println(parserResult.getRootNode().toTree());
 
@@ -43,7 +92,9 @@ public class Launcher {
 
         // Optimization stage
         JmmOptimizationImpl ollirGen = new JmmOptimizationImpl();
+        semanticsResult = ollirGen.optimize(semanticsResult);
         OllirResult ollirResult = ollirGen.toOllir(semanticsResult);
+        ollirResult = ollirGen.optimize(ollirResult);
         TestUtils.noErrors(ollirResult.getReports());
 
         // Print OLLIR code
@@ -51,11 +102,26 @@ public class Launcher {
 
         // Code generation stage
         JasminBackendImpl jasminGen = new JasminBackendImpl();
+
+        // Only running the program needs the whole code, otherwise it is generated for its reports and dropped
+        if (!CompilerConfig.getRun(config) && !CompilerConfig.getClassFile(config)) {
+            TestUtils.noErrors(jasminGen.toJasmin(ollirResult, Writer.nullWriter()));
+            return;
+        }
+
         JasminResult jasminResult = jasminGen.toJasmin(ollirResult);
         TestUtils.noErrors(jasminResult.getReports());
 
         // Print Jasmin code
         //System.out.println(jasminResult.getJasminCode());
+
+        // Run mode, executes the program without starting another JVM
+        if (CompilerConfig.getRun(config)) {
+            var output = InProcessRunner.runWithFullOutput(jasminResult, Collections.emptyList(), null);
+            System.out.print(output.getStdOut());
+            System.err.print(output.getStdErr());
+            System.exit(output.getReturnValue());
+        }
     }
 
 }
@@ -20,4 +20,14 @@ public interface AnalysisPass {
      */
     List<Report> analyze(JmmNode root, SymbolTable table);
 
+    /**
+     * Analyses the given node, without entering the method declarations. Used by the parallel analysis, which
+     * analyses each method declaration separately with {@link #analyze}.
+     *
+     * @param root  the root node that will be visited for analysis
+     * @param table the symbol table
+     * @return a list of reports with the results of the analysis
+     */
+    List<Report> analyzeOutsideMethods(JmmNode root, SymbolTable table);
+
 }
\ No newline at end of file
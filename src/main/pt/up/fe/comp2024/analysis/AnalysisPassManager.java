@@ -0,0 +1,91 @@
+package pt.up.fe.comp2024.analysis;
+
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.comp2024.utils.PhaseProfiler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Runs the analysis passes, fusing consecutive {@link AnalysisVisitor} passes into a single {@link FusedTraversal}, so
+ * that adding a visitor does not add a walk over the whole AST. Other passes still walk the AST on their own.
+ * <p>
+ * Each traversal is measured as a phase named "analysisPass:" followed by the class of the pass, and fused traversals
+ * also record the time of each of their passes.
+ */
+public class AnalysisPassManager {
+
+    private final List<Supplier<AnalysisPass>> traversals = new ArrayList<>();
+
+    /**
+     * @param passes creates each pass, in the order they should run. Passes keep state while visiting, so they are
+     *               created again for each analysis
+     */
+    public AnalysisPassManager(List<Supplier<AnalysisPass>> passes) {
+        var fusible = new ArrayList<Supplier<AnalysisPass>>();
+
+        for (var pass : passes) {
+            if (pass.get() instanceof AnalysisVisitor) {
+                fusible.add(pass);
+                continue;
+            }
+
+            addFused(fusible);
+            fusible.clear();
+            traversals.add(pass);
+        }
+
+        addFused(fusible);
+    }
+
+    private void addFused(List<Supplier<AnalysisPass>> fusible) {
+        if (fusible.isEmpty()) {
+            return;
+        }
+
+        // A single visitor runs on its own, as it is
+        if (fusible.size() == 1) {
+            traversals.add(fusible.get(0));
+            return;
+        }
+
+        var fused = List.copyOf(fusible);
+        traversals.add(() -> new FusedTraversal(fused.stream()
+                .map(pass -> (AnalysisVisitor) pass.get())
+                .toList()));
+    }
+
+    /**
+     * @return creates each traversal, in the order they should run
+     */
+    public List<Supplier<AnalysisPass>> getTraversals() {
+        return traversals;
+    }
+
+    public List<Report> analyze(JmmNode root, SymbolTable table) {
+        List<Report> reports = new ArrayList<>();
+
+        for (var traversal : traversals) {
+            var analysisPass = traversal.get();
+
+            try {
+                var passReports = PhaseProfiler.measure("analysisPass:" + analysisPass.getClass().getSimpleName(),
+                        () -> analysisPass.analyze(root, table));
+                reports.addAll(passReports);
+            } catch (Exception e) {
+                reports.add(Report.newError(Stage.SEMANTIC,
+                        -1,
+                        -1,
+                        "Problem while executing analysis pass '" + analysisPass.getClass() + "'",
+                        e)
+                );
+            }
+        }
+
+        return reports;
+    }
+}
@@ -6,15 +6,22 @@ import pt.up.fe.comp.jmm.ast.PreorderJmmVisitor;
 import pt.up.fe.comp.jmm.report.Report;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.function.BiFunction;
 
 /**
- *
+ * Analysis pass that visits the AST in preorder. The kinds given to {@link #addVisit} are the ones the pass handles,
+ * which lets {@link FusedTraversal} run it together with other visitors in a single traversal.
  */
 public abstract class AnalysisVisitor extends PreorderJmmVisitor<SymbolTable, Void> implements AnalysisPass {
 
     private List<Report> reports;
 
+    // Not initialized in the declaration, since visits are added by the superclass constructor
+    private Set<String> handledKinds;
+
     public AnalysisVisitor() {
         reports = new ArrayList<>();
         setDefaultValue(() -> null);
@@ -28,6 +35,33 @@ public abstract class AnalysisVisitor extends PreorderJmmVisitor<SymbolTable, Vo
         return reports;
     }
 
+    @Override
+    public void addVisit(String kind, BiFunction<JmmNode, SymbolTable, Void> method) {
+        super.addVisit(kind, method);
+
+        if (handledKinds == null) {
+            handledKinds = new HashSet<>();
+        }
+        handledKinds.add(kind);
+    }
+
+    /**
+     * @return the visit of the pass for the node, or null if the pass does not handle it
+     */
+    BiFunction<JmmNode, SymbolTable, Void> getHandler(JmmNode node) {
+        if (handledKinds == null) {
+            return null;
+        }
+
+        for (var kind : node.getHierarchy()) {
+            if (handledKinds.contains(kind)) {
+                return getVisit(node);
+            }
+        }
+
+        return null;
+    }
+
 
     @Override
     public List<Report> analyze(JmmNode root, SymbolTable table) {
@@ -37,4 +71,23 @@ public abstract class AnalysisVisitor extends PreorderJmmVisitor<SymbolTable, Vo
         // Return reports
         return getReports();
     }
+
+    @Override
+    public List<Report> analyzeOutsideMethods(JmmNode root, SymbolTable table) {
+        visitOutsideMethods(root, table);
+
+        return getReports();
+    }
+
+    private void visitOutsideMethods(JmmNode node, SymbolTable table) {
+        if (ParallelAnalysis.isMethod(node)) {
+            return;
+        }
+
+        // Same order as the preorder visit
+        getVisit(node).apply(node, table);
+        for (var child : node.getChildren()) {
+            visitOutsideMethods(child, table);
+        }
+    }
 }
@@ -0,0 +1,147 @@
+package pt.up.fe.comp2024.analysis;
+
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.comp2024.ast.Kind;
+import pt.up.fe.comp2024.utils.PhaseProfiler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * Runs several {@link AnalysisVisitor} passes in a single preorder traversal of the AST.
+ * <p>
+ * Each node is given to the passes that handle its kind, in the order of the passes. Which passes handle a kind is
+ * found on the first node of that kind, since all the nodes of a kind share the hierarchy the parser gives them. The
+ * reports are the ones of each pass, in the order of the passes.
+ * <p>
+ * A pass that throws is not run on the remaining nodes, and its reports are replaced by an error, as when the pass
+ * runs alone. When profiling, the time spent in each pass is recorded as a child of the running phase.
+ */
+public class FusedTraversal implements AnalysisPass {
+
+    private static final Dispatch[] NO_DISPATCHES = new Dispatch[0];
+
+    private final List<AnalysisVisitor> passes;
+    private final Dispatch[][] dispatchesByKind = new Dispatch[Kind.values().length][];
+
+    // Error of each pass that threw, null for the others
+    private final Report[] failures;
+    private final long[] passNanos;
+    private final boolean profiling = PhaseProfiler.isEnabled();
+
+    public FusedTraversal(List<AnalysisVisitor> passes) {
+        this.passes = passes;
+        this.failures = new Report[passes.size()];
+        this.passNanos = new long[passes.size()];
+    }
+
+    @Override
+    public List<Report> analyze(JmmNode root, SymbolTable table) {
+        traverse(root, table, false);
+        return finish();
+    }
+
+    @Override
+    public List<Report> analyzeOutsideMethods(JmmNode root, SymbolTable table) {
+        traverse(root, table, true);
+        return finish();
+    }
+
+    private void traverse(JmmNode node, SymbolTable table, boolean skipMethods) {
+        if (skipMethods && ParallelAnalysis.isMethod(node)) {
+            return;
+        }
+
+        for (var dispatch : getDispatches(node)) {
+            if (failures[dispatch.pass] == null) {
+                visit(dispatch, node, table);
+            }
+        }
+
+        for (int i = 0; i < node.getNumChildren(); i++) {
+            traverse(node.getChild(i), table, skipMethods);
+        }
+    }
+
+    private void visit(Dispatch dispatch, JmmNode node, SymbolTable table) {
+        long start = profiling ? System.nanoTime() : 0;
+
+        try {
+            dispatch.visit.apply(node, table);
+        } catch (RuntimeException e) {
+            failures[dispatch.pass] = Report.newError(Stage.SEMANTIC,
+                    -1,
+                    -1,
+                    "Problem while executing analysis pass '" + passes.get(dispatch.pass).getClass() + "'",
+                    e);
+        }
+
+        if (profiling) {
+            passNanos[dispatch.pass] += System.nanoTime() - start;
+        }
+    }
+
+    private Dispatch[] getDispatches(JmmNode node) {
+        var kind = Kind.of(node);
+
+        // Kinds that are not in Kind are not cached
+        if (kind == null) {
+            return findDispatches(node);
+        }
+
+        var dispatches = dispatchesByKind[kind.ordinal()];
+        if (dispatches == null) {
+            dispatches = findDispatches(node);
+            dispatchesByKind[kind.ordinal()] = dispatches;
+        }
+
+        return dispatches;
+    }
+
+    private Dispatch[] findDispatches(JmmNode node) {
+        var dispatches = new ArrayList<Dispatch>();
+
+        for (int i = 0; i < passes.size(); i++) {
+            var visit = passes.get(i).getHandler(node);
+            if (visit != null) {
+                dispatches.add(new Dispatch(i, visit));
+            }
+        }
+
+        return dispatches.isEmpty() ? NO_DISPATCHES : dispatches.toArray(NO_DISPATCHES);
+    }
+
+    /**
+     * @return the reports of the passes, after recording their times
+     */
+    private List<Report> finish() {
+        var reports = new ArrayList<Report>();
+
+        for (int i = 0; i < passes.size(); i++) {
+            reports.addAll(failures[i] != null ? List.of(failures[i]) : passes.get(i).getReports());
+
+            if (profiling) {
+                PhaseProfiler.record(passes.get(i).getClass().getSimpleName(), passNanos[i]);
+            }
+        }
+
+        return reports;
+    }
+
+    /**
+     * Visit of a pass for a kind.
+     */
+    private static class Dispatch {
+        private final int pass;
+        private final BiFunction<JmmNode, SymbolTable, Void> visit;
+
+        private Dispatch(int pass, BiFunction<JmmNode, SymbolTable, Void> visit) {
+            this.pass = pass;
+            this.visit = visit;
+        }
+    }
+}
@@ -6,23 +6,29 @@ import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
 import pt.up.fe.comp.jmm.ast.JmmNode;
 import pt.up.fe.comp.jmm.parser.JmmParserResult;
 import pt.up.fe.comp.jmm.report.Report;
-import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.comp2024.CompilerConfig;
 import pt.up.fe.comp2024.analysis.passes.SemanticAnalyzer;
+import pt.up.fe.comp2024.analysis.passes.TypeAnnotation;
 import pt.up.fe.comp2024.symboltable.JmmSymbolTableBuilder;
+import pt.up.fe.comp2024.utils.PhaseProfiler;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Supplier;
 
 public class JmmAnalysisImpl implements JmmAnalysis {
 
 
-    private final List<AnalysisPass> analysisPasses;
+    private final AnalysisPassManager passManager;
 
     public JmmAnalysisImpl() {
 
-        this.analysisPasses = new ArrayList<>();
-        analysisPasses.add(new SemanticAnalyzer());
+        // Passes keep state while visiting, so they are created again for each analysis
+        List<Supplier<AnalysisPass>> analysisPasses = new ArrayList<>();
+        analysisPasses.add(TypeAnnotation::new);
+        analysisPasses.add(SemanticAnalyzer::new);
 
+        this.passManager = new AnalysisPassManager(analysisPasses);
     }
 
     @Override
@@ -30,26 +36,18 @@ public class JmmAnalysisImpl implements JmmAnalysis {
 
         JmmNode rootNode = parserResult.getRootNode();
 
-        SymbolTable table = JmmSymbolTableBuilder.build(rootNode);
+        SymbolTable table = PhaseProfiler.measure("symbolTable", () -> JmmSymbolTableBuilder.build(rootNode));
 
-        List<Report> reports = new ArrayList<>();
-
-        // Visit all nodes in the AST
-        for (var analysisPass : analysisPasses) {
-            try {
-                var passReports = analysisPass.analyze(rootNode, table);
-                reports.addAll(passReports);
-            } catch (Exception e) {
-                reports.add(Report.newError(Stage.SEMANTIC,
-                        -1,
-                        -1,
-                        "Problem while executing analysis pass '" + analysisPass.getClass() + "'",
-                        e)
-                );
-            }
+        if (CompilerConfig.getParallelAnalysis(parserResult.getConfig())) {
+            var reports = PhaseProfiler.measure("analysisPass:parallel",
+                    () -> new ParallelAnalysis(passManager.getTraversals()).analyze(rootNode, table));
 
+            return new JmmSemanticsResult(parserResult, table, reports);
         }
 
+        // Visit all nodes in the AST
+        List<Report> reports = passManager.analyze(rootNode, table);
+
         return new JmmSemanticsResult(parserResult, table, reports);
     }
 }
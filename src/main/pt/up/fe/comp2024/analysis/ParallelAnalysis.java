@@ -0,0 +1,95 @@
+package pt.up.fe.comp2024.analysis;
+
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.comp2024.ast.Kind;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Runs the analysis passes on each method declaration concurrently, on the common fork-join pool.
+ * <p>
+ * Once the symbol table is built, methods can be checked independently. Each method is analysed by new instances of
+ * the passes, so workers share no state and each one has its own reports. What is outside the methods (imports, class
+ * and fields) is analysed first, on the calling thread.
+ * <p>
+ * Reports are merged in the same order as the ones of {@link AnalysisPassManager#analyze}: by pass, and for each pass
+ * the reports outside the methods followed by the reports of each method, in declaration order. The passes are the
+ * traversals of the manager, so fused passes also run in a single traversal of each method.
+ */
+public class ParallelAnalysis {
+
+    private final List<Supplier<AnalysisPass>> passes;
+
+    public ParallelAnalysis(List<Supplier<AnalysisPass>> passes) {
+        this.passes = passes;
+    }
+
+    public static boolean isMethod(JmmNode node) {
+        return Kind.METHOD_DECL.check(node) || Kind.MAIN_METHOD_DECL.check(node);
+    }
+
+    public List<Report> analyze(JmmNode root, SymbolTable table) {
+        var outsideReports = new ArrayList<List<Report>>();
+        for (var pass : passes) {
+            outsideReports.add(runPass(pass.get(), analysisPass -> analysisPass.analyzeOutsideMethods(root, table)));
+        }
+
+        var methods = new ArrayList<JmmNode>();
+        findMethods(root, methods);
+
+        // For each method, the reports of each pass. The parallel stream keeps the order of the methods
+        var methodReports = methods.parallelStream()
+                .map(method -> analyzeMethod(method, table))
+                .toList();
+
+        var reports = new ArrayList<Report>();
+        for (int i = 0; i < passes.size(); i++) {
+            reports.addAll(outsideReports.get(i));
+
+            for (var passReports : methodReports) {
+                reports.addAll(passReports.get(i));
+            }
+        }
+
+        return reports;
+    }
+
+    private List<List<Report>> analyzeMethod(JmmNode method, SymbolTable table) {
+        var reports = new ArrayList<List<Report>>();
+
+        for (var pass : passes) {
+            reports.add(runPass(pass.get(), analysisPass -> analysisPass.analyze(method, table)));
+        }
+
+        return reports;
+    }
+
+    private static List<Report> runPass(AnalysisPass analysisPass, Function<AnalysisPass, List<Report>> analysis) {
+        try {
+            return analysis.apply(analysisPass);
+        } catch (Exception e) {
+            return List.of(Report.newError(Stage.SEMANTIC,
+                    -1,
+                    -1,
+                    "Problem while executing analysis pass '" + analysisPass.getClass() + "'",
+                    e));
+        }
+    }
+
+    private static void findMethods(JmmNode node, List<JmmNode> methods) {
+        if (isMethod(node)) {
+            methods.add(node);
+            return;
+        }
+
+        for (var child : node.getChildren()) {
+            findMethods(child, methods);
+        }
+    }
+}
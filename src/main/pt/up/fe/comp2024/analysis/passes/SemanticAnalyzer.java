@@ -12,7 +12,10 @@ import pt.up.fe.comp2024.ast.NodeUtils;
 import pt.up.fe.comp2024.ast.TypeUtils;
 import pt.up.fe.specs.util.SpecsCheck;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import pt.up.fe.comp2024.ast.Kind;
 
@@ -23,6 +26,10 @@ public class SemanticAnalyzer extends AnalysisVisitor {
     private String currentMethod;
     private JmmNode CurrentMethod;
 
+    // Declarations of the methods of the class, by name, the first one if there are duplicates. Found on the first
+    // call, so that a method can also be analysed on its own
+    private Map<String, JmmNode> methodDecls;
+
     @Override
     public void buildVisitor() {
         addVisit(Kind.METHOD_DECL, this::visitMethodDecl);
@@ -80,17 +87,15 @@ public class SemanticAnalyzer extends AnalysisVisitor {
 
         for(var variables: method.getDescendants(Kind.VAR_REF_EXPR)){
             var scope = TypeUtils.getVariableScope(variables,table);
-           for(var field : table.getFields()){
-               if(field.getName().equals(variables.get("name")) && scope.equals("field")){
-                   addReport(Report.newError(
-                           Stage.SEMANTIC,
-                           NodeUtils.getLine(method),
-                           NodeUtils.getColumn(method),
-                           "Cannot use field \"" + variables.get("name") + "\" inside a main decl.",
-                           null)
-                   );
-               }
-           }
+            if(scope.equals("field")){
+                addReport(Report.newError(
+                        Stage.SEMANTIC,
+                        NodeUtils.getLine(method),
+                        NodeUtils.getColumn(method),
+                        "Cannot use field \"" + variables.get("name") + "\" inside a main decl.",
+                        null)
+                );
+            }
         }
 
         return null;
@@ -232,19 +237,7 @@ public class SemanticAnalyzer extends AnalysisVisitor {
         String varRefName = varRefExpr.get("name");
 
 
-        if (table.getFields().stream().anyMatch(field -> field.getName().equals(varRefName))) {
-            return null;
-        }
-
-        if (table.getParameters(currentMethod).stream().anyMatch(param -> param.getName().equals(varRefName))) {
-            return null;
-        }
-
-        if (table.getLocalVariables(currentMethod).stream().anyMatch(local -> local.getName().equals(varRefName))) {
-            return null;
-        }
-
-        if (table.getImports().contains(varRefName)) {
+        if (TypeUtils.resolveVariable(varRefExpr, table).isPresent()) {
             return null;
         }
 
@@ -541,15 +534,12 @@ public class SemanticAnalyzer extends AnalysisVisitor {
             return null;
         } else {
             // Checks if function is vararg
-            List<JmmNode> functionsExpr = expr.getAncestor("ClassDecl").get().getDescendants("MethodDecl");
-            for (JmmNode function : functionsExpr) {
-                if (Objects.equals(function.get("name"), expr.get("name"))) {
-                    JmmNode paramList = function.getDescendants("ParamList").get(0);
-                    if (!paramList.getDescendants("VarArgArray").isEmpty()) {
-                        // TODO: Check if arguments are correct
-                        return null;
-                    }
-                    break;
+            JmmNode function = getMethodDecls(expr).get(expr.get("name"));
+            if (function != null) {
+                JmmNode paramList = function.getDescendants("ParamList").get(0);
+                if (!paramList.getDescendants("VarArgArray").isEmpty()) {
+                    // TODO: Check if arguments are correct
+                    return null;
                 }
             }
 
@@ -644,140 +634,69 @@ public class SemanticAnalyzer extends AnalysisVisitor {
         return null;
     }
 
+    private Map<String, JmmNode> getMethodDecls(JmmNode node) {
+        if (methodDecls == null) {
+            methodDecls = new HashMap<>();
+
+            var classDecl = node.getAncestor(Kind.CLASS_DECL);
+            for (var method : classDecl.map(decl -> decl.getChildren(Kind.METHOD_DECL)).orElse(List.of())) {
+                methodDecls.putIfAbsent(method.get("name"), method);
+            }
+        }
+
+        return methodDecls;
+    }
+
     private Void visitProgram(JmmNode expr, SymbolTable table) {
         // Checks duplicated imports
-        List<String> imports = table.getImports();
-        for (String import1 : imports) {
-            int counter = 0;
-            for (String import2 : imports) {
-                if (Objects.equals(import1, import2)) {
-                    counter++;
-                }
-                if (counter > 1) {
-                    addReport(Report.newError(
-                            Stage.SEMANTIC,
-                            NodeUtils.getLine(expr),
-                            NodeUtils.getColumn(expr),
-                            "Duplicated imports",
-                            null)
-                    );
-                }
-            }
+        if (hasDuplicates(table.getImports())) {
+            addDuplicatedReport(expr, "Duplicated imports");
         }
 
         // Checks duplicated fields
-        List<Symbol> fields = table.getFields();
-        for (Symbol field1 : fields) {
-            int counter = 0;
-            for (Symbol field2 : fields) {
-                if (Objects.equals(field1, field2)) {
-                    counter++;
-                }
-                if (counter > 1) {
-                    addReport(Report.newError(
-                            Stage.SEMANTIC,
-                            NodeUtils.getLine(expr),
-                            NodeUtils.getColumn(expr),
-                            "Duplicated fields",
-                            null)
-                    );
-                    return null;
-                }
-            }
+        if (hasDuplicates(table.getFields())) {
+            addDuplicatedReport(expr, "Duplicated fields");
+            return null;
         }
 
         // Checks duplicated locals
         for (String methodName : table.getMethods()) {
-            List<Symbol> localList = table.getLocalVariables(methodName);
-            for (Symbol local1 : localList) {
-                int counter = 0;
-                for (Symbol local2 : localList) {
-                    if (Objects.equals(local1, local2)) {
-                        counter++;
-                    }
-                }
-                if (counter > 1) {
-                    addReport(Report.newError(
-                            Stage.SEMANTIC,
-                            NodeUtils.getLine(expr),
-                            NodeUtils.getColumn(expr),
-                            "Duplicated locals",
-                            null)
-                    );
-                    return null;
-                }
-            }
-        }
-
-        // Checks duplicated parameter
-        for (String methodName : table.getMethods()) {
-            List<Symbol> paramList = table.getParameters(methodName);
-            for (Symbol param1 : paramList) {
-                int counter = 0;
-                for (Symbol param2 : paramList) {
-                    if (Objects.equals(param1, param2)) {
-                        counter++;
-                    }
-                }
-                if (counter > 1) {
-                    addReport(Report.newError(
-                            Stage.SEMANTIC,
-                            NodeUtils.getLine(expr),
-                            NodeUtils.getColumn(expr),
-                            "Duplicated parameters",
-                            null)
-                    );
-                    return null;
-                }
+            if (hasDuplicates(table.getLocalVariables(methodName))) {
+                addDuplicatedReport(expr, "Duplicated locals");
+                return null;
             }
         }
 
         // Checks duplicated parameter
         for (String methodName : table.getMethods()) {
-            List<Symbol> paramList = table.getParameters(methodName);
-            for (Symbol param1 : paramList) {
-                int counter = 0;
-                for (Symbol param2 : paramList) {
-                    if (Objects.equals(param1, param2)) {
-                        counter++;
-                    }
-                }
-                if (counter > 1) {
-                    addReport(Report.newError(
-                            Stage.SEMANTIC,
-                            NodeUtils.getLine(expr),
-                            NodeUtils.getColumn(expr),
-                            "Duplicated parameters",
-                            null)
-                    );
-                    return null;
-                }
+            if (hasDuplicates(table.getParameters(methodName))) {
+                addDuplicatedReport(expr, "Duplicated parameters");
+                return null;
             }
         }
 
         // Checks duplicate methods
-        List<String> methodList = table.getMethods();
-        for (String method1 : methodList) {
-            int counter = 0;
-            for (String method2 : methodList) {
-                if (Objects.equals(method1, method2)) {
-                    counter++;
-                }
-            }
-            if (counter > 1) {
-                addReport(Report.newError(
-                        Stage.SEMANTIC,
-                        NodeUtils.getLine(expr),
-                        NodeUtils.getColumn(expr),
-                        "Duplicated methods",
-                        null)
-                );
-                return null;
-            }
+        if (hasDuplicates(table.getMethods())) {
+            addDuplicatedReport(expr, "Duplicated methods");
+            return null;
         }
 
         return null;
     }
 
+    private static boolean hasDuplicates(List<?> elements) {
+        return new HashSet<>(elements).size() != elements.size();
+    }
+
+    private void addDuplicatedReport(JmmNode program, String message) {
+        addReport(Report.newError(
+                Stage.SEMANTIC,
+                NodeUtils.getLine(program),
+                NodeUtils.getColumn(program),
+                message,
+                null)
+        );
+    }
+
 }
 
@@ -0,0 +1,33 @@
+package pt.up.fe.comp2024.analysis.passes;
+
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp2024.analysis.AnalysisVisitor;
+import pt.up.fe.comp2024.ast.Kind;
+import pt.up.fe.comp2024.ast.TypeUtils;
+
+/**
+ * Stores the type of every expression in its node, before the other passes run, so that the analysis and the OLLIR
+ * generation read it with {@link TypeUtils#getExprType} instead of computing it again.
+ * <p>
+ * Does not report anything. Expressions whose type cannot be computed are left without one, and the passes that need
+ * it report the problem.
+ */
+public class TypeAnnotation extends AnalysisVisitor {
+
+    @Override
+    public void buildVisitor() {
+        addVisit(Kind.EXPR, this::visitExpr);
+    }
+
+    private Void visitExpr(JmmNode expr, SymbolTable table) {
+        // Also stores the types of the operands, which the visit then finds stored
+        try {
+            TypeUtils.getExprType(expr, table);
+        } catch (RuntimeException e) {
+            // Malformed expression, such as an empty array initializer
+        }
+
+        return null;
+    }
+}
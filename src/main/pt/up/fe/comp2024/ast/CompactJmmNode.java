@@ -0,0 +1,591 @@
+package pt.up.fe.comp2024.ast;
+
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.specs.util.SpecsCheck;
+
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Compact implementation of {@link JmmNode}, used for the nodes built by the parser.
+ * <p>
+ * The kind and hierarchy are shared by all nodes of the same type, the attributes used by most nodes (name, op, value
+ * and the positions) and the ones the analysis adds to every expression (type and resolved) are kept in fields, and the
+ * children in an array. Other attributes go to a map, only created when the node has one.
+ */
+public class CompactJmmNode implements JmmNode {
+
+    private static final String NAME = "name";
+    private static final String OP = "op";
+    private static final String VALUE = "value";
+
+    // Added by the analysis, same keys as TypeUtils.TYPE_ATTRIBUTE and ResolvedSymbol.ATTRIBUTE
+    private static final String TYPE = "type";
+    private static final String RESOLVED = "resolved";
+
+    // Same keys as NodePosition, as constants so that they can be switched on
+    private static final String LINE_START = "lineStart";
+    private static final String COL_START = "colStart";
+    private static final String LINE_END = "lineEnd";
+    private static final String COL_END = "colEnd";
+
+    private static final int NO_POSITION = -1;
+    private static final JmmNode[] NO_CHILDREN = new JmmNode[0];
+
+    private static final NodeType[] KIND_TYPES = new NodeType[Kind.values().length];
+
+    static {
+        for (var kind : Kind.values()) {
+            KIND_TYPES[kind.ordinal()] = new NodeType(kind.getNodeName(), List.of(kind.getNodeName()));
+        }
+    }
+
+    private final NodeType type;
+
+    private String name;
+    private String op;
+    private String value;
+
+    private Object exprType;
+    private Object resolved;
+
+    private int lineStart = NO_POSITION;
+    private int colStart = NO_POSITION;
+    private int lineEnd = NO_POSITION;
+    private int colEnd = NO_POSITION;
+
+    private Map<String, Object> otherAttributes;
+
+    private JmmNode[] children = NO_CHILDREN;
+    private int numChildren;
+    private JmmNode parent;
+
+    public CompactJmmNode(NodeType type) {
+        this.type = type;
+    }
+
+    /**
+     * Creates a node of the given kind, whose hierarchy is only the kind itself.
+     */
+    public CompactJmmNode(Kind kind) {
+        this(KIND_TYPES[kind.ordinal()]);
+    }
+
+    /**
+     * @return the kind of this node, or null if it is not one of {@link Kind}
+     */
+    public Kind getKindValue() {
+        return type.kind;
+    }
+
+    @Override
+    public String getKind() {
+        return type.name;
+    }
+
+    @Override
+    public Collection<String> getHierarchy() {
+        return type.hierarchy;
+    }
+
+    @Override
+    public boolean isInstance(String kind) {
+        for (var current : type.hierarchy) {
+            if (current.equals(kind)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getOp() {
+        return op;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public int getLineStart() {
+        return lineStart;
+    }
+
+    public int getColStart() {
+        return colStart;
+    }
+
+    public void setPosition(int lineStart, int colStart, int lineEnd, int colEnd) {
+        this.lineStart = lineStart;
+        this.colStart = colStart;
+        this.lineEnd = lineEnd;
+        this.colEnd = colEnd;
+    }
+
+    // Attributes
+
+    @Override
+    public Collection<String> getAttributes() {
+        var attributes = new HashSet<String>();
+
+        if (lineStart != NO_POSITION) {
+            attributes.add(LINE_START);
+        }
+        if (colStart != NO_POSITION) {
+            attributes.add(COL_START);
+        }
+        if (lineEnd != NO_POSITION) {
+            attributes.add(LINE_END);
+        }
+        if (colEnd != NO_POSITION) {
+            attributes.add(COL_END);
+        }
+        if (name != null) {
+            attributes.add(NAME);
+        }
+        if (op != null) {
+            attributes.add(OP);
+        }
+        if (value != null) {
+            attributes.add(VALUE);
+        }
+        if (exprType != null) {
+            attributes.add(TYPE);
+        }
+        if (resolved != null) {
+            attributes.add(RESOLVED);
+        }
+        if (otherAttributes != null) {
+            attributes.addAll(otherAttributes.keySet());
+        }
+
+        return attributes;
+    }
+
+    @Override
+    public boolean hasAttribute(String attribute) {
+        var fieldValue = getField(attribute);
+        if (fieldValue != null) {
+            return true;
+        }
+
+        return otherAttributes != null && otherAttributes.containsKey(attribute);
+    }
+
+    @Override
+    public Object getObject(String attribute) {
+        var fieldValue = getField(attribute);
+        if (fieldValue != null) {
+            return fieldValue;
+        }
+
+        var otherValue = otherAttributes == null ? null : otherAttributes.get(attribute);
+        SpecsCheck.checkNotNull(otherValue, () -> "Node " + getKind() + " does not contain attribute '" + attribute + "'");
+
+        return otherValue;
+    }
+
+    @Override
+    public Optional<Object> getOptionalObject(String attribute) {
+        var fieldValue = getField(attribute);
+        if (fieldValue != null) {
+            return Optional.of(fieldValue);
+        }
+
+        return otherAttributes == null ? Optional.empty() : Optional.ofNullable(otherAttributes.get(attribute));
+    }
+
+    @Override
+    public Object putObject(String attribute, Object newValue) {
+        var previous = getOptionalObject(attribute).orElse(null);
+
+        // The value of an attribute is either in its field or in the map, never in both
+        clearField(attribute);
+        if (otherAttributes != null) {
+            otherAttributes.remove(attribute);
+        }
+
+        if (!setField(attribute, newValue)) {
+            if (otherAttributes == null) {
+                otherAttributes = new HashMap<>(4);
+            }
+            otherAttributes.put(attribute, newValue);
+        }
+
+        return previous;
+    }
+
+    /**
+     * @return the value of the attribute if it is kept in a field, or null otherwise
+     */
+    private Object getField(String attribute) {
+        return switch (attribute) {
+            case NAME -> name;
+            case OP -> op;
+            case VALUE -> value;
+            case TYPE -> exprType;
+            case RESOLVED -> resolved;
+            case LINE_START -> positionToString(lineStart);
+            case COL_START -> positionToString(colStart);
+            case LINE_END -> positionToString(lineEnd);
+            case COL_END -> positionToString(colEnd);
+            default -> null;
+        };
+    }
+
+    private static String positionToString(int position) {
+        return position == NO_POSITION ? null : Integer.toString(position);
+    }
+
+    /**
+     * @return true if the value was kept in a field
+     */
+    private boolean setField(String attribute, Object newValue) {
+        // Analysis attributes take any value, the others only text
+        switch (attribute) {
+            case TYPE -> {
+                exprType = newValue;
+                return true;
+            }
+            case RESOLVED -> {
+                resolved = newValue;
+                return true;
+            }
+        }
+
+        if (!(newValue instanceof String text)) {
+            return false;
+        }
+
+        switch (attribute) {
+            case NAME -> name = text;
+            case OP -> op = text;
+            case VALUE -> value = text;
+            case LINE_START, COL_START, LINE_END, COL_END -> {
+                int position = parsePosition(text);
+                if (position == NO_POSITION) {
+                    return false;
+                }
+                setPositionField(attribute, position);
+            }
+            default -> {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void clearField(String attribute) {
+        switch (attribute) {
+            case NAME -> name = null;
+            case OP -> op = null;
+            case VALUE -> value = null;
+            case TYPE -> exprType = null;
+            case RESOLVED -> resolved = null;
+            case LINE_START, COL_START, LINE_END, COL_END -> setPositionField(attribute, NO_POSITION);
+        }
+    }
+
+    private void setPositionField(String attribute, int position) {
+        switch (attribute) {
+            case LINE_START -> lineStart = position;
+            case COL_START -> colStart = position;
+            case LINE_END -> lineEnd = position;
+            case COL_END -> colEnd = position;
+        }
+    }
+
+    /**
+     * @return the position, or NO_POSITION if the text is not a valid one
+     */
+    private static int parsePosition(String text) {
+        try {
+            int position = Integer.parseInt(text);
+            return position < 0 ? NO_POSITION : position;
+        } catch (NumberFormatException e) {
+            return NO_POSITION;
+        }
+    }
+
+    private static boolean isPosition(String attribute) {
+        return switch (attribute) {
+            case LINE_START, COL_START, LINE_END, COL_END -> true;
+            default -> false;
+        };
+    }
+
+    // Tree
+
+    // Abstract in JmmNode, getParent() is the non-deprecated accessor that calls it
+    @SuppressWarnings("deprecation")
+    @Override
+    public JmmNode getJmmParent() {
+        return parent;
+    }
+
+    @Override
+    public void setParent(JmmNode parent) {
+        this.parent = parent;
+    }
+
+    @Override
+    public void removeParent() {
+        this.parent = null;
+    }
+
+    @Override
+    public List<JmmNode> getChildren() {
+        var list = new ArrayList<JmmNode>(numChildren);
+        for (int i = 0; i < numChildren; i++) {
+            list.add(children[i]);
+        }
+
+        return list;
+    }
+
+    @Override
+    public List<JmmNode> getChildren(String kind) {
+        var list = new ArrayList<JmmNode>();
+        for (int i = 0; i < numChildren; i++) {
+            if (children[i].isInstance(kind)) {
+                list.add(children[i]);
+            }
+        }
+
+        return list;
+    }
+
+    @Override
+    public Stream<JmmNode> getDescendantsStream() {
+        return getDescendants().stream();
+    }
+
+    @Override
+    public List<JmmNode> getDescendants() {
+        var descendants = new ArrayList<JmmNode>();
+        addDescendants(this, null, descendants);
+
+        return descendants;
+    }
+
+    @Override
+    public List<JmmNode> getDescendants(String kind) {
+        var descendants = new ArrayList<JmmNode>();
+        addDescendants(this, kind, descendants);
+
+        return descendants;
+    }
+
+    /**
+     * Adds the descendants in preorder, the same order as the streams of {@link JmmNode}.
+     */
+    private static void addDescendants(JmmNode node, String kind, List<JmmNode> descendants) {
+        int numChildren = node.getNumChildren();
+
+        for (int i = 0; i < numChildren; i++) {
+            var child = node.getChild(i);
+            if (kind == null || child.isInstance(kind)) {
+                descendants.add(child);
+            }
+
+            addDescendants(child, kind, descendants);
+        }
+    }
+
+    @Override
+    public int getNumChildren() {
+        return numChildren;
+    }
+
+    @Override
+    public JmmNode getJmmChild(int index) {
+        return getChild(index);
+    }
+
+    @Override
+    public JmmNode getChild(int index) {
+        Objects.checkIndex(index, numChildren);
+        return children[index];
+    }
+
+    @Override
+    public int getIndexOfSelf() {
+        if (parent instanceof CompactJmmNode compactParent) {
+            return compactParent.indexOf(this);
+        }
+
+        return JmmNode.super.getIndexOfSelf();
+    }
+
+    private int indexOf(JmmNode child) {
+        for (int i = 0; i < numChildren; i++) {
+            if (children[i] == child) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    @Override
+    public void add(JmmNode child) {
+        add(child, numChildren);
+    }
+
+    @Override
+    public void add(JmmNode child, int index) {
+        Objects.checkIndex(index, numChildren + 1);
+
+        if (numChildren == children.length) {
+            children = Arrays.copyOf(children, Math.max(2, numChildren * 2));
+        }
+
+        System.arraycopy(children, index, children, index + 1, numChildren - index);
+        children[index] = child;
+        numChildren++;
+
+        child.setParent(this);
+    }
+
+    /**
+     * Sets the children of a new node all at once, without growing the array.
+     */
+    public void setChildren(JmmNode[] newChildren) {
+        children = newChildren;
+        numChildren = newChildren.length;
+
+        for (var child : newChildren) {
+            child.setParent(this);
+        }
+    }
+
+    @Override
+    public void setChild(JmmNode newNode, int index) {
+        var currentChild = getChild(index);
+
+        // If the new node is already in the tree, the current child takes its old place
+        var newNodeParent = newNode.getParent();
+        int newNodeIndex = newNodeParent == null ? -1 : newNode.getIndexOfSelf();
+        if (newNodeParent != null) {
+            newNodeParent.removeJmmChild(newNodeIndex);
+            if (newNodeParent == this && newNodeIndex < index) {
+                index--;
+            }
+        }
+
+        children[index] = newNode;
+        newNode.setParent(this);
+        currentChild.removeParent();
+
+        if (newNodeParent != null) {
+            newNodeParent.add(currentChild, newNodeIndex);
+        }
+    }
+
+    @Override
+    public JmmNode removeJmmChild(int index) {
+        if (index >= numChildren) {
+            System.out.println("[WARNING] Tried to remove child at index " + index + ", but node only has "
+                    + numChildren + " children");
+            return null;
+        }
+
+        var removed = children[index];
+        System.arraycopy(children, index + 1, children, index, numChildren - index - 1);
+        children[--numChildren] = null;
+
+        removed.removeParent();
+        return removed;
+    }
+
+    // Abstract in JmmNode, removeChild(JmmNode) is the non-deprecated method that calls it
+    @SuppressWarnings("deprecation")
+    @Override
+    public int removeJmmChild(JmmNode node) {
+        int index = indexOf(node);
+        if (index == -1) {
+            System.out.println("[WARNING] Tried to remove child from node, but could not find it.\nChild:" + node
+                    + "\nParent:" + this);
+            return -1;
+        }
+
+        removeJmmChild(index);
+        return index;
+    }
+
+    @Override
+    public JmmNode detach() {
+        if (parent == null) {
+            System.out.println("[WARNING] Tried to remove itself from the tree, but node has no parent");
+            return this;
+        }
+
+        parent.removeChild(this);
+        return this;
+    }
+
+    @Override
+    public JmmNode copyNode() {
+        var copy = new CompactJmmNode(type);
+
+        copy.name = name;
+        copy.op = op;
+        copy.value = value;
+        copy.exprType = exprType;
+        copy.resolved = resolved;
+        copy.setPosition(lineStart, colStart, lineEnd, colEnd);
+        if (otherAttributes != null) {
+            copy.otherAttributes = new HashMap<>(otherAttributes);
+        }
+
+        return copy;
+    }
+
+    /**
+     * Same format as the nodes of the library, the kind followed by the attributes that are not positions.
+     */
+    @Override
+    public String toString() {
+        var string = new StringBuilder(getKind());
+
+        var separator = " (";
+        for (var attribute : getAttributes()) {
+            if (isPosition(attribute)) {
+                continue;
+            }
+
+            string.append(separator).append(attribute).append(": ").append(getOptionalObject(attribute).orElse(null));
+            separator = ", ";
+        }
+
+        if (!separator.equals(" (")) {
+            string.append(")");
+        }
+
+        return string.toString();
+    }
+
+    /**
+     * Kind and hierarchy shared by the nodes of the same type.
+     */
+    public static class NodeType {
+        private final String name;
+        private final Kind kind;
+        private final List<String> hierarchy;
+
+        /**
+         * @param name      the kind of the nodes
+         * @param hierarchy the kind followed by the kinds it extends
+         */
+        public NodeType(String name, List<String> hierarchy) {
+            this.name = name.intern();
+            this.kind = Kind.fromNodeName(name).orElse(null);
+            this.hierarchy = hierarchy.stream().map(String::intern).toList();
+        }
+    }
+}
@@ -4,6 +4,9 @@ import pt.up.fe.comp.jmm.ast.JmmNode;
 import pt.up.fe.specs.util.SpecsStrings;
 
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 
 public enum Kind {
@@ -14,12 +17,19 @@ public enum Kind {
     TYPE,
     METHOD_DECL,
     MAIN_METHOD_DECL,
+    PARAM_LIST,
     PARAM,
+    NORMAL_PARAM,
+    STMT,
     ASSIGN_STMT,
     RETURN_STMT,
+    BLOCK_STMT,
     EXPR_STMT,
     IF_ELSE_STMT,
+    IF_STMT,
     WHILE_CONDITION,
+    WHILE_STMT,
+    EXPR,
     PAREN_EXPR,
     THIS_EXPR,
     METHOD_CALL_EXPR,
@@ -34,6 +44,7 @@ public enum Kind {
     NEW_ARRAY_EXPR,
     ARRAY_INIT_EXPRESSION,
     ARRAY_LENGTH_EXPR,
+    ARGS,
     VAR_ARG_ARRAY;
 
 
@@ -41,6 +52,14 @@ public enum Kind {
     private static final Set<Kind> STATEMENTS = Set.of(ASSIGN_STMT, RETURN_STMT);
     private static final Set<Kind> EXPRESSIONS = Set.of(BINARY_EXPR, INTEGER_LITERAL, BOOLEAN_LITERAL,  VAR_REF_EXPR, ARRAY_ACCESS_EXPR);
 
+    private static final Map<String, Kind> BY_NODE_NAME = new HashMap<>();
+
+    static {
+        for (Kind k : Kind.values()) {
+            BY_NODE_NAME.put(k.getNodeName(), k);
+        }
+    }
+
     private final String name;
 
     private Kind(String name) {
@@ -52,13 +71,26 @@ public enum Kind {
     }
 
     public static Kind fromString(String kind) {
+        return fromNodeName(kind)
+                .orElseThrow(() -> new RuntimeException("Could not convert string '" + kind + "' to a Kind"));
+    }
 
-        for (Kind k : Kind.values()) {
-            if (k.getNodeName().equals(kind)) {
-                return k;
-            }
+    /**
+     * @return the kind with the given node name, or empty if there is none
+     */
+    public static Optional<Kind> fromNodeName(String kind) {
+        return Optional.ofNullable(BY_NODE_NAME.get(kind));
+    }
+
+    /**
+     * @return the kind of the node, or null if it is not one of these kinds
+     */
+    public static Kind of(JmmNode node) {
+        if (node instanceof CompactJmmNode compactNode) {
+            return compactNode.getKindValue();
         }
-        throw new RuntimeException("Could not convert string '" + kind + "' to a Kind");
+
+        return BY_NODE_NAME.get(node.getKind());
     }
 
     public String getNodeName() {
@@ -91,6 +123,11 @@ public enum Kind {
      * @return
      */
     public boolean check(JmmNode node) {
+        // Nodes built by the parser already know their kind, no need to compare names
+        if (node instanceof CompactJmmNode compactNode) {
+            return compactNode.getKindValue() == this;
+        }
+
         return node.getKind().equals(getNodeName());
     }
 
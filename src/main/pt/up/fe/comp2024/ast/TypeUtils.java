@@ -5,9 +5,12 @@ import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
 import pt.up.fe.comp.jmm.analysis.table.Type;
 import pt.up.fe.comp.jmm.ast.JmmNode;
 import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp2024.symboltable.JmmSymbolTable;
+import pt.up.fe.comp2024.symboltable.ResolvedSymbol;
 
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
 
 import static pt.up.fe.comp2024.ast.Kind.*;
 
@@ -24,7 +27,13 @@ public class TypeUtils {
     public static String getBooleanTypeName() {return BOOLEAN_TYPE_NAME;}
 
     /**
-     * Gets the {@link Type} of an arbitrary expression.
+     * Attribute where the type of an expression is stored once computed.
+     */
+    public static final String TYPE_ATTRIBUTE = "type";
+
+    /**
+     * Gets the {@link Type} of an arbitrary expression. The type is computed only the first time, and stored in the
+     * node for the next calls.
      *
      * @param expr
      * @param table
@@ -32,32 +41,55 @@ public class TypeUtils {
      */
 
     public static Type getExprType(JmmNode expr, SymbolTable table) {
+        var cached = expr.getOptionalObject(TYPE_ATTRIBUTE);
+        if (cached.isPresent()) {
+            return (Type) cached.get();
+        }
+
+        var type = computeExprType(expr, table, true);
+        expr.putObject(TYPE_ATTRIBUTE, type);
+
+        return type;
+    }
+
+    /**
+     * Computes the type of the expression again, without using or storing types in the nodes.
+     */
+    public static Type computeExprType(JmmNode expr, SymbolTable table) {
+        return computeExprType(expr, table, false);
+    }
+
+    private static Type getExprType(JmmNode expr, SymbolTable table, boolean memoize) {
+        return memoize ? getExprType(expr, table) : computeExprType(expr, table, false);
+    }
+
+    private static Type computeExprType(JmmNode expr, SymbolTable table, boolean memoize) {
 
         var kind = fromString(expr.getKind());
 
         Type type = switch (kind) {
             case BINARY_EXPR -> getBinExprType(expr);
             case VAR_REF_EXPR -> getVarExprType(expr, table);
-            case ARRAY_ACCESS_EXPR -> getArrayAccessExprType(expr, table);
+            case ARRAY_ACCESS_EXPR -> getArrayAccessExprType(expr, table, memoize);
             case METHOD_CALL_EXPR -> table.getReturnType(expr.get("name"));
             case INTEGER_LITERAL -> new Type(INT_TYPE_NAME, false);
             case BOOLEAN_LITERAL -> new Type(BOOLEAN_TYPE_NAME, false);
             case THIS_EXPR -> getThisType(expr,table);
             case NEW_CLASS_EXPR -> new Type(expr.get("name"),false);
             case NEW_ARRAY_EXPR -> new Type(expr.getChild(0).get("name"), true);
-            case ARRAY_INIT_EXPRESSION -> new Type(getExprType(expr.getChild(0), table).getName(), true);
+            case ARRAY_INIT_EXPRESSION -> new Type(getExprType(expr.getChild(0), table, memoize).getName(), true);
             case VAR_ARG_ARRAY -> new Type(expr.getChild(0).get("name"), true);
-            case PAREN_EXPR -> getExprType(expr.getJmmChild(0), table);
+            case PAREN_EXPR -> getExprType(expr.getJmmChild(0), table, memoize);
             case NOT_EXPR -> new Type(BOOLEAN_TYPE_NAME, false);
-            case ARRAY_LENGTH_EXPR -> getArrayLengthExpr(expr,table);
+            case ARRAY_LENGTH_EXPR -> getArrayLengthExpr(expr,table, memoize);
             default -> throw new UnsupportedOperationException("Can't compute type for expression kind '" + kind + "'");
         };
 
         return type;
     }
 
-    private static Type getArrayLengthExpr(JmmNode expr, SymbolTable table) {
-        Type type = new Type(getExprType(expr.getChild(0),table).getName(), false);
+    private static Type getArrayLengthExpr(JmmNode expr, SymbolTable table, boolean memoize) {
+        Type type = new Type(getExprType(expr.getChild(0),table, memoize).getName(), false);
         return type;
     }
 
@@ -75,58 +107,13 @@ public class TypeUtils {
     }
 
     private static Type getVarExprType(JmmNode varRefExpr, SymbolTable table) {
-
-        String id = varRefExpr.get("name");
-        var type = new Type("",false);
-        List<Symbol> parent = null;
-        if(varRefExpr.getAncestor(MAIN_METHOD_DECL).isPresent()){
-            parent = table.getLocalVariables("main");
-        }
-        else{
-            parent = table.getLocalVariables(varRefExpr.getAncestor(METHOD_DECL).map(method -> method.get("name")).orElseThrow());
-        }
-
-        //Variavel Local
-        for(var locals: parent){
-            if(locals.getName().equals(id)){
-                type = locals.getType();
-                break;
-            }
-        }
-        if(type.getName().isEmpty() && !type.isArray()){
-            //Variavel Param
-            if(!varRefExpr.getAncestor(MAIN_METHOD_DECL).isPresent()) {
-                var parent_param = table.getParameters(varRefExpr.getAncestor(METHOD_DECL).map(method -> method.get("name")).orElseThrow());
-                for (var param : parent_param) {
-                    if (param.getName().equals(id)) {
-                        type = param.getType();
-                        break;
-                    }
-                }
-            }
-            if(type.getName().isEmpty() && !type.isArray()){
-                //Variavel Field
-                for(var field: table.getFields()) {
-                    if(field.getName().equals(id)){
-                        type = field.getType();
-                        break;
-                    }
-                }
-                if(type.getName().isEmpty() && !type.isArray()){
-                    for(var imports: table.getImports()){
-                        if (imports.contains(id)) {
-                            type = new Type("import", false);
-                            break;
-                        }
-                    }
-                }
-            }
-        }
-        return type;
+        return resolveVariable(varRefExpr, table)
+                .map(ResolvedSymbol::getType)
+                .orElseGet(() -> new Type("", false));
     }
 
-    private static Type getArrayAccessExprType(JmmNode arrayAccessExpr, SymbolTable table){
-        Type arrayType = getExprType(arrayAccessExpr.getJmmChild(0), table);
+    private static Type getArrayAccessExprType(JmmNode arrayAccessExpr, SymbolTable table, boolean memoize){
+        Type arrayType = getExprType(arrayAccessExpr.getJmmChild(0), table, memoize);
         return new Type(arrayType.getName(), false);
     }
 
@@ -135,53 +122,46 @@ public class TypeUtils {
     }
 
     public static String getVariableScope(JmmNode node,SymbolTable table){
-        String scope = "";
-        String idscope = node.get("name");
-        List<Symbol> parent = null;
-        if(node.getAncestor(MAIN_METHOD_DECL).isPresent()){
-            parent = table.getLocalVariables("main");
-        }
-        else{
-            parent = table.getLocalVariables(node.getAncestor(METHOD_DECL).map(method -> method.get("name")).orElseThrow());
+        return resolveVariable(node, table)
+                .map(resolved -> resolved.getScope().getName())
+                .orElse("");
+    }
+
+    /**
+     * Finds the declaration of the variable referenced by a VarRefExpr. Uses the one stored when the symbol table was
+     * built, and only looks it up for nodes created afterwards.
+     *
+     * @return the declaration, or empty if the variable is not declared
+     */
+    public static Optional<ResolvedSymbol> resolveVariable(JmmNode varRefExpr, SymbolTable table) {
+        var resolved = varRefExpr.getOptionalObject(ResolvedSymbol.ATTRIBUTE);
+        if (resolved.isPresent()) {
+            return Optional.of((ResolvedSymbol) resolved.get());
         }
 
-        //Variavel Local
-        for(var locals: parent){
-            if(locals.getName().equals(idscope)){
-                scope = "local";
-                break;
-            }
+        var method = getMethodName(varRefExpr);
+        if (method.isEmpty()) {
+            return Optional.empty();
         }
-        if(scope.isEmpty()){
-            //Variavel Param
-            if(!node.getAncestor(MAIN_METHOD_DECL).isPresent()) {
-                var parent_param = table.getParameters(node.getAncestor(METHOD_DECL).map(method -> method.get("name")).orElseThrow());
-                for (var param : parent_param) {
-                    if (param.getName().equals(idscope)) {
-                        scope = "param";
-                        break;
-                    }
-                }
+
+        return ((JmmSymbolTable) table).resolve(method.get(), varRefExpr.get("name"));
+    }
+
+    /**
+     * @return the name of the method the node is in, or empty if it is outside methods
+     */
+    public static Optional<String> getMethodName(JmmNode node) {
+        for (var current = node.getParent(); current != null; current = current.getParent()) {
+            if (MAIN_METHOD_DECL.check(current)) {
+                return Optional.of("main");
             }
-            if(scope.isEmpty()){
-                //Variavel Field
-                for(var field: table.getFields()) {
-                    if(field.getName().equals(idscope)){
-                        scope = "field";
-                        break;
-                    }
-                }
-                if(scope.isEmpty()){
-                    for(var imports: table.getImports()){
-                        if (imports.contains(idscope)) {
-                            scope = "import";
-                            break;
-                        }
-                    }
-                }
+
+            if (METHOD_DECL.check(current)) {
+                return Optional.of(current.get("name"));
             }
         }
-        return scope;
+
+        return Optional.empty();
     }
 
     /**
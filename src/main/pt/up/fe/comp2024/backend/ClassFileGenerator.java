@@ -0,0 +1,621 @@
+package pt.up.fe.comp2024.backend;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.specs.util.exceptions.NotImplementedException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.specs.comp.ollir.ElementType.VOID;
+
+/**
+ * Generates a class file from an OllirResult, without going through Jasmin code.
+ * <p>
+ * The class targets Java 17. The maximum stack size, the number of locals and the StackMapTable frames needed by the
+ * split verifier are computed by ASM. Produces the same instruction sequences as {@link JasminGenerator}.
+ * <p>
+ * One ClassFileGenerator instance per OllirResult.
+ */
+public class ClassFileGenerator {
+
+    private static final String OBJECT = "java/lang/Object";
+
+    private final OllirResult ollirResult;
+    private final List<Report> reports;
+
+    private byte[] classFile;
+
+    private ClassUnit currentClass;
+    private Method currentMethod;
+    private MethodVisitor mv;
+    private Map<String, Label> labels;
+
+    public ClassFileGenerator(OllirResult ollirResult) {
+        this.ollirResult = ollirResult;
+        this.reports = new ArrayList<>();
+    }
+
+    public List<Report> getReports() {
+        return reports;
+    }
+
+    public byte[] build() {
+
+        // This way, build is idempotent
+        if (classFile == null) {
+            classFile = generateClass(ollirResult.getOllirClass());
+        }
+
+        return classFile;
+    }
+
+    private byte[] generateClass(ClassUnit classUnit) {
+        currentClass = classUnit;
+
+        var writer = new FrameClassWriter();
+        var superClass = getSuperClass();
+        writer.visit(Opcodes.V17, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, classUnit.getClassName(), null,
+                superClass, null);
+
+        for (var field : classUnit.getFields()) {
+            int access = toAccess(field.getFieldAccessModifier());
+            if (field.isStaticField()) {
+                access |= Opcodes.ACC_STATIC;
+            }
+            if (field.isFinalField()) {
+                access |= Opcodes.ACC_FINAL;
+            }
+            writer.visitField(access, field.getFieldName(), toDescriptor(field.getFieldType()), null, null).visitEnd();
+        }
+
+        for (var method : classUnit.getMethods()) {
+            if (method.isConstructMethod()) {
+                generateConstructor(writer, superClass);
+            } else {
+                generateMethod(writer, method);
+            }
+        }
+
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    /**
+     * As in the Jasmin backend, there is always a single constructor without arguments, that calls the one of the
+     * super class.
+     */
+    private void generateConstructor(ClassWriter writer, String superClass) {
+        var constructor = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        constructor.visitCode();
+        constructor.visitVarInsn(Opcodes.ALOAD, 0);
+        constructor.visitMethodInsn(Opcodes.INVOKESPECIAL, superClass, "<init>", "()V", false);
+        constructor.visitInsn(Opcodes.RETURN);
+        constructor.visitMaxs(0, 0);
+        constructor.visitEnd();
+    }
+
+    private void generateMethod(ClassWriter writer, Method method) {
+        currentMethod = method;
+        labels = new HashMap<>();
+
+        int access = toAccess(method.getMethodAccessModifier());
+        if (method.isStaticMethod()) {
+            access |= Opcodes.ACC_STATIC;
+        }
+        if (method.isFinalMethod()) {
+            access |= Opcodes.ACC_FINAL;
+        }
+        if (method.isVarargs()) {
+            access |= Opcodes.ACC_VARARGS;
+        }
+
+        var descriptor = new StringBuilder("(");
+        for (var param : method.getParams()) {
+            descriptor.append(toDescriptor(param.getType()));
+        }
+        descriptor.append(")").append(toDescriptor(method.getReturnType()));
+
+        mv = writer.visitMethod(access, method.getMethodName(), descriptor.toString(), null, null);
+        mv.visitCode();
+
+        for (var inst : method.getInstructions()) {
+            for (var label : method.getLabels(inst)) {
+                mv.visitLabel(getLabel(label));
+            }
+            generateInstruction(inst);
+        }
+
+        // Sizes and frames are computed by the writer
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        // unset method
+        currentMethod = null;
+        mv = null;
+    }
+
+    private void generateInstruction(Instruction inst) {
+        switch (inst.getInstType()) {
+            case ASSIGN -> generateAssign((AssignInstruction) inst);
+            case CALL -> {
+                var call = (CallInstruction) inst;
+                generateCall(call);
+                // The result of a call used as a statement is discarded
+                if (call.getReturnType().getTypeOfElement() != VOID) {
+                    mv.visitInsn(Opcodes.POP);
+                }
+            }
+            case GOTO -> mv.visitJumpInsn(Opcodes.GOTO, getLabel(((GotoInstruction) inst).getLabel()));
+            case BRANCH -> generateBranch((CondBranchInstruction) inst);
+            case RETURN -> generateReturn((ReturnInstruction) inst);
+            case PUTFIELD -> generatePutField((PutFieldInstruction) inst);
+            case GETFIELD, UNARYOPER, BINARYOPER, NOPER -> {
+                // Value without a destination, only computed for its side effects
+                generateValue(inst);
+                mv.visitInsn(Opcodes.POP);
+            }
+        }
+    }
+
+    private void generateAssign(AssignInstruction assign) {
+        var dest = (Operand) assign.getDest();
+
+        if (generateIinc(dest, assign.getRhs())) {
+            return;
+        }
+
+        if (dest instanceof ArrayOperand arrayDest) {
+            mv.visitVarInsn(Opcodes.ALOAD, getRegister(arrayDest.getName()));
+            loadElement(arrayDest.getIndexOperands().get(0));
+            generateValue(assign.getRhs());
+            mv.visitInsn(getArrayStore(arrayDest.getType()));
+            return;
+        }
+
+        generateValue(assign.getRhs());
+        mv.visitVarInsn(isReference(dest.getType()) ? Opcodes.ASTORE : Opcodes.ISTORE, getRegister(dest.getName()));
+    }
+
+    /**
+     * Uses iinc for 'a := a + c' and 'a := a - c', when the constant fits.
+     */
+    private boolean generateIinc(Operand dest, Instruction rhs) {
+        if (dest instanceof ArrayOperand || !(rhs instanceof BinaryOpInstruction binary)) {
+            return false;
+        }
+
+        var op = binary.getOperation().getOpType();
+        if (op != OperationType.ADD && op != OperationType.SUB) {
+            return false;
+        }
+
+        var left = binary.getLeftOperand();
+        var right = binary.getRightOperand();
+        if (left.isLiteral() == right.isLiteral()) {
+            return false;
+        }
+
+        var literal = (LiteralElement) (right.isLiteral() ? right : left);
+        var operand = (Operand) (right.isLiteral() ? left : right);
+        // 'c - a' is not an increment of a
+        if (!operand.getName().equals(dest.getName()) || (op == OperationType.SUB && left.isLiteral())) {
+            return false;
+        }
+
+        int value = Integer.parseInt(literal.getLiteral());
+        if (op == OperationType.SUB) {
+            value = -value;
+        }
+        if (value < Short.MIN_VALUE || value > Short.MAX_VALUE) {
+            return false;
+        }
+
+        mv.visitIincInsn(getRegister(dest.getName()), value);
+        return true;
+    }
+
+    /**
+     * Leaves the value computed by the instruction on the top of the stack.
+     */
+    private void generateValue(Instruction inst) {
+        switch (inst.getInstType()) {
+            case NOPER -> loadElement(((SingleOpInstruction) inst).getSingleOperand());
+            case BINARYOPER -> generateBinaryOp((BinaryOpInstruction) inst);
+            case UNARYOPER -> generateUnaryOp((UnaryOpInstruction) inst);
+            case CALL -> generateCall((CallInstruction) inst);
+            case GETFIELD -> {
+                var getField = (GetFieldInstruction) inst;
+                loadElement(getField.getObject());
+                mv.visitFieldInsn(Opcodes.GETFIELD, getFieldOwner(getField.getObject()),
+                        getField.getField().getName(), toDescriptor(getField.getField().getType()));
+            }
+            default -> throw new NotImplementedException(inst.getInstType());
+        }
+    }
+
+    private void generateBinaryOp(BinaryOpInstruction binaryOp) {
+        var opType = binaryOp.getOperation().getOpType();
+
+        int opcode = switch (opType) {
+            case ADD -> Opcodes.IADD;
+            case SUB -> Opcodes.ISUB;
+            case MUL -> Opcodes.IMUL;
+            case DIV -> Opcodes.IDIV;
+            case ANDB, AND -> Opcodes.IAND;
+            case ORB, OR -> Opcodes.IOR;
+            case XOR -> Opcodes.IXOR;
+            default -> -1;
+        };
+
+        if (opcode != -1) {
+            loadElement(binaryOp.getLeftOperand());
+            loadElement(binaryOp.getRightOperand());
+            mv.visitInsn(opcode);
+            return;
+        }
+
+        // Comparisons produce a boolean through a branch
+        var isTrue = new Label();
+        var end = new Label();
+        generateComparisonJump(binaryOp, isTrue);
+        mv.visitInsn(Opcodes.ICONST_0);
+        mv.visitJumpInsn(Opcodes.GOTO, end);
+        mv.visitLabel(isTrue);
+        mv.visitInsn(Opcodes.ICONST_1);
+        mv.visitLabel(end);
+    }
+
+    private void generateUnaryOp(UnaryOpInstruction unaryOp) {
+        switch (unaryOp.getOperation().getOpType()) {
+            case NOTB, NOT -> {
+                loadElement(unaryOp.getOperand());
+                mv.visitInsn(Opcodes.ICONST_1);
+                mv.visitInsn(Opcodes.IXOR);
+            }
+            default -> throw new NotImplementedException(unaryOp.getOperation().getOpType());
+        }
+    }
+
+    private void generateBranch(CondBranchInstruction branch) {
+        var target = getLabel(branch.getLabel());
+        var condition = branch.getCondition();
+
+        if (condition instanceof BinaryOpInstruction binaryOp && isComparison(binaryOp.getOperation().getOpType())) {
+            generateComparisonJump(binaryOp, target);
+            return;
+        }
+
+        if (condition instanceof UnaryOpInstruction unaryOp && unaryOp.getOperation().getOpType() == OperationType.NOTB) {
+            loadElement(unaryOp.getOperand());
+            mv.visitJumpInsn(Opcodes.IFEQ, target);
+            return;
+        }
+
+        generateValue(condition);
+        mv.visitJumpInsn(Opcodes.IFNE, target);
+    }
+
+    /**
+     * Jumps to the label if the comparison holds. Comparisons against zero use the single operand jumps.
+     */
+    private void generateComparisonJump(BinaryOpInstruction binaryOp, Label target) {
+        var opType = binaryOp.getOperation().getOpType();
+        var left = binaryOp.getLeftOperand();
+        var right = binaryOp.getRightOperand();
+
+        if (isZero(right)) {
+            loadElement(left);
+            mv.visitJumpInsn(toZeroJump(opType), target);
+            return;
+        }
+
+        if (isZero(left)) {
+            loadElement(right);
+            mv.visitJumpInsn(toZeroJump(swap(opType)), target);
+            return;
+        }
+
+        loadElement(left);
+        loadElement(right);
+        mv.visitJumpInsn(switch (opType) {
+            case LTH -> Opcodes.IF_ICMPLT;
+            case LTE -> Opcodes.IF_ICMPLE;
+            case GTH -> Opcodes.IF_ICMPGT;
+            case GTE -> Opcodes.IF_ICMPGE;
+            case EQ -> Opcodes.IF_ICMPEQ;
+            case NEQ -> Opcodes.IF_ICMPNE;
+            default -> throw new NotImplementedException(opType);
+        }, target);
+    }
+
+    private static int toZeroJump(OperationType opType) {
+        return switch (opType) {
+            case LTH -> Opcodes.IFLT;
+            case LTE -> Opcodes.IFLE;
+            case GTH -> Opcodes.IFGT;
+            case GTE -> Opcodes.IFGE;
+            case EQ -> Opcodes.IFEQ;
+            case NEQ -> Opcodes.IFNE;
+            default -> throw new NotImplementedException(opType);
+        };
+    }
+
+    /**
+     * @return the comparison that gives the same result with the operands swapped
+     */
+    private static OperationType swap(OperationType opType) {
+        return switch (opType) {
+            case LTH -> OperationType.GTH;
+            case LTE -> OperationType.GTE;
+            case GTH -> OperationType.LTH;
+            case GTE -> OperationType.LTE;
+            default -> opType;
+        };
+    }
+
+    private static boolean isComparison(OperationType opType) {
+        return switch (opType) {
+            case LTH, LTE, GTH, GTE, EQ, NEQ -> true;
+            default -> false;
+        };
+    }
+
+    private static boolean isZero(Element element) {
+        return element instanceof LiteralElement literal && literal.getLiteral().equals("0");
+    }
+
+    private void generateCall(CallInstruction call) {
+        switch (call.getInvocationType()) {
+            case invokestatic -> {
+                loadArguments(call);
+                var owner = getClass(((Operand) call.getCaller()).getName());
+                mv.visitMethodInsn(Opcodes.INVOKESTATIC, owner, getMethodName(call), getCallDescriptor(call), false);
+            }
+            case invokevirtual -> {
+                loadElement(call.getCaller());
+                loadArguments(call);
+                var owner = getClass(((ClassType) call.getCaller().getType()).getName());
+                mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, owner, getMethodName(call), getCallDescriptor(call), false);
+            }
+            case invokespecial -> {
+                loadElement(call.getCaller());
+                loadArguments(call);
+                var owner = call.getCaller().getType().getTypeOfElement() == ElementType.THIS ?
+                        getSuperClass() :
+                        getClass(((ClassType) call.getCaller().getType()).getName());
+                var descriptor = new StringBuilder("(");
+                for (var arg : call.getArguments()) {
+                    descriptor.append(toDescriptor(arg.getType()));
+                }
+                descriptor.append(")V");
+                mv.visitMethodInsn(Opcodes.INVOKESPECIAL, owner, "<init>", descriptor.toString(), false);
+            }
+            case NEW -> generateNew(call);
+            case arraylength -> {
+                loadElement(call.getCaller());
+                mv.visitInsn(Opcodes.ARRAYLENGTH);
+            }
+            default -> throw new NotImplementedException(call.getInvocationType());
+        }
+    }
+
+    private void generateNew(CallInstruction call) {
+        if (call.getReturnType() instanceof ArrayType arrayType) {
+            loadElement(call.getArguments().get(0));
+
+            var elementType = arrayType.getElementType();
+            switch (elementType.getTypeOfElement()) {
+                case INT32 -> mv.visitIntInsn(Opcodes.NEWARRAY, Opcodes.T_INT);
+                case BOOLEAN -> mv.visitIntInsn(Opcodes.NEWARRAY, Opcodes.T_BOOLEAN);
+                default -> mv.visitTypeInsn(Opcodes.ANEWARRAY, toInternalName(elementType));
+            }
+            return;
+        }
+
+        // The constructor is called by a separate invokespecial
+        mv.visitTypeInsn(Opcodes.NEW, getClass(((Operand) call.getCaller()).getName()));
+    }
+
+    private void loadArguments(CallInstruction call) {
+        for (var arg : call.getArguments()) {
+            loadElement(arg);
+        }
+    }
+
+    private String getCallDescriptor(CallInstruction call) {
+        var descriptor = new StringBuilder("(");
+        for (var arg : call.getArguments()) {
+            descriptor.append(toDescriptor(arg.getType()));
+        }
+        descriptor.append(")").append(toDescriptor(call.getReturnType()));
+
+        return descriptor.toString();
+    }
+
+    private static String getMethodName(CallInstruction call) {
+        return JasminGenerator.removeQuotes(((LiteralElement) call.getMethodName()).getLiteral());
+    }
+
+    private void generatePutField(PutFieldInstruction putField) {
+        loadElement(putField.getObject());
+        loadElement(putField.getValue());
+        mv.visitFieldInsn(Opcodes.PUTFIELD, getFieldOwner(putField.getObject()), putField.getField().getName(),
+                toDescriptor(putField.getField().getType()));
+    }
+
+    private void generateReturn(ReturnInstruction returnInst) {
+        var type = returnInst.getReturnType();
+
+        if (type.getTypeOfElement() == VOID) {
+            mv.visitInsn(Opcodes.RETURN);
+            return;
+        }
+
+        loadElement(returnInst.getOperand());
+        mv.visitInsn(isReference(type) ? Opcodes.ARETURN : Opcodes.IRETURN);
+    }
+
+    private void loadElement(Element element) {
+        if (element instanceof LiteralElement literal) {
+            loadLiteral(literal);
+            return;
+        }
+
+        var operand = (Operand) element;
+
+        if (operand instanceof ArrayOperand arrayOperand) {
+            mv.visitVarInsn(Opcodes.ALOAD, getRegister(arrayOperand.getName()));
+            loadElement(arrayOperand.getIndexOperands().get(0));
+            mv.visitInsn(getArrayLoad(arrayOperand.getType()));
+            return;
+        }
+
+        switch (operand.getType().getTypeOfElement()) {
+            case THIS -> mv.visitVarInsn(Opcodes.ALOAD, 0);
+            case STRING, ARRAYREF, OBJECTREF -> mv.visitVarInsn(Opcodes.ALOAD, getRegister(operand.getName()));
+            case INT32, BOOLEAN -> mv.visitVarInsn(Opcodes.ILOAD, getRegister(operand.getName()));
+            // Classes are only the target of static calls, there is nothing to load
+            case CLASS -> {
+            }
+            default -> throw new NotImplementedException(operand.getType().getTypeOfElement());
+        }
+    }
+
+    private void loadLiteral(LiteralElement literal) {
+        var type = literal.getType().getTypeOfElement();
+        if (type != ElementType.INT32 && type != ElementType.BOOLEAN) {
+            mv.visitLdcInsn(JasminGenerator.removeQuotes(literal.getLiteral()));
+            return;
+        }
+
+        int value = Integer.parseInt(literal.getLiteral());
+        if (value >= -1 && value <= 5) {
+            mv.visitInsn(Opcodes.ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            mv.visitIntInsn(Opcodes.BIPUSH, value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            mv.visitIntInsn(Opcodes.SIPUSH, value);
+        } else {
+            mv.visitLdcInsn(value);
+        }
+    }
+
+    private int getRegister(String name) {
+        return currentMethod.getVarTable().get(name).getVirtualReg();
+    }
+
+    private Label getLabel(String name) {
+        return labels.computeIfAbsent(name, key -> new Label());
+    }
+
+    private static int getArrayLoad(Type elementType) {
+        return switch (elementType.getTypeOfElement()) {
+            case INT32 -> Opcodes.IALOAD;
+            case BOOLEAN -> Opcodes.BALOAD;
+            default -> Opcodes.AALOAD;
+        };
+    }
+
+    private static int getArrayStore(Type elementType) {
+        return switch (elementType.getTypeOfElement()) {
+            case INT32 -> Opcodes.IASTORE;
+            case BOOLEAN -> Opcodes.BASTORE;
+            default -> Opcodes.AASTORE;
+        };
+    }
+
+    private static boolean isReference(Type type) {
+        return switch (type.getTypeOfElement()) {
+            case STRING, ARRAYREF, OBJECTREF, THIS, CLASS -> true;
+            default -> false;
+        };
+    }
+
+    private static int toAccess(AccessModifier modifier) {
+        return switch (modifier) {
+            case PUBLIC -> Opcodes.ACC_PUBLIC;
+            case PRIVATE -> Opcodes.ACC_PRIVATE;
+            case PROTECTED -> Opcodes.ACC_PROTECTED;
+            case DEFAULT -> 0;
+        };
+    }
+
+    private String getSuperClass() {
+        return currentClass.getSuperClass() == null ? OBJECT : getClass(currentClass.getSuperClass());
+    }
+
+    private String getFieldOwner(Element object) {
+        return getClass(((ClassType) object.getType()).getName());
+    }
+
+    /**
+     * @return the internal name of a class, resolved through the imports
+     */
+    private String getClass(String className) {
+        if (className.equals("this")) {
+            return currentClass.getClassName();
+        }
+
+        for (String name : currentClass.getImports()) {
+            if (name.equals(className) || name.endsWith("." + className)) {
+                return name.replace(".", "/");
+            }
+        }
+
+        return className;
+    }
+
+    private String toInternalName(Type type) {
+        return switch (type.getTypeOfElement()) {
+            case STRING -> "java/lang/String";
+            case OBJECTREF, THIS, CLASS -> getClass(((ClassType) type).getName());
+            case ARRAYREF -> toDescriptor(type);
+            default -> throw new NotImplementedException(type.getTypeOfElement());
+        };
+    }
+
+    private String toDescriptor(Type type) {
+        return switch (type.getTypeOfElement()) {
+            case INT32 -> "I";
+            case BOOLEAN -> "Z";
+            case VOID -> "V";
+            case ARRAYREF -> "[" + toDescriptor(((ArrayType) type).getElementType());
+            default -> "L" + toInternalName(type) + ";";
+        };
+    }
+
+    /**
+     * Computing frames needs the common super class of two types. The classes referenced by the generated code are not
+     * loaded by the compiler, so the only known relation is the one of the generated class and its super class.
+     */
+    private class FrameClassWriter extends ClassWriter {
+
+        FrameClassWriter() {
+            super(ClassWriter.COMPUTE_FRAMES);
+        }
+
+        @Override
+        protected String getCommonSuperClass(String type1, String type2) {
+            if (type1.equals(type2)) {
+                return type1;
+            }
+
+            var className = currentClass.getClassName();
+            var superClass = getSuperClass();
+            if ((type1.equals(className) && type2.equals(superClass))
+                    || (type2.equals(className) && type1.equals(superClass))) {
+                return superClass;
+            }
+
+            return OBJECT;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package pt.up.fe.comp2024.backend;
+
+import pt.up.fe.comp.jmm.jasmin.JasminResult;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * Result of the class file backend. Has no Jasmin code, compiling it only writes the generated class file.
+ */
+public class ClassFileResult extends JasminResult {
+
+    private final byte[] classFile;
+
+    public ClassFileResult(OllirResult ollirResult, byte[] classFile, List<Report> reports) {
+        super(ollirResult, null, reports);
+
+        this.classFile = classFile;
+    }
+
+    public byte[] getClassFile() {
+        return classFile;
+    }
+
+    @Override
+    public File compile(File outputDir) {
+        var file = new File(SpecsIo.mkdir(outputDir), getClassName() + ".class");
+
+        try {
+            Files.write(file.toPath(), classFile);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write class file '" + file + "'", e);
+        }
+
+        return file;
+    }
+}
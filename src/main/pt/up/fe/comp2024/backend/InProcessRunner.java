@@ -0,0 +1,157 @@
+package pt.up.fe.comp2024.backend;
+
+import jasmin.ClassFile;
+import pt.up.fe.comp.TestUtils;
+import pt.up.fe.comp.jmm.jasmin.JasminResult;
+import pt.up.fe.specs.util.system.ProcessOutputAsString;
+
+import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runs compiled programs inside the current JVM, instead of assembling them to disk and starting a new 'java' process.
+ * <p>
+ * Each run loads the class with its own class loader, that only sees the Java platform classes and the helper classes
+ * in {@link TestUtils#getLibsClasspath()}, so runs do not share static state and cannot reach the compiler classes.
+ * <p>
+ * The standard streams of the JVM are redirected while a program runs, so runs are serialized, and output printed by
+ * other threads during a run is captured as well.
+ */
+public class InProcessRunner {
+
+    private static final Object LOCK = new Object();
+
+    /**
+     * Assembles Jasmin code in memory.
+     *
+     * @return the bytes of the class file
+     */
+    public static byte[] assemble(String jasminCode) {
+        try (var reader = new BufferedReader(new StringReader(jasminCode))) {
+            var classFile = new ClassFile();
+            classFile.readJasmin(reader, "InProcessRunner.j", true);
+
+            if (classFile.errorCount() > 0) {
+                throw new RuntimeException("Found " + classFile.errorCount() + " errors while assembling Jasmin code.");
+            }
+
+            var bytes = new ByteArrayOutputStream();
+            classFile.write(bytes);
+            return bytes.toByteArray();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Exception while assembling Jasmin code: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the class file of the result, assembling its Jasmin code if it was not generated directly
+     */
+    public static byte[] toClassFile(JasminResult result) {
+        if (result instanceof ClassFileResult classFileResult) {
+            return classFileResult.getClassFile();
+        }
+
+        return assemble(result.getJasminCode());
+    }
+
+    public static String run(JasminResult result) {
+        return runWithFullOutput(result, Collections.emptyList(), null).getOutput();
+    }
+
+    public static ProcessOutputAsString runWithFullOutput(JasminResult result) {
+        return runWithFullOutput(result, Collections.emptyList(), null);
+    }
+
+    /**
+     * Loads the class of the result and calls its main method.
+     *
+     * @param args  arguments for the program
+     * @param input input to give to the program, may be null
+     * @return the output printed by the program, with return value 1 if it ended with an exception
+     */
+    public static ProcessOutputAsString runWithFullOutput(JasminResult result, List<String> args, String input) {
+        var className = result.getClassName();
+        var classFile = toClassFile(result);
+
+        var stdout = new ByteArrayOutputStream();
+        var stderr = new ByteArrayOutputStream();
+        var stdin = new ByteArrayInputStream(input == null ? new byte[0] : input.getBytes(StandardCharsets.UTF_8));
+        int returnValue = 0;
+
+        synchronized (LOCK) {
+            var previousOut = System.out;
+            var previousErr = System.err;
+            var previousIn = System.in;
+            var out = new PrintStream(stdout, true, StandardCharsets.UTF_8);
+            var err = new PrintStream(stderr, true, StandardCharsets.UTF_8);
+
+            System.setOut(out);
+            System.setErr(err);
+            System.setIn(stdin);
+
+            try (var loader = new InMemoryClassLoader(className, classFile)) {
+                var main = loader.loadClass(className).getMethod("main", String[].class);
+                main.invoke(null, (Object) args.toArray(new String[0]));
+            } catch (InvocationTargetException e) {
+                // Same message the JVM prints for an uncaught exception
+                err.print("Exception in thread \"main\" ");
+                e.getCause().printStackTrace(err);
+                returnValue = 1;
+            } catch (Exception | LinkageError e) {
+                err.println("Error: Unable to run class " + className);
+                e.printStackTrace(err);
+                returnValue = 1;
+            } finally {
+                out.flush();
+                err.flush();
+                System.setOut(previousOut);
+                System.setErr(previousErr);
+                System.setIn(previousIn);
+            }
+        }
+
+        return new ProcessOutputAsString(returnValue, stdout.toString(StandardCharsets.UTF_8),
+                stderr.toString(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Defines the generated class from memory, and loads the helper classes from the libraries folder.
+     */
+    private static class InMemoryClassLoader extends URLClassLoader {
+
+        private final String className;
+        private final byte[] classFile;
+
+        InMemoryClassLoader(String className, byte[] classFile) {
+            super(getLibsUrls(), ClassLoader.getPlatformClassLoader());
+
+            this.className = className;
+            this.classFile = classFile;
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            if (name.equals(className)) {
+                return defineClass(name, classFile, 0, classFile.length);
+            }
+
+            return super.findClass(name);
+        }
+
+        private static URL[] getLibsUrls() {
+            try {
+                return new URL[]{new File(TestUtils.getLibsClasspath()).toURI().toURL()};
+            } catch (MalformedURLException e) {
+                throw new RuntimeException("Could not build the classpath of the libraries", e);
+            }
+        }
+    }
+}
@@ -3,16 +3,46 @@ package pt.up.fe.comp2024.backend;
 import pt.up.fe.comp.jmm.jasmin.JasminBackend;
 import pt.up.fe.comp.jmm.jasmin.JasminResult;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp2024.CompilerConfig;
+import pt.up.fe.comp2024.utils.PhaseProfiler;
+
+import java.util.List;
 
 public class JasminBackendImpl implements JasminBackend {
 
     @Override
     public JasminResult toJasmin(OllirResult ollirResult) {
 
+        if (CompilerConfig.getClassFile(ollirResult.getConfig())) {
+            return toClassFile(ollirResult);
+        }
+
         var jasminGenerator = new JasminGenerator(ollirResult);
-        var jasminCode = jasminGenerator.build();
+        String jasminCode = PhaseProfiler.measure("jasmin", () -> jasminGenerator.build());
 
         return new JasminResult(ollirResult, jasminCode, jasminGenerator.getReports());
     }
 
+    /**
+     * Writes the Jasmin code to the given output as it is generated, instead of building it as a single String.
+     *
+     * @return the reports of the generation
+     */
+    public List<Report> toJasmin(OllirResult ollirResult, Appendable out) {
+
+        var jasminGenerator = new JasminGenerator(ollirResult);
+        PhaseProfiler.measure("jasmin", () -> jasminGenerator.build(out));
+
+        return jasminGenerator.getReports();
+    }
+
+    private ClassFileResult toClassFile(OllirResult ollirResult) {
+
+        var classFileGenerator = new ClassFileGenerator(ollirResult);
+        var classFile = PhaseProfiler.measure("classFile", classFileGenerator::build);
+
+        return new ClassFileResult(ollirResult, classFile, classFileGenerator.getReports());
+    }
+
 }
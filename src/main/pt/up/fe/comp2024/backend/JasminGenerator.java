@@ -6,8 +6,9 @@ import pt.up.fe.comp.jmm.ollir.OllirResult;
 import pt.up.fe.comp.jmm.report.Report;
 import pt.up.fe.specs.util.classmap.FunctionClassMap;
 import pt.up.fe.specs.util.exceptions.NotImplementedException;
-import pt.up.fe.specs.util.utilities.StringLines;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.lang.invoke.SwitchPoint;
 import java.text.BreakIterator;
 import java.util.ArrayList;
@@ -15,7 +16,6 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 //import java.util.Map;
-import java.util.stream.Collectors;
 
 import static org.specs.comp.ollir.ElementType.ARRAYREF;
 import static org.specs.comp.ollir.ElementType.VOID;
@@ -52,7 +52,6 @@ public class JasminGenerator {
         code = null;
         currentMethod = null;
         this.generators = new FunctionClassMap<>();
-        generators.put(ClassUnit.class, this::generateClassUnit);
         generators.put(Method.class, this::generateMethod);
         generators.put(AssignInstruction.class, this::generateAssign);
         generators.put(SingleOpCondInstruction.class,this::generateSingleOpCondInstruction);
@@ -78,16 +77,29 @@ public class JasminGenerator {
 
         // This way, build is idempotent
         if (code == null) {
-            code = generators.apply(ollirResult.getOllirClass());
+            var builder = new StringBuilder();
+            build(builder);
+            code = builder.toString();
         }
 
         return code;
     }
 
+    /**
+     * Writes the Jasmin code to the given output, one method at a time, so that only the code of the current method is
+     * kept in memory.
+     */
+    public void build(Appendable out) {
+        try {
+            generateClassUnit(ollirResult.getOllirClass(), out);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write Jasmin code", e);
+        }
+    }
+
 
-    private String generateClassUnit(ClassUnit classUnit) {
+    private void generateClassUnit(ClassUnit classUnit, Appendable code) throws IOException {
         currentClass = classUnit;
-        var code = new StringBuilder();
         // generate class name
         var className = ollirResult.getOllirClass().getClassName();
         code.append(".class public ").append(className).append(NL).append(NL);
@@ -132,7 +144,6 @@ public class JasminGenerator {
             }
             code.append(generators.apply(method));
         }
-        return code.toString();
     }
     private String TypeToJasmin(Type type){
         switch (type.getTypeOfElement()){
@@ -182,7 +193,7 @@ public class JasminGenerator {
         Operand secondElement = (Operand) fieldInstruction.getChildren().get(1);
         Element thridElement = (Element)fieldInstruction.getChildren().get(2);
         code.append(generators.apply(firstElement)).append(NL).append(generators.apply(thridElement));
-        code.append("putfield ").append(getClass(firstElement.getName())).append("/").append(secondElement.getName()).append(" ").append(field_to_jasmin(secondElement.getType()));
+        code.append("putfield ").append(getFieldClass(firstElement)).append("/").append(secondElement.getName()).append(" ").append(field_to_jasmin(secondElement.getType()));
         subStackSize(2);//pops first and second operand
         return code.toString();
     }
@@ -199,12 +210,19 @@ public class JasminGenerator {
         }
         return className;
     }
+    // The object of a field access can be any variable of the class, not only this, so its class comes from its type
+    private String getFieldClass(Operand object){
+        if (!object.getName().equals("this") && object.getType() instanceof ClassType classType){
+            return getClass(classType.getName());
+        }
+        return getClass(object.getName());
+    }
     private String GetFieldInstruction(GetFieldInstruction getFieldInstruction){
         var code = new StringBuilder();
         Operand firstOperand = (Operand) getFieldInstruction.getChildren().get(0);
         Operand secondOperand = (Operand) getFieldInstruction.getChildren().get(1);
         code.append(generators.apply(firstOperand)).append(NL);
-        code.append("getfield ").append(getClass(firstOperand.getName())).append("/").append(secondOperand.getName()).append(" ");
+        code.append("getfield ").append(getFieldClass(firstOperand)).append("/").append(secondOperand.getName()).append(" ");
         code.append(field_to_jasmin(secondOperand.getType())).append(NL);
         return code.toString();
     }
@@ -241,9 +259,7 @@ public class JasminGenerator {
                     codeTmp.append(label.getKey()).append(":").append(NL);
                 }
             }
-            var instCode = StringLines.getLines(generators.apply(inst)).stream()
-                    .collect(Collectors.joining(NL + TAB, TAB, NL));
-            codeTmp.append(instCode);
+            appendIndented(codeTmp, generators.apply(inst));
         }
         //code.append(TAB).append(".limit stack ").append(99).append(NL);
         code.append(TAB).append(".limit stack ").append(this.maxStackSize).append(NL);
@@ -259,6 +275,26 @@ public class JasminGenerator {
 
         return code.toString();
     }
+    /**
+     * Appends each line of the instruction code prefixed by a tab, without splitting it into a list of lines first.
+     * A trailing newline does not start a new line.
+     */
+    private static void appendIndented(StringBuilder code, String instCode) {
+        code.append(TAB);
+        int length = instCode.length();
+        for (int i = 0; i < length; i++) {
+            char c = instCode.charAt(i);
+            if (c == '\r' && i + 1 < length && instCode.charAt(i + 1) == '\n') {
+                continue;
+            }
+            if (c != '\n') {
+                code.append(c);
+            } else if (i + 1 < length) {
+                code.append(NL).append(TAB);
+            }
+        }
+        code.append(NL);
+    }
     private int getLocalLimits(Method method){
         HashSet<Integer> registers = new HashSet<>();
         registers.add(0);//Register 0 is this it can always be used even when it is not on the var table
@@ -276,7 +312,8 @@ public class JasminGenerator {
             if (op == OperationType.ADD || op == OperationType.SUB){
                 var right = binary.getRightOperand();
                 var left = binary.getLeftOperand();
-                if((right.isLiteral() && !left.isLiteral()) || (!right.isLiteral() && left.isLiteral())){
+                // c - x is not an increment of x
+                if((right.isLiteral() && !left.isLiteral()) || (!right.isLiteral() && left.isLiteral() && op == OperationType.ADD)){
                     LiteralElement literal = (LiteralElement)(right.isLiteral() ? right : left);
                     Operand operand = (Operand) (right.isLiteral() ? left : right);
                     String name = operand.getName();
@@ -528,7 +565,8 @@ public class JasminGenerator {
                     return result;
                 }
                 if (hasZero){
-                    var result = generators.apply(rightOperand) + "ifge ";
+                    // 0 < x holds when x > 0
+                    var result = generators.apply(rightOperand) + "ifgt ";
                     subStackSize(1);
                     return result;
                 }
@@ -543,7 +581,8 @@ public class JasminGenerator {
                     return result;
                 }
                 if (hasZero){
-                    var result = generators.apply(rightOperand) + "iflt ";
+                    // 0 >= x holds when x <= 0
+                    var result = generators.apply(rightOperand) + "ifle ";
                     subStackSize(1);
                     return result;
                 }
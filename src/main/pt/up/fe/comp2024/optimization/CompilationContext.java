@@ -0,0 +1,72 @@
+package pt.up.fe.comp2024.optimization;
+
+/**
+ * Per-compilation state of the OLLIR generation, such as the counters used to create fresh temporaries and labels.
+ * <p>
+ * One instance per compilation, shared by the statement and the expression visitors. Since nothing is static,
+ * compilations running in the same JVM do not interfere and always generate the same names for the same input.
+ */
+public class CompilationContext {
+
+    public static final String TEMP_PREFIX = "tmp";
+
+    private int tempNumber = -1;
+    private int ifNumber = -1;
+    private int whileNumber = -1;
+    private int varargNumber = -1;
+
+    public String getTemp() {
+
+        return getTemp(TEMP_PREFIX);
+    }
+
+    public String getTemp(String prefix) {
+
+        return prefix + getNextTempNum();
+    }
+
+    public int getNextTempNum() {
+
+        tempNumber += 1;
+        return tempNumber;
+    }
+
+    public String getIf() {
+        return getIf("if");
+    }
+
+    public String getIf(String prefix) {
+        return prefix + getNextIfNum();
+    }
+
+    public int getNextIfNum() {
+        ifNumber += 1;
+        return ifNumber;
+    }
+
+    public String getWhile() {
+        return getWhile("");
+    }
+
+    public String getWhile(String prefix) {
+        return prefix + getNextWhileNum();
+    }
+
+    public int getNextWhileNum() {
+        whileNumber += 1;
+        return whileNumber;
+    }
+
+    public String getVararg() {
+        return getVararg("__varargs_array_");
+    }
+
+    public String getVararg(String prefix) {
+        return prefix + getNextVarArgNum() + ".array.i32";
+    }
+
+    public int getNextVarArgNum() {
+        varargNumber += 1;
+        return varargNumber;
+    }
+}
@@ -1,89 +1,262 @@
 package pt.up.fe.comp2024.optimization;
 
-import pt.up.fe.comp.jmm.ast.AJmmVisitor;
 import pt.up.fe.comp.jmm.ast.JmmNode;
-import pt.up.fe.comp.jmm.ast.JmmNodeImpl;
-
-import java.util.ArrayList;
-import java.util.Arrays;
-
-import static pt.up.fe.comp2024.ast.Kind.BINARY_EXPR;
-
-public class ConstantFold extends AJmmVisitor<Void,Void> {
-    private JmmNode rootNode;
-    private boolean optimized = false;
-
-    public void buildVisitor(){
-        addVisit(BINARY_EXPR, this::dealWithBinnaryOp);
-        /*addVisit(PAREN_EXPR,this::parenExprVisit);
-        addVisit(THIS_EXPR,this::visitThisExpr);
-        addVisit(METHOD_CALL_EXPR, this::visitMethodCall);
-        addVisit(NEW_CLASS_EXPR, this::visitNewClass);
-        addVisit(VAR_REF_EXPR, this::visitVarRef);
-        addVisit(BINARY_EXPR, this::visitBinExpr);
-        addVisit(NOT_EXPR, this::visitNotExpr);
-        addVisit(INTEGER_LITERAL, this::visitInteger);
-        addVisit(BOOLEAN_LITERAL, this::visitBoolean);
-        addVisit(ARRAY_ACCESS_EXPR, this::visitVarRef);
-        addVisit(NEW_ARRAY_EXPR,this::visitNewArray);
-        addVisit(ARRAY_LENGTH_EXPR, this::visitArrayLength);
-        addVisit(ARRAY_INIT_EXPRESSION,this::visitArrayInit);*/
-        setDefaultVisit(this::defaultVisitor);
+import pt.up.fe.comp2024.ast.CompactJmmNode;
+import pt.up.fe.comp2024.ast.Kind;
+
+import static pt.up.fe.comp2024.ast.Kind.*;
+
+/**
+ * Evaluates the operators of the language on constant values, for {@link ConstantPropagation}.
+ * <p>
+ * Constant values are Integer or Boolean, and null stands for a value that is not constant. Operations are evaluated
+ * with the semantics of the JVM, and operations that would throw, such as a division by zero, are not folded.
+ * <p>
+ * Expressions that are not constant can still be simplified: identities such as x + 0 or x && true are replaced by
+ * their operand, !!x by x, and constants are reassociated, so that x + 1 + 2 becomes x + 3. Since int arithmetic wraps
+ * around, reassociating does not change the result.
+ */
+public class ConstantFold {
+
+    private ConstantFold() {
+    }
+
+    /**
+     * @return the value of the literal, or null if the node is not a literal the JVM can represent
+     */
+    public static Object getValue(JmmNode literal) {
+        var kind = Kind.of(literal);
+
+        if (kind == BOOLEAN_LITERAL) {
+            return Boolean.parseBoolean(literal.get("value"));
+        }
+
+        if (kind == INTEGER_LITERAL) {
+            try {
+                return Integer.parseInt(literal.get("value"));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        return null;
+    }
+
+    public static JmmNode toLiteral(Object value) {
+        var literal = new CompactJmmNode(value instanceof Boolean ? BOOLEAN_LITERAL : INTEGER_LITERAL);
+        literal.put("value", value.toString());
+
+        return literal;
     }
-    public void setOptimized(boolean optimized){
-        this.optimized = optimized;
+
+    /**
+     * @return the result of the binary operator, or null if it is not constant
+     */
+    public static Object fold(String op, Object left, Object right) {
+        // Short-circuit operators only need the left operand
+        if (op.equals("&&") && Boolean.FALSE.equals(left)) {
+            return false;
+        }
+        if (op.equals("||") && Boolean.TRUE.equals(left)) {
+            return true;
+        }
+
+        if (left instanceof Integer leftValue && right instanceof Integer rightValue) {
+            return fold(op, leftValue.intValue(), rightValue.intValue());
+        }
+
+        if (left instanceof Boolean leftValue && right instanceof Boolean rightValue) {
+            return switch (op) {
+                case "&&" -> leftValue && rightValue;
+                case "||" -> leftValue || rightValue;
+                default -> null;
+            };
+        }
+
+        return null;
     }
-    public boolean isOptimized(){
-        return this.optimized;
+
+    private static Object fold(String op, int left, int right) {
+        return switch (op) {
+            case "+" -> left + right;
+            case "-" -> left - right;
+            case "*" -> left * right;
+            case "/" -> right == 0 ? null : left / right;
+            case "<" -> left < right;
+            case "<=" -> left <= right;
+            case ">" -> left > right;
+            case ">=" -> left >= right;
+            default -> null;
+        };
     }
-    public void setRootNode(JmmNode rootNode){
-        this.rootNode = rootNode;
+
+    /**
+     * Folds the binary expressions where one operand is not constant, but the other one decides the result, as in
+     * x * 0 or x && false. The operand that is not constant must not have side effects, since it is removed.
+     *
+     * @return the result of the expression, or null if it is not constant
+     */
+    public static Object foldAnnihilator(JmmNode expr, Object left, Object right) {
+        if ((left == null) == (right == null)) {
+            return null;
+        }
+
+        var constant = left != null ? left : right;
+        var other = expr.getChild(left != null ? 1 : 0);
+
+        Object value = switch (expr.get("op")) {
+            case "*" -> Integer.valueOf(0).equals(constant) ? 0 : null;
+            case "&&" -> Boolean.FALSE.equals(constant) ? false : null;
+            case "||" -> Boolean.TRUE.equals(constant) ? true : null;
+            default -> null;
+        };
+
+        return value != null && isPure(other) ? value : null;
     }
-    public Void defaultVisitor(JmmNode node , Void unused){
-        for(JmmNode node1 : node.getChildren()){
-            visit(node1);
+
+    /**
+     * @return true if evaluating the expression cannot have side effects or throw
+     */
+    private static boolean isPure(JmmNode expr) {
+        var kind = Kind.of(expr);
+        if (kind == null) {
+            return false;
         }
-    return unused;
+
+        return switch (kind) {
+            case INTEGER_LITERAL, BOOLEAN_LITERAL, VAR_REF_EXPR, THIS_EXPR -> true;
+            case PAREN_EXPR, NOT_EXPR -> isPure(expr.getChild(0));
+            case BINARY_EXPR -> !expr.get("op").equals("/") && isPure(expr.getChild(0)) && isPure(expr.getChild(1));
+            default -> false;
+        };
     }
-    public Void dealWithBinnaryOp(JmmNode node , Void unused){
-        visit(node.getChildren().get(0));
-        visit(node.getChildren().get(1));
-        JmmNode left = node.getChildren().get(0);
-        JmmNode right = node.getChildren().get(1);
-        ArrayList<String> operators = new ArrayList<>(Arrays.asList("+","-","*","/"));
-        if(! operators.contains(node.get("op")) ){
-            return unused;
-        }
-        if(left.getKind().equals("IntegerLiteral") && right.getKind().equals("IntegerLiteral")){
-            int leftValue = Integer.parseInt(left.get("value"));
-            int rightValue = Integer.parseInt(right.get("value"));
-            int result = 0;
-            switch(node.get("op")){
-                case "+":
-                    result = leftValue + rightValue;
-                    break;
-                case "-":
-                    result = leftValue - rightValue;
-                    break;
-                case "*":
-                    result = leftValue * rightValue;
-                    break;
-                case "/":
-                    result = leftValue / rightValue;
-                    break;
+
+    /**
+     * Simplifies a binary or not expression whose value is not constant, after its constant operands were replaced by
+     * literals.
+     *
+     * @return true if the AST was changed
+     */
+    public static boolean simplify(JmmNode expr) {
+        if (NOT_EXPR.check(expr)) {
+            var operand = skipParens(expr.getChild(0));
+            if (!NOT_EXPR.check(operand)) {
+                return false;
             }
-            JmmNode prev = node.getParent();
-            int index = prev.removeChild(node);
-            JmmNodeImpl newNode = new JmmNodeImpl("IntegerLiteral");
-            newNode.put("value",Integer.toString(result));
-            prev.add(newNode,index);
-            this.optimized = true;
+
+            replaceByOperand(expr, operand.getChild(0));
+            return true;
         }
 
-        return unused;
+        if (!BINARY_EXPR.check(expr)) {
+            return false;
+        }
+
+        var op = expr.get("op");
+        var left = expr.getChild(0);
+        var right = expr.getChild(1);
+        var leftValue = getValue(left);
+        var rightValue = getValue(right);
+
+        if (rightValue != null && rightValue.equals(getIdentity(op, false))) {
+            replaceByOperand(expr, left);
+            return true;
+        }
+        if (leftValue != null && leftValue.equals(getIdentity(op, true))) {
+            replaceByOperand(expr, right);
+            return true;
+        }
+
+        return rightValue instanceof Integer constant && reassociate(expr, op, constant);
     }
-    public void run(){
-        visit(rootNode);
+
+    /**
+     * @param left if the identity is the left operand
+     * @return the value of the operand that makes the operator return the other one, or null if there is none
+     */
+    private static Object getIdentity(String op, boolean left) {
+        return switch (op) {
+            case "+" -> 0;
+            case "-" -> left ? null : 0;
+            case "*" -> 1;
+            case "/" -> left ? null : 1;
+            case "&&" -> true;
+            case "||" -> false;
+            default -> null;
+        };
     }
 
+    /**
+     * Combines the constant on the right of the expression with the one of its left operand, in (x + c1) - c2 or
+     * (c1 * x) * c2 for instance.
+     */
+    private static boolean reassociate(JmmNode expr, String op, int constant) {
+        var inner = skipParens(expr.getChild(0));
+        if (!BINARY_EXPR.check(inner)) {
+            return false;
+        }
+
+        var innerOp = inner.get("op");
+        var innerLeft = getValue(inner.getChild(0));
+        var innerRight = getValue(inner.getChild(1));
+
+        boolean additive = (op.equals("+") || op.equals("-")) && (innerOp.equals("+") || innerOp.equals("-"));
+        boolean multiplicative = op.equals("*") && innerOp.equals("*");
+        if (!additive && !multiplicative) {
+            return false;
+        }
+
+        JmmNode operand;
+        int combined;
+
+        if (innerRight instanceof Integer innerConstant) {
+            operand = inner.getChild(0);
+            combined = multiplicative ? innerConstant * constant : sign(innerOp) * innerConstant + sign(op) * constant;
+        } else if (innerLeft instanceof Integer innerConstant && !innerOp.equals("-")) {
+            operand = inner.getChild(1);
+            combined = multiplicative ? innerConstant * constant : innerConstant + sign(op) * constant;
+        } else {
+            return false;
+        }
+
+        if (combined == (multiplicative ? 1 : 0)) {
+            replaceByOperand(expr, operand);
+            return true;
+        }
+
+        // x + -3 is written as x - 3
+        boolean subtract = additive && combined < 0 && combined != Integer.MIN_VALUE;
+        expr.put("op", multiplicative ? "*" : subtract ? "-" : "+");
+        expr.getChild(1).replace(toLiteral(subtract ? -combined : combined));
+        expr.getChild(0).replace(operand.detach());
+
+        return true;
+    }
+
+    private static int sign(String additiveOp) {
+        return additiveOp.equals("-") ? -1 : 1;
+    }
+
+    private static JmmNode skipParens(JmmNode expr) {
+        while (PAREN_EXPR.check(expr)) {
+            expr = expr.getChild(0);
+        }
+
+        return expr;
+    }
+
+    private static void replaceByOperand(JmmNode expr, JmmNode operand) {
+        expr.replace(operand.detach());
+    }
+
+    /**
+     * @return the result of the unary operator, or null if it is not constant
+     */
+    public static Object fold(String op, Object operand) {
+        if (op.equals("!") && operand instanceof Boolean value) {
+            return !value;
+        }
+
+        return null;
+    }
 }
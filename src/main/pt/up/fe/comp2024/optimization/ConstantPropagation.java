@@ -1,202 +1,434 @@
 package pt.up.fe.comp2024.optimization;
 
-import pt.up.fe.comp.jmm.ast.AJmmVisitor;
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
 import pt.up.fe.comp.jmm.ast.JmmNode;
-import pt.up.fe.comp.jmm.ast.JmmNodeImpl;
+import pt.up.fe.comp2024.ast.CompactJmmNode;
+import pt.up.fe.comp2024.ast.Kind;
+import pt.up.fe.comp2024.ast.TypeUtils;
+import pt.up.fe.comp2024.symboltable.ResolvedSymbol.Scope;
 
-import java.util.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import static pt.up.fe.comp2024.ast.Kind.*;
 
-public class ConstantPropagation extends AJmmVisitor<Void,Void> {
-    private JmmNode rootNode;
-    private boolean optimized = false;
-    private boolean changeVariables = true;
-    HashMap<String,String> ConstantToValues = new HashMap<>(); //maps the variable name to its value
-    Set<String> DeclarationsToNotBeDeleted = new HashSet<>(); //maps the variable name to the declaration node
-    Set<JmmNode> AssignmentsToBeDeleted = new HashSet<>(); //maps the variable name to the assignment node
-    Map<String,JmmNode> LatestAssignments = new HashMap<>(); //maps the variable name to the latest assignment node
-    Map<String,JmmNode> NameToDeclarationNode = new HashMap<>(); // given the name of the variable, returns the declaration node
-
-    public void buildVisitor(){
-        addVisit(ASSIGN_STMT, this::visitWithAssign);
-        addVisit(VAR_DECL, this::visitWithVarDecl);
-        addVisit(VAR_REF_EXPR, this::visitVarRef);
-        addVisit(WHILE_CONDITION, this::visitWhileStmt);
-        addVisit(METHOD_DECL, this::visitMethod);
-        addVisit(IF_ELSE_STMT, this::visitIfElseStmt);
-        setDefaultVisit(this::defaultVisitor);
-    }
-    public void setOptimized(boolean optimized){
-        this.optimized = optimized;
-    }
-    public boolean isOptimized(){
-        return this.optimized;
-    }
-    public void setRootNode(JmmNode rootNode){
-        this.rootNode = rootNode;
-    }
-
-    public Void defaultVisitor(JmmNode node , Void unused){
-        for(JmmNode node1 : node.getChildren()){
-            visit(node1);
-        }
-        return unused;
-    }
-    public Void visitMethod(JmmNode node , Void unused){
-        this.ConstantToValues.clear();
-        this.DeclarationsToNotBeDeleted.clear();
-        this.AssignmentsToBeDeleted.clear();
-        this.LatestAssignments.clear();
-        this.NameToDeclarationNode.clear();
-        for(JmmNode node1 : node.getChildren()){
-            visit(node1);
-        }
-        for(JmmNode n : this.AssignmentsToBeDeleted){
-            n.getParent().removeChild(n);
-        }
-        for(JmmNode n : this.NameToDeclarationNode.values()){
-            if(! this.DeclarationsToNotBeDeleted.contains(n.get("name"))){
-                n.getParent().removeChild(n);
-            }
-        }
-        return unused;
-    }
-    public Void visitWithVarDecl(JmmNode node , Void unused){
-        String var = node.get("name");
-        this.NameToDeclarationNode.put(var,node);
-        return unused;
-    }
-    public Void visitWhileStmt(JmmNode node , Void unused){
-        var condition = node.getChildren().get(0).getChildren().get(0);
-        var body = node.getChildren().get(0).getChildren().get(1);
-        if(! this.changeVariables){
-            visit(body); // if we visit the code only once to get the view of the variables before the while
-            return unused;
-        }
-        HashMap<String,String> constantToValuesTmp  = new HashMap<>();
-        constantToValuesTmp.putAll(this.ConstantToValues);
-        this.changeVariables = false;
-        visit(body);
-        this.changeVariables = true;
-        for(Map.Entry<String,String> entry : constantToValuesTmp.entrySet()){
-            String VarName = entry.getKey();
-            String value = entry.getValue();
-            boolean removeCondition =
-                    this.ConstantToValues.containsKey(VarName) && ! this.ConstantToValues.get(VarName).equals(value)
-                            || ! this.ConstantToValues.containsKey(VarName);
-            if(removeCondition){
-                // se o valor da variavel mudou durante o while nos não podemos garantir que o valor da variavel é constante durante o while
-                this.AssignmentsToBeDeleted.remove(this.LatestAssignments.get(VarName));//garantir que não apagamos a ultima atribuição da variavel porque vamos precisar dela
-                this.ConstantToValues.remove(entry.getKey());
-            }
-        }
-        //depois de termos a certeza que o valor da variavel é constante durante o while, podemos propagar o valor da variavel
-        visit(condition);
-        visit(body);
-        return unused;
-    }
-    public Void visitVarRef(JmmNode node , Void unused){
-        String var = node.get("name");
-        var parent = node.getParent();// TODO EXPAND THIS FOR LOOP conditions
-        if(this.ConstantToValues.containsKey(var) && this.changeVariables){
-            String valueType = NameToDeclarationNode.get(var).getChild(0).get("name");
-            if(valueType.equals("int") ){//TODO expand this for other types
-                JmmNode newNode = new JmmNodeImpl("IntegerLiteral");
-                newNode.put("value",this.ConstantToValues.get(var));
-                int childIndex = parent.removeChild(node);
-                parent.add(newNode,childIndex);
-                this.optimized = true;
-            }
-            if(valueType.equals("boolean")){//TODO expand this for other types
-                JmmNode newNode = new JmmNodeImpl("BooleanLiteral");
-                newNode.put("value",this.ConstantToValues.get(var));
-                int childIndex = parent.removeChild(node);
-                parent.add(newNode,childIndex);
-                this.optimized = true;
-            }
-        }
-        return unused;
-    }
-    public Void visitIfElseStmt(JmmNode node ,Void unused){
-        var condition = node.getChildren().get(0).getChildren().get(0);
-        var ifBody = node.getChildren().get(0).getChildren().get(1);
-        var elseBody = node.getChildren().get(0).getChildren().get(2);
-        if(! this.changeVariables){
-            visit(ifBody);
-            visit(elseBody);
-            return unused;
-        }
-        visit(condition);
-        HashMap<String,String> constantToValuesTmp  = new HashMap<>();//constant values before the if statement
-        constantToValuesTmp.putAll(this.ConstantToValues);
-        HashMap<String,JmmNode> latestAssigmentsTmp  = new HashMap<>();//constant values before the if statement
-        latestAssigmentsTmp.putAll(this.LatestAssignments);
-        visit(ifBody);
-        HashMap<String,String> constantToValuesTmpThen  = new HashMap<>();
-        constantToValuesTmpThen.putAll(this.ConstantToValues);
-        HashMap<String,JmmNode> latestAssigmentsThen  = new HashMap<>();//constant values before the if statement
-        latestAssigmentsThen.putAll(this.LatestAssignments);
-        this.LatestAssignments.clear();
-        this.LatestAssignments.putAll(latestAssigmentsTmp);
-        this.ConstantToValues.clear();
-        this.ConstantToValues.putAll(constantToValuesTmp);
-        visit(elseBody);
-        // the constant values that are being iterated are the ones from the else statement
-        for(Map.Entry<String,String> entry : constantToValuesTmp.entrySet()){
-            String VarName = entry.getKey();
-            String value = entry.getValue();
-            boolean removeCondition = // case where the value changes in the else statement
-                    this.ConstantToValues.containsKey(VarName) && ! this.ConstantToValues.get(VarName).equals(value)
-                            // case where the value changes in the then statement
-                    || (constantToValuesTmpThen.containsKey(VarName) && ! constantToValuesTmpThen.get(VarName).equals(value) )
-                    // case where the value is not constant in the else statement
-                    || ! this.ConstantToValues.containsKey(VarName)
-                    // case where the value is not constant in the then statement
-                    ||  !constantToValuesTmpThen.containsKey(VarName);
-            if(removeCondition){
-                // se o valor da variavel mudou durante o while nos não podemos garantir que o valor da variavel é constante durante o while
-                this.AssignmentsToBeDeleted.remove(this.LatestAssignments.get(VarName));//garantir que não apagamos a ultima atribuição da variavel porque vamos precisar dela
-                this.ConstantToValues.remove(entry.getKey());
-            }
-            constantToValuesTmpThen.remove(entry.getKey());
-            this.ConstantToValues.remove(entry.getKey());
-        }
-        for(Map.Entry<String,String> entry : constantToValuesTmpThen.entrySet()){
-            this.AssignmentsToBeDeleted.remove(latestAssigmentsThen.get(entry.getKey()));
-        }
-        for(Map.Entry<String,String> entry : this.ConstantToValues.entrySet()){
-            this.AssignmentsToBeDeleted.remove(this.LatestAssignments.get(entry.getKey()));
-        }
-        this.LatestAssignments.clear();
-        this.LatestAssignments.putAll(latestAssigmentsTmp);
-        this.ConstantToValues.clear();
-        this.ConstantToValues.putAll(constantToValuesTmp);
-        return unused;
-    }
-    public Void visitWithAssign(JmmNode node , Void unused){
-        JmmNode lhs = node.getChildren().get(0);
-        JmmNode rhs = node.getChildren().get(1);
-        visit(rhs);
-        if(lhs.getKind().equals("VarRefExpr") && rhs.getKind().equals("IntegerLiteral") && node.getChildren().size() == 2){
-            //this.DeclarationsToBeDeleted.add(lhs.get("name"));
-            this.ConstantToValues.put(lhs.get("name"),rhs.get("value"));
-            this.AssignmentsToBeDeleted.add(node);
-            //TODO continue this
-            //this.optimized = true;
-        }else{
-            this.ConstantToValues.remove(lhs.get("name"));
-            this.DeclarationsToNotBeDeleted.add(lhs.get("name"));
-        }
-        if(lhs.getKind().equals("VarRefExpr") ){
-            this.LatestAssignments.put(lhs.get("name"),node);
-        }else{
-            visit(lhs);
-        }
-
-        return unused;
-    }
-    public void run(){
-        visit(rootNode);
+/**
+ * Sparse conditional constant propagation over the AST of each method.
+ * <p>
+ * The statements of a method are split in basic blocks, and the value of each local variable and parameter at the start
+ * of each block is found with a worklist. A block is only visited again when the values at its start change, and the
+ * branches of a condition are only followed once the condition can take their value. Values only go from constant to
+ * not constant, so each block is visited a bounded number of times, and the result does not need to be iterated.
+ * <p>
+ * Then, in the blocks that can run, reads of constant variables and expressions with a constant value are replaced by
+ * literals, the expressions that are not constant are simplified with {@link ConstantFold#simplify}, and assignments of
+ * variables to themselves, or of literals to variables that are no longer read, are removed. The branches that the
+ * constant conditions rule out are removed by {@link DeadBranchElimination} before looking for unread variables.
+ */
+public class ConstantPropagation {
+
+    private final SymbolTable table;
+    private boolean optimized;
+
+    // Index of each variable of the current method in the values of a block
+    private final Map<String, Integer> variables = new HashMap<>();
+
+    public ConstantPropagation(SymbolTable table) {
+        this.table = table;
+    }
+
+    /**
+     * @return true if the AST was changed
+     */
+    public boolean run(JmmNode root) {
+        optimized = false;
+
+        for (var classDecl : root.getChildren(CLASS_DECL)) {
+            for (var method : classDecl.getChildren()) {
+                if (METHOD_DECL.check(method) || MAIN_METHOD_DECL.check(method)) {
+                    optimizeMethod(method);
+                }
+            }
+        }
+
+        return optimized;
+    }
+
+    private void optimizeMethod(JmmNode method) {
+        variables.clear();
+
+        for (var varRef : method.getDescendants(VAR_REF_EXPR)) {
+            getVariable(varRef);
+        }
+
+        var blocks = new ArrayList<Block>();
+        var entry = new Block(blocks);
+        addStatements(method.getChildren(), entry, blocks);
+
+        solve(entry);
+
+        for (var block : blocks) {
+            if (block.in != null) {
+                rewrite(block);
+            }
+        }
+
+        // The values found already ignore the branches that cannot run, so they stay valid once these are removed
+        if (new DeadBranchElimination().run(method)) {
+            optimized = true;
+        }
+
+        removeUnreadAssignments(method);
+    }
+
+    // Blocks
+
+    /**
+     * Statements that run one after the other, ending in an optional branch.
+     */
+    private static class Block {
+        private final List<JmmNode> statements = new ArrayList<>();
+
+        // Branches on the condition if there is one, otherwise continues to the next block
+        private JmmNode condition;
+        private Block next;
+        private Block otherwise;
+
+        // Values of the variables at the start, null while the block cannot run
+        private Object[] in;
+        private boolean queued;
+
+        private Block(List<Block> blocks) {
+            blocks.add(this);
+        }
+    }
+
+    /**
+     * Adds the statements to the current block, creating blocks for the control flow.
+     *
+     * @return the block where the flow continues after the statements
+     */
+    private Block addStatements(List<JmmNode> statements, Block current, List<Block> blocks) {
+        for (var statement : statements) {
+            current = addStatement(statement, current, blocks);
+        }
+
+        return current;
+    }
+
+    private Block addStatement(JmmNode statement, Block current, List<Block> blocks) {
+        var kind = Kind.of(statement);
+        if (kind == null) {
+            return current;
+        }
+
+        switch (kind) {
+            case ASSIGN_STMT, EXPR_STMT -> current.statements.add(statement);
+            case RETURN_STMT -> {
+                current.statements.add(statement);
+
+                // Statements after a return cannot run
+                return new Block(blocks);
+            }
+            case BLOCK_STMT -> {
+                return addStatements(statement.getChildren(), current, blocks);
+            }
+            case IF_ELSE_STMT -> {
+                var ifStmt = statement.getChild(0);
+                var thenBlock = new Block(blocks);
+                var elseBlock = new Block(blocks);
+                current.condition = ifStmt.getChild(0);
+                current.next = thenBlock;
+                current.otherwise = elseBlock;
+
+                var join = new Block(blocks);
+                addStatement(ifStmt.getChild(1), thenBlock, blocks).next = join;
+                addStatement(ifStmt.getChild(2), elseBlock, blocks).next = join;
+
+                return join;
+            }
+            case WHILE_CONDITION -> {
+                var whileStmt = statement.getChild(0);
+                var header = new Block(blocks);
+                var body = new Block(blocks);
+                var exit = new Block(blocks);
+                current.next = header;
+                header.condition = whileStmt.getChild(0);
+                header.next = body;
+                header.otherwise = exit;
+
+                addStatement(whileStmt.getChild(1), body, blocks).next = header;
+
+                return exit;
+            }
+            default -> {
+                // Declarations and the signature of the method
+            }
+        }
+
+        return current;
+    }
+
+    // Propagation
+
+    private void solve(Block entry) {
+        // Parameters and locals are not constant when the method starts
+        entry.in = new Object[variables.size()];
+
+        var worklist = new ArrayDeque<Block>();
+        enqueue(entry, worklist);
+
+        while (!worklist.isEmpty()) {
+            var block = worklist.poll();
+            block.queued = false;
+            var out = block.in.clone();
+
+            for (var statement : block.statements) {
+                transfer(statement, out);
+            }
+
+            if (block.condition == null) {
+                propagate(block.next, out, worklist);
+                continue;
+            }
+
+            var condition = evaluate(block.condition, out, false);
+            if (!Boolean.FALSE.equals(condition)) {
+                propagate(block.next, out, worklist);
+            }
+            if (!Boolean.TRUE.equals(condition)) {
+                propagate(block.otherwise, out, worklist);
+            }
+        }
+    }
+
+    private void propagate(Block successor, Object[] values, ArrayDeque<Block> worklist) {
+        if (successor == null) {
+            return;
+        }
+
+        if (successor.in == null) {
+            successor.in = values.clone();
+            enqueue(successor, worklist);
+            return;
+        }
+
+        if (meet(successor.in, values)) {
+            enqueue(successor, worklist);
+        }
+    }
+
+    private static void enqueue(Block block, ArrayDeque<Block> worklist) {
+        if (!block.queued) {
+            block.queued = true;
+            worklist.add(block);
+        }
+    }
+
+    /**
+     * Keeps the values that are the same in the given values.
+     *
+     * @return true if a value changed
+     */
+    private static boolean meet(Object[] in, Object[] values) {
+        boolean changed = false;
+
+        for (int i = 0; i < in.length; i++) {
+            if (in[i] != null && !in[i].equals(values[i])) {
+                in[i] = null;
+                changed = true;
+            }
+        }
+
+        return changed;
+    }
+
+    private void transfer(JmmNode statement, Object[] values) {
+        if (!ASSIGN_STMT.check(statement)) {
+            return;
+        }
+
+        int index = getVariable(statement.getChild(0));
+        if (index >= 0) {
+            values[index] = evaluate(statement.getChild(1), values, false);
+        }
+    }
+
+    /**
+     * @return the index of the local variable or parameter the expression reads, or -1 if it is not one
+     */
+    private int getVariable(JmmNode expr) {
+        if (!VAR_REF_EXPR.check(expr)) {
+            return -1;
+        }
+
+        var scope = TypeUtils.resolveVariable(expr, table).map(symbol -> symbol.getScope()).orElse(null);
+        if (scope != Scope.LOCAL && scope != Scope.PARAM) {
+            return -1;
+        }
+
+        return variables.computeIfAbsent(expr.get("name"), name -> variables.size());
+    }
+
+    /**
+     * Evaluates the expression with the given values of the variables. When rewriting, the operands that have a
+     * constant value are replaced by literals, but not the expression itself.
+     *
+     * @return the value of the expression, or null if it is not constant
+     */
+    private Object evaluate(JmmNode expr, Object[] values, boolean rewrite) {
+        var kind = Kind.of(expr);
+
+        if (kind == INTEGER_LITERAL || kind == BOOLEAN_LITERAL) {
+            return ConstantFold.getValue(expr);
+        }
+
+        if (kind == VAR_REF_EXPR) {
+            int index = getVariable(expr);
+            return index >= 0 ? values[index] : null;
+        }
+
+        var operands = new Object[expr.getNumChildren()];
+        for (int i = 0; i < operands.length; i++) {
+            operands[i] = evaluate(expr.getChild(i), values, rewrite);
+        }
+
+        Object value = null;
+        if (kind == PAREN_EXPR) {
+            value = operands[0];
+        } else if (kind == BINARY_EXPR) {
+            value = ConstantFold.fold(expr.get("op"), operands[0], operands[1]);
+            if (value == null) {
+                value = ConstantFold.foldAnnihilator(expr, operands[0], operands[1]);
+            }
+        } else if (kind == NOT_EXPR) {
+            value = ConstantFold.fold("!", operands[0]);
+        }
+
+        if (rewrite && value == null) {
+            for (int i = 0; i < operands.length; i++) {
+                if (operands[i] != null) {
+                    replaceByLiteral(expr.getChild(i), operands[i]);
+                }
+            }
+
+            if (ConstantFold.simplify(expr)) {
+                optimized = true;
+            }
+        }
+
+        return value;
+    }
+
+    // Rewriting
+
+    private void rewrite(Block block) {
+        var values = block.in.clone();
+
+        for (var statement : block.statements) {
+            var kind = Kind.of(statement);
+
+            if (kind == ASSIGN_STMT) {
+                var target = statement.getChild(0);
+                var value = rewriteExpr(statement.getChild(1), values);
+
+                int index = getVariable(target);
+                if (index >= 0) {
+                    values[index] = value;
+                } else {
+                    // Only the operands of an array access or field
+                    evaluate(target, values, true);
+                }
+            } else if (kind == RETURN_STMT) {
+                rewriteExpr(statement.getChild(0), values);
+            } else if (kind == EXPR_STMT) {
+                // The statement is kept for its side effects, even if its value is constant
+                evaluate(statement.getChild(0), values, true);
+            }
+        }
+
+        if (block.condition != null) {
+            rewriteExpr(block.condition, values);
+        }
+    }
+
+    /**
+     * Replaces the expression by a literal if its value is constant, otherwise its constant operands.
+     *
+     * @return the value of the expression, or null if it is not constant
+     */
+    private Object rewriteExpr(JmmNode expr, Object[] values) {
+        var value = evaluate(expr, values, true);
+
+        if (value != null) {
+            replaceByLiteral(expr, value);
+        }
+
+        return value;
+    }
+
+    private void replaceByLiteral(JmmNode expr, Object value) {
+        if (value.equals(ConstantFold.getValue(expr))) {
+            return;
+        }
+
+        expr.replace(ConstantFold.toLiteral(value));
+        optimized = true;
+    }
+
+    private void removeUnreadAssignments(JmmNode method) {
+        var reads = new int[variables.size()];
+        var assignments = new ArrayList<JmmNode>();
+
+        for (var varRef : method.getDescendants(VAR_REF_EXPR)) {
+            var parent = varRef.getParent();
+            if (ASSIGN_STMT.check(parent) && parent.getChild(0) == varRef) {
+                assignments.add(parent);
+                continue;
+            }
+
+            int index = getVariable(varRef);
+            if (index >= 0) {
+                reads[index]++;
+            }
+        }
+
+        // Simplifying can leave assignments such as x = x + 0 as x = x, which do not count as reads
+        for (var iterator = assignments.iterator(); iterator.hasNext(); ) {
+            var assignment = iterator.next();
+            int index = getVariable(assignment.getChild(0));
+
+            if (index >= 0 && getVariable(assignment.getChild(1)) == index) {
+                reads[index]--;
+                removeStatement(assignment);
+                iterator.remove();
+                optimized = true;
+            }
+        }
+
+        for (var assignment : assignments) {
+            int index = getVariable(assignment.getChild(0));
+
+            if (index >= 0 && reads[index] == 0 && ConstantFold.getValue(assignment.getChild(1)) != null) {
+                removeStatement(assignment);
+                optimized = true;
+            }
+        }
+    }
+
+    /**
+     * Removes the statement, leaving an empty block if it is the body of an if or while, which must keep its children.
+     */
+    static void removeStatement(JmmNode statement) {
+        var parent = statement.getParent();
+
+        if (IF_STMT.check(parent) || WHILE_STMT.check(parent)) {
+            statement.replace(new CompactJmmNode(BLOCK_STMT));
+        } else {
+            statement.detach();
+        }
     }
 }
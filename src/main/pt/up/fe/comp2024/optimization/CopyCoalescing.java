@@ -0,0 +1,189 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.*;
+
+import java.util.*;
+
+/**
+ * Removes the copies between variables, such as the ones from the temporaries the OLLIR generator creates for each
+ * expression to the variables they are assigned to, by merging the two variables of each copy into one.
+ * <p>
+ * The variables of a copy d := s can be merged when their values never need to be kept apart, that is, when neither is
+ * assigned while the other is live, except by the copy itself. Then every use of one is renamed to the other, and the
+ * copy, which becomes x := x, is removed, as are the other copies of a variable to itself. This also propagates the
+ * copy to every later use, and chains of copies are merged one copy at a time. Parameters and variables of different
+ * types are never renamed. The labels of the copies removed move to the instruction after them.
+ */
+public class CopyCoalescing {
+
+    private final Method method;
+    private int removed;
+
+    // Liveness, updated as variables are merged
+    private Map<Instruction, Set<String>> in;
+    private Map<Instruction, Set<String>> out;
+
+    public CopyCoalescing(Method method) {
+        this.method = method;
+    }
+
+    public void run() {
+        removed = 0;
+
+        var dataFlow = new DataFlowAnalysis(method);
+        dataFlow.run();
+        in = dataFlow.getIn();
+        out = dataFlow.getOut();
+
+        Set<Instruction> copies = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (var instruction : method.getInstructions()) {
+            if (coalesce(instruction, copies)) {
+                copies.add(instruction);
+            }
+        }
+
+        // Merging can also turn copies that were kept into x := x
+        removed = OptUtils.removeInstructions(method,
+                instruction -> copies.contains(instruction) || isSelfCopy(instruction));
+
+        if (removed == 0) {
+            return;
+        }
+
+        OptUtils.rebuildCFG(method);
+        OptUtils.rebuildVarTable(method);
+    }
+
+    /**
+     * @return the number of copies removed
+     */
+    public int getRemoved() {
+        return removed;
+    }
+
+    /**
+     * Merges the variables of the instruction if it is a copy between variables that can be merged.
+     *
+     * @param copies the copies already merged, which are going to be removed
+     * @return true if the variables were merged
+     */
+    private boolean coalesce(Instruction instruction, Set<Instruction> copies) {
+        if (!(instruction instanceof AssignInstruction assign)
+                || !(assign.getRhs() instanceof SingleOpInstruction rhs)) {
+            return false;
+        }
+
+        var varTable = method.getVarTable();
+        var dest = assign.getDest();
+        var source = rhs.getSingleOperand();
+        if (dest instanceof ArrayOperand || source instanceof ArrayOperand
+                || !DataFlowAnalysis.isVariable(dest, varTable) || !DataFlowAnalysis.isVariable(source, varTable)
+                || !dest.getType().toString().equals(source.getType().toString())) {
+            return false;
+        }
+
+        var destName = ((Operand) dest).getName();
+        var sourceName = ((Operand) source).getName();
+        if (destName.equals(sourceName)) {
+            return false;
+        }
+
+        // The parameter keeps its name, since it is set by the caller
+        boolean destIsParam = varTable.get(destName).getScope() == VarScope.PARAMETER;
+        boolean sourceIsParam = varTable.get(sourceName).getScope() == VarScope.PARAMETER;
+        if (destIsParam && sourceIsParam) {
+            return false;
+        }
+
+        // Otherwise the variable assigned is kept, unless it is a temporary, so that the OLLIR stays readable
+        boolean keepSource = sourceIsParam
+                || (!destIsParam && destName.startsWith(CompilationContext.TEMP_PREFIX)
+                && !sourceName.startsWith(CompilationContext.TEMP_PREFIX));
+        var kept = keepSource ? sourceName : destName;
+        var renamed = keepSource ? destName : sourceName;
+
+        if (interfere(instruction, kept, renamed, copies)) {
+            return false;
+        }
+
+        rename(renamed, kept);
+        return true;
+    }
+
+    /**
+     * @return true if one of the variables is assigned while the other is live, by an instruction other than the copy
+     */
+    private boolean interfere(Instruction copy, String first, String second, Set<Instruction> copies) {
+        // Parameters are assigned when the method starts
+        var instructions = method.getInstructions();
+        if (!instructions.isEmpty()) {
+            var entry = in.get(instructions.get(0));
+            var varTable = method.getVarTable();
+            if ((varTable.get(first).getScope() == VarScope.PARAMETER && entry.contains(second))
+                    || (varTable.get(second).getScope() == VarScope.PARAMETER && entry.contains(first))) {
+                return true;
+            }
+        }
+
+        for (var instruction : instructions) {
+            if (instruction == copy || copies.contains(instruction)) {
+                continue;
+            }
+
+            var defined = getDefined(instruction);
+            if (defined == null) {
+                continue;
+            }
+
+            var liveOut = out.get(instruction);
+            if ((defined.equals(first) && liveOut.contains(second))
+                    || (defined.equals(second) && liveOut.contains(first))) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean isSelfCopy(Instruction instruction) {
+        return instruction instanceof AssignInstruction assign && !(assign.getDest() instanceof ArrayOperand)
+                && assign.getDest() instanceof Operand dest && assign.getRhs() instanceof SingleOpInstruction rhs
+                && rhs.getSingleOperand() instanceof Operand source && !(source instanceof ArrayOperand)
+                && dest.getName().equals(source.getName());
+    }
+
+    /**
+     * @return the variable the instruction assigns, or null if it does not assign one
+     */
+    private static String getDefined(Instruction instruction) {
+        if (instruction instanceof AssignInstruction assign && !(assign.getDest() instanceof ArrayOperand)
+                && assign.getDest() instanceof Operand dest) {
+            return dest.getName();
+        }
+
+        return null;
+    }
+
+    /**
+     * Renames the variable in every instruction, and in the liveness, where its live range joins the one of the kept
+     * variable.
+     */
+    private void rename(String renamed, String kept) {
+        for (var instruction : method.getInstructions()) {
+            for (var operand : OptUtils.getOperands(instruction)) {
+                if (operand.getName().equals(renamed)) {
+                    operand.setName(kept);
+                }
+            }
+
+            renameLive(in.get(instruction), renamed, kept);
+            renameLive(out.get(instruction), renamed, kept);
+        }
+    }
+
+    private static void renameLive(Set<String> live, String renamed, String kept) {
+        if (live.remove(renamed)) {
+            live.add(kept);
+        }
+    }
+}
@@ -4,6 +4,13 @@ import org.specs.comp.ollir.*;
 
 import java.util.*;
 
+/**
+ * Liveness of the local variables and parameters of a method, before and after each instruction, using its CFG.
+ * <p>
+ * Every instruction starts in the worklist, so that instructions that never reach the end of the method, such as the
+ * ones of an infinite loop, are also analysed. After that, an instruction is only visited again when the variables live
+ * before one of its successors change.
+ */
 public class DataFlowAnalysis {
 
     private Method method;
@@ -30,75 +37,68 @@ public class DataFlowAnalysis {
             out.put(instruction, new HashSet<>());
         }
 
-        boolean stable = false;
-
-        while (!stable) {
-            stable = true;
-            Stack<Instruction> stack = new Stack<>();
-            for (Node pred : method.getEndNode().getPredecessors()) {
-                stack.push((Instruction) pred);
-            }
-
-            boolean isVisited[] = new boolean[instructions.size() + 1];
-            Arrays.fill(isVisited, false);
-
-            while (!stack.isEmpty()) {
-                Instruction instruction = stack.pop();
-                isVisited[instruction.getId()] = true;
-
-                for (Node predecessor : instruction.getPredecessors()) {
-                    if (!isVisited[predecessor.getId()] && !stack.contains(predecessor) && predecessor.getId() != 0) {
-                        stack.push((Instruction) predecessor);
-                    }
-                }
-
-                if (instruction.getId() == 0) { // If END node or BEGIN node
-                    continue;
-                }
+        // Liveness flows backwards, so starting from the end reaches the fixpoint sooner
+        Deque<Instruction> worklist = new ArrayDeque<>();
+        Set<Instruction> queued = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = instructions.size() - 1; i >= 0; i--) {
+            worklist.add(instructions.get(i));
+            queued.add(instructions.get(i));
+        }
 
-                Set<String> inSet = new HashSet<>();
-                Set<String> outSet = new HashSet<>(out.get(instruction));
+        while (!worklist.isEmpty()) {
+            Instruction instruction = worklist.poll();
+            queued.remove(instruction);
 
-                // OUT(B) = ∪ IN(s)
-                for (Node successor : instruction.getSuccessors()) {
-                    if (successor.getId() != 0) { // If not BEGIN or END node
-                        Set<String> tmpOutSet = new HashSet<>(in.get((Instruction) successor));
-                        outSet.addAll(tmpOutSet);
-                    }
+            // OUT(B) = ∪ IN(s)
+            Set<String> outSet = new HashSet<>();
+            for (Node successor : instruction.getSuccessors()) {
+                if (successor.getNodeType() == NodeType.INSTRUCTION) {
+                    outSet.addAll(in.get((Instruction) successor));
                 }
+            }
 
-                // IN(B) = Use(B) ∪ (OUT(B) - Def(B))
-                Set<String> useSet = new HashSet<>(use.get(instruction));
-                Set<String> defSet = new HashSet<>(def.get(instruction));
+            // IN(B) = Use(B) ∪ (OUT(B) - Def(B))
+            Set<String> inSet = new HashSet<>(outSet);
+            inSet.removeAll(def.get(instruction));
+            inSet.addAll(use.get(instruction));
 
-                inSet.addAll(outSet);
-                inSet.removeAll(defSet);
-                inSet.addAll(useSet);
+            out.put(instruction, outSet);
+            if (inSet.equals(in.get(instruction))) {
+                continue;
+            }
 
-                if (!in.get(instruction).equals(inSet) || !out.get(instruction).equals(outSet)) {
-                    stable = false;
+            in.put(instruction, inSet);
+            for (Node predecessor : instruction.getPredecessors()) {
+                if (predecessor.getNodeType() == NodeType.INSTRUCTION && queued.add((Instruction) predecessor)) {
+                    worklist.add((Instruction) predecessor);
                 }
-
-                in.put(instruction, inSet);
-                out.put(instruction, outSet);
             }
         }
     }
 
+    /**
+     * @return true if the operand is a local variable or parameter, and not a field, a class or 'this'
+     */
+    public static boolean isVariable(Element element, Map<String, Descriptor> varTable) {
+        if (!(element instanceof Operand operand) || operand.getName().equals("this")) {
+            return false;
+        }
+
+        var descriptor = varTable.get(operand.getName());
+        return descriptor != null && descriptor.getScope() != VarScope.FIELD;
+    }
 
     private Set<String> computeDef(Instruction instruction, Map<String, Descriptor> varTable) {
         Set<String> def = new HashSet<>();
 
-        if (instruction.getInstType() == instruction.getInstType().ASSIGN) {
+        if (instruction.getInstType() == InstructionType.ASSIGN) {
             AssignInstruction assignInstruction = (AssignInstruction) instruction;
             Element dest = assignInstruction.getDest();
-            //Type type = dest.getType();
 
-            if (dest.isLiteral()) {
-                return null;
+            // Storing in an element of an array uses the array, and does not define it
+            if (!(dest instanceof ArrayOperand) && isVariable(dest, varTable)) {
+                def.add(((Operand) dest).getName());
             }
-
-            def.add(((Operand) dest).getName());
         }
 
         return def;
@@ -108,75 +108,57 @@ public class DataFlowAnalysis {
         Set<String> use = new HashSet<>();
         switch (instruction.getInstType()) {
             case ASSIGN:
-                use.addAll(assignUses((AssignInstruction) instruction));
+                AssignInstruction assignInstruction = (AssignInstruction) instruction;
+                use.addAll(computeUse(assignInstruction.getRhs()));
+                if (assignInstruction.getDest() instanceof ArrayOperand) {
+                    addUses(assignInstruction.getDest(), use);
+                }
                 break;
             case CALL:
-                use.addAll(callUses((CallInstruction) instruction));
+                ((CallInstruction) instruction).getOperands().forEach(operand -> addUses(operand, use));
                 break;
             case BINARYOPER:
-                use.addAll(binaryOperUses((BinaryOpInstruction) instruction));
+            case UNARYOPER:
+                ((OpInstruction) instruction).getOperands().forEach(operand -> addUses(operand, use));
                 break;
             case BRANCH:
-                use.addAll(branchOpUses((SingleOpCondInstruction) instruction));
+                ((CondBranchInstruction) instruction).getOperands().forEach(operand -> addUses(operand, use));
                 break;
             case RETURN:
-                use.addAll(returnUses((ReturnInstruction) instruction));
+                ReturnInstruction returnInstruction = (ReturnInstruction) instruction;
+                if (returnInstruction.hasReturnValue()) {
+                    addUses(returnInstruction.getOperand(), use);
+                }
                 break;
-                /*
             case PUTFIELD:
-                use.addAll(getFieldUses( instruction));
+                addUses(((PutFieldInstruction) instruction).getObject(), use);
+                addUses(((PutFieldInstruction) instruction).getValue(), use);
                 break;
             case GETFIELD:
-                use.addAll(getFieldUses( instruction));
-                break;*/
-            case UNARYOPER:
-                use.addAll(noperUses((SingleOpInstruction) instruction));
+                addUses(((GetFieldInstruction) instruction).getObject(), use);
                 break;
             case NOPER:
-                use.addAll(noperUses((SingleOpInstruction) instruction));
+                addUses(((SingleOpInstruction) instruction).getSingleOperand(), use);
+                break;
+            default:
                 break;
-
         }
         return use;
     }
-    private Set<String> assignUses(AssignInstruction assignInstruction) {
-        return computeUse(assignInstruction.getRhs());
-    }
-    private Set<String> callUses(CallInstruction callInstruction) {
-        Set<String> use = new HashSet<>();
-        for (Element arg : callInstruction.getArguments()) {
-            if(arg instanceof Operand)
-                use.add(((Operand) arg).getName());
+
+    /**
+     * Adds the variables read by the operand, which for an element of an array are the array and its index.
+     */
+    private void addUses(Element element, Set<String> use) {
+        if (isVariable(element, method.getVarTable())) {
+            use.add(((Operand) element).getName());
         }
-        return use;
-    }
-    private Set<String> binaryOperUses(BinaryOpInstruction binaryOperInstruction) {
-        Set<String> use = new HashSet<>();
 
-        if(binaryOperInstruction.getLeftOperand() instanceof Operand)
-            use.add(((Operand) binaryOperInstruction.getLeftOperand()).getName());
-        if(binaryOperInstruction.getRightOperand() instanceof Operand)
-            use.add(((Operand) binaryOperInstruction.getRightOperand()).getName());
-        return use;
-    }
-    private Set<String> branchOpUses(SingleOpCondInstruction Branch) {
-        return computeUse(Branch.getCondition());
-    }
-    private Set<String> returnUses(ReturnInstruction returnInstruction) {
-        Set<String> use = new HashSet<>();
-        if(returnInstruction.getOperand() instanceof Operand)
-            use.add(((Operand) returnInstruction.getOperand()).getName());
-        return use;
-    }
-    private Set<String> noperUses(SingleOpInstruction instruction) {
-        if(instruction.getSingleOperand() instanceof Operand)
-            return Set.of(((Operand) instruction.getSingleOperand()).getName());
-        return new HashSet<>();
-    }
-    private Set<String> getFieldUses(Instruction instruction) {
-        /*if(instruction.getSingleOperand() instanceof Operand)
-            return Set.of((Operand) instruction.getSingleOperand());*/
-        return new HashSet<>();
+        if (element instanceof ArrayOperand arrayOperand) {
+            for (Element index : arrayOperand.getIndexOperands()) {
+                addUses(index, use);
+            }
+        }
     }
 
     public Map<Instruction, Set<String>> getIn() {
@@ -187,4 +169,3 @@ public class DataFlowAnalysis {
         return out;
     }
 }
-
@@ -0,0 +1,112 @@
+package pt.up.fe.comp2024.optimization;
+
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp2024.ast.CompactJmmNode;
+import pt.up.fe.comp2024.ast.Kind;
+
+import java.util.List;
+
+import static pt.up.fe.comp2024.ast.Kind.*;
+
+/**
+ * Removes the code of a method that can never run, once {@link ConstantPropagation} replaced constant conditions by
+ * literals: an if with a literal condition is replaced by the statements of the arm that runs, a while whose condition
+ * is false is removed, and so are the statements after a return.
+ * <p>
+ * The statements of the arm that runs take the place of the if in the enclosing list, instead of being kept in a block,
+ * since the OLLIR generator only generates the statements directly inside a method, if or while.
+ */
+public class DeadBranchElimination {
+
+    private boolean changed;
+
+    /**
+     * @return true if the AST was changed
+     */
+    public boolean run(JmmNode method) {
+        changed = false;
+        pruneStatements(method);
+
+        return changed;
+    }
+
+    /**
+     * Prunes the statements directly inside the node, which is a method or a block.
+     */
+    private void pruneStatements(JmmNode parent) {
+        for (int i = 0; i < parent.getNumChildren(); i++) {
+            var statement = parent.getChild(i);
+            var kind = Kind.of(statement);
+            if (kind == null) {
+                continue;
+            }
+
+            switch (kind) {
+                case IF_ELSE_STMT -> {
+                    var ifStmt = statement.getChild(0);
+                    if (ConstantFold.getValue(ifStmt.getChild(0)) instanceof Boolean condition) {
+                        var arm = ifStmt.getChild(condition ? 1 : 2);
+                        splice(parent, i, BLOCK_STMT.check(arm) ? List.copyOf(arm.getChildren()) : List.of(arm));
+
+                        // The statements of the arm take its index, and are pruned next
+                        i--;
+                    } else {
+                        pruneBody(ifStmt, 1);
+                        pruneBody(ifStmt, 2);
+                    }
+                }
+                case WHILE_CONDITION -> {
+                    var whileStmt = statement.getChild(0);
+                    if (Boolean.FALSE.equals(ConstantFold.getValue(whileStmt.getChild(0)))) {
+                        splice(parent, i, List.of());
+                        i--;
+                    } else {
+                        pruneBody(whileStmt, 1);
+                    }
+                }
+                case BLOCK_STMT -> pruneStatements(statement);
+                case RETURN_STMT -> {
+                    while (parent.getNumChildren() > i + 1) {
+                        parent.removeJmmChild(i + 1);
+                        changed = true;
+                    }
+                }
+                default -> {
+                    // Assignments and expressions have no branches
+                }
+            }
+        }
+    }
+
+    /**
+     * Prunes the body of an if or while. A body that is a single if or while is first put in a block, so that it can
+     * be replaced by any number of statements.
+     */
+    private void pruneBody(JmmNode statement, int index) {
+        var body = statement.getChild(index);
+
+        if (IF_ELSE_STMT.check(body) || WHILE_CONDITION.check(body)) {
+            var block = new CompactJmmNode(BLOCK_STMT);
+            body.replace(block);
+            block.add(body);
+            body = block;
+        }
+
+        if (BLOCK_STMT.check(body)) {
+            pruneStatements(body);
+        }
+    }
+
+    /**
+     * Replaces the statement at the index by the given statements.
+     */
+    private void splice(JmmNode parent, int index, List<JmmNode> statements) {
+        parent.removeJmmChild(index);
+
+        for (int i = 0; i < statements.size(); i++) {
+            parent.add(statements.get(i).detach(), index + i);
+        }
+
+        changed = true;
+    }
+}
@@ -0,0 +1,86 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.*;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Removes the assignments to local variables that are not live after them, using the liveness of
+ * {@link DataFlowAnalysis}. This includes the temporaries whose value is no longer used once the AST was folded.
+ * <p>
+ * Only assignments whose value cannot have side effects or throw are removed, so calls, divisions and reads of
+ * array elements are kept. Removing an assignment can make dead the ones that computed its operands, so the analysis
+ * is repeated until nothing is removed. Instructions with labels are kept, since the labels of a method are looked up
+ * by instruction.
+ */
+public class DeadStoreElimination {
+
+    private final Method method;
+    private int removed;
+
+    public DeadStoreElimination(Method method) {
+        this.method = method;
+    }
+
+    public void run() {
+        removed = 0;
+
+        Set<Instruction> labeled = Collections.newSetFromMap(new IdentityHashMap<>());
+        labeled.addAll(method.getLabels().values());
+
+        boolean changed = true;
+        while (changed) {
+            var dataFlow = new DataFlowAnalysis(method);
+            dataFlow.run();
+
+            int size = method.getInstructions().size();
+            method.getInstructions().removeIf(instruction -> !labeled.contains(instruction)
+                    && isDeadStore(instruction, dataFlow.getOut().get(instruction)));
+
+            changed = method.getInstructions().size() < size;
+            if (changed) {
+                removed += size - method.getInstructions().size();
+                OptUtils.rebuildCFG(method);
+            }
+        }
+
+        if (removed > 0) {
+            OptUtils.rebuildVarTable(method);
+        }
+    }
+
+    /**
+     * @return the number of instructions removed
+     */
+    public int getRemoved() {
+        return removed;
+    }
+
+    private boolean isDeadStore(Instruction instruction, Set<String> liveOut) {
+        if (!(instruction instanceof AssignInstruction assign)) {
+            return false;
+        }
+
+        var dest = assign.getDest();
+        if (dest instanceof ArrayOperand || !DataFlowAnalysis.isVariable(dest, method.getVarTable())) {
+            return false;
+        }
+
+        return !liveOut.contains(((Operand) dest).getName()) && isPure(assign.getRhs());
+    }
+
+    /**
+     * @return true if the instruction cannot have side effects or throw
+     */
+    private static boolean isPure(Instruction instruction) {
+        return switch (instruction.getInstType()) {
+            case NOPER -> !(((SingleOpInstruction) instruction).getSingleOperand() instanceof ArrayOperand);
+            case UNARYOPER -> true;
+            case BINARYOPER -> ((BinaryOpInstruction) instruction).getOperation().getOpType() != OperationType.DIV;
+            case GETFIELD -> true;
+            default -> false;
+        };
+    }
+}
@@ -0,0 +1,364 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.*;
+
+import java.util.*;
+
+/**
+ * Removes the expressions that compute again a value already computed, such as the index arithmetic, field reads and
+ * products the OLLIR generator emits for every occurrence of an expression. The assignment is kept, but its right side
+ * becomes a copy of the variable holding the earlier result, which {@link CopyCoalescing} removes afterwards.
+ * <p>
+ * The instructions are visited in a preorder of the dominator tree, keeping the expressions computed by the dominators
+ * of the current instruction, since only those are computed on every path that reaches it. Since OLLIR variables can be
+ * assigned more than once, an earlier result is only reused if, on every path from it to the instruction, neither the
+ * variable holding it nor its operands are assigned. Field reads are also not reused across calls or writes to the same
+ * field. Binary and unary operations, field reads and array lengths are numbered, and the reads of array elements are
+ * not, since arrays can be changed through any of their references.
+ */
+public class GlobalValueNumbering {
+
+    private final Method method;
+    private int removed;
+
+    // Position of each reachable instruction in the reverse postorder of the CFG
+    private Map<Instruction, Integer> order;
+
+    public GlobalValueNumbering(Method method) {
+        this.method = method;
+    }
+
+    public void run() {
+        removed = 0;
+
+        var instructions = method.getInstructions();
+        if (instructions.isEmpty()) {
+            return;
+        }
+
+        var reversePostorder = computeReversePostorder();
+        var children = buildDominatorTree(reversePostorder);
+
+        Set<Instruction> labeled = Collections.newSetFromMap(new IdentityHashMap<>());
+        labeled.addAll(method.getLabels().values());
+
+        Map<String, Deque<AssignInstruction>> available = new HashMap<>();
+        Map<Instruction, Instruction> replacements = new IdentityHashMap<>();
+
+        // Preorder of the dominator tree, where a negative index leaves the instruction and forgets its expression
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(0);
+        while (!stack.isEmpty()) {
+            int index = stack.pop();
+            if (index < 0) {
+                forget(reversePostorder.get(-index - 1), available);
+                continue;
+            }
+
+            var instruction = reversePostorder.get(index);
+            if (!labeled.contains(instruction)) {
+                var replacement = number(instruction, available);
+                if (replacement != null) {
+                    replacements.put(instruction, replacement);
+                }
+            }
+            remember(instruction, available);
+
+            stack.push(-index - 1);
+            for (int child : children.get(index)) {
+                stack.push(child);
+            }
+        }
+
+        if (replacements.isEmpty()) {
+            return;
+        }
+
+        instructions.replaceAll(instruction -> replacements.getOrDefault(instruction, instruction));
+        removed = replacements.size();
+
+        OptUtils.rebuildCFG(method);
+    }
+
+    /**
+     * @return the number of expressions replaced by a copy of an earlier result
+     */
+    public int getRemoved() {
+        return removed;
+    }
+
+    /**
+     * @return the copy of an earlier result that replaces the instruction, or null if its value is not available
+     */
+    private Instruction number(Instruction instruction, Map<String, Deque<AssignInstruction>> available) {
+        var key = getKey(instruction);
+        if (key == null || !available.containsKey(key)) {
+            return null;
+        }
+
+        // The innermost dominators are tried first, since fewer instructions run between them and the instruction
+        for (var candidate : available.get(key)) {
+            if (isAvailable(candidate, instruction)) {
+                var assign = (AssignInstruction) instruction;
+                var result = (Operand) candidate.getDest();
+                var copy = new SingleOpInstruction(new Operand(result.getName(), result.getType()));
+
+                return new AssignInstruction(assign.getDest(), assign.getTypeOfAssign(), copy);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Makes the value computed by the instruction available to the instructions it dominates. Assignments that change
+     * one of their own operands, such as i := i + 1, are not, since the value is lost once they are done.
+     */
+    private void remember(Instruction instruction, Map<String, Deque<AssignInstruction>> available) {
+        var key = getKey(instruction);
+        if (key == null) {
+            return;
+        }
+
+        var assign = (AssignInstruction) instruction;
+        var dest = ((Operand) assign.getDest()).getName();
+        if (getOperandNames(assign.getRhs()).contains(dest)) {
+            return;
+        }
+
+        available.computeIfAbsent(key, k -> new ArrayDeque<>()).push(assign);
+    }
+
+    private void forget(Instruction instruction, Map<String, Deque<AssignInstruction>> available) {
+        var key = getKey(instruction);
+        if (key == null) {
+            return;
+        }
+
+        var candidates = available.get(key);
+        if (candidates != null && candidates.peek() == instruction) {
+            candidates.pop();
+        }
+    }
+
+    /**
+     * @return a key that is equal for the instructions that compute the same value from the same operands, or null if
+     * the instruction does not assign a variable with an expression that can be numbered
+     */
+    private String getKey(Instruction instruction) {
+        if (!(instruction instanceof AssignInstruction assign) || assign.getDest() instanceof ArrayOperand
+                || !DataFlowAnalysis.isVariable(assign.getDest(), method.getVarTable())) {
+            return null;
+        }
+
+        var rhs = assign.getRhs();
+        if (OptUtils.getOperands(rhs).stream().anyMatch(operand -> operand instanceof ArrayOperand)) {
+            return null;
+        }
+
+        var type = OllirPrinter.printType(assign.getTypeOfAssign());
+        return switch (rhs.getInstType()) {
+            case BINARYOPER -> {
+                var binary = (BinaryOpInstruction) rhs;
+                var left = OllirPrinter.printElement(binary.getLeftOperand());
+                var right = OllirPrinter.printElement(binary.getRightOperand());
+
+                // The operands of commutative operations are sorted, so that a * b and b * a have the same key
+                if (isCommutative(binary.getOperation().getOpType()) && left.compareTo(right) > 0) {
+                    var swap = left;
+                    left = right;
+                    right = swap;
+                }
+
+                yield type + " " + left + " " + binary.getOperation().getOpType() + " " + right;
+            }
+            case UNARYOPER, GETFIELD -> type + " " + OllirPrinter.printInstruction(rhs);
+            case CALL -> ((CallInstruction) rhs).getInvocationType() == CallType.arraylength ?
+                    type + " " + OllirPrinter.printInstruction(rhs) : null;
+            default -> null;
+        };
+    }
+
+    private static boolean isCommutative(OperationType operation) {
+        return switch (operation) {
+            case ADD, MUL, EQ, NEQ, AND, OR, ANDB, ORB, XOR -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * @return true if, on every path from the candidate to the instruction, the variable holding its result and its
+     * operands keep their values
+     */
+    private boolean isAvailable(AssignInstruction candidate, Instruction instruction) {
+        var result = ((Operand) candidate.getDest()).getName();
+        var operands = getOperandNames(candidate.getRhs());
+        var field = candidate.getRhs() instanceof GetFieldInstruction getField ? getField.getField() : null;
+
+        // The candidate dominates the instruction, so the instructions that reach the instruction without going
+        // through the candidate are the ones that can run between them
+        Set<Instruction> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Instruction> worklist = new ArrayDeque<>();
+        addPredecessors(instruction, candidate, visited, worklist);
+
+        while (!worklist.isEmpty()) {
+            var between = worklist.poll();
+
+            var defined = getDefined(between);
+            if (defined != null && (defined.equals(result) || operands.contains(defined))) {
+                return false;
+            }
+
+            if (field != null && writesFields(between, field)) {
+                return false;
+            }
+
+            addPredecessors(between, candidate, visited, worklist);
+        }
+
+        return true;
+    }
+
+    private void addPredecessors(Instruction instruction, Instruction candidate, Set<Instruction> visited,
+                                 Deque<Instruction> worklist) {
+        for (var predecessor : instruction.getPredecessors()) {
+            if (predecessor != candidate && predecessor instanceof Instruction previous
+                    && order.containsKey(previous) && visited.add(previous)) {
+                worklist.add(previous);
+            }
+        }
+    }
+
+    /**
+     * @return true if the instruction can change the field, by writing it or by calling a method
+     */
+    private static boolean writesFields(Instruction instruction, Operand field) {
+        if (instruction instanceof PutFieldInstruction putField) {
+            return putField.getField().getName().equals(field.getName());
+        }
+
+        var call = instruction instanceof AssignInstruction assign ? assign.getRhs() : instruction;
+        return call instanceof CallInstruction callInstruction
+                && callInstruction.getInvocationType() != CallType.arraylength
+                && callInstruction.getInvocationType() != CallType.NEW;
+    }
+
+    private Set<String> getOperandNames(Instruction instruction) {
+        var names = new HashSet<String>();
+        for (var operand : OptUtils.getOperands(instruction)) {
+            if (DataFlowAnalysis.isVariable(operand, method.getVarTable())) {
+                names.add(operand.getName());
+            }
+        }
+
+        return names;
+    }
+
+    /**
+     * @return the variable the instruction assigns, or null if it does not assign one
+     */
+    private static String getDefined(Instruction instruction) {
+        if (instruction instanceof AssignInstruction assign && !(assign.getDest() instanceof ArrayOperand)
+                && assign.getDest() instanceof Operand dest) {
+            return dest.getName();
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the instructions reachable from the start of the method, in reverse postorder
+     */
+    private List<Instruction> computeReversePostorder() {
+        var postorder = new ArrayList<Instruction>();
+        Set<Node> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        // Each entry holds a node and the index of the next successor to visit
+        Deque<Map.Entry<Node, Integer>> stack = new ArrayDeque<>();
+        stack.push(new AbstractMap.SimpleEntry<>(method.getBeginNode(), 0));
+        visited.add(method.getBeginNode());
+
+        while (!stack.isEmpty()) {
+            var entry = stack.peek();
+            var successors = entry.getKey().getSuccessors();
+            if (entry.getValue() < successors.size()) {
+                var successor = successors.get(entry.getValue());
+                entry.setValue(entry.getValue() + 1);
+                if (successor.getNodeType() == NodeType.INSTRUCTION && visited.add(successor)) {
+                    stack.push(new AbstractMap.SimpleEntry<>(successor, 0));
+                }
+                continue;
+            }
+
+            stack.pop();
+            if (entry.getKey() instanceof Instruction instruction) {
+                postorder.add(instruction);
+            }
+        }
+
+        Collections.reverse(postorder);
+
+        order = new IdentityHashMap<>();
+        for (int i = 0; i < postorder.size(); i++) {
+            order.put(postorder.get(i), i);
+        }
+
+        return postorder;
+    }
+
+    /**
+     * Computes the immediate dominators with the iterative algorithm of Cooper, Harvey and Kennedy.
+     *
+     * @return the children of each instruction in the dominator tree, by position in the reverse postorder
+     */
+    private List<List<Integer>> buildDominatorTree(List<Instruction> reversePostorder) {
+        int size = reversePostorder.size();
+        var dominators = new int[size];
+        Arrays.fill(dominators, -1);
+        dominators[0] = 0;
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 1; i < size; i++) {
+                int dominator = -1;
+                for (var predecessor : reversePostorder.get(i).getPredecessors()) {
+                    var index = order.get(predecessor);
+                    if (index == null || dominators[index] < 0) {
+                        continue;
+                    }
+
+                    dominator = dominator < 0 ? index : intersect(dominators, dominator, index);
+                }
+
+                if (dominators[i] != dominator) {
+                    dominators[i] = dominator;
+                    changed = true;
+                }
+            }
+        }
+
+        var children = new ArrayList<List<Integer>>();
+        for (int i = 0; i < size; i++) {
+            children.add(new ArrayList<>());
+        }
+        for (int i = 1; i < size; i++) {
+            children.get(dominators[i]).add(i);
+        }
+
+        return children;
+    }
+
+    private static int intersect(int[] dominators, int first, int second) {
+        while (first != second) {
+            while (first > second) {
+                first = dominators[first];
+            }
+            while (second > first) {
+                second = dominators[second];
+            }
+        }
+
+        return first;
+    }
+}
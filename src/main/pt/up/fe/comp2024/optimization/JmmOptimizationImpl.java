@@ -7,72 +7,128 @@ import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
 import pt.up.fe.comp.jmm.ollir.JmmOptimization;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
 import pt.up.fe.comp.jmm.report.Report;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 import pt.up.fe.comp.jmm.report.Stage;
 import pt.up.fe.comp.jmm.report.StageResult;
+import pt.up.fe.comp2024.CompilerConfig;
+import pt.up.fe.comp2024.utils.PhaseProfiler;
 
 public class JmmOptimizationImpl implements JmmOptimization {
 
     @Override
     public OllirResult toOllir(JmmSemanticsResult semanticsResult) {
-        boolean optimize1 = semanticsResult.getConfig().containsKey("optimize");
-        //Jmm optimization
-        if(optimize1){
-            //TODO OPTIMIZE HERE
-            if(semanticsResult.getConfig().get("optimize").equals("true")){
-                boolean optimizedFold = false;
-                boolean optimizedProp = false;
-                ConstantFold constantFold = new ConstantFold();
-                constantFold.buildVisitor();
-                ConstantPropagation constantPropagation = new ConstantPropagation();
-                constantPropagation.buildVisitor();
-
-                do {
-                    constantFold.setOptimized(false);
-                    constantFold.setRootNode(semanticsResult.getRootNode());
-                    constantFold.run();
-                    optimizedFold = constantFold.isOptimized();
-                    constantPropagation.setOptimized(false);
-                    constantPropagation.setRootNode(semanticsResult.getRootNode());
-                    constantPropagation.run();
-                    optimizedProp = constantPropagation.isOptimized();
-                    String checker = semanticsResult.getRootNode().toTree();
-                    var delete = ";";
-
-                } while (optimizedFold || optimizedProp);
-
-                //TODO OPTIMIZE HERE
-            }
+        if (CompilerConfig.getOptimize(semanticsResult.getConfig())) {
+            var constantPropagation = new ConstantPropagation(semanticsResult.getSymbolTable());
+            PhaseProfiler.measure("constantPropagation", () -> constantPropagation.run(semanticsResult.getRootNode()));
+        }
+
+        if (CompilerConfig.getDirectOllir(semanticsResult.getConfig())) {
+            return buildOllir(semanticsResult);
         }
 
-        String checker = semanticsResult.getRootNode().toTree();
-        var visitor = new OllirGeneratorVisitor(semanticsResult.getSymbolTable());
-        var ollirCode = visitor.visit(semanticsResult.getRootNode());
+        // Fresh naming state for every compilation, so the output does not depend on previous runs
+        var visitor = new OllirGeneratorVisitor(semanticsResult.getSymbolTable(), new CompilationContext());
+        var ollirCode = PhaseProfiler.measure("ollirGeneration", () -> visitor.visit(semanticsResult.getRootNode()));
+
+        // Creating the result parses the OLLIR code
+        return PhaseProfiler.measure("ollirParsing",
+                () -> new OllirResult(semanticsResult, ollirCode, Collections.emptyList()));
+    }
+
+    /**
+     * Builds the OLLIR class directly from the AST, skipping the generation and parsing of OLLIR code. The code is only
+     * printed when requested, for debugging.
+     */
+    private OllirResult buildOllir(JmmSemanticsResult semanticsResult) {
+        var builder = new OllirClassBuilder(semanticsResult.getSymbolTable(), new CompilationContext());
+        var classUnit = PhaseProfiler.measure("ollirBuild", () -> builder.build(semanticsResult.getRootNode()));
 
-        return new OllirResult(semanticsResult, ollirCode, Collections.emptyList());
+        var ollirCode = CompilerConfig.getOllirDump(semanticsResult.getConfig()) ? OllirPrinter.print(classUnit) : null;
+
+        return new OllirClassResult(ollirCode, classUnit, semanticsResult.getSymbolTable(),
+                new ArrayList<>(semanticsResult.getReports()), semanticsResult.getConfig());
     }
 
     @Override
     public OllirResult optimize(OllirResult ollirResult) {
+        boolean optimize = CompilerConfig.getOptimize(ollirResult.getConfig());
         int numReg = ollirResult.getConfig().containsKey("registerAllocation") ? Integer.parseInt(ollirResult.getConfig().get("registerAllocation")) : -1;
+
+        // The CFGs are built once here, and the passes that change the instructions of a method build its CFG again
+        if (optimize || numReg >= 0) {
+            ollirResult.getOllirClass().buildCFGs();
+        }
+
+        if (optimize) {
+            // Inlining first lets the passes below work across the copied methods
+            var inliner = new MethodInliner(ollirResult.getOllirClass(),
+                    CompilerConfig.getClosedWorld(ollirResult.getConfig()));
+            PhaseProfiler.measure("methodInlining", inliner::run);
+            ollirResult.getReports().addAll(inliner.getReports());
+
+            for (Method method : ollirResult.getOllirClass().getMethods()) {
+                var valueNumbering = new GlobalValueNumbering(method);
+                PhaseProfiler.measure("globalValueNumbering:" + method.getMethodName(), valueNumbering::run);
+                if (valueNumbering.getRemoved() > 0) {
+                    ollirResult.getReports().add(Report.newLog(Stage.OPTIMIZATION, -1, -1,
+                            "Global value numbering removed " + valueNumbering.getRemoved()
+                                    + " redundant expressions from method " + method.getMethodName(), null));
+                }
+
+                var codeMotion = new LoopInvariantCodeMotion(method);
+                PhaseProfiler.measure("loopInvariantCodeMotion:" + method.getMethodName(), codeMotion::run);
+                if (codeMotion.getHoisted() > 0) {
+                    ollirResult.getReports().add(Report.newLog(Stage.OPTIMIZATION, -1, -1,
+                            "Loop-invariant code motion moved " + codeMotion.getHoisted()
+                                    + " instructions out of loops in method " + method.getMethodName(), null));
+                }
+
+                var deadStoreElimination = new DeadStoreElimination(method);
+                PhaseProfiler.measure("deadStoreElimination:" + method.getMethodName(), deadStoreElimination::run);
+                if (deadStoreElimination.getRemoved() > 0) {
+                    ollirResult.getReports().add(Report.newLog(Stage.OPTIMIZATION, -1, -1,
+                            "Dead store elimination removed " + deadStoreElimination.getRemoved()
+                                    + " unused assignments from method " + method.getMethodName(), null));
+                }
+
+                var copyCoalescing = new CopyCoalescing(method);
+                PhaseProfiler.measure("copyCoalescing:" + method.getMethodName(), copyCoalescing::run);
+
+                var strengthReduction = new StrengthReduction(method);
+                PhaseProfiler.measure("strengthReduction:" + method.getMethodName(), strengthReduction::run);
+                if (strengthReduction.getReduced() > 0) {
+                    ollirResult.getReports().add(Report.newLog(Stage.OPTIMIZATION, -1, -1,
+                            "Strength reduction replaced " + strengthReduction.getReduced()
+                                    + " OLLIR products of loop counters with additions in method "
+                                    + method.getMethodName(), null));
+
+                    // The reduced products became copies of the new induction variables
+                    var derivedCoalescing = new CopyCoalescing(method);
+                    PhaseProfiler.measure("copyCoalescing:" + method.getMethodName(), derivedCoalescing::run);
+                }
+            }
+
+            ollirResult = printOptimized(ollirResult);
+        }
+
         if (numReg >= 0) { // Register Allocation
             for (Method method : ollirResult.getOllirClass().getMethods()) {
-                method.buildCFG();
                 method.buildVarTable();
                 if(method.isConstructMethod()){
                     continue;
                 }
                 DataFlowAnalysis dataFlowAnalysis = new DataFlowAnalysis(method);
-                dataFlowAnalysis.run();
+                PhaseProfiler.measure("dataFlow:" + method.getMethodName(), dataFlowAnalysis::run);
 
                 Map<Instruction, Set<String>> in = dataFlowAnalysis.getIn();
                 Map<Instruction, Set<String>> out = dataFlowAnalysis.getOut();
 
                 Graph graph = new Graph(in, out, method);
-                graph.run();
+                PhaseProfiler.measure("registerColoring:" + method.getMethodName(), graph::run);
                 if(graph.getMinReg() > numReg && numReg > 0){
                     System.out.println("The number of registers is not enough");
                     ollirResult.getReports().add(Report.newError(Stage.OPTIMIZATION, -1, -1, "The number of registers is not enough the number needed is :" + graph.getMinReg(),null));
@@ -81,8 +137,22 @@ public class JmmOptimizationImpl implements JmmOptimization {
             }
         }
 
-        //TODO: Do your OLLIR-based optimizations here
-
         return ollirResult;
     }
+
+    /**
+     * The passes change the class, not its code, so the code is printed again to match the class the backend
+     * receives. Results without code, built directly without the dump, are kept as they are.
+     */
+    private OllirResult printOptimized(OllirResult ollirResult) {
+        if (ollirResult.getOllirCode() == null) {
+            return ollirResult;
+        }
+
+        var ollirClass = ollirResult.getOllirClass();
+        var ollirCode = PhaseProfiler.measure("ollirPrinting", () -> OllirPrinter.print(ollirClass));
+
+        return new OllirClassResult(ollirCode, ollirClass, ollirResult.getSymbolTable(), ollirResult.getReports(),
+                ollirResult.getConfig());
+    }
 }
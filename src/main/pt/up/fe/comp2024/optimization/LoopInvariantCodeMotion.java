@@ -0,0 +1,238 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.*;
+
+import java.util.*;
+
+/**
+ * Moves the computations that give the same value on every iteration of a while loop, such as array lengths and
+ * products of variables the loop does not change, to a preheader placed just before the condition of the loop. The back
+ * edge jumps to the label of the condition, so the preheader only runs once, when the loop is entered.
+ * <p>
+ * An assignment t := e is invariant when the operands of e are not assigned in the loop, or only by invariant
+ * assignments, and t is assigned only once in the loop and is not live when the loop starts. Unless it runs before the
+ * first branch of the condition, and so on every entry, t can also not be live after the loop, since the preheader runs
+ * even when the loop does not. Computations that cannot throw or have side effects can be moved from anywhere in the
+ * loop. Divisions, array lengths and reads of fields or array elements can throw, or depend on writes in the loop, so
+ * they are only moved when they are among the first instructions of the condition, which run next anyway.
+ * <p>
+ * Inner loops are visited first, so that what is moved to their preheader can then be moved out of the loops around
+ * them. The labels of the instructions moved go to the next instruction of the loop, except the ones the loop is
+ * entered by, which go to the preheader.
+ */
+public class LoopInvariantCodeMotion {
+
+    private final Method method;
+    private int hoisted;
+
+    public LoopInvariantCodeMotion(Method method) {
+        this.method = method;
+    }
+
+    public void run() {
+        hoisted = 0;
+
+        for (var loop : new LoopNest(method).getLoops()) {
+            var dataFlow = new DataFlowAnalysis(method);
+            dataFlow.run();
+
+            var invariants = findInvariants(loop, dataFlow);
+            if (invariants.isEmpty()) {
+                continue;
+            }
+
+            hoist(loop, invariants);
+            hoisted += invariants.size();
+
+            OptUtils.rebuildCFG(method);
+        }
+    }
+
+    /**
+     * @return the number of instructions moved out of loops
+     */
+    public int getHoisted() {
+        return hoisted;
+    }
+
+    /**
+     * @return the invariant assignments of the loop that can be moved to its preheader, in the order of the method
+     */
+    private List<Instruction> findInvariants(LoopNest.Loop loop, DataFlowAnalysis dataFlow) {
+        var instructions = loop.getInstructions();
+        var condition = loop.getCondition();
+        var varTable = method.getVarTable();
+
+        // What the loop changes, besides the variables it assigns
+        Map<String, Integer> definitions = new HashMap<>();
+        Set<String> fieldsWritten = new HashSet<>();
+        boolean writesArrays = false;
+        boolean calls = false;
+        for (var instruction : instructions) {
+            if (instruction instanceof AssignInstruction assign && assign.getDest() instanceof ArrayOperand) {
+                writesArrays = true;
+            } else if (instruction instanceof AssignInstruction assign
+                    && DataFlowAnalysis.isVariable(assign.getDest(), varTable)) {
+                definitions.merge(((Operand) assign.getDest()).getName(), 1, Integer::sum);
+            }
+
+            if (instruction instanceof PutFieldInstruction putField) {
+                fieldsWritten.add(putField.getField().getName());
+            }
+
+            var call = instruction instanceof AssignInstruction assign ? assign.getRhs() : instruction;
+            if (call instanceof CallInstruction callInstruction
+                    && callInstruction.getInvocationType() != CallType.arraylength
+                    && callInstruction.getInvocationType() != CallType.NEW) {
+                calls = true;
+            }
+        }
+
+        // The instructions that run first on every entry, until the first branch of the condition
+        Set<Instruction> entry = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (var instruction : condition) {
+            if (instruction instanceof GotoInstruction || instruction instanceof CondBranchInstruction) {
+                break;
+            }
+            entry.add(instruction);
+        }
+
+        var liveAtHeader = dataFlow.getIn().get(loop.getHeader());
+        var liveAfter = dataFlow.getIn().get(loop.getExit());
+
+        Set<Instruction> invariants = Collections.newSetFromMap(new IdentityHashMap<>());
+        Map<String, Instruction> invariantDefinitions = new HashMap<>();
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+
+            // Instructions that can throw must keep their order with everything before them
+            boolean prefix = true;
+            for (var instruction : instructions) {
+                if (invariants.contains(instruction)) {
+                    continue;
+                }
+
+                boolean invariant = instruction instanceof AssignInstruction assign
+                        && isInvariant(assign, definitions, invariantDefinitions)
+                        && !liveAtHeader.contains(((Operand) assign.getDest()).getName())
+                        && (entry.contains(instruction)
+                        || !liveAfter.contains(((Operand) assign.getDest()).getName()))
+                        && (isSafe(assign.getRhs())
+                        || (prefix && entry.contains(instruction)
+                        && readsUnchanged(assign.getRhs(), fieldsWritten, writesArrays, calls)));
+
+                if (invariant) {
+                    invariants.add(instruction);
+                    invariantDefinitions.put(((Operand) ((AssignInstruction) instruction).getDest()).getName(),
+                            instruction);
+                    changed = true;
+                } else {
+                    prefix = false;
+                }
+            }
+        }
+
+        return instructions.stream().filter(invariants::contains).toList();
+    }
+
+    /**
+     * @return true if the assignment is the only one of its variable in the loop and its operands do not change in it
+     */
+    private boolean isInvariant(AssignInstruction assign, Map<String, Integer> definitions,
+                                Map<String, Instruction> invariantDefinitions) {
+        var varTable = method.getVarTable();
+        if (assign.getDest() instanceof ArrayOperand || !DataFlowAnalysis.isVariable(assign.getDest(), varTable)) {
+            return false;
+        }
+
+        var dest = ((Operand) assign.getDest()).getName();
+        if (definitions.getOrDefault(dest, 0) != 1) {
+            return false;
+        }
+
+        for (var operand : OptUtils.getOperands(assign.getRhs())) {
+            if (!DataFlowAnalysis.isVariable(operand, varTable)) {
+                continue;
+            }
+
+            var name = operand.getName();
+            if (name.equals(dest)
+                    || (definitions.containsKey(name) && !invariantDefinitions.containsKey(name))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return true if the computation cannot throw, has no side effects and only depends on its operands
+     */
+    private static boolean isSafe(Instruction instruction) {
+        return switch (instruction.getInstType()) {
+            case NOPER -> !(((SingleOpInstruction) instruction).getSingleOperand() instanceof ArrayOperand);
+            case UNARYOPER -> true;
+            case BINARYOPER -> ((BinaryOpInstruction) instruction).getOperation().getOpType() != OperationType.DIV;
+            default -> false;
+        };
+    }
+
+    /**
+     * @return true if the computation has no side effects and reads nothing the loop can change, besides its operands
+     */
+    private static boolean readsUnchanged(Instruction instruction, Set<String> fieldsWritten, boolean writesArrays,
+                                          boolean calls) {
+        return switch (instruction.getInstType()) {
+            case NOPER -> !writesArrays && !calls;
+            case BINARYOPER -> true;
+            case GETFIELD -> !calls
+                    && !fieldsWritten.contains(((GetFieldInstruction) instruction).getField().getName());
+            case CALL -> ((CallInstruction) instruction).getInvocationType() == CallType.arraylength;
+            default -> false;
+        };
+    }
+
+    /**
+     * Moves the instructions to the preheader, just before the header of the loop.
+     */
+    private void hoist(LoopNest.Loop loop, List<Instruction> invariants) {
+        // The loop is entered by the labels of its header other than its own, which now have to reach the preheader
+        var entryLabels = new HashSet<>(OptUtils.getLabels(method, loop.getHeader()));
+        entryLabels.remove(loop.getHeaderLabel());
+
+        Set<Instruction> moved = Collections.newSetFromMap(new IdentityHashMap<>());
+        moved.addAll(invariants);
+
+        // The jumps inside the loop to an instruction that was moved go to the next one that stays
+        var loopInstructions = loop.getInstructions();
+        for (int i = 0; i < loopInstructions.size(); i++) {
+            var instruction = loopInstructions.get(i);
+            if (!moved.contains(instruction)) {
+                continue;
+            }
+
+            int next = i + 1;
+            while (moved.contains(loopInstructions.get(next))) {
+                next++;
+            }
+            OptUtils.moveLabels(method, instruction, loopInstructions.get(next),
+                    label -> !entryLabels.contains(label));
+        }
+
+        var header = loop.getHeader();
+        for (var label : entryLabels) {
+            method.getLabels().put(label, invariants.get(0));
+        }
+
+        var instructions = method.getInstructions();
+        instructions.removeIf(moved::contains);
+
+        int index = 0;
+        while (instructions.get(index) != header) {
+            index++;
+        }
+        instructions.addAll(index, invariants);
+    }
+}
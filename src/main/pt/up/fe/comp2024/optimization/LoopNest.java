@@ -0,0 +1,168 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.*;
+
+import java.util.*;
+
+/**
+ * The while loops of a method and how they are nested, found from the labels the OLLIR generator gives to each loop:
+ * whileCond labels the first instruction of its condition, whileLoop the first of its body and whileEnd the first after
+ * it. The instructions of a loop are the ones from its condition up to its end, and its only back edge is the goto to
+ * its condition that closes its body.
+ * <p>
+ * Loops are identified by their labels and not by their instructions, so a loop stays valid while the passes move
+ * instructions in and out of it, as long as they move the labels with them.
+ */
+public class LoopNest {
+
+    private static final String COND = "whileCond";
+    private static final String BODY = "whileLoop";
+    private static final String END = "whileEnd";
+
+    private final Method method;
+    private final List<Loop> loops;
+
+    public LoopNest(Method method) {
+        this.method = method;
+        this.loops = new ArrayList<>();
+
+        for (var label : method.getLabels().keySet()) {
+            if (label.startsWith(COND)) {
+                var loop = new Loop(label.substring(COND.length()));
+                if (loop.isValid()) {
+                    loops.add(loop);
+                }
+            }
+        }
+
+        // The parent of a loop is the smallest loop that contains its condition
+        for (var loop : loops) {
+            for (var other : loops) {
+                if (other != loop && other.contains(loop.getHeader())
+                        && (loop.parent == null || loop.parent.contains(other.getHeader()))) {
+                    loop.parent = other;
+                }
+            }
+        }
+
+        loops.sort(Comparator.comparingInt(Loop::getDepth).reversed().thenComparing(loop -> loop.id));
+    }
+
+    /**
+     * @return the loops of the method, with inner loops before the loops that contain them
+     */
+    public List<Loop> getLoops() {
+        return loops;
+    }
+
+    public class Loop {
+
+        private final String id;
+        private Loop parent;
+
+        private Loop(String id) {
+            this.id = id;
+        }
+
+        /**
+         * @return the first instruction of the condition, which the back edge jumps to
+         */
+        public Instruction getHeader() {
+            return method.getLabels().get(COND + id);
+        }
+
+        /**
+         * @return the first instruction of the body
+         */
+        public Instruction getBody() {
+            return method.getLabels().get(BODY + id);
+        }
+
+        /**
+         * @return the first instruction after the loop
+         */
+        public Instruction getExit() {
+            return method.getLabels().get(END + id);
+        }
+
+        public String getHeaderLabel() {
+            return COND + id;
+        }
+
+        public Loop getParent() {
+            return parent;
+        }
+
+        /**
+         * @return the number of loops that contain this one
+         */
+        public int getDepth() {
+            return parent == null ? 0 : parent.getDepth() + 1;
+        }
+
+        /**
+         * @return the instructions of the loop, in the order of the method
+         */
+        public List<Instruction> getInstructions() {
+            var instructions = method.getInstructions();
+            return new ArrayList<>(instructions.subList(indexOf(getHeader()), indexOf(getExit())));
+        }
+
+        /**
+         * @return the instructions of the condition, from the header up to the first of the body
+         */
+        public List<Instruction> getCondition() {
+            var instructions = method.getInstructions();
+            return new ArrayList<>(instructions.subList(indexOf(getHeader()), indexOf(getBody())));
+        }
+
+        public boolean contains(Instruction instruction) {
+            int index = indexOf(instruction);
+            return index >= indexOf(getHeader()) && index < indexOf(getExit());
+        }
+
+        /**
+         * @return true if the labels of the loop are in order and the only jump to its header closes its body
+         */
+        private boolean isValid() {
+            if (getHeader() == null || getBody() == null || getExit() == null) {
+                return false;
+            }
+
+            int header = indexOf(getHeader());
+            int body = indexOf(getBody());
+            int exit = indexOf(getExit());
+            if (header < 0 || !(header < body && body < exit)) {
+                return false;
+            }
+
+            var instructions = method.getInstructions();
+            for (int i = 0; i < instructions.size(); i++) {
+                if (jumpsTo(instructions.get(i), getHeaderLabel()) && i != exit - 1) {
+                    return false;
+                }
+            }
+
+            return jumpsTo(instructions.get(exit - 1), getHeaderLabel());
+        }
+
+        private int indexOf(Instruction instruction) {
+            var instructions = method.getInstructions();
+            for (int i = 0; i < instructions.size(); i++) {
+                if (instructions.get(i) == instruction) {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+    }
+
+    private static boolean jumpsTo(Instruction instruction, String label) {
+        if (instruction instanceof GotoInstruction jump) {
+            return jump.getLabel().equals(label);
+        }
+
+        return instruction instanceof CondBranchInstruction branch && branch.getLabel().equals(label);
+    }
+}
@@ -0,0 +1,478 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.Stage;
+
+import java.util.*;
+
+/**
+ * Replaces the calls to small methods of the class, such as getters and setters, with a copy of their instructions.
+ * <p>
+ * Only calls whose target is known are inlined: static methods of the class, calls on variables only ever assigned a
+ * new object of the class, which cannot be null or of a subclass, and calls on 'this' to private methods. Other calls on
+ * 'this' could reach a method of a subclass, so they are only inlined in a closed world, when no other class extends the
+ * one compiled. The callee must have at most {@link #MAX_SIZE} instructions and must not be recursive, directly or
+ * through other methods. Callees are inlined into their callers before the callers are inlined themselves, following
+ * the call graph, and the instructions added to the class are limited by {@link #BUDGET}.
+ * <p>
+ * The variables and labels of each copy are renamed, never to a name used by the caller or by an earlier copy, the
+ * parameters become copies of the arguments and the return becomes a copy to the variable that received the result,
+ * which the other passes then remove. Each decision is reported as a log.
+ */
+public class MethodInliner {
+
+    static final int MAX_SIZE = 12;
+    static final int BUDGET = 200;
+
+    private final ClassUnit classUnit;
+    private final boolean closedWorld;
+    private final List<Report> reports;
+    private final Map<String, Integer> decisions;
+    private int budget;
+    private int inlined;
+
+    public MethodInliner(ClassUnit classUnit) {
+        this(classUnit, false);
+    }
+
+    /**
+     * @param closedWorld true if no other class extends the one compiled, so every method called on 'this' can be inlined
+     */
+    public MethodInliner(ClassUnit classUnit, boolean closedWorld) {
+        this.classUnit = classUnit;
+        this.closedWorld = closedWorld;
+        this.reports = new ArrayList<>();
+        this.decisions = new LinkedHashMap<>();
+    }
+
+    public void run() {
+        budget = BUDGET;
+        inlined = 0;
+
+        var callGraph = buildCallGraph();
+        var recursive = findRecursive(callGraph);
+
+        for (var method : postorder(callGraph)) {
+            // The names of the variables of the method, including those of the copies added to it in this run
+            var variables = new HashSet<>(method.getVarTable().keySet());
+            int copies = 0;
+            for (var instruction : new ArrayList<>(method.getInstructions())) {
+                var callee = getCallee(method, instruction);
+                if (callee != null && inline(method, instruction, callee, recursive, variables, copies)) {
+                    copies++;
+                }
+            }
+
+            if (copies > 0) {
+                OptUtils.rebuildCFG(method);
+                OptUtils.rebuildVarTable(method);
+            }
+        }
+
+        for (var decision : decisions.entrySet()) {
+            reports.add(Report.newLog(Stage.OPTIMIZATION, -1, -1,
+                    decision.getKey().replace("%d", decision.getValue().toString()), null));
+        }
+    }
+
+    /**
+     * @return the number of calls inlined
+     */
+    public int getInlined() {
+        return inlined;
+    }
+
+    public List<Report> getReports() {
+        return reports;
+    }
+
+    private boolean inline(Method caller, Instruction call, Method callee, Set<Method> recursive,
+                           Set<String> variables, int copies) {
+        var names = "method " + callee.getMethodName() + " into " + caller.getMethodName();
+
+        if (!closedWorld && isOnThis(call) && callee.getMethodAccessModifier() != AccessModifier.PRIVATE) {
+            decide("Did not inline %d calls of " + names + ", which can be overridden");
+            return false;
+        }
+
+        if (recursive.contains(callee)) {
+            decide("Did not inline %d calls of recursive " + names);
+            return false;
+        }
+
+        var instructions = callee.getInstructions();
+        if (instructions.size() > MAX_SIZE) {
+            decide("Did not inline %d calls of " + names + ", which has " + instructions.size()
+                    + " instructions, more than " + MAX_SIZE);
+            return false;
+        }
+
+        // The frontend only accepts a return at the end
+        var last = instructions.get(instructions.size() - 1);
+        if (!(last instanceof ReturnInstruction) || instructions.stream()
+                .filter(instruction -> instruction instanceof ReturnInstruction).count() != 1) {
+            decide("Did not inline %d calls of " + names + ", which does not return at the end");
+            return false;
+        }
+
+        int cost = instructions.size() - 1 + callee.getParams().size();
+        if (cost > budget) {
+            decide("Did not inline %d calls of " + names + ", since the inlining budget was used");
+            return false;
+        }
+
+        budget -= cost;
+        inlined++;
+        decide("Inlined %d calls of " + names);
+
+        new Copy(caller, call, callee, variables, callee.getMethodName() + copies).splice();
+        return true;
+    }
+
+    private void decide(String decision) {
+        decisions.merge(decision, 1, Integer::sum);
+    }
+
+    /**
+     * @return the method of the class the instruction calls, if its target is known
+     */
+    private Method getCallee(Method caller, Instruction instruction) {
+        var call = instruction instanceof AssignInstruction assign ? assign.getRhs() : instruction;
+        if (!(call instanceof CallInstruction callInstruction)
+                || !(callInstruction.getCaller() instanceof Operand target)) {
+            return null;
+        }
+
+        boolean isStatic;
+        if (callInstruction.getInvocationType() == CallType.invokestatic) {
+            isStatic = true;
+            if (!target.getName().equals(classUnit.getClassName())) {
+                return null;
+            }
+        } else if (callInstruction.getInvocationType() == CallType.invokevirtual) {
+            isStatic = false;
+            if (!target.getName().equals("this") && !isNewObject(caller, target.getName())) {
+                return null;
+            }
+        } else {
+            return null;
+        }
+
+        var name = ((LiteralElement) callInstruction.getMethodName()).getLiteral().replace("\"", "");
+        var candidates = classUnit.getMethods().stream()
+                .filter(method -> method.getMethodName().equals(name) && !method.isConstructMethod()
+                        && method.isStaticMethod() == isStatic
+                        && method.getParams().size() == callInstruction.getArguments().size())
+                .toList();
+
+        return candidates.size() == 1 ? candidates.get(0) : null;
+    }
+
+    private static boolean isOnThis(Instruction instruction) {
+        var call = (CallInstruction) (instruction instanceof AssignInstruction assign ? assign.getRhs() : instruction);
+        return call.getInvocationType() == CallType.invokevirtual
+                && ((Operand) call.getCaller()).getName().equals("this");
+    }
+
+    /**
+     * @return true if the variable is a local only assigned new objects of the class, directly or through copies
+     */
+    private boolean isNewObject(Method method, String name) {
+        return isNewObject(method, name, new HashSet<>());
+    }
+
+    private boolean isNewObject(Method method, String name, Set<String> visited) {
+        var descriptor = method.getVarTable().get(name);
+        if (descriptor == null || descriptor.getScope() != VarScope.LOCAL || !visited.add(name)) {
+            return false;
+        }
+
+        boolean assigned = false;
+        for (var instruction : method.getInstructions()) {
+            if (!(instruction instanceof AssignInstruction assign) || !(assign.getDest() instanceof Operand dest)
+                    || !dest.getName().equals(name)) {
+                continue;
+            }
+
+            if (dest instanceof ArrayOperand) {
+                return false;
+            }
+
+            // The generator assigns new objects to a temporary first
+            var rhs = assign.getRhs();
+            boolean newObject = rhs instanceof CallInstruction call && call.getInvocationType() == CallType.NEW
+                    && call.getReturnType() instanceof ClassType type
+                    && type.getName().equals(classUnit.getClassName());
+            boolean copy = rhs instanceof SingleOpInstruction single
+                    && single.getSingleOperand() instanceof Operand source && !(source instanceof ArrayOperand)
+                    && isNewObject(method, source.getName(), visited);
+            if (!newObject && !copy) {
+                return false;
+            }
+            assigned = true;
+        }
+
+        return assigned;
+    }
+
+    private Map<Method, Set<Method>> buildCallGraph() {
+        Map<Method, Set<Method>> callGraph = new LinkedHashMap<>();
+        for (var method : classUnit.getMethods()) {
+            var callees = new LinkedHashSet<Method>();
+            for (var instruction : method.getInstructions()) {
+                var callee = getCallee(method, instruction);
+                if (callee != null) {
+                    callees.add(callee);
+                }
+            }
+            callGraph.put(method, callees);
+        }
+
+        return callGraph;
+    }
+
+    /**
+     * @return the methods that can call themselves
+     */
+    private static Set<Method> findRecursive(Map<Method, Set<Method>> callGraph) {
+        Set<Method> recursive = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (var method : callGraph.keySet()) {
+            Set<Method> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+            Deque<Method> worklist = new ArrayDeque<>(callGraph.get(method));
+            while (!worklist.isEmpty()) {
+                var callee = worklist.poll();
+                if (callee == method) {
+                    recursive.add(method);
+                    break;
+                }
+                if (visited.add(callee)) {
+                    worklist.addAll(callGraph.get(callee));
+                }
+            }
+        }
+
+        return recursive;
+    }
+
+    /**
+     * @return the methods of the class, each after the methods it calls, except in cycles
+     */
+    private static List<Method> postorder(Map<Method, Set<Method>> callGraph) {
+        var order = new ArrayList<Method>();
+        Set<Method> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (var method : callGraph.keySet()) {
+            visit(method, callGraph, visited, order);
+        }
+
+        return order;
+    }
+
+    private static void visit(Method method, Map<Method, Set<Method>> callGraph, Set<Method> visited,
+                              List<Method> order) {
+        if (!visited.add(method)) {
+            return;
+        }
+
+        for (var callee : callGraph.get(method)) {
+            visit(callee, callGraph, visited, order);
+        }
+        order.add(method);
+    }
+
+    /**
+     * A copy of the instructions of the callee, that replaces one call.
+     */
+    private static class Copy {
+
+        private final Method caller;
+        private final Instruction call;
+        private final Method callee;
+        private final String suffix;
+        private final Set<String> names;
+        private final Map<String, String> variables;
+        private final Map<String, String> labels;
+        private final Operand receiver;
+
+        /**
+         * @param names the names of the variables of the caller, to which the new names of this copy are added
+         */
+        private Copy(Method caller, Instruction call, Method callee, Set<String> names, String suffix) {
+            this.caller = caller;
+            this.call = call;
+            this.callee = callee;
+            this.suffix = suffix;
+            this.names = names;
+            this.variables = new HashMap<>();
+            this.labels = new HashMap<>();
+
+            // Static callees have no 'this'
+            var callInstruction = (CallInstruction) (call instanceof AssignInstruction assign ? assign.getRhs() : call);
+            this.receiver = callee.isStaticMethod() ? null : (Operand) callInstruction.getCaller();
+        }
+
+        private void splice() {
+            var callInstruction = (CallInstruction) (call instanceof AssignInstruction assign ? assign.getRhs() : call);
+            var copies = new ArrayList<Instruction>();
+
+            // The parameters receive the arguments
+            var params = callee.getParams();
+            for (int i = 0; i < params.size(); i++) {
+                var param = (Operand) params.get(i);
+                var argument = copyOf(callInstruction.getArguments().get(i));
+                copies.add(new AssignInstruction(new Operand(rename(param.getName()), param.getType()),
+                        param.getType(), new SingleOpInstruction(argument)));
+            }
+
+            Map<Instruction, Instruction> copied = new IdentityHashMap<>();
+            var instructions = callee.getInstructions();
+            for (var instruction : instructions.subList(0, instructions.size() - 1)) {
+                var copy = copy(instruction);
+                copied.put(instruction, copy);
+                copies.add(copy);
+            }
+
+            // The returned value goes to the variable that received the result of the call
+            var ret = (ReturnInstruction) instructions.get(instructions.size() - 1);
+            if (call instanceof AssignInstruction assign && ret.hasReturnValue()) {
+                var result = new AssignInstruction(assign.getDest(), assign.getTypeOfAssign(),
+                        new SingleOpInstruction(copy(ret.getOperand())));
+                copied.put(ret, result);
+                copies.add(result);
+            }
+
+            var callerInstructions = caller.getInstructions();
+            int index = indexOf(callerInstructions, call);
+            var next = callerInstructions.get(index + 1);
+
+            // The labels of the callee point to its copy, or after it when they point to a return that was dropped
+            for (var label : callee.getLabels().entrySet()) {
+                caller.getLabels().put(renameLabel(label.getKey()),
+                        copied.getOrDefault(label.getValue(), next));
+            }
+            OptUtils.moveLabels(caller, call, copies.isEmpty() ? next : copies.get(0), label -> true);
+
+            callerInstructions.remove(index);
+            callerInstructions.addAll(index, copies);
+        }
+
+        private Instruction copy(Instruction instruction) {
+            return switch (instruction.getInstType()) {
+                case ASSIGN -> {
+                    var assign = (AssignInstruction) instruction;
+                    yield new AssignInstruction(copy(assign.getDest()), assign.getTypeOfAssign(),
+                            copy(assign.getRhs()));
+                }
+                case NOPER -> new SingleOpInstruction(copy(((SingleOpInstruction) instruction).getSingleOperand()));
+                case BINARYOPER -> {
+                    var binary = (BinaryOpInstruction) instruction;
+                    yield new BinaryOpInstruction(copy(binary.getLeftOperand()), binary.getOperation(),
+                            copy(binary.getRightOperand()));
+                }
+                case UNARYOPER -> {
+                    var unary = (UnaryOpInstruction) instruction;
+                    yield new UnaryOpInstruction(unary.getOperation(), copy(unary.getOperand()));
+                }
+                case CALL -> {
+                    var call = (CallInstruction) instruction;
+                    var arguments = call.getArguments().stream().map(this::copy).toList();
+                    var caller = call.getInvocationType() == CallType.NEW ? call.getCaller() : copy(call.getCaller());
+                    yield new CallInstruction(call.getInvocationType(), caller, call.getMethodNameTry().orElse(null),
+                            new ArrayList<>(arguments), call.getReturnType(), call.isIsolated());
+                }
+                case GETFIELD -> {
+                    var getField = (GetFieldInstruction) instruction;
+                    yield new GetFieldInstruction((Operand) copy(getField.getObject()), getField.getField(),
+                            getField.getFieldType());
+                }
+                case PUTFIELD -> {
+                    var putField = (PutFieldInstruction) instruction;
+                    yield new PutFieldInstruction((Operand) copy(putField.getObject()), putField.getField(),
+                            copy(putField.getValue()), putField.getFieldType());
+                }
+                case GOTO -> new GotoInstruction(renameLabel(((GotoInstruction) instruction).getLabel()));
+                case BRANCH -> {
+                    var branch = (CondBranchInstruction) instruction;
+                    CondBranchInstruction copy = branch instanceof SingleOpCondInstruction single ?
+                            new SingleOpCondInstruction((SingleOpInstruction) copy(single.getCondition())) :
+                            new OpCondInstruction((OpInstruction) copy(branch.getCondition()));
+                    copy.setLabel(renameLabel(branch.getLabel()));
+                    yield copy;
+                }
+                case RETURN -> throw new IllegalStateException("Only the last instruction of a callee returns");
+            };
+        }
+
+        /**
+         * @return a copy of the element, where the variables of the callee are renamed and 'this' is the receiver
+         */
+        private Element copy(Element element) {
+            if (element instanceof LiteralElement literal) {
+                return new LiteralElement(literal.getLiteral(), literal.getType());
+            }
+
+            var operand = (Operand) element;
+            if (operand.getName().equals("this")) {
+                return copyOf(receiver);
+            }
+
+            // The classes of static calls are in the table of variables too
+            if (!DataFlowAnalysis.isVariable(operand, callee.getVarTable())
+                    || operand.getType().getTypeOfElement() == ElementType.CLASS) {
+                return copyOf(operand);
+            }
+
+            var name = rename(operand.getName());
+            if (operand instanceof ArrayOperand array) {
+                return new ArrayOperand(name, array.getType(),
+                        array.getIndexOperands().stream().map(this::copy).toList());
+            }
+
+            return new Operand(name, operand.getType());
+        }
+
+        private String rename(String name) {
+            return variables.computeIfAbsent(name, k -> {
+                var renamed = k + "_" + suffix;
+                while (!names.add(renamed)) {
+                    renamed = renamed + "_";
+                }
+                return renamed;
+            });
+        }
+
+        private String renameLabel(String label) {
+            return labels.computeIfAbsent(label, k -> {
+                var renamed = k + "_" + suffix;
+                while (caller.getLabels().containsKey(renamed)) {
+                    renamed = renamed + "_";
+                }
+                return renamed;
+            });
+        }
+
+        private static Element copyOf(Element element) {
+            if (element instanceof LiteralElement literal) {
+                return new LiteralElement(literal.getLiteral(), literal.getType());
+            }
+
+            var operand = (Operand) element;
+            if (operand instanceof ArrayOperand array) {
+                return new ArrayOperand(array.getName(), array.getType(),
+                        array.getIndexOperands().stream().map(Copy::copyOf).toList());
+            }
+
+            return new Operand(operand.getName(), operand.getType());
+        }
+
+        private static int indexOf(List<Instruction> instructions, Instruction instruction) {
+            for (int i = 0; i < instructions.size(); i++) {
+                if (instructions.get(i) == instruction) {
+                    return i;
+                }
+            }
+
+            throw new IllegalStateException("Call is not in its method");
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.ast.AJmmVisitor;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp2024.ast.NodeUtils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static pt.up.fe.comp2024.ast.Kind.*;
+
+/**
+ * Builds the OLLIR class model directly from the AST, without generating and parsing OLLIR code.
+ * <p>
+ * Produces the same classes, methods, labels and temporaries as {@link OllirGeneratorVisitor}, so that the OLLIR
+ * optimizations and the backend can work on either.
+ */
+public class OllirClassBuilder extends AJmmVisitor<Void, Void> {
+
+    private final SymbolTable table;
+    private final CompilationContext context;
+    private final OllirCodeEmitter emitter;
+    private final OllirExprBuilder exprBuilder;
+
+    private ClassUnit classUnit;
+    private String methodName;
+
+    public OllirClassBuilder(SymbolTable table, CompilationContext context) {
+        this.table = table;
+        this.context = context;
+        this.emitter = new OllirCodeEmitter();
+        this.exprBuilder = new OllirExprBuilder(table, context, emitter);
+    }
+
+    /**
+     * Builds the class of the given program, with the variable tables of its methods already filled.
+     */
+    public ClassUnit build(JmmNode root) {
+        classUnit = new ClassUnit();
+        visit(root);
+        classUnit.buildVarTables();
+
+        return classUnit;
+    }
+
+    @Override
+    protected void buildVisitor() {
+        addVisit(PROGRAM, this::visitProgram);
+        addVisit(IMPORT_DECL, this::visitImport);
+        addVisit(CLASS_DECL, this::visitClass);
+        addVisit(VAR_DECL, this::visitVarDecl);
+        addVisit(METHOD_DECL, this::visitMethodDecl);
+        addVisit(MAIN_METHOD_DECL, this::visitMainMethodDecl);
+        addVisit(ASSIGN_STMT, this::visitAssignStmt);
+        addVisit(RETURN_STMT, this::visitReturn);
+        addVisit(EXPR_STMT, this::visitExprStmt);
+        addVisit(IF_ELSE_STMT, this::visitIfElseStmt);
+        addVisit(WHILE_CONDITION, this::visitWhileStmt);
+        setDefaultVisit(this::defaultVisit);
+    }
+
+    private Void visitProgram(JmmNode node, Void unused) {
+        for (var child : node.getChildren()) {
+            visit(child);
+        }
+
+        return null;
+    }
+
+    private Void visitImport(JmmNode node, Void unused) {
+        var value = node.get("value");
+        var parts = value.substring(1, value.length() - 1).split(", ");
+        classUnit.addImport(String.join(".", parts));
+
+        return null;
+    }
+
+    private Void visitClass(JmmNode node, Void unused) {
+        classUnit.setClassName(table.getClassName());
+
+        var superClass = table.getSuper();
+        if (superClass != null && !superClass.isEmpty()) {
+            classUnit.setSuperClass(superClass);
+        }
+
+        for (var field : table.getFields()) {
+            var ollirField = new Field();
+            ollirField.setFieldName(field.getName());
+            ollirField.setFieldType(OptUtils.toOllirTypeObject(field.getType()));
+            ollirField.setFieldAccessModifier(AccessModifier.PUBLIC);
+            classUnit.addField(ollirField);
+        }
+
+        exprBuilder.setVarargsPositions(getVarargsPositions(node));
+
+        for (var child : node.getChildren()) {
+            visit(child);
+        }
+
+        classUnit.addMethod(buildConstructor());
+
+        return null;
+    }
+
+    private Void visitVarDecl(JmmNode node, Void unused) {
+        // Fields are taken from the symbol table, locals are declared by their first use
+        return null;
+    }
+
+    private Void visitMethodDecl(JmmNode node, Void unused) {
+        var name = node.get("name");
+
+        var method = new Method(classUnit);
+        method.setMethodName(name);
+        boolean isPublic = NodeUtils.getBooleanAttribute(node, "isPublic", "false");
+        method.setMethodAccessModifier(isPublic ? AccessModifier.PUBLIC : AccessModifier.DEFAULT);
+        method.setReturnType(OptUtils.toOllirTypeObject(table.getReturnType(name)));
+
+        var params = node.getJmmChild(1).getChildren();
+        if (!params.isEmpty() && VAR_ARG_ARRAY.check(params.get(params.size() - 1))) {
+            method.setVarargs(true);
+        }
+
+        addParams(method, name, 1);
+
+        // Return type and parameters come first
+        buildBody(method, name, node.getChildren().subList(2, node.getNumChildren()));
+
+        return null;
+    }
+
+    private Void visitMainMethodDecl(JmmNode node, Void unused) {
+        var method = new Method(classUnit);
+        method.setMethodName("main");
+        method.setMethodAccessModifier(AccessModifier.PUBLIC);
+        method.setStaticMethod();
+        method.setReturnType(new Type(ElementType.VOID));
+
+        // The JVM only accepts main with a String array, even when the source omits the parameter
+        if (table.getParameters("main").isEmpty()) {
+            var args = new Operand("args", OptUtils.toOllirTypeObject("String", true));
+            args.setParamId(0);
+            method.addParam(args);
+        } else {
+            addParams(method, "main", 0);
+        }
+
+        buildBody(method, "main", node.getChildren());
+
+        return null;
+    }
+
+    private void addParams(Method method, String name, int firstId) {
+        var params = table.getParameters(name);
+
+        for (int i = 0; i < params.size(); i++) {
+            var param = params.get(i);
+            var operand = new Operand(param.getName(), OptUtils.toOllirTypeObject(param.getType()));
+            operand.setParamId(firstId + i);
+            method.addParam(operand);
+        }
+    }
+
+    private void buildBody(Method method, String name, List<JmmNode> stmts) {
+        methodName = name;
+        exprBuilder.setMethodName(name);
+        emitter.setMethod(method);
+
+        for (var stmt : stmts) {
+            visit(stmt);
+        }
+
+        // Void methods may end without a return, and branches may jump past the last statement
+        var instructions = method.getInstructions();
+        boolean endsWithReturn = !instructions.isEmpty()
+                && instructions.get(instructions.size() - 1).getInstType() == InstructionType.RETURN;
+        if (!endsWithReturn || emitter.hasPendingLabels()) {
+            emitter.emit(buildDefaultReturn(method.getReturnType()));
+        }
+
+        classUnit.addMethod(method);
+    }
+
+    private ReturnInstruction buildDefaultReturn(Type returnType) {
+        ReturnInstruction ret;
+
+        switch (returnType.getTypeOfElement()) {
+            case VOID -> ret = new ReturnInstruction();
+            case INT32, BOOLEAN -> ret = new ReturnInstruction(new LiteralElement("0", returnType));
+            // There is no null literal in OLLIR. Only reached after branches that all return, so never executed
+            default -> ret = new ReturnInstruction(exprBuilder.getThis());
+        }
+
+        ret.setReturnType(returnType);
+        return ret;
+    }
+
+    private Method buildConstructor() {
+        var constructor = new Method(classUnit);
+        constructor.setConstructMethod();
+        constructor.setMethodName(table.getClassName());
+        constructor.setReturnType(new Type(ElementType.VOID));
+
+        constructor.addInstr(new CallInstruction(CallType.invokespecial, exprBuilder.getThis(),
+                new LiteralElement("\"<init>\"", new Type(ElementType.STRING)), Collections.emptyList(),
+                new Type(ElementType.VOID), true));
+
+        return constructor;
+    }
+
+    private Void visitAssignStmt(JmmNode node, Void unused) {
+        var lhs = node.getJmmChild(0);
+        var rhs = node.getJmmChild(1);
+
+        if (ARRAY_ACCESS_EXPR.check(lhs)) {
+            var array = (Operand) exprBuilder.toElement(lhs.getJmmChild(0), null);
+            var index = exprBuilder.toElement(lhs.getJmmChild(1), new Type(ElementType.INT32));
+            var elementType = ((ArrayType) array.getType()).getElementType();
+            var value = exprBuilder.toElement(rhs, elementType);
+
+            var slot = new ArrayOperand(array.getName(), elementType, List.of(index));
+            emitter.emit(new AssignInstruction(slot, elementType, new SingleOpInstruction(value)));
+            return null;
+        }
+
+        var name = lhs.get("name");
+
+        var local = exprBuilder.findLocal(name);
+        if (local.isPresent()) {
+            var type = OptUtils.toOllirTypeObject(local.get().getType());
+            var value = exprBuilder.visit(rhs, type);
+            emitter.emit(new AssignInstruction(new Operand(name, type), type, value));
+            return null;
+        }
+
+        var field = exprBuilder.findField(name).orElseThrow(() ->
+                new RuntimeException("Could not find variable '" + name + "' in method '" + methodName + "'"));
+        var type = OptUtils.toOllirTypeObject(field.getType());
+        var value = exprBuilder.toElement(rhs, type);
+        emitter.emit(new PutFieldInstruction(exprBuilder.getThis(), new Operand(name, type), value,
+                new Type(ElementType.VOID)));
+
+        return null;
+    }
+
+    private Void visitReturn(JmmNode node, Void unused) {
+        var returnType = OptUtils.toOllirTypeObject(table.getReturnType(methodName));
+
+        var ret = new ReturnInstruction(exprBuilder.toElement(node.getJmmChild(0), returnType));
+        ret.setReturnType(returnType);
+        emitter.emit(ret);
+
+        return null;
+    }
+
+    private Void visitExprStmt(JmmNode node, Void unused) {
+        var instruction = exprBuilder.visit(node.getJmmChild(0), null);
+
+        // Other expressions have no effect, besides the ones already emitted while building them
+        if (instruction instanceof CallInstruction) {
+            emitter.emit(instruction);
+        }
+
+        return null;
+    }
+
+    private Void visitIfElseStmt(JmmNode node, Void unused) {
+        var ifStmt = node.getJmmChild(0);
+        var label = context.getIf();
+
+        exprBuilder.emitBranch(ifStmt.getJmmChild(0), label);
+
+        visit(ifStmt.getJmmChild(2));
+        emitter.emit(new GotoInstruction("end" + label));
+
+        emitter.label(label);
+        visit(ifStmt.getJmmChild(1));
+        emitter.label("end" + label);
+
+        return null;
+    }
+
+    private Void visitWhileStmt(JmmNode node, Void unused) {
+        var whileStmt = node.getJmmChild(0);
+        var id = context.getWhile();
+
+        emitter.label("whileCond" + id);
+        exprBuilder.emitBranch(whileStmt.getJmmChild(0), "whileLoop" + id);
+        emitter.emit(new GotoInstruction("whileEnd" + id));
+
+        emitter.label("whileLoop" + id);
+        visit(whileStmt.getJmmChild(1));
+        emitter.emit(new GotoInstruction("whileCond" + id));
+        emitter.label("whileEnd" + id);
+
+        return null;
+    }
+
+    private Map<String, Integer> getVarargsPositions(JmmNode classDecl) {
+        Map<String, Integer> positions = new HashMap<>();
+
+        for (var method : classDecl.getChildren(METHOD_DECL)) {
+            var params = method.getJmmChild(1).getChildren();
+            for (int i = 0; i < params.size(); i++) {
+                if (VAR_ARG_ARRAY.check(params.get(i))) {
+                    positions.put(method.get("name"), i);
+                }
+            }
+        }
+
+        return positions;
+    }
+
+    /**
+     * Default visitor, visits every child. Used for block statements.
+     */
+    private Void defaultVisit(JmmNode node, Void unused) {
+        for (var child : node.getChildren()) {
+            visit(child);
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,63 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.ClassUnit;
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp.jmm.report.Report;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * OLLIR result for a class that was not parsed from OLLIR code, such as one built directly from the AST or changed by
+ * the optimizations.
+ * <p>
+ * The public constructors of {@link OllirResult} always parse the code given, so an empty class is parsed for the
+ * superclass and every getter is overridden.
+ */
+class OllirClassResult extends OllirResult {
+
+    private static final String EMPTY_CLASS = "Empty {}";
+
+    private final String ollirCode;
+    private final ClassUnit ollirClass;
+    private final SymbolTable symbolTable;
+    private final List<Report> reports;
+    private final Map<String, String> config;
+
+    OllirClassResult(String ollirCode, ClassUnit ollirClass, SymbolTable symbolTable, List<Report> reports,
+                     Map<String, String> config) {
+        super(EMPTY_CLASS, config);
+
+        this.ollirCode = ollirCode;
+        this.ollirClass = ollirClass;
+        this.symbolTable = symbolTable;
+        this.reports = reports;
+        this.config = config;
+    }
+
+    @Override
+    public String getOllirCode() {
+        return ollirCode;
+    }
+
+    @Override
+    public ClassUnit getOllirClass() {
+        return ollirClass;
+    }
+
+    @Override
+    public SymbolTable getSymbolTable() {
+        return symbolTable;
+    }
+
+    @Override
+    public List<Report> getReports() {
+        return reports;
+    }
+
+    @Override
+    public Map<String, String> getConfig() {
+        return config;
+    }
+}
@@ -0,0 +1,45 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.Instruction;
+import org.specs.comp.ollir.Method;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Appends instructions to the method being built. Labels are attached to the next instruction that is emitted.
+ */
+public class OllirCodeEmitter {
+
+    private Method method;
+    private final List<String> pendingLabels = new ArrayList<>();
+
+    public void setMethod(Method method) {
+        this.method = method;
+        pendingLabels.clear();
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public void emit(Instruction instruction) {
+        for (var label : pendingLabels) {
+            method.addLabel(label, instruction);
+        }
+        pendingLabels.clear();
+
+        method.addInstr(instruction);
+    }
+
+    public void label(String label) {
+        pendingLabels.add(label);
+    }
+
+    /**
+     * @return true if there are labels still waiting for an instruction
+     */
+    public boolean hasPendingLabels() {
+        return !pendingLabels.isEmpty();
+    }
+}
@@ -0,0 +1,431 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.analysis.table.Symbol;
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.ast.AJmmVisitor;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp2024.symboltable.JmmSymbolTable;
+import pt.up.fe.comp2024.symboltable.ResolvedSymbol;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static pt.up.fe.comp2024.ast.Kind.*;
+
+/**
+ * Builds OLLIR instructions from expression JmmNodes, directly as objects of the OLLIR class model.
+ * <p>
+ * Visiting an expression returns the instruction that computes its value. Any instruction needed before that one
+ * (temporaries, calls, short-circuit branches) is emitted as a side effect. The argument of the visit is the type the
+ * parent expects, used to type calls to methods that are not declared in the class; it can be null.
+ */
+public class OllirExprBuilder extends AJmmVisitor<Type, Instruction> {
+
+    private static final Type INT_TYPE = new Type(ElementType.INT32);
+    private static final Type BOOLEAN_TYPE = new Type(ElementType.BOOLEAN);
+
+    private static final Map<String, OperationType> ARITHMETIC_OPS = Map.of(
+            "+", OperationType.ADD,
+            "-", OperationType.SUB,
+            "*", OperationType.MUL,
+            "/", OperationType.DIV);
+
+    private static final Set<String> COMPARISON_OPS = Set.of("<", "<=", ">", ">=");
+
+    private final SymbolTable table;
+    private final CompilationContext context;
+    private final OllirCodeEmitter emitter;
+
+    private Map<String, Integer> varargsPositions = Collections.emptyMap();
+    private String methodName;
+
+    public OllirExprBuilder(SymbolTable table, CompilationContext context, OllirCodeEmitter emitter) {
+        this.table = table;
+        this.context = context;
+        this.emitter = emitter;
+    }
+
+    /**
+     * @param varargsPositions for each method of the class with a variable number of arguments, the index of its
+     *                         varargs parameter
+     */
+    public void setVarargsPositions(Map<String, Integer> varargsPositions) {
+        this.varargsPositions = varargsPositions;
+    }
+
+    public void setMethodName(String methodName) {
+        this.methodName = methodName;
+    }
+
+    @Override
+    protected void buildVisitor() {
+        addVisit(PAREN_EXPR, this::visitParen);
+        addVisit(THIS_EXPR, this::visitThis);
+        addVisit(METHOD_CALL_EXPR, this::visitMethodCall);
+        addVisit(NEW_CLASS_EXPR, this::visitNewClass);
+        addVisit(VAR_REF_EXPR, this::visitVarRef);
+        addVisit(BINARY_EXPR, this::visitBinary);
+        addVisit(NOT_EXPR, this::visitNot);
+        addVisit(INTEGER_LITERAL, this::visitInteger);
+        addVisit(BOOLEAN_LITERAL, this::visitBoolean);
+        addVisit(ARRAY_ACCESS_EXPR, this::visitArrayAccess);
+        addVisit(NEW_ARRAY_EXPR, this::visitNewArray);
+        addVisit(ARRAY_LENGTH_EXPR, this::visitArrayLength);
+        addVisit(ARRAY_INIT_EXPRESSION, this::visitArrayInit);
+    }
+
+    /**
+     * Builds the expression and, if its value is not already a single operand or literal, stores it in a new
+     * temporary.
+     */
+    public Element toElement(JmmNode expr, Type expected) {
+        var instruction = visit(expr, expected);
+
+        if (instruction instanceof SingleOpInstruction singleOp && !(singleOp.getSingleOperand() instanceof ArrayOperand)) {
+            return singleOp.getSingleOperand();
+        }
+
+        var type = getResultType(instruction);
+        var temp = new Operand(context.getTemp(), type);
+        emitter.emit(new AssignInstruction(temp, type, instruction));
+
+        return temp;
+    }
+
+    /**
+     * Emits a branch to the given label, taken when the condition is true.
+     */
+    public void emitBranch(JmmNode condition, String label) {
+        while (PAREN_EXPR.check(condition)) {
+            condition = condition.getJmmChild(0);
+        }
+
+        CondBranchInstruction branch;
+        if (BINARY_EXPR.check(condition) && COMPARISON_OPS.contains(condition.get("op"))) {
+            branch = new OpCondInstruction(buildComparison(condition));
+        } else {
+            branch = new SingleOpCondInstruction(new SingleOpInstruction(toElement(condition, BOOLEAN_TYPE)));
+        }
+
+        branch.setLabel(label);
+        emitter.emit(branch);
+    }
+
+    public static Type getResultType(Instruction instruction) {
+        return switch (instruction.getInstType()) {
+            case NOPER -> ((SingleOpInstruction) instruction).getSingleOperand().getType();
+            case BINARYOPER -> ((BinaryOpInstruction) instruction).getOperation().getTypeInfo();
+            case UNARYOPER -> ((UnaryOpInstruction) instruction).getOperation().getTypeInfo();
+            case CALL -> ((CallInstruction) instruction).getReturnType();
+            case GETFIELD -> ((GetFieldInstruction) instruction).getField().getType();
+            default -> throw new RuntimeException("Instruction '" + instruction.getInstType() + "' has no value");
+        };
+    }
+
+    public Operand getThis() {
+        return new Operand("this", new ClassType(ElementType.THIS, table.getClassName()));
+    }
+
+    /**
+     * @return the local variable or parameter with the given name in the current method, if any
+     */
+    public Optional<Symbol> findLocal(String name) {
+        return ((JmmSymbolTable) table).findVariable(methodName, name).map(ResolvedSymbol::getSymbol);
+    }
+
+    public Optional<Symbol> findField(String name) {
+        return ((JmmSymbolTable) table).findField(name).map(ResolvedSymbol::getSymbol);
+    }
+
+    private Instruction visitParen(JmmNode node, Type expected) {
+        return visit(node.getJmmChild(0), expected);
+    }
+
+    private Instruction visitThis(JmmNode node, Type expected) {
+        return new SingleOpInstruction(getThis());
+    }
+
+    private Instruction visitInteger(JmmNode node, Type expected) {
+        return new SingleOpInstruction(new LiteralElement(node.get("value"), new Type(ElementType.INT32)));
+    }
+
+    private Instruction visitBoolean(JmmNode node, Type expected) {
+        var value = node.get("value").equals("true") ? "1" : "0";
+        return new SingleOpInstruction(new LiteralElement(value, new Type(ElementType.BOOLEAN)));
+    }
+
+    private Instruction visitVarRef(JmmNode node, Type expected) {
+        var name = node.get("name");
+
+        var local = findLocal(name);
+        if (local.isPresent()) {
+            return new SingleOpInstruction(new Operand(name, OptUtils.toOllirTypeObject(local.get().getType())));
+        }
+
+        var field = findField(name);
+        if (field.isPresent()) {
+            var type = OptUtils.toOllirTypeObject(field.get().getType());
+            return new GetFieldInstruction(getThis(), new Operand(name, type), type);
+        }
+
+        // Imported or current class, only valid as the target of a static call
+        return new SingleOpInstruction(new Operand(name, new ClassType(ElementType.CLASS, name)));
+    }
+
+    private Instruction visitBinary(JmmNode node, Type expected) {
+        var op = node.get("op");
+
+        if (op.equals("&&") || op.equals("||")) {
+            return buildShortCircuit(node, op.equals("&&"));
+        }
+
+        if (COMPARISON_OPS.contains(op)) {
+            return buildComparison(node);
+        }
+
+        var opType = ARITHMETIC_OPS.get(op);
+        if (opType == null) {
+            throw new RuntimeException("Unknown operator '" + op + "' of expression '" + node + "'");
+        }
+
+        var left = toElement(node.getJmmChild(0), INT_TYPE);
+        var right = toElement(node.getJmmChild(1), INT_TYPE);
+
+        return new BinaryOpInstruction(left, new Operation(opType, new Type(ElementType.INT32)), right);
+    }
+
+    /**
+     * The backend only implements '&lt;' and '&gt;=', the other comparisons swap their operands.
+     */
+    private BinaryOpInstruction buildComparison(JmmNode node) {
+        var op = node.get("op");
+
+        var left = toElement(node.getJmmChild(0), INT_TYPE);
+        var right = toElement(node.getJmmChild(1), INT_TYPE);
+        var type = new Type(ElementType.BOOLEAN);
+
+        return switch (op) {
+            case "<" -> new BinaryOpInstruction(left, new Operation(OperationType.LTH, type), right);
+            case ">=" -> new BinaryOpInstruction(left, new Operation(OperationType.GTE, type), right);
+            case ">" -> new BinaryOpInstruction(right, new Operation(OperationType.LTH, type), left);
+            case "<=" -> new BinaryOpInstruction(right, new Operation(OperationType.GTE, type), left);
+            default -> throw new RuntimeException("Unknown comparison '" + op + "' of expression '" + node + "'");
+        };
+    }
+
+    /**
+     * Only evaluates the right operand when the left one does not decide the result.
+     */
+    private Instruction buildShortCircuit(JmmNode node, boolean isAnd) {
+        var type = new Type(ElementType.BOOLEAN);
+        var result = new Operand(context.getTemp(), type);
+        var label = context.getIf();
+
+        var left = toElement(node.getJmmChild(0), BOOLEAN_TYPE);
+        var branch = new SingleOpCondInstruction(new SingleOpInstruction(left));
+        branch.setLabel(label);
+        emitter.emit(branch);
+
+        // Left operand is false
+        if (isAnd) {
+            emitter.emit(new AssignInstruction(result, type, new SingleOpInstruction(new LiteralElement("0", type))));
+        } else {
+            emitter.emit(new AssignInstruction(result, type, visit(node.getJmmChild(1), BOOLEAN_TYPE)));
+        }
+        emitter.emit(new GotoInstruction("end" + label));
+
+        // Left operand is true
+        emitter.label(label);
+        if (isAnd) {
+            emitter.emit(new AssignInstruction(result, type, visit(node.getJmmChild(1), BOOLEAN_TYPE)));
+        } else {
+            emitter.emit(new AssignInstruction(result, type, new SingleOpInstruction(new LiteralElement("1", type))));
+        }
+        emitter.label("end" + label);
+
+        return new SingleOpInstruction(result);
+    }
+
+    private Instruction visitNot(JmmNode node, Type expected) {
+        var operand = toElement(node.getJmmChild(0), BOOLEAN_TYPE);
+        return new UnaryOpInstruction(new Operation(OperationType.NOTB, new Type(ElementType.BOOLEAN)), operand);
+    }
+
+    private Instruction visitArrayAccess(JmmNode node, Type expected) {
+        var array = (Operand) toElement(node.getJmmChild(0), null);
+        var index = toElement(node.getJmmChild(1), INT_TYPE);
+
+        var elementType = ((ArrayType) array.getType()).getElementType();
+        return new SingleOpInstruction(new ArrayOperand(array.getName(), elementType, List.of(index)));
+    }
+
+    private Instruction visitArrayLength(JmmNode node, Type expected) {
+        var array = toElement(node.getJmmChild(0), null);
+        return new CallInstruction(CallType.arraylength, array, new Type(ElementType.INT32));
+    }
+
+    private Instruction visitNewArray(JmmNode node, Type expected) {
+        var elementName = node.getJmmChild(0).get("name");
+        var size = toElement(node.getJmmChild(1), INT_TYPE);
+
+        return newArray(elementName, size);
+    }
+
+    private Instruction visitArrayInit(JmmNode node, Type expected) {
+        var elements = node.getChildren();
+        var array = newArrayTemp("int", elements, context.getTemp());
+
+        return new SingleOpInstruction(array);
+    }
+
+    private CallInstruction newArray(String elementName, Element size) {
+        var arrayType = OptUtils.toOllirTypeObject(elementName, true);
+        return new CallInstruction(CallType.NEW, new Operand("array", new ArrayType()), List.of(size), arrayType);
+    }
+
+    /**
+     * Stores the given expressions in a new array, assigned to a temporary with the given name.
+     */
+    private Operand newArrayTemp(String elementName, List<JmmNode> elements, String name) {
+        var values = new ArrayList<Element>();
+        for (var element : elements) {
+            values.add(toElement(element, OptUtils.toOllirTypeObject(elementName, false)));
+        }
+
+        var size = new LiteralElement(Integer.toString(values.size()), new Type(ElementType.INT32));
+        var allocation = newArray(elementName, size);
+        var arrayType = allocation.getReturnType();
+
+        var array = new Operand(name, arrayType);
+        emitter.emit(new AssignInstruction(array, arrayType, allocation));
+
+        var elementType = ((ArrayType) arrayType).getElementType();
+        for (int i = 0; i < values.size(); i++) {
+            var index = new LiteralElement(Integer.toString(i), new Type(ElementType.INT32));
+            var slot = new ArrayOperand(name, elementType, List.of(index));
+            emitter.emit(new AssignInstruction(slot, elementType, new SingleOpInstruction(values.get(i))));
+        }
+
+        return array;
+    }
+
+    private Instruction visitNewClass(JmmNode node, Type expected) {
+        var className = node.get("name");
+        var type = new ClassType(ElementType.OBJECTREF, className);
+
+        var object = new Operand(context.getTemp(), type);
+        var allocation = new CallInstruction(CallType.NEW, new Operand(className, type), Collections.emptyList(), type);
+        emitter.emit(new AssignInstruction(object, type, allocation));
+        emitter.emit(new CallInstruction(CallType.invokespecial, object, new LiteralElement("\"<init>\"",
+                new Type(ElementType.STRING)), Collections.emptyList(), new Type(ElementType.VOID), true));
+
+        return new SingleOpInstruction(object);
+    }
+
+    private Instruction visitMethodCall(JmmNode node, Type expected) {
+        var name = node.get("name");
+
+        JmmNode receiver = null;
+        JmmNode argsNode = null;
+        for (var child : node.getChildren()) {
+            if (child.getKind().equals("Args")) {
+                argsNode = child;
+            } else {
+                receiver = child;
+            }
+        }
+        var argNodes = argsNode == null ? Collections.<JmmNode>emptyList() : argsNode.getChildren();
+
+        // Calls on an imported class, or on the current class, by name
+        boolean isStatic = receiver != null && VAR_REF_EXPR.check(receiver)
+                && findLocal(receiver.get("name")).isEmpty() && findField(receiver.get("name")).isEmpty()
+                && (table.getImports().contains(receiver.get("name"))
+                || receiver.get("name").equals(table.getClassName()));
+
+        Element caller;
+        boolean isOwnClass;
+        if (isStatic) {
+            var className = receiver.get("name");
+            caller = new Operand(className, new ClassType(ElementType.CLASS, className));
+            isOwnClass = className.equals(table.getClassName());
+        } else if (receiver == null) {
+            caller = getThis();
+            isOwnClass = true;
+        } else {
+            caller = toElement(receiver, null);
+            isOwnClass = caller.getType() instanceof ClassType classType
+                    && classType.getName().equals(table.getClassName());
+        }
+
+        boolean isDeclared = isOwnClass && table.getMethods().contains(name);
+        var args = buildArguments(name, argNodes, isDeclared);
+
+        Type returnType;
+        if (isDeclared) {
+            returnType = OptUtils.toOllirTypeObject(table.getReturnType(name));
+        } else if (expected != null) {
+            returnType = expected;
+        } else {
+            returnType = new Type(ElementType.VOID);
+        }
+
+        var methodName = new LiteralElement("\"" + name + "\"", new Type(ElementType.STRING));
+        var callType = isStatic ? CallType.invokestatic : CallType.invokevirtual;
+
+        return new CallInstruction(callType, caller, methodName, args, returnType, expected == null);
+    }
+
+    private List<Element> buildArguments(String methodName, List<JmmNode> argNodes, boolean isDeclared) {
+        var params = isDeclared ? table.getParameters(methodName) : Collections.<Symbol>emptyList();
+        var varargsPosition = isDeclared ? varargsPositions.get(methodName) : null;
+
+        var args = new ArrayList<Element>();
+        for (int i = 0; i < argNodes.size(); i++) {
+            if (varargsPosition != null && i == varargsPosition) {
+                args.add(buildVarargs(argNodes.subList(i, argNodes.size())));
+                return args;
+            }
+
+            var expected = i < params.size() ? OptUtils.toOllirTypeObject(params.get(i).getType()) : INT_TYPE;
+            args.add(toElement(argNodes.get(i), expected));
+        }
+
+        // No argument given for the varargs parameter
+        if (varargsPosition != null && varargsPosition == argNodes.size()) {
+            args.add(buildVarargs(Collections.emptyList()));
+        }
+
+        return args;
+    }
+
+    /**
+     * An array passed in the varargs position is used as is, other arguments are packed in a new array.
+     */
+    private Element buildVarargs(List<JmmNode> argNodes) {
+        if (argNodes.size() == 1) {
+            var arg = argNodes.get(0);
+            var element = toElement(arg, OptUtils.toOllirTypeObject("int", true));
+            if (element.getType() instanceof ArrayType) {
+                return element;
+            }
+
+            // Reuse the evaluated value, instead of evaluating the argument again
+            var arrayType = OptUtils.toOllirTypeObject("int", true);
+            var array = new Operand("__varargs_array_" + context.getNextVarArgNum(), arrayType);
+            var size = new LiteralElement("1", new Type(ElementType.INT32));
+            emitter.emit(new AssignInstruction(array, arrayType, newArray("int", size)));
+
+            var index = new LiteralElement("0", new Type(ElementType.INT32));
+            var slot = new ArrayOperand(array.getName(), new Type(ElementType.INT32), List.of(index));
+            emitter.emit(new AssignInstruction(slot, slot.getType(), new SingleOpInstruction(element)));
+            return array;
+        }
+
+        return newArrayTemp("int", argNodes, "__varargs_array_" + context.getNextVarArgNum());
+    }
+}
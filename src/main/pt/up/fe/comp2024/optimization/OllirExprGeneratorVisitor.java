@@ -29,8 +29,11 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
 
     private final SymbolTable table;
 
-    public OllirExprGeneratorVisitor(SymbolTable table) {
+    private final CompilationContext context;
+
+    public OllirExprGeneratorVisitor(SymbolTable table, CompilationContext context) {
         this.table = table;
+        this.context = context;
     }
 
     @Override
@@ -110,7 +113,7 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
 
                         Type resType = TypeUtils.getExprType(arg, table);
                         String resOllirType = OptUtils.toOllirType(resType);
-                        String tempVar = OptUtils.getTemp() + resOllirType;
+                        String tempVar = context.getTemp() + resOllirType;
                         computation.append(tempVar).append(SPACE).append(ASSIGN).append(resOllirType).append(SPACE).append(expr.getCode());
                         code.append(tempVar);
 
@@ -119,14 +122,14 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
                         if(!arg.get("index").contains("MethodCallExpr") && !arg.get("index").contains("ArrayAccessExpr")){
                             Type resType = TypeUtils.getExprType(arg, table);
                             String resOllirType = OptUtils.toOllirType(resType);
-                            String tempVar = OptUtils.getTemp() + resOllirType;
+                            String tempVar = context.getTemp() + resOllirType;
                             computation.append(tempVar).append(SPACE).append(ASSIGN).append(resOllirType).append(SPACE).append(expr.getCode()).append(";\n");
                             code.append(tempVar);
                         }
                         else{
                             Type resType = TypeUtils.getExprType(arg, table);
                             String resOllirType = OptUtils.toOllirType(resType);
-                            String tempVar = OptUtils.getTemp() + resOllirType;
+                            String tempVar = context.getTemp() + resOllirType;
                             computation.append(tempVar).append(SPACE).append(ASSIGN).append(resOllirType).append(SPACE).append(String.format("%s[%s]%s",arg.getJmmChild(0).get("name"),expr.getCode(),resOllirType)).append(";\n");
                             code.append(tempVar);
                         }
@@ -203,7 +206,7 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
         StringBuilder code = new StringBuilder();
         StringBuilder computation = new StringBuilder();
         var resOllirType = node.get("name");
-        var tempVar = OptUtils.getTemp() + "." +resOllirType;
+        var tempVar = context.getTemp() + "." +resOllirType;
         computation.append(tempVar).append(SPACE).append(ASSIGN).append(".").append(resOllirType).append(SPACE).append("new(").append(resOllirType).append(")").append(".").append(resOllirType).append(END_STMT);
         computation.append(String.format("invokespecial(%s, \"<init>\").V", tempVar)).append(END_STMT);
         code.append(tempVar);
@@ -220,7 +223,7 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
 
             if(node.getJmmChild(1).isInstance(METHOD_CALL_EXPR)){
                 String type = OptUtils.toOllirType(TypeUtils.getExprType(node,table));
-                String tempVar = OptUtils.getTemp() + type;
+                String tempVar = context.getTemp() + type;
                 String computation = index.getComputation();
                 computation += tempVar + SPACE + ASSIGN + type + SPACE + index.getCode();
                 code = tempVar;
@@ -228,7 +231,7 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
             }
             if(node.getJmmChild(1).isInstance(ARRAY_ACCESS_EXPR)){
                 String type = OptUtils.toOllirType(TypeUtils.getExprType(node,table));
-                String tempVar = OptUtils.getTemp() + type;
+                String tempVar = context.getTemp() + type;
                 String computation = index.getComputation();
                 computation += tempVar + SPACE + ASSIGN + type + SPACE + index.getCode() + ";\n";
                 code = tempVar;
@@ -258,7 +261,7 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
                         else{
                             Type fieldType = TypeUtils.getExprType(node, table);
                             String fieldOllirType = OptUtils.toOllirType(fieldType);
-                            String tempVar = OptUtils.getTemp() + fieldOllirType;
+                            String tempVar = context.getTemp() + fieldOllirType;
                             String fieldName = node.get("name");
 
                             code = tempVar + SPACE + ASSIGN + fieldOllirType + SPACE + String.format("getfield(this, %s)", fieldName + fieldOllirType) + fieldOllirType + END_STMT;
@@ -268,7 +271,7 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
                     } else {
                         Type fieldType = TypeUtils.getExprType(node, table);
                         String fieldOllirType = OptUtils.toOllirType(fieldType);
-                        String tempVar = OptUtils.getTemp() + fieldOllirType;
+                        String tempVar = context.getTemp() + fieldOllirType;
                         String fieldName = node.get("name");
 
                         code = tempVar + SPACE + ASSIGN + fieldOllirType + SPACE + String.format("getfield(this, %s)", fieldName + fieldOllirType) + fieldOllirType + END_STMT;
@@ -312,9 +315,9 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
             String resOllirType = OptUtils.toOllirType(resType);
 
             // Generate temporary variables for both results
-            String code1 = OptUtils.getTemp() + resOllirType;
-            String code2 = OptUtils.getTemp() + resOllirType;
-            String code3 = OptUtils.getTemp() + resOllirType;
+            String code1 = context.getTemp() + resOllirType;
+            String code2 = context.getTemp() + resOllirType;
+            String code3 = context.getTemp() + resOllirType;
 
             computation.append(code1).append(SPACE).append(ASSIGN).append(resOllirType).append(SPACE).append(lhs.getCode());
 
@@ -331,12 +334,12 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
 
             Type resType = TypeUtils.getExprType(node, table);
             String resOllirType = OptUtils.toOllirType(resType);
-            String code = OptUtils.getTemp() + resOllirType;
+            String code = context.getTemp() + resOllirType;
             computation.append(code).append(SPACE).append(ASSIGN).append(resOllirType).append(SPACE).append(lhs.getCode());
 
             Type resType2 = TypeUtils.getExprType(node, table);
             String resOllirType2 = OptUtils.toOllirType(resType);
-            String code2 = OptUtils.getTemp() + resOllirType;
+            String code2 = context.getTemp() + resOllirType;
 
             computation.append(code2).append(SPACE)
                     .append(ASSIGN).append(resOllirType2).append(SPACE)
@@ -349,12 +352,12 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
 
             Type resType = TypeUtils.getExprType(node, table);
             String resOllirType = OptUtils.toOllirType(resType);
-            String code = OptUtils.getTemp() + resOllirType;
+            String code = context.getTemp() + resOllirType;
             computation.append(code).append(SPACE).append(ASSIGN).append(resOllirType).append(SPACE).append(rhs.getCode());
 
             Type resType2 = TypeUtils.getExprType(node, table);
             String resOllirType2 = OptUtils.toOllirType(resType);
-            String code2 = OptUtils.getTemp() + resOllirType;
+            String code2 = context.getTemp() + resOllirType;
 
             computation.append(code2).append(SPACE)
                     .append(ASSIGN).append(resOllirType2).append(SPACE)
@@ -397,7 +400,7 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
 
         Type resType = TypeUtils.getExprType(node, table);
         String resOllirType = OptUtils.toOllirType(resType);
-        String code = OptUtils.getTemp() + resOllirType;
+        String code = context.getTemp() + resOllirType;
 
         computation.append(code).append(SPACE)
                 .append(ASSIGN).append(resOllirType).append(SPACE)
@@ -416,7 +419,7 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
 
         Type resType = TypeUtils.getExprType(node, table);
         String resOllirType = OptUtils.toOllirType(resType);
-        String tempVar = OptUtils.getTemp() + resOllirType;
+        String tempVar = context.getTemp() + resOllirType;
         computation.append(tempVar).append(SPACE).append(ASSIGN).append(resOllirType)
                 .append(SPACE).append("!").append(resOllirType).append(SPACE)
                 .append(expr.getCode()).append(END_STMT);
@@ -470,7 +473,7 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
 
         computation.append(array.getComputation());
 
-        String temp = OptUtils.getTemp() + ".i32";
+        String temp = context.getTemp() + ".i32";
 
 
         computation.append(temp).append(SPACE)
@@ -487,7 +490,7 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
 
         StringBuilder computation = new StringBuilder();
 
-        var ifcondition = OptUtils.getIf();
+        var ifcondition = context.getIf();
 
         var conditionExprResult = visit(node.getJmmChild(0));
 
@@ -496,7 +499,7 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
         if(node.getJmmChild(0).isInstance(METHOD_CALL_EXPR)){
             Type resType = TypeUtils.getExprType(node.getJmmChild(0), table);
             String resOllirType = OptUtils.toOllirType(resType);
-            String tmp =OptUtils.getTemp() + resOllirType;
+            String tmp =context.getTemp() + resOllirType;
             computation.append(tmp).append(SPACE)
                     .append(ASSIGN).append(resOllirType).append(SPACE)
                     .append(conditionExprResult.getCode());
@@ -506,7 +509,7 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
             computation.append(String.format("if (%s) goto %s;",conditionExprResult.getCode(),ifcondition)).append("\n");
         }
 
-        var tempvar = OptUtils.getTemp();
+        var tempvar = context.getTemp();
 
         computation.append(tempvar + ".bool ").append(ASSIGN + ".bool ").append("0.bool").append(";\n");
 
@@ -518,7 +521,7 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
 
         computation.append(rhs.getComputation());
 
-        var tempvar2 = OptUtils.getTemp();
+        var tempvar2 = context.getTemp();
         if(rhs.getCode().contains(";")){
             computation.append(tempvar2 + ".bool ").append(ASSIGN + ".bool ").append(rhs.getCode());
 
@@ -540,12 +543,12 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
         StringBuilder code = new StringBuilder();
         StringBuilder computation = new StringBuilder();
 
-        String tmp = OptUtils.getTemp() + ".array.i32";
+        String tmp = context.getTemp() + ".array.i32";
         computation.append(tmp).append(SPACE)
                 .append(ASSIGN).append(".array.i32").append(SPACE)
                 .append(String.format("new(array, %s.i32).array.i32;",jmmNode.getChildren().size())).append("\n");
 
-        String vararg = OptUtils.getVararg();
+        String vararg = context.getVararg();
 
         computation.append(vararg).append(SPACE)
                 .append(ASSIGN).append(".array.i32").append(SPACE)
@@ -582,13 +585,13 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
         var args = node.getAncestor("Args").orElseThrow();
         var arg_size = args.getChildren().size() - i;
 
-        String tempVar = OptUtils.getTemp() + ".array.i32";
+        String tempVar = context.getTemp() + ".array.i32";
         computation.append(tempVar).append(SPACE).
                 append(ASSIGN).append(".array.i32").append(SPACE).
                 append("new(array, ").append(arg_size).append(".i32).array.i32;\n");
 
 
-        String vararg = OptUtils.getVararg();
+        String vararg = context.getVararg();
 
         computation.append(vararg).append(SPACE)
                 .append(ASSIGN).append(".array.i32").append(SPACE)
@@ -32,11 +32,14 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
 
     private final SymbolTable table;
 
+    private final CompilationContext context;
+
     private final OllirExprGeneratorVisitor exprVisitor;
 
-    public OllirGeneratorVisitor(SymbolTable table) {
+    public OllirGeneratorVisitor(SymbolTable table, CompilationContext context) {
         this.table = table;
-        exprVisitor = new OllirExprGeneratorVisitor(table);
+        this.context = context;
+        exprVisitor = new OllirExprGeneratorVisitor(table, context);
     }
 
 
@@ -292,7 +295,7 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
             if(node.getJmmChild(0).getKind().equals("MethodCallExpr")){
                 Type resType = TypeUtils.getExprType(node.getJmmChild(0), table);
                 String resOllirType = OptUtils.toOllirType(resType);
-                String tmp =OptUtils.getTemp() + resOllirType;
+                String tmp =context.getTemp() + resOllirType;
                 code.append(tmp).append(SPACE)
                         .append(ASSIGN).append(resOllirType).append(SPACE)
                         .append(expr.getCode());
@@ -323,7 +326,7 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
 
         var variable_type = TypeUtils.getExprType(node.getJmmChild(0).getJmmChild(0),table);
         if(variable_type.getName().equals(table.getClassName())){
-            var tmp = OptUtils.getTemp();
+            var tmp = context.getTemp();
             Type function_type = table.getReturnType(node.getJmmChild(0).get("name"));
             String ollir_type = OptUtils.toOllirType(function_type);
             code.append(String.format("%s%s :=%s %s",tmp,ollir_type,ollir_type,exprResult.getCode()));
@@ -339,13 +342,13 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
         var conditionExpr = node.getJmmChild(0).getJmmChild(0);
         var conditionExprResult = exprVisitor.visit(conditionExpr);
         code.append(conditionExprResult.getComputation());
-        var ifcondition = OptUtils.getIf();
+        var ifcondition = context.getIf();
 
         if(conditionExpr.isInstance(METHOD_CALL_EXPR)){
 
             Type resType = TypeUtils.getExprType(conditionExpr, table);
             String resOllirType = OptUtils.toOllirType(resType);
-            String tmp =OptUtils.getTemp() + resOllirType;
+            String tmp =context.getTemp() + resOllirType;
             code.append(tmp).append(SPACE)
                     .append(ASSIGN).append(resOllirType).append(SPACE)
                     .append(conditionExprResult.getCode());
@@ -379,7 +382,7 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
     private String visitWhileStmt(JmmNode node, Void unused) {
         StringBuilder code = new StringBuilder();
 
-        var whilecounter = OptUtils.getWhile();
+        var whilecounter = context.getWhile();
 
         code.append(String.format("whileCond%s:",whilecounter)).append(NL);
 
@@ -0,0 +1,196 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.*;
+
+import java.util.stream.Collectors;
+
+/**
+ * Prints an OLLIR class model as OLLIR code, in the same format generated by {@link OllirGeneratorVisitor}.
+ */
+public class OllirPrinter {
+
+    private static final String NL = "\n";
+    private static final String END_STMT = ";\n";
+
+    public static String print(ClassUnit classUnit) {
+        var code = new StringBuilder();
+
+        for (var imp : classUnit.getImports()) {
+            code.append("import ").append(imp).append(END_STMT);
+        }
+
+        code.append(classUnit.getClassName());
+        if (classUnit.getSuperClass() != null) {
+            code.append(" extends ").append(classUnit.getSuperClass());
+        }
+        code.append(" {").append(NL).append(NL);
+
+        for (var field : classUnit.getFields()) {
+            code.append(".field public ").append(field.getFieldName()).append(printType(field.getFieldType()))
+                    .append(END_STMT);
+        }
+
+        for (var method : classUnit.getMethods()) {
+            code.append(NL).append(printMethod(method));
+        }
+
+        code.append("}").append(NL);
+
+        return code.toString();
+    }
+
+    private static String printMethod(Method method) {
+        var code = new StringBuilder();
+
+        var params = method.getParams().stream()
+                .map(OllirPrinter::printElement)
+                .collect(Collectors.joining(", "));
+
+        if (method.isConstructMethod()) {
+            code.append(".construct ");
+        } else {
+            code.append(".method ");
+            if (method.getMethodAccessModifier() == AccessModifier.PUBLIC) {
+                code.append("public ");
+            }
+            if (method.isStaticMethod()) {
+                code.append("static ");
+            }
+            if (method.isVarargs()) {
+                code.append("varargs ");
+            }
+        }
+        code.append(method.getMethodName()).append("(").append(params).append(")")
+                .append(printType(method.getReturnType())).append(" {").append(NL);
+
+        for (var instruction : method.getInstructions()) {
+            for (var label : OptUtils.getLabels(method, instruction)) {
+                code.append(label).append(":").append(NL);
+            }
+            code.append(printInstruction(instruction)).append(END_STMT);
+        }
+
+        code.append("}").append(NL);
+
+        return code.toString();
+    }
+
+    public static String printInstruction(Instruction instruction) {
+        return switch (instruction.getInstType()) {
+            case ASSIGN -> {
+                var assign = (AssignInstruction) instruction;
+                yield printElement(assign.getDest()) + " :=" + printType(assign.getTypeOfAssign()) + " "
+                        + printInstruction(assign.getRhs());
+            }
+            case NOPER -> printElement(((SingleOpInstruction) instruction).getSingleOperand());
+            case BINARYOPER -> {
+                var binary = (BinaryOpInstruction) instruction;
+                yield printElement(binary.getLeftOperand()) + " " + printOperation(binary.getOperation()) + " "
+                        + printElement(binary.getRightOperand());
+            }
+            case UNARYOPER -> {
+                var unary = (UnaryOpInstruction) instruction;
+                yield printOperation(unary.getOperation()) + " " + printElement(unary.getOperand());
+            }
+            case CALL -> printCall((CallInstruction) instruction);
+            case GETFIELD -> {
+                var getField = (GetFieldInstruction) instruction;
+                yield "getfield(" + printObject(getField.getObject()) + ", " + printElement(getField.getField())
+                        + ")" + printType(getField.getField().getType());
+            }
+            case PUTFIELD -> {
+                var putField = (PutFieldInstruction) instruction;
+                yield "putfield(" + printObject(putField.getObject()) + ", " + printElement(putField.getField())
+                        + ", " + printElement(putField.getValue()) + ").V";
+            }
+            case GOTO -> "goto " + ((GotoInstruction) instruction).getLabel();
+            case BRANCH -> {
+                var branch = (CondBranchInstruction) instruction;
+                yield "if (" + printInstruction(branch.getCondition()) + ") goto " + branch.getLabel();
+            }
+            case RETURN -> {
+                var ret = (ReturnInstruction) instruction;
+                yield ret.hasReturnValue() ?
+                        "ret" + printType(ret.getReturnType()) + " " + printElement(ret.getOperand()) :
+                        "ret.V";
+            }
+        };
+    }
+
+    private static String printCall(CallInstruction call) {
+        var code = new StringBuilder();
+        code.append(call.getInvocationType().name().toLowerCase()).append("(");
+
+        switch (call.getInvocationType()) {
+            case NEW -> code.append(call.getReturnType().getTypeOfElement() == ElementType.ARRAYREF ?
+                    "array" : ((Operand) call.getCaller()).getName());
+            default -> code.append(printElement(call.getCaller()));
+        }
+
+        call.getMethodNameTry().ifPresent(name -> code.append(", ").append(((LiteralElement) name).getLiteral()));
+
+        for (var arg : call.getArguments()) {
+            code.append(", ").append(printElement(arg));
+        }
+
+        code.append(")").append(printType(call.getReturnType()));
+
+        return code.toString();
+    }
+
+    private static String printObject(Element object) {
+        return object.getType().getTypeOfElement() == ElementType.THIS ? "this" : printElement(object);
+    }
+
+    public static String printElement(Element element) {
+        if (element instanceof LiteralElement literal) {
+            return literal.getLiteral() + printType(literal.getType());
+        }
+
+        var operand = (Operand) element;
+        var type = operand.getType();
+
+        if (operand instanceof ArrayOperand arrayOperand) {
+            var index = printElement(arrayOperand.getIndexOperands().get(0));
+            return arrayOperand.getName() + ".array" + printType(type) + "[" + index + "]" + printType(type);
+        }
+
+        return switch (type.getTypeOfElement()) {
+            // Class names used as the target of static calls have no type
+            case CLASS -> operand.getName();
+            default -> operand.getName() + printType(type);
+        };
+    }
+
+    public static String printType(Type type) {
+        return switch (type.getTypeOfElement()) {
+            case INT32 -> ".i32";
+            case BOOLEAN -> ".bool";
+            case VOID -> ".V";
+            case STRING -> ".String";
+            case ARRAYREF -> ".array" + printType(((ArrayType) type).getElementType());
+            case OBJECTREF, CLASS, THIS -> "." + ((ClassType) type).getName();
+        };
+    }
+
+    private static String printOperation(Operation operation) {
+        var symbol = switch (operation.getOpType()) {
+            case ADD -> "+";
+            case SUB -> "-";
+            case MUL -> "*";
+            case DIV -> "/";
+            case LTH -> "<";
+            case GTH -> ">";
+            case LTE -> "<=";
+            case GTE -> ">=";
+            case EQ -> "==";
+            case NEQ -> "!=";
+            case ANDB, AND -> "&&";
+            case ORB, OR -> "||";
+            case NOTB, NOT -> "!";
+            default -> throw new RuntimeException("Operation '" + operation.getOpType() + "' has no OLLIR symbol");
+        };
+
+        return symbol + printType(operation.getTypeInfo());
+    }
+}
@@ -1,71 +1,18 @@
 package pt.up.fe.comp2024.optimization;
 
+import org.specs.comp.ollir.*;
 import pt.up.fe.comp.jmm.analysis.table.Type;
 import pt.up.fe.comp.jmm.ast.JmmNode;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
 
 import static pt.up.fe.comp2024.ast.Kind.TYPE;
 
 public class OptUtils {
-    private static int tempNumber = -1;
-    private static int ifNumber = -1;
-    private static int whileNumber = -1;
-    private static int varargNumber = -1;
-
-    public static String getTemp() {
-
-        return getTemp("tmp");
-    }
-
-    public static String getTemp(String prefix) {
-
-        return prefix + getNextTempNum();
-    }
-
-    public static int getNextTempNum() {
-
-        tempNumber += 1;
-        return tempNumber;
-    }
-
-    public static String getIf(){
-        return getIf("if");
-    }
-
-    public static String getIf(String prefix) {
-        return prefix + getNextIfNum();
-    }
-
-    public static int getNextIfNum() {
-        ifNumber += 1;
-        return ifNumber;
-    }
-
-    public static String getWhile(){
-        return getWhile("");
-    }
-
-    public static String getWhile(String prefix) {
-        return prefix + getNextWhileNum();
-    }
-
-    public static int getNextWhileNum() {
-        whileNumber += 1;
-        return whileNumber;
-    }
-
-    public static String getVararg(){
-        return getVararg("__varargs_array_");
-    }
-
-    public static String getVararg(String prefix) {
-        return prefix + getNextVarArgNum() + ".array.i32";
-    }
-    public static int getNextVarArgNum() {
-        varargNumber += 1;
-        return varargNumber;
-    }
 
     public static String toOllirType(JmmNode typeNode) {
 
@@ -100,7 +47,176 @@ public class OptUtils {
         return type;
     }
 
+    /**
+     * Same as {@link #toOllirType(Type)}, but builds the type object used by the OLLIR class model.
+     */
+    public static org.specs.comp.ollir.Type toOllirTypeObject(Type type) {
+        if (type.isArray()) {
+            var arrayType = new ArrayType();
+            arrayType.setNumDimensions(1);
+            arrayType.setTypeOfElements(toElementType(type.getName()));
+            if (!type.getName().equals("int") && !type.getName().equals("boolean")) {
+                arrayType.setElementClass(type.getName());
+            }
+            return arrayType;
+        }
+
+        var elementType = toElementType(type.getName());
+        if (elementType == ElementType.OBJECTREF) {
+            return new ClassType(ElementType.OBJECTREF, type.getName());
+        }
+
+        return new org.specs.comp.ollir.Type(elementType);
+    }
+
+    public static org.specs.comp.ollir.Type toOllirTypeObject(String typeName, boolean isArray) {
+        return toOllirTypeObject(new Type(typeName, isArray));
+    }
+
+    private static ElementType toElementType(String typeName) {
+        return switch (typeName) {
+            case "int" -> ElementType.INT32;
+            case "boolean" -> ElementType.BOOLEAN;
+            case "void" -> ElementType.VOID;
+            case "String" -> ElementType.STRING;
+            default -> ElementType.OBJECTREF;
+        };
+    }
+
     public static boolean isStatic(String name, List<String> imports) {
         return imports.contains(name);
     }
+
+    /**
+     * Builds the CFG of the method again, after its instructions changed. The edges of the previous CFG are removed
+     * first, since {@link Method#buildCFG()} only adds edges.
+     */
+    public static void rebuildCFG(Method method) {
+        method.getBeginNode().getSuccessors().clear();
+        method.getEndNode().getPredecessors().clear();
+        for (var instruction : method.getInstructions()) {
+            instruction.getSuccessors().clear();
+            instruction.getPredecessors().clear();
+        }
+
+        method.buildCFG();
+    }
+
+    /**
+     * Builds the table of variables of the method again, so that variables no longer used do not take registers.
+     */
+    public static void rebuildVarTable(Method method) {
+        method.getVarTable().clear();
+        method.buildVarTable();
+    }
+
+    /**
+     * Unlike {@link Method#getLabels(Instruction)}, which keeps the labels it finds the first time it is called, this
+     * reflects the labels moved by the passes.
+     *
+     * @return the labels of the instruction
+     */
+    public static List<String> getLabels(Method method, Instruction instruction) {
+        return method.getLabels().entrySet().stream()
+                .filter(label -> label.getValue() == instruction)
+                .map(Map.Entry::getKey)
+                .sorted()
+                .toList();
+    }
+
+    /**
+     * Moves the given labels of an instruction to another, so that the jumps to them reach the other instruction.
+     */
+    public static void moveLabels(Method method, Instruction from, Instruction to, Predicate<String> filter) {
+        for (var label : method.getLabels().entrySet()) {
+            if (label.getValue() == from && filter.test(label.getKey())) {
+                label.setValue(to);
+            }
+        }
+    }
+
+    /**
+     * Removes the instructions that match the filter. The labels of an instruction removed move to the next instruction
+     * kept, which is where the jumps to them now continue, so instructions with labels and nothing after them are kept.
+     *
+     * @return the number of instructions removed
+     */
+    public static int removeInstructions(Method method, Predicate<Instruction> filter) {
+        var instructions = method.getInstructions();
+        int size = instructions.size();
+
+        Instruction next = null;
+        for (int i = instructions.size() - 1; i >= 0; i--) {
+            var instruction = instructions.get(i);
+            if (!filter.test(instruction)) {
+                next = instruction;
+            } else if (next != null) {
+                moveLabels(method, instruction, next, label -> true);
+                instructions.set(i, null);
+            } else if (getLabels(method, instruction).isEmpty()) {
+                instructions.set(i, null);
+            }
+        }
+        instructions.removeIf(Objects::isNull);
+
+        return size - instructions.size();
+    }
+
+    /**
+     * @return the operands the instruction reads or writes, including the ones of its right side or condition and the
+     * indexes of array elements, but not the class of a 'new' or the field of a field instruction
+     */
+    public static List<Operand> getOperands(Instruction instruction) {
+        var operands = new ArrayList<Operand>();
+        addOperands(instruction, operands);
+
+        return operands;
+    }
+
+    private static void addOperands(Instruction instruction, List<Operand> operands) {
+        switch (instruction.getInstType()) {
+            case ASSIGN -> {
+                var assign = (AssignInstruction) instruction;
+                addOperand(assign.getDest(), operands);
+                addOperands(assign.getRhs(), operands);
+            }
+            case CALL -> {
+                var call = (CallInstruction) instruction;
+                if (call.getInvocationType() != CallType.NEW) {
+                    addOperand(call.getCaller(), operands);
+                }
+                call.getArguments().forEach(argument -> addOperand(argument, operands));
+            }
+            case BINARYOPER, UNARYOPER ->
+                    ((OpInstruction) instruction).getOperands().forEach(operand -> addOperand(operand, operands));
+            case NOPER -> addOperand(((SingleOpInstruction) instruction).getSingleOperand(), operands);
+            case BRANCH ->
+                    ((CondBranchInstruction) instruction).getOperands().forEach(operand -> addOperand(operand, operands));
+            case RETURN -> {
+                var ret = (ReturnInstruction) instruction;
+                if (ret.hasReturnValue()) {
+                    addOperand(ret.getOperand(), operands);
+                }
+            }
+            case PUTFIELD -> {
+                addOperand(((PutFieldInstruction) instruction).getObject(), operands);
+                addOperand(((PutFieldInstruction) instruction).getValue(), operands);
+            }
+            case GETFIELD -> addOperand(((GetFieldInstruction) instruction).getObject(), operands);
+            default -> {
+                // Gotos have no operands
+            }
+        }
+    }
+
+    private static void addOperand(Element element, List<Operand> operands) {
+        if (!(element instanceof Operand operand)) {
+            return;
+        }
+
+        operands.add(operand);
+        if (operand instanceof ArrayOperand arrayOperand) {
+            arrayOperand.getIndexOperands().forEach(index -> addOperand(index, operands));
+        }
+    }
 }
@@ -0,0 +1,299 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.*;
+
+import java.util.*;
+
+/**
+ * Replaces the multiplications of loop counters by values the loop does not change, such as the i * k of array
+ * indexes, with a variable that is updated by an addition whenever the counter is.
+ * <p>
+ * The counters, or basic induction variables, are the variables assigned only once in a loop, by i := i + c or
+ * i := i - c with a constant c, outside of the branches of its body. For each product t := i * k with k a constant or a variable not assigned in the loop,
+ * a new variable s is set to i * k just before the header of the loop, s := s + c * k is placed right after the update
+ * of i, and the product becomes t := s. Since s is updated together with i, s is i * k everywhere in the loop, also when
+ * the multiplication overflows. The copy t := s, which makes t a derived induction variable, is then removed by
+ * {@link CopyCoalescing}, and the update of s lowers to iinc when c * k is small.
+ * <p>
+ * Loops are identified by their labels, as in {@link LoopNest}, and inner loops are reduced first.
+ */
+public class StrengthReduction {
+
+    private static final String PREFIX = "iv";
+
+    private final Method method;
+    private int reduced;
+    private int nextVariable;
+
+    public StrengthReduction(Method method) {
+        this.method = method;
+    }
+
+    public void run() {
+        reduced = 0;
+        nextVariable = 0;
+
+        for (var loop : new LoopNest(method).getLoops()) {
+            int before = reduced;
+            reduce(loop);
+
+            // The loops around this one are reduced next, and look at the paths of the instructions added
+            if (reduced > before) {
+                OptUtils.rebuildCFG(method);
+            }
+        }
+
+        if (reduced > 0) {
+            OptUtils.rebuildCFG(method);
+            OptUtils.rebuildVarTable(method);
+        }
+    }
+
+    /**
+     * @return the number of products replaced, including the ones constant folding made, such as 2 * i * 3
+     */
+    public int getReduced() {
+        return reduced;
+    }
+
+    private void reduce(LoopNest.Loop loop) {
+        var instructions = loop.getInstructions();
+        var varTable = method.getVarTable();
+
+        Map<String, List<AssignInstruction>> definitions = new HashMap<>();
+        for (var instruction : instructions) {
+            if (instruction instanceof AssignInstruction assign && !(assign.getDest() instanceof ArrayOperand)
+                    && DataFlowAnalysis.isVariable(assign.getDest(), varTable)) {
+                definitions.computeIfAbsent(((Operand) assign.getDest()).getName(), k -> new ArrayList<>())
+                        .add(assign);
+            }
+        }
+
+        // The variable that follows each product, by counter and factor
+        Map<String, Operand> reductions = new HashMap<>();
+
+        for (var instruction : instructions) {
+            if (!(instruction instanceof AssignInstruction assign)
+                    || !(assign.getRhs() instanceof BinaryOpInstruction product)
+                    || product.getOperation().getOpType() != OperationType.MUL
+                    || assign.getDest() instanceof ArrayOperand
+                    || !DataFlowAnalysis.isVariable(assign.getDest(), varTable)) {
+                continue;
+            }
+
+            // The counter can be on either side of the product
+            var left = product.getLeftOperand();
+            var right = product.getRightOperand();
+            var update = getUpdate(loop, left, definitions);
+            var factor = right;
+            if (update == null || !isInvariant(factor, definitions)) {
+                update = getUpdate(loop, right, definitions);
+                factor = left;
+            }
+            if (update == null || !isInvariant(factor, definitions)) {
+                continue;
+            }
+
+            var counter = (Operand) update.getDest();
+            var key = counter.getName() + " " + OllirPrinter.printElement(factor);
+            var variable = reductions.get(key);
+            if (variable == null) {
+                variable = newVariable();
+                reductions.put(key, variable);
+                initialize(loop, variable, counter, factor, getStep(update));
+            }
+
+            var copy = new AssignInstruction(assign.getDest(), assign.getTypeOfAssign(),
+                    new SingleOpInstruction(copyOf(variable)));
+            replace(instruction, copy);
+            reduced++;
+        }
+    }
+
+    /**
+     * @return the only assignment of the operand in the loop, if it is a variable that the loop steps by a constant on
+     * every iteration
+     */
+    private AssignInstruction getUpdate(LoopNest.Loop loop, Element operand,
+                                        Map<String, List<AssignInstruction>> definitions) {
+        if (!(operand instanceof Operand variable) || operand instanceof ArrayOperand
+                || operand.getType().getTypeOfElement() != ElementType.INT32) {
+            return null;
+        }
+
+        var assignments = definitions.get(variable.getName());
+        if (assignments == null || assignments.size() != 1) {
+            return null;
+        }
+
+        var update = assignments.get(0);
+        return getStep(update) != null && runsEveryIteration(loop, update) ? update : null;
+    }
+
+    /**
+     * @return true if every path from the start of the body of the loop to its back edge goes through the instruction,
+     * which is then not inside a branch of the body
+     */
+    private static boolean runsEveryIteration(LoopNest.Loop loop, Instruction instruction) {
+        var instructions = loop.getInstructions();
+        var backEdge = instructions.get(instructions.size() - 1);
+
+        Set<Node> inLoop = Collections.newSetFromMap(new IdentityHashMap<>());
+        inLoop.addAll(instructions);
+
+        Set<Node> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Node> worklist = new ArrayDeque<>();
+        worklist.add(loop.getBody());
+        while (!worklist.isEmpty()) {
+            var node = worklist.poll();
+            if (node == instruction || !visited.add(node)) {
+                continue;
+            }
+            if (node == backEdge) {
+                return false;
+            }
+
+            for (var successor : node.getSuccessors()) {
+                if (inLoop.contains(successor)) {
+                    worklist.add(successor);
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return the constant the assignment adds to its variable, or null if it is not of the form i := i + c,
+     * i := c + i or i := i - c
+     */
+    private static Integer getStep(AssignInstruction update) {
+        if (!(update.getRhs() instanceof BinaryOpInstruction binary)) {
+            return null;
+        }
+
+        var name = ((Operand) update.getDest()).getName();
+        var left = binary.getLeftOperand();
+        var right = binary.getRightOperand();
+
+        return switch (binary.getOperation().getOpType()) {
+            case ADD -> {
+                if (isVariable(left, name) && right instanceof LiteralElement literal) {
+                    yield Integer.parseInt(literal.getLiteral());
+                }
+                if (isVariable(right, name) && left instanceof LiteralElement literal) {
+                    yield Integer.parseInt(literal.getLiteral());
+                }
+                yield null;
+            }
+            case SUB -> isVariable(left, name) && right instanceof LiteralElement literal ?
+                    -Integer.parseInt(literal.getLiteral()) : null;
+            default -> null;
+        };
+    }
+
+    private static boolean isVariable(Element element, String name) {
+        return element instanceof Operand operand && !(operand instanceof ArrayOperand)
+                && operand.getName().equals(name);
+    }
+
+    /**
+     * @return true if the factor is a constant or a variable the loop does not assign
+     */
+    private boolean isInvariant(Element factor, Map<String, List<AssignInstruction>> definitions) {
+        if (factor instanceof LiteralElement) {
+            return true;
+        }
+
+        return factor instanceof Operand operand && !(operand instanceof ArrayOperand)
+                && factor.getType().getTypeOfElement() == ElementType.INT32
+                && !definitions.containsKey(operand.getName());
+    }
+
+    /**
+     * Sets the variable to counter * factor before the loop, and adds step * factor to it after each update of the
+     * counter.
+     */
+    private void initialize(LoopNest.Loop loop, Operand variable, Operand counter, Element factor, int step) {
+        var type = new Type(ElementType.INT32);
+
+        var start = new BinaryOpInstruction(copyOf(counter), new Operation(OperationType.MUL, type), copyOf(factor));
+        insertBefore(loop, new AssignInstruction(copyOf(variable), type, start));
+
+        var operation = OperationType.ADD;
+        Element increment;
+        if (factor instanceof LiteralElement literal) {
+            int value = step * Integer.parseInt(literal.getLiteral());
+
+            // Subtracting keeps the constant positive, like the OLLIR generator does
+            if (value < 0 && value != Integer.MIN_VALUE) {
+                operation = OperationType.SUB;
+                value = -value;
+            }
+            increment = new LiteralElement(Integer.toString(value), type);
+        } else if (step == 1 || step == -1) {
+            operation = step == 1 ? OperationType.ADD : OperationType.SUB;
+            increment = copyOf(factor);
+        } else {
+            increment = newVariable();
+            var product = new BinaryOpInstruction(new LiteralElement(Integer.toString(step), type),
+                    new Operation(OperationType.MUL, type), copyOf(factor));
+            insertBefore(loop, new AssignInstruction(copyOf(increment), type, product));
+        }
+
+        var update = new AssignInstruction(copyOf(variable), type, new BinaryOpInstruction(copyOf(variable),
+                new Operation(operation, type), increment));
+
+        for (var instruction : loop.getInstructions()) {
+            if (instruction instanceof AssignInstruction assign && isVariable(assign.getDest(), counter.getName())) {
+                method.getInstructions().add(indexOf(instruction) + 1, update);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Inserts the instruction just before the header of the loop. The labels of the header other than its own are the
+     * ones the loop is entered by, so they are moved to the first instruction inserted.
+     */
+    private void insertBefore(LoopNest.Loop loop, Instruction instruction) {
+        var header = loop.getHeader();
+        method.getInstructions().add(indexOf(header), instruction);
+        OptUtils.moveLabels(method, header, instruction, label -> !label.equals(loop.getHeaderLabel()));
+    }
+
+    private void replace(Instruction instruction, Instruction replacement) {
+        var instructions = method.getInstructions();
+        instructions.set(indexOf(instruction), replacement);
+        OptUtils.moveLabels(method, instruction, replacement, label -> true);
+    }
+
+    private int indexOf(Instruction instruction) {
+        var instructions = method.getInstructions();
+        for (int i = 0; i < instructions.size(); i++) {
+            if (instructions.get(i) == instruction) {
+                return i;
+            }
+        }
+
+        throw new IllegalStateException("Instruction is not in method " + method.getMethodName());
+    }
+
+    private Operand newVariable() {
+        String name;
+        do {
+            name = PREFIX + nextVariable++;
+        } while (method.getVarTable().containsKey(name));
+
+        return new Operand(name, new Type(ElementType.INT32));
+    }
+
+    private static Element copyOf(Element element) {
+        if (element instanceof LiteralElement literal) {
+            return new LiteralElement(literal.getLiteral(), literal.getType());
+        }
+
+        var operand = (Operand) element;
+        return new Operand(operand.getName(), operand.getType());
+    }
+}
@@ -0,0 +1,145 @@
+package pt.up.fe.comp2024.parser;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenStream;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp2024.ast.CompactJmmNode;
+import pt.up.fe.comp2024.ast.CompactJmmNode.NodeType;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Builds the AST directly from the parse tree, as {@link CompactJmmNode}s.
+ * <p>
+ * Nodes get the same kinds, hierarchies and attributes as the ones of the ANTLR converter of the library: the kind is
+ * the name of the context class, the hierarchy follows its superclasses, and the attributes are the positions and the
+ * public fields of the context. Attributes that are contexts point to the node built for that context.
+ * <p>
+ * What to read from each context class is found once, and the parse tree is not kept after the AST is built.
+ */
+public class AstBuilder {
+
+    private static final Map<Class<?>, ContextInfo> CONTEXT_INFOS = new ConcurrentHashMap<>();
+
+    private final TokenStream tokens;
+
+    private AstBuilder(TokenStream tokens) {
+        this.tokens = tokens;
+    }
+
+    public static JmmNode build(ParserRuleContext root, TokenStream tokens) {
+        return new AstBuilder(tokens).build(root);
+    }
+
+    private CompactJmmNode build(ParserRuleContext context) {
+        var info = CONTEXT_INFOS.computeIfAbsent(context.getClass(), ContextInfo::new);
+        var node = new CompactJmmNode(info.type);
+
+        var interval = context.getSourceInterval();
+        var start = tokens.get(interval.a);
+        var end = tokens.get(interval.b);
+        node.setPosition(start.getLine(), start.getCharPositionInLine(), end.getLine(), end.getCharPositionInLine());
+
+        // Tokens are not nodes, only rules are
+        var childContexts = new ArrayList<ParserRuleContext>(context.getChildCount());
+        for (int i = 0; i < context.getChildCount(); i++) {
+            if (context.getChild(i) instanceof ParserRuleContext childContext) {
+                childContexts.add(childContext);
+            }
+        }
+
+        var children = new JmmNode[childContexts.size()];
+        for (int i = 0; i < children.length; i++) {
+            children[i] = build(childContexts.get(i));
+        }
+
+        for (var field : info.fields) {
+            addAttribute(node, field, context, childContexts, children);
+        }
+
+        node.setChildren(children);
+
+        return node;
+    }
+
+    private static void addAttribute(CompactJmmNode node, Field field, ParserRuleContext context,
+                                     List<ParserRuleContext> childContexts, JmmNode[] children) {
+        Object value;
+        try {
+            value = field.get(context);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException("Could not access field '" + field.getName() + "' from node " + context, e);
+        }
+
+        // Token fields without a token are left out, other fields are kept even if empty
+        if (field.getType().isAssignableFrom(Token.class) && value == null) {
+            return;
+        }
+
+        // Labelled rules are always children of the context that has the label
+        if (value instanceof ParserRuleContext childContext) {
+            int index = childContexts.indexOf(childContext);
+            if (index != -1) {
+                value = children[index];
+            }
+        }
+
+        node.putObject(field.getName(), toAttributeValue(value));
+    }
+
+    private static Object toAttributeValue(Object value) {
+        if (value instanceof Token token) {
+            return token.getText();
+        }
+
+        if (value instanceof List<?> list) {
+            return list.stream()
+                    .map(AstBuilder::toAttributeValue)
+                    .toList();
+        }
+
+        return value;
+    }
+
+    /**
+     * What is the same for all the nodes of a context class.
+     */
+    private static class ContextInfo {
+        private final NodeType type;
+        private final List<Field> fields;
+
+        private ContextInfo(Class<?> contextClass) {
+            var hierarchy = new ArrayList<String>();
+            var fields = new ArrayList<Field>();
+
+            for (var current = contextClass; !current.equals(ParserRuleContext.class); current = current.getSuperclass()) {
+                hierarchy.add(getKind(current));
+
+                Arrays.stream(current.getDeclaredFields())
+                        .filter(field -> Modifier.isPublic(field.getModifiers()))
+                        .forEach(fields::add);
+            }
+
+            this.type = new NodeType(hierarchy.get(0), hierarchy);
+            this.fields = fields;
+        }
+
+        private static String getKind(Class<?> contextClass) {
+            var className = contextClass.getSimpleName();
+
+            // Rules end with context
+            if (!className.endsWith("Context")) {
+                throw new RuntimeException("Expected classname to end with 'Context' " + className);
+            }
+
+            return className.substring(0, className.length() - "Context".length());
+        }
+    }
+}
@@ -1,14 +1,24 @@
 package pt.up.fe.comp2024.parser;
 
 import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.BailErrorStrategy;
 import org.antlr.v4.runtime.CommonTokenStream;
-import pt.up.fe.comp.jmm.ast.antlr.AntlrParser;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import pt.up.fe.comp.jmm.ast.antlr.JmmErrorListener;
 import pt.up.fe.comp.jmm.parser.JmmParser;
 import pt.up.fe.comp.jmm.parser.JmmParserResult;
 import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.ReportType;
 import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.comp2024.CompilerConfig;
+import pt.up.fe.comp2024.JavammLexer;
+import pt.up.fe.comp2024.JavammParser;
+import pt.up.fe.comp2024.utils.PhaseProfiler;
+import pt.up.fe.specs.util.SpecsSystem;
 
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.Map;
 
 /**
@@ -31,26 +41,125 @@ public class JmmParserImpl implements JmmParser {
         return "program";
     }
 
+    /**
+     * Parses in two stages. The first stage uses SLL prediction, which is faster, and gives up on the first syntax
+     * error. Only if it fails, the code is parsed again with full LL prediction and the default error recovery, which
+     * also reports the syntax errors.
+     */
     @Override
     public JmmParserResult parse(String jmmCode, String startingRule, Map<String, String> config) {
 
         try {
-            // Convert code string into a character stream
-            var input = new ANTLRInputStream(jmmCode);
-            // Transform characters into tokens using the lexer
-            var lex = new pt.up.fe.comp2024.JavammLexer(input);
-            // Wrap lexer around a token stream
-            var tokens = new CommonTokenStream(lex);
-            // Transforms tokens into a parse tree
-            var parser = new pt.up.fe.comp2024.JavammParser(tokens);
+            return PhaseProfiler.measure("parse", () -> {
+                var profile = CompilerConfig.getParserProfile(config) ? new ParserProfile() : null;
 
+                var result = parseSll(jmmCode, startingRule, config, profile);
+                if (result == null) {
+                    result = PhaseProfiler.measure("parseLl", () -> parseLl(jmmCode, startingRule, config, profile));
+                }
 
-            // Convert ANTLR CST to JmmNode AST
-            return AntlrParser.parse(lex, parser, startingRule, config);
+                if (profile != null) {
+                    var reports = new ArrayList<>(result.getReports());
+                    reports.add(Report.newLog(Stage.SYNTATIC, -1, -1, profile.toString(), null));
+                    result = new JmmParserResult(result.getRootNode(), reports, config);
+                }
+
+                return result;
+            });
 
         } catch (Exception e) {
             // There was an uncaught exception during parsing, create an error JmmParserResult without root node
             return JmmParserResult.newError(Report.newError(Stage.SYNTATIC, -1, -1, "Exception during parsing", e), config);
         }
     }
+
+    /**
+     * @return the result of the SLL stage, or null if it did not produce a tree without errors
+     */
+    private JmmParserResult parseSll(String jmmCode, String startingRule, Map<String, String> config,
+                                     ParserProfile profile) {
+        var lex = new JavammLexer(new ANTLRInputStream(jmmCode));
+        var parser = newParser(lex, profile);
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        parser.setErrorHandler(new BailErrorStrategy());
+
+        try {
+            var result = PhaseProfiler.measure("parseSll", () -> parse(lex, parser, startingRule, config));
+            return result.getRootNode() == null ? null : result;
+        } catch (RuntimeException e) {
+            // The bail out exception reaches here wrapped by the reflective call of the rule
+            if (!isParseCancellation(e)) {
+                throw e;
+            }
+            return null;
+        } finally {
+            if (profile != null) {
+                profile.add("SLL", parser);
+            }
+        }
+    }
+
+    private JmmParserResult parseLl(String jmmCode, String startingRule, Map<String, String> config,
+                                    ParserProfile profile) {
+        // New lexer, so that lexical errors are reported again
+        var lex = new JavammLexer(new ANTLRInputStream(jmmCode));
+        var parser = newParser(lex, profile);
+        parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+
+        try {
+            return parse(lex, parser, startingRule, config);
+        } finally {
+            if (profile != null) {
+                profile.add("LL", parser);
+            }
+        }
+    }
+
+    /**
+     * Runs the rule, and builds the AST if there were no errors.
+     */
+    private static JmmParserResult parse(JavammLexer lex, JavammParser parser, String ruleName,
+                                         Map<String, String> config) {
+        lex.removeErrorListeners();
+        var lexerListener = new JmmErrorListener(Stage.LEXICAL);
+        lex.addErrorListener(lexerListener);
+
+        parser.removeErrorListeners();
+        var parserListener = new JmmErrorListener(Stage.SYNTATIC);
+        parser.addErrorListener(parserListener);
+
+        var tree = (ParserRuleContext) SpecsSystem.invoke(parser, ruleName);
+
+        var reports = new ArrayList<Report>();
+        reports.addAll(lexerListener.getReports());
+        reports.addAll(parserListener.getReports());
+
+        if (reports.stream().anyMatch(report -> report.getType() == ReportType.ERROR)) {
+            return new JmmParserResult(null, reports, config);
+        }
+
+        var root = PhaseProfiler.measure("ast", () -> AstBuilder.build(tree, parser.getTokenStream()));
+        return new JmmParserResult(root, reports, config);
+    }
+
+    private static JavammParser newParser(JavammLexer lex, ParserProfile profile) {
+        var parser = new JavammParser(new CommonTokenStream(lex));
+
+        // Must be set before the prediction mode, since it replaces the interpreter
+        if (profile != null) {
+            parser.setProfile(true);
+        }
+
+        return parser;
+    }
+
+    private static boolean isParseCancellation(Throwable e) {
+        for (var cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ParseCancellationException) {
+                return true;
+            }
+        }
+
+        return false;
+    }
 }
@@ -0,0 +1,90 @@
+package pt.up.fe.comp2024.parser;
+
+import org.antlr.v4.runtime.Parser;
+import org.antlr.v4.runtime.atn.DecisionInfo;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Prediction statistics of the parser decisions, collected when the parser runs with profiling enabled.
+ * <p>
+ * Each parsing stage adds its own rows, so a fallback to full LL shows the decisions of both stages.
+ */
+public class ParserProfile {
+
+    private final List<Row> rows = new ArrayList<>();
+
+    /**
+     * Adds the decisions the parser went through, if it was profiling.
+     */
+    public void add(String stage, Parser parser) {
+        var parseInfo = parser.getParseInfo();
+        if (parseInfo == null) {
+            return;
+        }
+
+        var ruleNames = parser.getRuleNames();
+        var atn = parser.getATN();
+
+        for (var decision : parseInfo.getDecisionInfo()) {
+            if (decision.invocations == 0) {
+                continue;
+            }
+
+            var rule = ruleNames[atn.getDecisionState(decision.decision).ruleIndex];
+            rows.add(new Row(stage, rule, decision));
+        }
+    }
+
+    public List<Row> getRows() {
+        return rows;
+    }
+
+    /**
+     * @return one line per decision, the ones that took longer first
+     */
+    @Override
+    public String toString() {
+        var sorted = new ArrayList<>(rows);
+        sorted.sort(Comparator.comparingLong((Row row) -> row.info.timeInPrediction).reversed());
+
+        var text = new StringBuilder("Parser decisions:\n");
+        text.append(String.format("%-5s %-20s %8s %12s %10s %10s %11s %11s %7s%n", "stage", "rule", "decision",
+                "invocations", "time (us)", "SLL look", "LL fallback", "ambiguities", "errors"));
+
+        for (var row : sorted) {
+            var info = row.info;
+            text.append(String.format("%-5s %-20s %8d %12d %10d %10d %11d %11d %7d%n", row.stage, row.rule,
+                    info.decision, info.invocations, info.timeInPrediction / 1000, info.SLL_TotalLook,
+                    info.LL_Fallback, info.ambiguities.size(), info.errors.size()));
+        }
+
+        return text.toString();
+    }
+
+    public static class Row {
+        private final String stage;
+        private final String rule;
+        private final DecisionInfo info;
+
+        private Row(String stage, String rule, DecisionInfo info) {
+            this.stage = stage;
+            this.rule = rule;
+            this.info = info;
+        }
+
+        public String getStage() {
+            return stage;
+        }
+
+        public String getRule() {
+            return rule;
+        }
+
+        public DecisionInfo getInfo() {
+            return info;
+        }
+    }
+}
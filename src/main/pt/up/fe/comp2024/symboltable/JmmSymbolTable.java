@@ -4,12 +4,17 @@ import pt.up.fe.comp.jmm.analysis.table.Symbol;
 import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
 import pt.up.fe.comp.jmm.analysis.table.Type;
 import pt.up.fe.comp2024.ast.TypeUtils;
+import pt.up.fe.comp2024.symboltable.ResolvedSymbol.Scope;
 import pt.up.fe.specs.util.exceptions.NotImplementedException;
 
 
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 
 public class JmmSymbolTable implements SymbolTable {
 
@@ -22,6 +27,11 @@ public class JmmSymbolTable implements SymbolTable {
     private final Map<String, List<Symbol>> params;
     private final Map<String, List<Symbol>> locals;
 
+    // Indexes by name, built once from the lists above
+    private final Map<String, Map<String, ResolvedSymbol>> methodVariables;
+    private final Map<String, ResolvedSymbol> fieldsByName;
+    private final Set<String> importNames;
+
     public JmmSymbolTable(String className,String superClass,
                           List<String> imports,
                           List<Symbol> fields,
@@ -37,6 +47,74 @@ public class JmmSymbolTable implements SymbolTable {
         this.returnTypes = returnTypes;
         this.params = params;
         this.locals = locals;
+
+        this.methodVariables = new HashMap<>();
+        for (var method : methods) {
+            methodVariables.put(method, buildMethodIndex(method));
+        }
+        this.fieldsByName = buildIndex(Scope.FIELD, fields);
+        this.importNames = new HashSet<>(imports);
+    }
+
+    /**
+     * Locals hide parameters with the same name.
+     */
+    private Map<String, ResolvedSymbol> buildMethodIndex(String method) {
+        var index = buildIndex(Scope.PARAM, params.getOrDefault(method, Collections.emptyList()));
+        index.putAll(buildIndex(Scope.LOCAL, locals.getOrDefault(method, Collections.emptyList())));
+
+        return index;
+    }
+
+    private static Map<String, ResolvedSymbol> buildIndex(Scope scope, List<Symbol> symbols) {
+        var index = new HashMap<String, ResolvedSymbol>();
+
+        // The first declaration wins, duplicates are reported by the semantic analysis
+        for (int i = 0; i < symbols.size(); i++) {
+            var symbol = symbols.get(i);
+            index.putIfAbsent(symbol.getName(), new ResolvedSymbol(scope, symbol, i));
+        }
+
+        return index;
+    }
+
+    /**
+     * Finds what a variable used inside a method refers to: a local, a parameter, a field or an import, in this order.
+     *
+     * @return the declaration of the variable, or empty if there is none
+     */
+    public Optional<ResolvedSymbol> resolve(String methodSignature, String name) {
+        var variable = findVariable(methodSignature, name);
+        if (variable.isPresent()) {
+            return variable;
+        }
+
+        var field = findField(name);
+        if (field.isPresent()) {
+            return field;
+        }
+
+        if (importNames.contains(name)) {
+            return Optional.of(new ResolvedSymbol(Scope.IMPORT, null, -1));
+        }
+
+        return Optional.empty();
+    }
+
+    /**
+     * @return the local or parameter of the method with the given name, if any
+     */
+    public Optional<ResolvedSymbol> findVariable(String methodSignature, String name) {
+        var variables = methodVariables.get(methodSignature);
+        return variables == null ? Optional.empty() : Optional.ofNullable(variables.get(name));
+    }
+
+    public Optional<ResolvedSymbol> findField(String name) {
+        return Optional.ofNullable(fieldsByName.get(name));
+    }
+
+    public boolean isImported(String name) {
+        return importNames.contains(name);
     }
 
     @Override
@@ -66,18 +144,13 @@ public class JmmSymbolTable implements SymbolTable {
 
     @Override
     public Type getReturnType(String methodSignature) {
-        if(this.methods.contains(methodSignature))
-        {
-            return returnTypes.get(methodSignature);
-        }else{
-            return new Type("void",false);
-        }
+        var returnType = returnTypes.get(methodSignature);
+        return returnType != null ? returnType : new Type("void", false);
 
     }
 
     @Override
     public List<Symbol> getParameters(String methodSignature) {
-        var ok = params.get(methodSignature);
         return Collections.unmodifiableList(params.get(methodSignature));
     }
 
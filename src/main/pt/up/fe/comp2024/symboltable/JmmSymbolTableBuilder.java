@@ -33,7 +33,31 @@ public class JmmSymbolTableBuilder {
             }}
         );
 
-        return new JmmSymbolTable(className, superClass[0],imports,fields, methods, returnTypes, params, locals);
+        var table = new JmmSymbolTable(className, superClass[0],imports,fields, methods, returnTypes, params, locals);
+        resolveVarRefs(classDecl, table);
+
+        return table;
+    }
+
+    /**
+     * Stores in each variable reference the declaration it refers to, so that it is looked up only once.
+     */
+    private static void resolveVarRefs(JmmNode classDecl, JmmSymbolTable table) {
+        for (var method : classDecl.getChildren()) {
+            String methodName;
+            if (METHOD_DECL.check(method)) {
+                methodName = method.get("name");
+            } else if (MAIN_METHOD_DECL.check(method)) {
+                methodName = "main";
+            } else {
+                continue;
+            }
+
+            method.getDescendantsStream()
+                    .filter(VAR_REF_EXPR::check)
+                    .forEach(varRef -> table.resolve(methodName, varRef.get("name"))
+                            .ifPresent(resolved -> varRef.putObject(ResolvedSymbol.ATTRIBUTE, resolved)));
+        }
     }
     private static List<String> buildImports(List<JmmNode> importsNodes) {
         List<String> imports = new ArrayList<>();
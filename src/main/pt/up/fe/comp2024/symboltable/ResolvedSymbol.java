@@ -0,0 +1,75 @@
+package pt.up.fe.comp2024.symboltable;
+
+import pt.up.fe.comp.jmm.analysis.table.Symbol;
+import pt.up.fe.comp.jmm.analysis.table.Type;
+
+/**
+ * The declaration a variable reference resolves to.
+ * <p>
+ * Stored in the {@link #ATTRIBUTE} attribute of the resolved VarRefExpr nodes, so that later stages do not have to
+ * look up the variable again.
+ */
+public class ResolvedSymbol {
+
+    public static final String ATTRIBUTE = "resolved";
+
+    public enum Scope {
+        LOCAL("local"),
+        PARAM("param"),
+        FIELD("field"),
+        IMPORT("import");
+
+        private final String name;
+
+        Scope(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @return the name used by {@link pt.up.fe.comp2024.ast.TypeUtils#getVariableScope}
+         */
+        public String getName() {
+            return name;
+        }
+    }
+
+    private final Scope scope;
+    private final Symbol symbol;
+    private final int slot;
+
+    public ResolvedSymbol(Scope scope, Symbol symbol, int slot) {
+        this.scope = scope;
+        this.symbol = symbol;
+        this.slot = slot;
+    }
+
+    public Scope getScope() {
+        return scope;
+    }
+
+    /**
+     * @return the declaration, or null for imports, that are not variables
+     */
+    public Symbol getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * @return the position of the declaration among the locals, parameters or fields, or -1 for imports
+     */
+    public int getSlot() {
+        return slot;
+    }
+
+    /**
+     * @return the type of the variable, or the 'import' type for imports
+     */
+    public Type getType() {
+        return symbol == null ? new Type("import", false) : symbol.getType();
+    }
+
+    @Override
+    public String toString() {
+        return symbol == null ? scope.getName() : scope.getName() + " " + slot;
+    }
+}
@@ -0,0 +1,183 @@
+package pt.up.fe.comp2024.utils;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Records wall time, CPU time and allocated bytes of the compiler phases run by the current thread.
+ * <p>
+ * Profiling is enabled per thread with {@link #start()}. While it is not enabled, {@link #measure(String, Supplier)}
+ * only runs the given action, so the hooks can stay in the pipeline at no noticeable cost. Phases measured while
+ * another phase is running are recorded as its children.
+ */
+public class PhaseProfiler {
+
+    private static final ThreadLocal<PhaseProfiler> CURRENT = new ThreadLocal<>();
+
+    private static final ThreadMXBean THREAD_BEAN = ManagementFactory.getThreadMXBean();
+
+    private final List<Phase> phases = new ArrayList<>();
+    private final Deque<Phase> running = new ArrayDeque<>();
+
+    /**
+     * Enables profiling on the current thread.
+     */
+    public static PhaseProfiler start() {
+        var profiler = new PhaseProfiler();
+        CURRENT.set(profiler);
+        return profiler;
+    }
+
+    /**
+     * Disables profiling on the current thread.
+     *
+     * @return the profiler that was active, or null if there was none
+     */
+    public static PhaseProfiler stop() {
+        var profiler = CURRENT.get();
+        CURRENT.remove();
+        return profiler;
+    }
+
+    public static void measure(String name, Runnable action) {
+        measure(name, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    public static <T> T measure(String name, Supplier<T> action) {
+        var profiler = CURRENT.get();
+        if (profiler == null) {
+            return action.get();
+        }
+
+        var phase = new Phase(name);
+        var parent = profiler.running.peek();
+        (parent == null ? profiler.phases : parent.children).add(phase);
+        profiler.running.push(phase);
+
+        long wallStart = System.nanoTime();
+        long cpuStart = getCpuTime();
+        long allocatedStart = getAllocatedBytes();
+        try {
+            return action.get();
+        } finally {
+            phase.wallNanos = System.nanoTime() - wallStart;
+            phase.cpuNanos = getCpuTime() - cpuStart;
+            phase.allocatedBytes = getAllocatedBytes() - allocatedStart;
+            profiler.running.pop();
+        }
+    }
+
+    /**
+     * @return true if profiling is enabled on the current thread
+     */
+    public static boolean isEnabled() {
+        return CURRENT.get() != null;
+    }
+
+    /**
+     * Records a phase whose wall time was measured by the caller, as a child of the running phase. Used for work that
+     * is interleaved with other work and cannot be measured as one block. Its CPU time and allocations are unknown, and
+     * recorded as -1.
+     */
+    public static void record(String name, long wallNanos) {
+        var profiler = CURRENT.get();
+        if (profiler == null) {
+            return;
+        }
+
+        var phase = new Phase(name);
+        phase.wallNanos = wallNanos;
+        phase.cpuNanos = -1;
+        phase.allocatedBytes = -1;
+
+        var parent = profiler.running.peek();
+        (parent == null ? profiler.phases : parent.children).add(phase);
+    }
+
+    public List<Phase> getPhases() {
+        return phases;
+    }
+
+    public String toJson() {
+        var root = new JsonObject();
+        root.add("phases", toJson(phases));
+
+        return new GsonBuilder().setPrettyPrinting().create().toJson(root);
+    }
+
+    private static JsonArray toJson(List<Phase> phases) {
+        var array = new JsonArray();
+
+        for (var phase : phases) {
+            var object = new JsonObject();
+            object.addProperty("name", phase.name);
+            object.addProperty("wallNanos", phase.wallNanos);
+            object.addProperty("cpuNanos", phase.cpuNanos);
+            object.addProperty("allocatedBytes", phase.allocatedBytes);
+            if (!phase.children.isEmpty()) {
+                object.add("children", toJson(phase.children));
+            }
+            array.add(object);
+        }
+
+        return array;
+    }
+
+    private static long getCpuTime() {
+        return THREAD_BEAN.isCurrentThreadCpuTimeSupported() ? THREAD_BEAN.getCurrentThreadCpuTime() : -1;
+    }
+
+    private static long getAllocatedBytes() {
+        // Allocation counters are a HotSpot extension of the standard bean
+        if (THREAD_BEAN instanceof com.sun.management.ThreadMXBean hotspotBean
+                && hotspotBean.isThreadAllocatedMemorySupported()) {
+            return hotspotBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+
+        return -1;
+    }
+
+    public static class Phase {
+        private final String name;
+        private final List<Phase> children = new ArrayList<>();
+        private long wallNanos;
+        private long cpuNanos;
+        private long allocatedBytes;
+
+        private Phase(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public List<Phase> getChildren() {
+            return children;
+        }
+
+        public long getWallNanos() {
+            return wallNanos;
+        }
+
+        public long getCpuNanos() {
+            return cpuNanos;
+        }
+
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package pt.up.fe.comp2024;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import pt.up.fe.comp2024.backend.ClassFileGenerator;
+import pt.up.fe.comp2024.backend.JasminGenerator;
+import pt.up.fe.comp2024.optimization.OllirGeneratorVisitor;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class CompilationCacheTest {
+
+    private static final String RESOURCE = "pt/up/fe/comp/cpf/3_ollir/control_flow/SimpleWhileStat.jmm";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<String> messages(JmmCompiler.CompilationResult result) {
+        return result.getReports().stream().map(report -> report.getType() + " " + report.getMessage()).toList();
+    }
+
+    @Test
+    public void secondCompilationIsAHit() throws Exception {
+        var cache = new CompilationCache(folder.newFolder(), 1024 * 1024);
+        var code = SpecsIo.getResource(RESOURCE);
+        var config = CompilerConfig.getDefault();
+
+        var first = cache.compile(code, config);
+        var second = cache.compile(code, config);
+
+        assertTrue(first.isSuccess());
+        assertTrue(second.isSuccess());
+        assertEquals(first.getClassName(), second.getClassName());
+        assertEquals(first.getOllirCode(), second.getOllirCode());
+        assertEquals(first.getJasminCode(), second.getJasminCode());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void hitsKeepLogsAndTimings() throws Exception {
+        var cache = new CompilationCache(folder.newFolder(), 1024 * 1024);
+        // The first store to b is dead, which the optimizations log
+        var code = """
+                class A {
+                    public int f(int a) {
+                        int b;
+                        b = a * 2;
+                        b = a;
+                        return b;
+                    }
+                    public static void main(String[] args) {
+                    }
+                }
+                """;
+        var config = CompilerConfig.getDefault();
+        config.put("optimize", "true");
+        config.put("timing", "true");
+
+        var first = cache.compile(code, config);
+        var second = cache.compile(code, config);
+
+        assertEquals(1, cache.getHits());
+        assertFalse(first.getReports().isEmpty());
+        assertEquals(messages(first), messages(second));
+        assertNotNull(second.getProfile());
+        assertTrue(second.getProfile().toJson().contains("\"cacheHit\""));
+    }
+
+    @Test
+    public void classFilesAreStored() throws Exception {
+        var cache = new CompilationCache(folder.newFolder(), 1024 * 1024);
+        var code = SpecsIo.getResource(RESOURCE);
+        var config = CompilerConfig.getDefault();
+        config.put("classFile", "true");
+
+        var first = cache.compile(code, config);
+        var second = cache.compile(code, config);
+
+        assertTrue(first.isSuccess());
+        assertArrayEquals(first.getClassFile(), second.getClassFile());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void optionsArePartOfTheKey() {
+        var code = SpecsIo.getResource(RESOURCE);
+        var config = CompilerConfig.getDefault();
+        var optimized = CompilerConfig.getDefault();
+        optimized.put("optimize", "true");
+        var closedWorld = CompilerConfig.getDefault();
+        closedWorld.put("closedWorld", "true");
+
+        assertNotEquals(CompilationCache.computeKey(code, config), CompilationCache.computeKey(code, optimized));
+        assertNotEquals(CompilationCache.computeKey(code, config), CompilationCache.computeKey(code, closedWorld));
+        assertNotEquals(CompilationCache.computeKey(code, config), CompilationCache.computeKey(code + " ", config));
+    }
+
+    @Test
+    public void compilerBuildIsPartOfTheKey() throws Exception {
+        // The code generators are among the classes the fingerprint covers
+        var locations = CompilationCache.getCompilerLocations();
+        assertTrue(locations.contains(CompilationCache.getLocation(OllirGeneratorVisitor.class)));
+        assertTrue(locations.contains(CompilationCache.getLocation(JasminGenerator.class)));
+        assertTrue(locations.contains(CompilationCache.getLocation(ClassFileGenerator.class)));
+
+        // A copy of the compiler where the Jasmin generator changed
+        var build = folder.newFolder().toPath();
+        var generator = build.resolve("pt/up/fe/comp2024/backend/JasminGenerator.class");
+        Files.createDirectories(generator.getParent());
+        Files.copy(CompilationCache.getLocation(JasminGenerator.class)
+                .resolve("pt/up/fe/comp2024/backend/JasminGenerator.class"), generator);
+        var before = CompilationCache.computeFingerprint(List.of(build));
+        Files.write(generator, new byte[]{0}, StandardOpenOption.APPEND);
+        var after = CompilationCache.computeFingerprint(List.of(build));
+
+        var code = SpecsIo.getResource(RESOURCE);
+        var config = CompilerConfig.getDefault();
+        assertNotEquals(CompilationCache.computeKey(code, config, before),
+                CompilationCache.computeKey(code, config, after));
+        assertEquals(CompilationCache.computeKey(code, config),
+                CompilationCache.computeKey(code, config, CompilationCache.getCompilerFingerprint()));
+    }
+
+    @Test
+    public void failedCompilationsAreNotStored() throws Exception {
+        var cache = new CompilationCache(folder.newFolder(), 1024 * 1024);
+        var config = CompilerConfig.getDefault();
+
+        assertFalse(cache.compile("class {", config).isSuccess());
+        assertFalse(cache.compile("class {", config).isSuccess());
+        assertEquals(0, cache.getHits());
+        assertEquals(0, cache.getSizeBytes());
+    }
+
+    @Test
+    public void evictsWhenAboveTheBound() throws Exception {
+        // A single byte bound, every store evicts the entries stored before it
+        var cache = new CompilationCache(folder.newFolder(), 1);
+        var code = SpecsIo.getResource(RESOURCE);
+        var config = CompilerConfig.getDefault();
+
+        cache.compile(code, config);
+        cache.compile(code + " ", config);
+
+        assertTrue(cache.getEvictions() >= 1);
+        assertTrue(cache.getSizeBytes() <= 1);
+    }
+}
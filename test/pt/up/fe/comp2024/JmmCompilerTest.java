@@ -0,0 +1,46 @@
+package pt.up.fe.comp2024;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class JmmCompilerTest {
+
+    private static final String RESOURCE = "pt/up/fe/comp/cpf/4_jasmin/control_flow/IfWhileNested.jmm";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void jasminCodeIsWrittenAsItIsGenerated() throws Exception {
+        var code = SpecsIo.getResource(RESOURCE);
+        var config = CompilerConfig.getDefault();
+        var jasminFile = new File(folder.newFolder(), "nested/IfWhileNested.j");
+
+        var expected = JmmCompiler.compile(code, config);
+        var streamed = JmmCompiler.compile(code, config, jasminFile);
+
+        assertTrue(streamed.isSuccess());
+        assertNull(streamed.getJasminCode());
+        assertEquals(expected.getClassName(), streamed.getClassName());
+        assertEquals(expected.getJasminCode(), SpecsIo.read(jasminFile));
+    }
+
+    @Test
+    public void failedCompilationsWriteNoJasminCode() throws Exception {
+        var jasminFile = new File(folder.newFolder(), "Broken.j");
+
+        var result = JmmCompiler.compile("class {", CompilerConfig.getDefault(), jasminFile);
+
+        assertFalse(result.isSuccess());
+        assertFalse(jasminFile.exists());
+    }
+}
@@ -0,0 +1,141 @@
+package pt.up.fe.comp2024.analysis;
+
+import pt.up.fe.comp.TestUtils;
+import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.comp2024.ast.Kind;
+import pt.up.fe.comp2024.ast.TypeUtils;
+import pt.up.fe.comp2024.optimization.JmmOptimizationImpl;
+import pt.up.fe.comp2024.utils.PhaseProfiler;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures the semantic analysis and the OLLIR generation on a generated class with long expressions.
+ * <p>
+ * Also reports the time to get the type of every expression of the class, computing them from scratch as
+ * {@link TypeUtils#computeExprType} does, and reading the types stored by the analysis.
+ * <p>
+ * Usage: AnalysisBenchmark [methods] [iterations] [parallel], where parallel analyses the methods concurrently. Run
+ * with 'gradle analysisBenchmark'.
+ */
+public class AnalysisBenchmark {
+
+    private static final int WARMUP = 10;
+
+    public static void main(String[] args) {
+        int methods = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        var config = Map.of("parallelAnalysis", Boolean.toString(args.length > 2 && args[2].equals("parallel")));
+
+        var code = generate(methods);
+
+        for (int i = 0; i < WARMUP; i++) {
+            run(code, config);
+        }
+
+        long analysis = 0;
+        long ollir = 0;
+        for (int i = 0; i < iterations; i++) {
+            var phases = run(code, config);
+            analysis += sumWallNanos(phases, "symbolTable") + sumWallNanos(phases, "analysisPass:");
+            ollir += sumWallNanos(phases, "ollirGeneration");
+        }
+
+        System.out.printf("%d methods, %d KB%n", methods, code.length() / 1024);
+        System.out.printf("analysis:        %8.1f ms%n", analysis / 1e6 / iterations);
+        System.out.printf("OLLIR generation: %7.1f ms%n", ollir / 1e6 / iterations);
+
+        var semantics = analyse(code);
+        var expressions = semantics.getRootNode().getDescendants(Kind.EXPR);
+        var table = semantics.getSymbolTable();
+
+        double computed = timeTypes(iterations, () -> expressions.forEach(expr -> TypeUtils.computeExprType(expr, table)));
+        double stored = timeTypes(iterations, () -> expressions.forEach(expr -> TypeUtils.getExprType(expr, table)));
+
+        System.out.printf("types of %d expressions: %.2f ms computed, %.2f ms stored%n", expressions.size(), computed,
+                stored);
+    }
+
+    /**
+     * @return the average time of the action in milliseconds, after warming it up
+     */
+    private static double timeTypes(int iterations, Runnable action) {
+        for (int i = 0; i < WARMUP; i++) {
+            action.run();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            action.run();
+        }
+
+        return (System.nanoTime() - start) / 1e6 / iterations;
+    }
+
+    private static List<PhaseProfiler.Phase> run(String code, Map<String, String> config) {
+        var parserResult = TestUtils.parse(code, config);
+
+        var profiler = PhaseProfiler.start();
+        try {
+            var semantics = new JmmAnalysisImpl().semanticAnalysis(parserResult);
+            checkNoErrors(semantics);
+            new JmmOptimizationImpl().toOllir(semantics);
+        } finally {
+            PhaseProfiler.stop();
+        }
+
+        return profiler.getPhases();
+    }
+
+    private static JmmSemanticsResult analyse(String code) {
+        var semantics = new JmmAnalysisImpl().semanticAnalysis(TestUtils.parse(code));
+        checkNoErrors(semantics);
+        return semantics;
+    }
+
+    private static void checkNoErrors(JmmSemanticsResult semantics) {
+        if (semantics.getReports().stream().anyMatch(report -> report.getType() == ReportType.ERROR)) {
+            throw new RuntimeException("Generated code has errors: " + semantics.getReports());
+        }
+    }
+
+    private static long sumWallNanos(List<PhaseProfiler.Phase> phases, String prefix) {
+        long total = 0;
+
+        for (var phase : phases) {
+            if (phase.getName().startsWith(prefix)) {
+                total += phase.getWallNanos();
+            } else {
+                total += sumWallNanos(phase.getChildren(), prefix);
+            }
+        }
+
+        return total;
+    }
+
+    static String generate(int methods) {
+        var code = new StringBuilder();
+        code.append("import io;\n\nclass Generated {\n    int field;\n    int[] values;\n\n");
+
+        for (int i = 0; i < methods; i++) {
+            code.append("    public int m").append(i).append("(int a, int[] b, boolean c) {\n")
+                    .append("        int d;\n        int e;\n        boolean f;\n")
+                    .append("        d = (a + b[a] * 2 - field) * (b[1] + a / 3) - this.m").append(i)
+                    .append("(a * 2 + 1, b, c && a < 3);\n")
+                    .append("        e = ((d + a) * (d - a) + (b[0] + b[1]) * (b[2] - b[3])) / (field + 1);\n")
+                    .append("        f = !(d < e) && (c || a + d < e * 2) && !(b[d] < b[e] + field);\n")
+                    .append("        while (d < e && f) {\n")
+                    .append("            d = d + a * (e - d) / 2 + b[d - a];\n            f = !f || c;\n        }\n")
+                    .append("        if ((d + e) * 2 < a - field || !c) {\n")
+                    .append("            io.println(d * e + a - b[a + 1]);\n        } else {\n")
+                    .append("            field = field + d - e;\n            b[a * 2] = field * (d + e);\n        }\n")
+                    .append("        return d + e * field - b[0];\n    }\n\n");
+        }
+
+        code.append("    public static void main(String[] args) {\n        io.println(1);\n    }\n}\n");
+
+        return code.toString();
+    }
+}
@@ -0,0 +1,103 @@
+package pt.up.fe.comp2024.analysis;
+
+import org.junit.Test;
+import pt.up.fe.comp.TestUtils;
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.comp2024.analysis.passes.SemanticAnalyzer;
+import pt.up.fe.comp2024.ast.Kind;
+import pt.up.fe.comp2024.symboltable.JmmSymbolTableBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+public class AnalysisPassManagerTest {
+
+    private static final String CODE = """
+            class A {
+                int f(int x) {
+                    boolean b;
+                    b = x + 1;
+                    return y;
+                }
+                public static void main(String[] args) {
+                }
+            }
+            """;
+
+    /**
+     * Reports every binary expression, and throws on the second one.
+     */
+    private static class BinaryPass extends AnalysisVisitor {
+        private final boolean throwOnSecond;
+        private int visited;
+
+        private BinaryPass(boolean throwOnSecond) {
+            this.throwOnSecond = throwOnSecond;
+        }
+
+        @Override
+        protected void buildVisitor() {
+            addVisit(Kind.BINARY_EXPR, this::visitBinaryExpr);
+        }
+
+        private Void visitBinaryExpr(JmmNode expr, SymbolTable table) {
+            visited++;
+            if (throwOnSecond && visited == 2) {
+                throw new RuntimeException("second");
+            }
+
+            addReport(Report.newLog(Stage.SEMANTIC, 0, 0, "binary " + visited, null));
+            return null;
+        }
+    }
+
+    private static List<String> analyse(String code, List<Supplier<AnalysisPass>> passes) {
+        var root = TestUtils.parse(code).getRootNode();
+        var table = JmmSymbolTableBuilder.build(root);
+
+        return new AnalysisPassManager(passes).analyze(root, table).stream()
+                .map(Report::toString)
+                .toList();
+    }
+
+    @Test
+    public void visitorsAreFused() {
+        var manager = new AnalysisPassManager(List.of(SemanticAnalyzer::new, () -> new BinaryPass(false)));
+
+        assertEquals(1, manager.getTraversals().size());
+        assertTrue(manager.getTraversals().get(0).get() instanceof FusedTraversal);
+    }
+
+    @Test
+    public void sameReportsAsSeparatePasses() {
+        List<Supplier<AnalysisPass>> semantic = List.of(SemanticAnalyzer::new);
+        List<Supplier<AnalysisPass>> binary = List.of(() -> new BinaryPass(false));
+
+        var separate = new ArrayList<>(analyse(CODE, semantic));
+        separate.addAll(analyse(CODE, binary));
+
+        assertEquals(separate, analyse(CODE, List.of(SemanticAnalyzer::new, () -> new BinaryPass(false))));
+    }
+
+    @Test
+    public void failedPassStops() {
+        var code = "class A { int f(int x) { return x + 1 + 2 + 3; } }";
+        var root = TestUtils.parse(code).getRootNode();
+        var table = JmmSymbolTableBuilder.build(root);
+
+        var reports = new AnalysisPassManager(List.of(() -> new BinaryPass(false), () -> new BinaryPass(true)))
+                .analyze(root, table);
+
+        // The first pass sees the three sums, the second one only reports its error
+        assertEquals(4, reports.size());
+        assertEquals(ReportType.ERROR, reports.get(3).getType());
+        assertTrue(reports.get(3).getMessage().contains("BinaryPass"));
+    }
+}
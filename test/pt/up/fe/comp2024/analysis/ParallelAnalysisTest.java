@@ -0,0 +1,61 @@
+package pt.up.fe.comp2024.analysis;
+
+import org.junit.Test;
+import pt.up.fe.comp.TestUtils;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ParallelAnalysisTest {
+
+    private static List<String> analyse(String code, boolean parallel) {
+        var config = new HashMap<String, String>();
+        config.put("parallelAnalysis", Boolean.toString(parallel));
+
+        return TestUtils.analyse(code, config).getReports().stream()
+                .map(Report::toString)
+                .toList();
+    }
+
+    private static void assertSameReports(String code) {
+        assertEquals(analyse(code, false), analyse(code, true));
+    }
+
+    @Test
+    public void sameReportsAsSequential() {
+        var resources = List.of("VarNotDeclared", "IncompatibleArguments", "VarargsWrong", "IncompatibleReturn",
+                "ArrayInitWrong1", "ObjectAssignmentFail", "CallToUndeclaredMethod", "Varargs");
+
+        for (var resource : resources) {
+            assertSameReports(SpecsIo.getResource("pt/up/fe/comp/cp2/semanticanalysis/" + resource + ".jmm"));
+        }
+    }
+
+    @Test
+    public void errorsInManyMethods() {
+        var code = new StringBuilder("class A {\n    int a;\n    int a;\n");
+        for (int i = 0; i < 50; i++) {
+            code.append("    int m").append(i).append("(int x) {\n")
+                    .append("        boolean b;\n")
+                    .append("        b = x + ").append(i % 3 == 0 ? "true" : "1").append(";\n")
+                    .append("        return y").append(i).append(";\n    }\n");
+        }
+        code.append("    public static void main(String[] args) {\n        a = 1;\n    }\n}\n");
+
+        var reports = analyse(code.toString(), true);
+
+        assertTrue(reports.size() > 50);
+        assertEquals(analyse(code.toString(), false), reports);
+    }
+
+    @Test
+    public void noErrorsInGeneratedClass() {
+        var code = AnalysisBenchmark.generate(20);
+
+        assertEquals(List.of(), analyse(code, true));
+    }
+}
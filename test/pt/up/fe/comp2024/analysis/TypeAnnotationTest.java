@@ -0,0 +1,54 @@
+package pt.up.fe.comp2024.analysis;
+
+import org.junit.Test;
+import pt.up.fe.comp.TestUtils;
+import pt.up.fe.comp.jmm.analysis.table.Type;
+import pt.up.fe.comp2024.ast.Kind;
+import pt.up.fe.comp2024.ast.TypeUtils;
+
+import static org.junit.Assert.*;
+
+public class TypeAnnotationTest {
+
+    private static final String CODE = """
+            class A {
+                int[] a;
+                int f(int x, boolean y) {
+                    int z;
+                    z = a[x] + this.f(x * 2, y && x < 3);
+                    return z;
+                }
+                public static void main(String[] args) {
+                }
+            }
+            """;
+
+    @Test
+    public void everyExpressionHasItsType() {
+        var result = TestUtils.analyse(CODE);
+        TestUtils.noErrors(result);
+
+        for (var expr : result.getRootNode().getDescendants(Kind.EXPR)) {
+            var stored = expr.getObject(TypeUtils.TYPE_ATTRIBUTE, Type.class);
+
+            assertEquals(TypeUtils.computeExprType(expr, result.getSymbolTable()), stored);
+            assertSame(stored, TypeUtils.getExprType(expr, result.getSymbolTable()));
+        }
+    }
+
+    @Test
+    public void storedTypes() {
+        var result = TestUtils.analyse(CODE);
+        var table = result.getSymbolTable();
+
+        var access = result.getRootNode().getDescendants(Kind.ARRAY_ACCESS_EXPR).get(0);
+        var comparison = result.getRootNode().getDescendants(Kind.BINARY_EXPR).stream()
+                .filter(expr -> expr.get("op").equals("<"))
+                .findFirst()
+                .orElseThrow();
+
+        assertEquals(new Type("int", false), TypeUtils.getExprType(access, table));
+        assertEquals(new Type("int", true), TypeUtils.getExprType(access.getChild(0), table));
+        assertEquals(new Type("boolean", false), TypeUtils.getExprType(comparison, table));
+    }
+}
@@ -0,0 +1,121 @@
+package pt.up.fe.comp2024.ast;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.junit.Test;
+import pt.up.fe.comp.TestUtils;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.ast.antlr.AntlrParser;
+import pt.up.fe.comp2024.JavammLexer;
+import pt.up.fe.comp2024.JavammParser;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CompactJmmNodeTest {
+
+    private static JmmNode parse(String code) {
+        var result = TestUtils.parse(code);
+        TestUtils.noErrors(result);
+
+        return result.getRootNode();
+    }
+
+    private static JmmNode parseWithLibrary(String code) {
+        var lexer = new JavammLexer(new ANTLRInputStream(code));
+        return AntlrParser.parse(lexer, new JavammParser(new CommonTokenStream(lexer)), "program").getRootNode();
+    }
+
+    @Test
+    public void sameTreeAsLibrary() {
+        var code = SpecsIo.getResource("pt/up/fe/comp/cpf/4_jasmin/control_flow/IfWhileNested.jmm");
+
+        var compact = parse(code);
+        var library = parseWithLibrary(code);
+
+        assertTrue(compact instanceof CompactJmmNode);
+        assertEquals(library.toTree(), compact.toTree());
+        assertSameNodes(library, compact);
+    }
+
+    private static void assertSameNodes(JmmNode expected, JmmNode actual) {
+        assertEquals(expected.getHierarchy(), actual.getHierarchy());
+        assertEquals(new HashSet<>(expected.getAttributes()), new HashSet<>(actual.getAttributes()));
+
+        for (var attribute : expected.getAttributes()) {
+            var expectedValue = expected.getOptionalObject(attribute).orElse(null);
+            var actualValue = actual.getOptionalObject(attribute).orElse(null);
+
+            // Attributes that are nodes point to the node of the same tree
+            if (expectedValue instanceof JmmNode expectedNode) {
+                assertEquals(expectedNode.getKind(), ((JmmNode) actualValue).getKind());
+                assertSame(actual, ((JmmNode) actualValue).getParent());
+                continue;
+            }
+
+            assertEquals(expectedValue, actualValue);
+        }
+
+        assertEquals(expected.getNumChildren(), actual.getNumChildren());
+        for (int i = 0; i < expected.getNumChildren(); i++) {
+            assertSameNodes(expected.getChild(i), actual.getChild(i));
+        }
+    }
+
+    @Test
+    public void kindsAndAttributes() {
+        var root = parse("class A { int f(int a) { return a + 1; } }");
+        var binary = (CompactJmmNode) root.getDescendants(Kind.BINARY_EXPR).get(0);
+
+        assertSame(Kind.BINARY_EXPR, binary.getKindValue());
+        assertSame(Kind.BINARY_EXPR, Kind.of(binary));
+        assertTrue(Kind.BINARY_EXPR.check(binary));
+        assertTrue(binary.isInstance("Expr"));
+        assertEquals("+", binary.getOp());
+        assertEquals("+", binary.get("op"));
+        assertEquals(1, NodeUtils.getLine(binary));
+        assertEquals(1, binary.getLineStart());
+        assertFalse(binary.hasAttribute("name"));
+
+        binary.put("op", "-");
+        binary.put("lineStart", "7");
+        binary.putObject("type", List.of("int"));
+
+        assertEquals("-", binary.getOp());
+        assertEquals(7, NodeUtils.getLine(binary));
+        assertEquals(List.of("int"), binary.getObject("type"));
+        assertTrue(binary.getAttributes().containsAll(List.of("op", "lineStart", "type")));
+    }
+
+    @Test
+    public void editTree() {
+        var root = parse("class A { int f(int a) { return a + 1; } }");
+        var binary = root.getDescendants(Kind.BINARY_EXPR).get(0);
+        var left = binary.getChild(0);
+        var right = binary.getChild(1);
+
+        var literal = new CompactJmmNode(Kind.INTEGER_LITERAL);
+        literal.put("value", "2");
+
+        assertEquals(0, binary.removeChild(left));
+        assertNull(left.getParent());
+        binary.add(literal, 0);
+
+        assertSame(literal, binary.getChild(0));
+        assertSame(right, binary.getChild(1));
+        assertSame(binary, literal.getParent());
+        assertEquals(0, literal.getIndexOfSelf());
+        assertEquals(1, right.getIndexOfSelf());
+
+        right.replace(left);
+        assertSame(left, binary.getChild(1));
+        assertNull(right.getParent());
+
+        var copy = binary.copy();
+        assertEquals(binary.toTree(), copy.toTree());
+        assertNotSame(binary.getChild(0), copy.getChild(0));
+    }
+}
@@ -0,0 +1,83 @@
+package pt.up.fe.comp2024.backend;
+
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import pt.up.fe.comp.TestUtils;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class ClassFileGeneratorTest {
+
+    private static Map<String, String> classFileConfig() {
+        Map<String, String> config = new HashMap<>();
+        config.put("classFile", "true");
+        return config;
+    }
+
+    private static void assertSameOutput(String resource) {
+        var code = SpecsIo.getResource(resource);
+
+        var expected = TestUtils.backend(code).run();
+        var actual = TestUtils.backend(code, classFileConfig()).run();
+
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void simpleApp() {
+        assertSameOutput("pt/up/fe/comp/cp2/apps/Simple.jmm");
+    }
+
+    @Test
+    public void nestedControlFlow() {
+        assertSameOutput("pt/up/fe/comp/cpf/4_jasmin/control_flow/IfWhileNested.jmm");
+    }
+
+    @Test
+    public void arraysAndVarargs() {
+        assertSameOutput("pt/up/fe/comp/cpf/4_jasmin/arrays/ArrayVarArgs.jmm");
+    }
+
+    @Test
+    public void modernClassWithFrames() {
+        var result = TestUtils.backend(SpecsIo.getResource("pt/up/fe/comp/cpf/4_jasmin/control_flow/IfWhileNested.jmm"),
+                classFileConfig());
+        TestUtils.noErrors(result);
+
+        assertTrue(result instanceof ClassFileResult);
+        assertNull(result.getJasminCode());
+
+        var reader = new ClassReader(((ClassFileResult) result).getClassFile());
+        var version = new int[1];
+        var hasFrames = new AtomicBoolean();
+        reader.accept(new ClassVisitor(Opcodes.ASM9) {
+            @Override
+            public void visit(int classVersion, int access, String name, String signature, String superName,
+                              String[] interfaces) {
+                version[0] = classVersion;
+            }
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+                                             String[] exceptions) {
+                return new MethodVisitor(Opcodes.ASM9) {
+                    @Override
+                    public void visitFrame(int type, int numLocal, Object[] local, int numStack, Object[] stack) {
+                        hasFrames.set(true);
+                    }
+                };
+            }
+        }, ClassReader.EXPAND_FRAMES);
+
+        assertEquals(Opcodes.V17, version[0]);
+        assertTrue(hasFrames.get());
+    }
+}
@@ -0,0 +1,68 @@
+package pt.up.fe.comp2024.backend;
+
+import org.junit.Test;
+import pt.up.fe.comp.TestUtils;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class InProcessRunnerTest {
+
+    private static void assertSameOutput(String resource) {
+        var result = TestUtils.backend(SpecsIo.getResource(resource));
+        TestUtils.noErrors(result);
+
+        assertEquals(result.run(), InProcessRunner.run(result));
+    }
+
+    @Test
+    public void helperLibraries() {
+        assertSameOutput("pt/up/fe/comp/cp2/apps/Simple.jmm");
+    }
+
+    @Test
+    public void nestedControlFlow() {
+        assertSameOutput("pt/up/fe/comp/cpf/4_jasmin/control_flow/IfWhileNested.jmm");
+    }
+
+    @Test
+    public void classFileBackend() {
+        var code = SpecsIo.getResource("pt/up/fe/comp/cpf/4_jasmin/arrays/ArrayVarArgs.jmm");
+        var expected = TestUtils.backend(code).run();
+        var result = TestUtils.backend(code, Map.of("classFile", "true"));
+
+        assertEquals(expected, InProcessRunner.run(result));
+    }
+
+    @Test
+    public void exceptionIsReported() {
+        var result = TestUtils.backend("""
+                class Fail {
+                    public static void main(String[] args) {
+                        int[] a;
+                        a = new int[1];
+                        a[2] = 1;
+                    }
+                }
+                """);
+        TestUtils.noErrors(result);
+
+        var out = System.out;
+        var output = InProcessRunner.runWithFullOutput(result, Collections.emptyList(), null);
+
+        assertEquals(1, output.getReturnValue());
+        assertTrue(output.getStdErr().contains("ArrayIndexOutOfBoundsException"));
+        assertSame(out, System.out);
+    }
+
+    @Test
+    public void runsAreIndependent() {
+        var result = TestUtils.backend(SpecsIo.getResource("pt/up/fe/comp/cp2/apps/Simple.jmm"));
+
+        // Each run defines the class again in its own loader
+        assertEquals(InProcessRunner.run(result), InProcessRunner.run(result));
+    }
+}
@@ -0,0 +1,44 @@
+package pt.up.fe.comp2024.backend;
+
+import org.junit.Test;
+import pt.up.fe.comp.TestUtils;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JasminGeneratorTest {
+
+    @Test
+    public void streamedCodeIsTheSame() {
+        var ollirResult = TestUtils.optimize(SpecsIo.getResource("pt/up/fe/comp/cpf/4_jasmin/control_flow/IfWhileNested.jmm"));
+        TestUtils.noErrors(ollirResult);
+
+        var out = new StringWriter();
+        var reports = new JasminBackendImpl().toJasmin(ollirResult, out);
+
+        assertTrue(reports.isEmpty());
+        assertEquals(new JasminGenerator(ollirResult).build(), out.toString());
+    }
+
+    @Test
+    public void manyMethods() {
+        var code = new StringBuilder("class Many {\n");
+        for (int i = 0; i < 2000; i++) {
+            code.append("public int m").append(i).append("(int a) { int b; b = a + ").append(i).append("; return b; }\n");
+        }
+        code.append("public static void main(String[] args) { }\n}\n");
+
+        var ollirResult = TestUtils.optimize(code.toString());
+        TestUtils.noErrors(ollirResult);
+
+        var out = new StringWriter();
+        new JasminBackendImpl().toJasmin(ollirResult, out);
+        var jasminCode = out.toString();
+
+        assertTrue(jasminCode.contains(".method public m1999(I)I"));
+        assertEquals(jasminCode, new JasminGenerator(ollirResult).build());
+    }
+}
@@ -0,0 +1,49 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.junit.Test;
+import pt.up.fe.comp.TestUtils;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+public class CompilationContextTest {
+
+    private static final String RESOURCE = "pt/up/fe/comp/cpf/3_ollir/control_flow/SimpleWhileStat.jmm";
+
+    private static String toOllir(String code) {
+        return TestUtils.optimize(code).getOllirCode();
+    }
+
+    @Test
+    public void sameInputSameOutput() {
+        var code = SpecsIo.getResource(RESOURCE);
+
+        assertEquals(toOllir(code), toOllir(code));
+    }
+
+    @Test
+    public void concurrentCompilationsAreDeterministic() throws Exception {
+        var code = SpecsIo.getResource(RESOURCE);
+        var expected = toOllir(code);
+
+        var pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                results.add(pool.submit((Callable<String>) () -> toOllir(code)));
+            }
+
+            for (var result : results) {
+                assertEquals(expected, result.get());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package pt.up.fe.comp2024.optimization;
+
+import pt.up.fe.comp.TestUtils;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.comp2024.analysis.JmmAnalysisImpl;
+import pt.up.fe.comp2024.utils.PhaseProfiler;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures the constant propagation of the AST on a generated class whose methods nest ifs and whiles deeply.
+ * <p>
+ * The time is the one of every phase whose name starts with "constant", so that different implementations of the
+ * propagation can be compared.
+ * <p>
+ * Usage: ConstantPropagationBenchmark [depth] [methods] [iterations]. Run with 'gradle constantPropagationBenchmark'.
+ */
+public class ConstantPropagationBenchmark {
+
+    private static final int WARMUP = 5;
+
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 30;
+        int methods = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        var code = generate(depth, methods);
+
+        for (int i = 0; i < WARMUP; i++) {
+            run(code);
+        }
+
+        long total = 0;
+        for (int i = 0; i < iterations; i++) {
+            total += sumWallNanos(run(code), "constant");
+        }
+
+        System.out.printf("depth %d, %d methods, %d KB%n", depth, methods, code.length() / 1024);
+        System.out.printf("constant propagation: %8.2f ms%n", total / 1e6 / iterations);
+    }
+
+    private static List<PhaseProfiler.Phase> run(String code) {
+        var parserResult = TestUtils.parse(code, Map.of("optimize", "true"));
+        var semantics = new JmmAnalysisImpl().semanticAnalysis(parserResult);
+        if (semantics.getReports().stream().anyMatch(report -> report.getType() == ReportType.ERROR)) {
+            throw new RuntimeException("Generated code has errors: " + semantics.getReports());
+        }
+
+        var profiler = PhaseProfiler.start();
+        try {
+            new JmmOptimizationImpl().toOllir(semantics);
+        } finally {
+            PhaseProfiler.stop();
+        }
+
+        return profiler.getPhases();
+    }
+
+    private static long sumWallNanos(List<PhaseProfiler.Phase> phases, String prefix) {
+        long total = 0;
+
+        for (var phase : phases) {
+            if (phase.getName().startsWith(prefix)) {
+                total += phase.getWallNanos();
+            } else {
+                total += sumWallNanos(phase.getChildren(), prefix);
+            }
+        }
+
+        return total;
+    }
+
+    /**
+     * Methods where each level assigns a variable from the one of the level above, and nests the next level in an if
+     * or a while on it.
+     */
+    static String generate(int depth, int methods) {
+        var code = new StringBuilder("import io;\n\nclass Nested {\n\n");
+
+        for (int m = 0; m < methods; m++) {
+            code.append("    public int m").append(m).append("(int p) {\n");
+            for (int level = 0; level <= depth; level++) {
+                code.append("        int v").append(level).append(";\n");
+            }
+            code.append("        int s;\n        s = 0;\n        v0 = ").append(m).append(";\n");
+
+            for (int level = 1; level <= depth; level++) {
+                var indent = "    ".repeat(level + 1);
+                code.append(indent).append("v").append(level).append(" = v").append(level - 1).append(" * 2 + ")
+                        .append(level).append(";\n");
+                code.append(indent).append("s = s + v").append(level).append(" - p;\n");
+
+                if (level % 2 == 1) {
+                    code.append(indent).append("if (v").append(level).append(" < p) {\n");
+                } else {
+                    code.append(indent).append("while (s < v").append(level).append(") {\n");
+                    code.append(indent).append("    s = s + 1;\n");
+                }
+            }
+
+            for (int level = depth; level >= 1; level--) {
+                var indent = "    ".repeat(level + 1);
+                code.append(indent).append("}");
+                code.append(level % 2 == 1 ? " else {\n" + indent + "    s = s - v" + level + ";\n" + indent + "}\n"
+                        : "\n");
+            }
+
+            code.append("        return s + v").append(depth / 2).append(";\n    }\n\n");
+        }
+
+        code.append("    public static void main(String[] args) {\n        io.println(1);\n    }\n}\n");
+
+        return code.toString();
+    }
+}
@@ -0,0 +1,194 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.junit.Test;
+import pt.up.fe.comp.TestUtils;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ConstantPropagationTest {
+
+    private static final Map<String, String> OPTIMIZE = Map.of("optimize", "true");
+
+    private static String optimizedOllir(String code) {
+        var result = TestUtils.optimize(code, OPTIMIZE);
+        TestUtils.noErrors(result);
+
+        return result.getOllirCode();
+    }
+
+    private static void assertSameOutput(String resource) {
+        var code = SpecsIo.getResource(resource);
+
+        assertEquals(TestUtils.backend(code).run(), TestUtils.backend(code, OPTIMIZE).run());
+    }
+
+    @Test
+    public void loopVariableIsNotConstant() {
+        var ollir = optimizedOllir(SpecsIo.getResource("pt/up/fe/comp/cpf/5_optimizations/const_prop/PropWithLoop.jmm"));
+
+        // a is constant in the loop, i is not
+        assertTrue(ollir, ollir.contains("10.i32"));
+        assertFalse(ollir, ollir.contains("a.i32"));
+        assertTrue(ollir, ollir.contains("i.i32"));
+    }
+
+    @Test
+    public void constantThroughBranches() {
+        var code = """
+                class A {
+                    public int f(int p) {
+                        int a;
+                        int b;
+                        a = 3;
+                        if (p < 0) {
+                            b = a + 1;
+                        } else {
+                            b = 4;
+                        }
+                        if (a < b) {
+                            a = 100;
+                        } else {
+                            a = p;
+                        }
+                        return a + b;
+                    }
+                    public static void main(String[] args) {
+                    }
+                }
+                """;
+
+        var ollir = optimizedOllir(code);
+
+        // Both branches give b the same value, and the second else cannot run, so the return is constant
+        assertTrue(ollir, ollir.contains("ret.i32 104.i32"));
+    }
+
+    @Test
+    public void divisionByZeroIsKept() {
+        var ollir = optimizedOllir("""
+                class A {
+                    public int f() {
+                        int a;
+                        a = 0;
+                        return 1 / a;
+                    }
+                    public static void main(String[] args) {
+                    }
+                }
+                """);
+
+        assertTrue(ollir, ollir.contains("1.i32 /.i32 0.i32"));
+    }
+
+    @Test
+    public void identitiesAndReassociation() {
+        var ollir = optimizedOllir("""
+                class A {
+                    public int f(int p, boolean q) {
+                        int a;
+                        boolean t;
+                        a = p + 1 + 2;
+                        a = (a - 1) * 1 + 0 - 5;
+                        a = 2 * a * 3;
+                        t = !!q && true;
+                        if (t) {
+                            a = a + p * 0;
+                        } else {
+                            a = a * 1;
+                        }
+                        return a;
+                    }
+                    public static void main(String[] args) {
+                    }
+                }
+                """);
+
+        assertTrue(ollir, ollir.contains("p.i32 +.i32 3.i32"));
+        assertTrue(ollir, ollir.contains("a.i32 -.i32 6.i32"));
+        assertTrue(ollir, ollir.contains("a.i32 *.i32 6.i32"));
+        // t is q, and the copy is then coalesced
+        assertFalse(ollir, ollir.contains("!.bool"));
+        assertFalse(ollir, ollir.contains("&&.bool"));
+        assertTrue(ollir, ollir.contains("if (q.bool)") || ollir.contains("t.bool :=.bool q.bool;"));
+        // Both branches become a = a, and are removed
+        assertFalse(ollir, ollir.contains("a.i32 :=.i32 a.i32;"));
+        assertFalse(ollir, ollir.contains(" 0.i32"));
+    }
+
+    @Test
+    public void annihilatorKeepsSideEffects() {
+        var ollir = optimizedOllir("""
+                import io;
+                class A {
+                    public int g() {
+                        io.println(1);
+                        return 1;
+                    }
+                    public int f(int p) {
+                        return p * 0 + this.g() * 0;
+                    }
+                    public static void main(String[] args) {
+                    }
+                }
+                """);
+
+        // p * 0 is removed, but g must still print, called or inlined
+        assertFalse(ollir, ollir.contains("p.i32 *.i32"));
+        var f = ollir.substring(ollir.indexOf(".method public f("));
+        f = f.substring(0, f.indexOf("\n}"));
+        assertTrue(ollir, f.contains("\"g\"") || f.contains("\"println\""));
+    }
+
+    @Test
+    public void deadBranchesAreRemoved() {
+        var ollir = optimizedOllir("""
+                import io;
+                class A {
+                    public int f(int p) {
+                        int a;
+                        boolean debug;
+                        debug = false;
+                        a = 1;
+                        if (debug) {
+                            io.println(999);
+                            a = 2;
+                        } else {
+                            io.println(1);
+                        }
+                        while (debug) {
+                            io.println(998);
+                        }
+                        while (a < 1) {
+                            a = a + p;
+                        }
+                        if (p < a) {
+                            if (debug) {
+                                io.println(997);
+                            } else {
+                                io.println(2);
+                            }
+                        } else {
+                            io.println(3);
+                        }
+                        return a;
+                    }
+                    public static void main(String[] args) {
+                    }
+                }
+                """);
+
+        assertFalse(ollir, ollir.contains("99"));
+        assertFalse(ollir, ollir.contains("while"));
+        // Only the condition on p is left
+        assertEquals(ollir, 1, ollir.split("if \\(").length - 1);
+        assertTrue(ollir, ollir.contains("ret.i32 1.i32"));
+    }
+
+    @Test
+    public void sameOutputWithNestedControlFlow() {
+        assertSameOutput("pt/up/fe/comp/cpf/4_jasmin/control_flow/IfWhileNested.jmm");
+    }
+}
@@ -0,0 +1,81 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.junit.Test;
+import org.specs.comp.ollir.Method;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CopyCoalescingTest {
+
+    private static Method coalesce(String methodCode) {
+        var method = OllirTestUtils.parseMethod(methodCode);
+        new CopyCoalescing(method).run();
+
+        return method;
+    }
+
+    @Test
+    public void chainsAreMerged() {
+        var method = coalesce("""
+                .method public f(a.i32).i32 {
+                    tmp0.i32 :=.i32 a.i32 +.i32 1.i32;
+                    b.i32 :=.i32 tmp0.i32;
+                    tmp1.i32 :=.i32 b.i32;
+                    ret.i32 tmp1.i32;
+                }
+                """);
+
+        assertEquals(List.of("b.i32 :=.i32 a.i32 +.i32 1.i32", "ret.i32 b.i32"), OllirTestUtils.print(method));
+        assertFalse(method.getVarTable().containsKey("tmp0"));
+    }
+
+    @Test
+    public void interferingCopiesAreKept() {
+        // The old value of a is still needed after a changes
+        var method = coalesce("""
+                .method public f(a.i32).i32 {
+                    b.i32 :=.i32 a.i32;
+                    a.i32 :=.i32 a.i32 +.i32 1.i32;
+                    t.i32 :=.i32 b.i32 +.i32 a.i32;
+                    ret.i32 t.i32;
+                }
+                """);
+
+        assertEquals(List.of("b.i32 :=.i32 a.i32"), OllirTestUtils.assignmentsOf(method, "b"));
+    }
+
+    @Test
+    public void parametersKeepTheirNames() {
+        var method = coalesce("""
+                .method public f(a.i32).i32 {
+                    b.i32 :=.i32 a.i32;
+                    t.i32 :=.i32 b.i32 +.i32 1.i32;
+                    ret.i32 t.i32;
+                }
+                """);
+
+        assertEquals(List.of("t.i32 :=.i32 a.i32 +.i32 1.i32"), OllirTestUtils.assignmentsOf(method, "t"));
+        assertFalse(method.getVarTable().containsKey("b"));
+    }
+
+    @Test
+    public void labelsOfRemovedCopiesMove() {
+        var method = coalesce("""
+                .method public f(a.i32).i32 {
+                    i.i32 :=.i32 a.i32;
+                Loop:
+                    tmp0.i32 :=.i32 i.i32;
+                    tmp1.i32 :=.i32 tmp0.i32 +.i32 1.i32;
+                    i.i32 :=.i32 tmp1.i32;
+                    c.bool :=.bool i.i32 <.bool 10.i32;
+                    if (c.bool) goto Loop;
+                    ret.i32 i.i32;
+                }
+                """);
+
+        // i is merged into the parameter, and the first copy of the loop into the increment
+        assertEquals("a.i32 :=.i32 a.i32 +.i32 1.i32", OllirPrinter.printInstruction(method.getLabels().get("Loop")));
+    }
+}
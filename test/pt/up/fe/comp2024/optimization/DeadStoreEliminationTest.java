@@ -0,0 +1,107 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.junit.Test;
+import org.specs.comp.ollir.AssignInstruction;
+import org.specs.comp.ollir.Method;
+import org.specs.comp.ollir.Operand;
+import pt.up.fe.comp.TestUtils;
+import pt.up.fe.comp.jmm.report.Report;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class DeadStoreEliminationTest {
+
+    private static final String METHODS = """
+            .method public g().i32 {
+                ret.i32 1.i32;
+            }
+
+            """;
+
+    private static Method optimize(String methodCode) {
+        var method = OllirTestUtils.parseMethod(METHODS + methodCode);
+        new DeadStoreElimination(method).run();
+
+        return method;
+    }
+
+    private static List<String> assignedVariables(Method method) {
+        return method.getInstructions().stream()
+                .filter(instruction -> instruction instanceof AssignInstruction)
+                .map(instruction -> ((Operand) ((AssignInstruction) instruction).getDest()).getName())
+                .toList();
+    }
+
+    @Test
+    public void deadChainsAreRemoved() {
+        var method = optimize("""
+                .method public f(a.i32).i32 {
+                    t1.i32 :=.i32 a.i32 +.i32 1.i32;
+                    t2.i32 :=.i32 a.i32 *.i32 2.i32;
+                    t3.i32 :=.i32 t2.i32 +.i32 1.i32;
+                    t4.i32 :=.i32 a.i32;
+                    ret.i32 t4.i32;
+                }
+                """);
+
+        assertEquals(List.of("t4"), assignedVariables(method));
+        assertFalse(method.getVarTable().containsKey("t2"));
+    }
+
+    @Test
+    public void sideEffectsAreKept() {
+        var method = optimize("""
+                .method public f(a.i32, b.array.i32).i32 {
+                    t1.i32 :=.i32 invokevirtual(this.Foo, "g").i32;
+                    t2.i32 :=.i32 a.i32 /.i32 0.i32;
+                    t3.i32 :=.i32 b[a.i32].i32;
+                    b[a.i32].i32 :=.i32 1.i32;
+                    ret.i32 a.i32;
+                }
+                """);
+
+        assertEquals(List.of("t1", "t2", "t3", "b"), assignedVariables(method));
+    }
+
+    @Test
+    public void valuesReadByLoopsAreKept() {
+        // The loop never reaches the end of the method, but i is read on the next iteration
+        var method = optimize("""
+                .method public f(a.i32).i32 {
+                    i.i32 :=.i32 0.i32;
+                    dead.i32 :=.i32 1.i32;
+                    Loop:
+                        invokestatic(io, "println", i.i32).V;
+                        i.i32 :=.i32 i.i32 +.i32 1.i32;
+                        goto Loop;
+                }
+                """);
+
+        assertEquals(List.of("i", "i"), assignedVariables(method));
+    }
+
+    @Test
+    public void removedStoresAreReported() {
+        var result = TestUtils.optimize("""
+                class A {
+                    public int f(int a) {
+                        int b;
+                        b = a * 2;
+                        b = a;
+                        return b;
+                    }
+                    public static void main(String[] args) {
+                    }
+                }
+                """, Map.of("optimize", "true"));
+        TestUtils.noErrors(result);
+
+        var messages = result.getReports().stream().map(Report::getMessage).toList();
+        // The product and its copy to b
+        assertTrue(messages.toString(),
+                messages.contains("Dead store elimination removed 2 unused assignments from method f"));
+    }
+}
@@ -0,0 +1,122 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.junit.Test;
+import org.specs.comp.ollir.Method;
+import pt.up.fe.comp.TestUtils;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class GlobalValueNumberingTest {
+
+    private static final String FIELDS = """
+            .field public x.i32;
+            """;
+
+    private static final String METHODS = """
+            .method public g().V {
+                ret.V;
+            }
+
+            """;
+
+    private static Method number(String methodCode) {
+        var method = OllirTestUtils.parseMethod(FIELDS, METHODS + methodCode);
+        new GlobalValueNumbering(method).run();
+
+        return method;
+    }
+
+    private static String assignmentOf(Method method, String variable) {
+        var assignments = OllirTestUtils.assignmentsOf(method, variable);
+        assertEquals(1, assignments.size());
+
+        return assignments.get(0);
+    }
+
+    @Test
+    public void repeatedExpressionsAreReused() {
+        var method = number("""
+                .method public f(a.i32, b.i32, c.array.i32).i32 {
+                    t1.i32 :=.i32 a.i32 *.i32 b.i32;
+                    t2.i32 :=.i32 b.i32 *.i32 a.i32;
+                    t3.i32 :=.i32 arraylength(c.array.i32).i32;
+                    invokevirtual(this.Foo, "g").V;
+                    t4.i32 :=.i32 arraylength(c.array.i32).i32;
+                    t5.i32 :=.i32 t1.i32 +.i32 t2.i32;
+                    t6.i32 :=.i32 t5.i32 +.i32 t4.i32;
+                    ret.i32 t6.i32;
+                }
+                """);
+
+        assertEquals("t2.i32 :=.i32 t1.i32", assignmentOf(method, "t2"));
+        assertEquals("t4.i32 :=.i32 t3.i32", assignmentOf(method, "t4"));
+    }
+
+    @Test
+    public void changedOperandsAreNotReused() {
+        var method = number("""
+                .method public f(a.i32).i32 {
+                    t1.i32 :=.i32 a.i32 +.i32 1.i32;
+                    a.i32 :=.i32 2.i32;
+                    t2.i32 :=.i32 a.i32 +.i32 1.i32;
+                    t3.i32 :=.i32 getfield(this, x.i32).i32;
+                    invokevirtual(this.Foo, "g").V;
+                    t4.i32 :=.i32 getfield(this, x.i32).i32;
+                    t5.i32 :=.i32 t1.i32 +.i32 t2.i32;
+                    t6.i32 :=.i32 t3.i32 +.i32 t4.i32;
+                    t7.i32 :=.i32 t5.i32 +.i32 t6.i32;
+                    ret.i32 t7.i32;
+                }
+                """);
+
+        assertEquals("t2.i32 :=.i32 a.i32 +.i32 1.i32", assignmentOf(method, "t2"));
+        assertEquals("t4.i32 :=.i32 getfield(this, x.i32).i32", assignmentOf(method, "t4"));
+    }
+
+    @Test
+    public void onlyDominatingExpressionsAreReused() {
+        // The product is computed only when a is positive, and the sum is changed by one of the branches
+        var method = number("""
+                .method public f(a.i32, b.i32).i32 {
+                    s.i32 :=.i32 a.i32 +.i32 b.i32;
+                    c.bool :=.bool a.i32 >.bool 0.i32;
+                    if (c.bool) goto Then;
+                    s.i32 :=.i32 0.i32;
+                    goto End;
+                Then:
+                    p.i32 :=.i32 a.i32 *.i32 b.i32;
+                End:
+                    u.i32 :=.i32 0.i32;
+                    t1.i32 :=.i32 a.i32 *.i32 b.i32;
+                    t2.i32 :=.i32 a.i32 +.i32 b.i32;
+                    d.bool :=.bool a.i32 >.bool 0.i32;
+                    t3.i32 :=.i32 t1.i32 +.i32 t2.i32;
+                    ret.i32 t3.i32;
+                }
+                """);
+
+        assertEquals("t1.i32 :=.i32 a.i32 *.i32 b.i32", assignmentOf(method, "t1"));
+        assertEquals("t2.i32 :=.i32 a.i32 +.i32 b.i32", assignmentOf(method, "t2"));
+        assertEquals("d.bool :=.bool c.bool", assignmentOf(method, "d"));
+    }
+
+    @Test
+    public void ollirCodeIsTheOptimizedClass() {
+        var result = TestUtils.optimize("""
+                class A {
+                    public int f(int a, int b) {
+                        return a * b + a * b;
+                    }
+                    public static void main(String[] args) {
+                    }
+                }
+                """, Map.of("optimize", "true"));
+        TestUtils.noErrors(result);
+
+        var ollir = result.getOllirCode();
+        assertEquals(OllirPrinter.print(result.getOllirClass()), ollir);
+        assertEquals(ollir, 1, ollir.split("\\*\\.i32").length - 1);
+    }
+}
@@ -0,0 +1,113 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.junit.Test;
+import org.specs.comp.ollir.Method;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LoopInvariantCodeMotionTest {
+
+    private static Method hoist(String methodCode) {
+        var method = OllirTestUtils.parseMethod(methodCode);
+        new LoopInvariantCodeMotion(method).run();
+
+        return method;
+    }
+
+    @Test
+    public void invariantsAreMovedToPreheader() {
+        var method = hoist("""
+                .method public f(a.array.i32, n.i32).i32 {
+                    i.i32 :=.i32 0.i32;
+                    s.i32 :=.i32 0.i32;
+                whileCond0:
+                    t1.i32 :=.i32 arraylength(a.array.i32).i32;
+                    t2.bool :=.bool i.i32 <.bool t1.i32;
+                    if (t2.bool) goto whileLoop0;
+                    goto whileEnd0;
+                whileLoop0:
+                    t3.i32 :=.i32 n.i32 *.i32 2.i32;
+                    s.i32 :=.i32 s.i32 +.i32 t3.i32;
+                    i.i32 :=.i32 i.i32 +.i32 1.i32;
+                    goto whileCond0;
+                whileEnd0:
+                    ret.i32 s.i32;
+                }
+                """);
+
+        var preheader = OllirTestUtils.before(method, "whileCond0");
+        var loop = OllirTestUtils.between(method, "whileCond0", "whileEnd0");
+        assertTrue(preheader.contains("t1.i32 :=.i32 arraylength(a.array.i32).i32"));
+        assertTrue(preheader.contains("t3.i32 :=.i32 n.i32 *.i32 2.i32"));
+        assertFalse(loop.stream().anyMatch(instruction -> instruction.startsWith("t1.i32 :=")
+                || instruction.startsWith("t3.i32 :=")));
+        assertTrue(loop.contains("s.i32 :=.i32 s.i32 +.i32 t3.i32"));
+    }
+
+    @Test
+    public void variantsAreKept() {
+        // t1 is read after the loop, which may not run, and the division and the array read could throw
+        var method = hoist("""
+                .method public f(a.array.i32, n.i32).i32 {
+                    i.i32 :=.i32 0.i32;
+                    t1.i32 :=.i32 0.i32;
+                whileCond0:
+                    t2.bool :=.bool i.i32 <.bool n.i32;
+                    if (t2.bool) goto whileLoop0;
+                    goto whileEnd0;
+                whileLoop0:
+                    t1.i32 :=.i32 n.i32 +.i32 1.i32;
+                    t3.i32 :=.i32 n.i32 /.i32 2.i32;
+                    t4.i32 :=.i32 a.array.i32[0.i32].i32;
+                    i.i32 :=.i32 i.i32 +.i32 1.i32;
+                    goto whileCond0;
+                whileEnd0:
+                    ret.i32 t1.i32;
+                }
+                """);
+
+        assertEquals(List.of("i.i32 :=.i32 0.i32", "t1.i32 :=.i32 0.i32"), OllirTestUtils.before(method, "whileCond0"));
+        var loop = OllirTestUtils.between(method, "whileCond0", "whileEnd0");
+        assertTrue(loop.contains("t1.i32 :=.i32 n.i32 +.i32 1.i32"));
+        assertTrue(loop.contains("t3.i32 :=.i32 n.i32 /.i32 2.i32"));
+        assertTrue(loop.contains("t4.i32 :=.i32 a.array.i32[0.i32].i32"));
+    }
+
+    @Test
+    public void invariantsLeaveNestedLoops() {
+        var method = hoist("""
+                .method public f(n.i32).i32 {
+                    i.i32 :=.i32 0.i32;
+                    s.i32 :=.i32 0.i32;
+                whileCond0:
+                    t1.bool :=.bool i.i32 <.bool n.i32;
+                    if (t1.bool) goto whileLoop0;
+                    goto whileEnd0;
+                whileLoop0:
+                    j.i32 :=.i32 0.i32;
+                whileCond1:
+                    t2.bool :=.bool j.i32 <.bool n.i32;
+                    if (t2.bool) goto whileLoop1;
+                    goto whileEnd1;
+                whileLoop1:
+                    t3.i32 :=.i32 n.i32 *.i32 n.i32;
+                    s.i32 :=.i32 s.i32 +.i32 t3.i32;
+                    j.i32 :=.i32 j.i32 +.i32 1.i32;
+                    goto whileCond1;
+                whileEnd1:
+                    i.i32 :=.i32 i.i32 +.i32 1.i32;
+                    goto whileCond0;
+                whileEnd0:
+                    ret.i32 s.i32;
+                }
+                """);
+
+        // The product leaves the inner loop, and then the outer one
+        var product = "t3.i32 :=.i32 n.i32 *.i32 n.i32";
+        assertTrue(OllirTestUtils.before(method, "whileCond0").contains(product));
+        assertFalse(OllirTestUtils.between(method, "whileCond0", "whileEnd0").contains(product));
+        assertTrue(OllirTestUtils.between(method, "whileLoop0", "whileCond1").contains("j.i32 :=.i32 0.i32"));
+    }
+}
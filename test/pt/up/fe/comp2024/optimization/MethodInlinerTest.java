@@ -0,0 +1,315 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.junit.Test;
+import org.specs.comp.ollir.AssignInstruction;
+import org.specs.comp.ollir.CallInstruction;
+import org.specs.comp.ollir.CallType;
+import org.specs.comp.ollir.ClassUnit;
+import org.specs.comp.ollir.LiteralElement;
+import org.specs.comp.ollir.Method;
+import org.specs.comp.ollir.Operand;
+import pt.up.fe.comp.jmm.report.Report;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MethodInlinerTest {
+
+    private static final String FIELDS = """
+            .field private v.i32;
+            .field private w.Foo;
+            """;
+
+    private static final String GET = """
+            .method %s get().i32 {
+                t.i32 :=.i32 getfield(this, v.i32).i32;
+                ret.i32 t.i32;
+            }
+
+            """;
+
+    private static MethodInliner inline(ClassUnit classUnit, boolean closedWorld) {
+        var inliner = new MethodInliner(classUnit, closedWorld);
+        inliner.run();
+
+        return inliner;
+    }
+
+    private static List<String> messages(MethodInliner inliner) {
+        return inliner.getReports().stream().map(Report::getMessage).toList();
+    }
+
+    /**
+     * @return the calls of the method to the one with the name, with the names of their receivers
+     */
+    private static List<String> callsTo(Method method, String name) {
+        return method.getInstructions().stream()
+                .map(instruction -> instruction instanceof AssignInstruction assign ? assign.getRhs() : instruction)
+                .filter(instruction -> instruction instanceof CallInstruction call
+                        && call.getInvocationType() != CallType.NEW
+                        && ((LiteralElement) call.getMethodName()).getLiteral().equals("\"" + name + "\""))
+                .map(instruction -> ((Operand) ((CallInstruction) instruction).getCaller()).getName())
+                .toList();
+    }
+
+    private static long countContaining(Method method, String text) {
+        return OllirTestUtils.print(method).stream().filter(line -> line.contains(text)).count();
+    }
+
+    @Test
+    public void privateGettersAndSettersAreInlined() {
+        var classUnit = OllirTestUtils.parseClass(FIELDS, GET.formatted("private") + """
+                .method private set(x.i32).V {
+                    putfield(this, v.i32, x.i32).V;
+                    ret.V;
+                }
+
+                .method public f(t.i32).i32 {
+                    invokevirtual(this, "set", t.i32).V;
+                    r.i32 :=.i32 invokevirtual(this, "get").i32;
+                    ret.i32 r.i32;
+                }
+                """);
+
+        var inliner = inline(classUnit, false);
+
+        var method = OllirTestUtils.getMethod(classUnit, "f");
+        assertEquals(List.of(), callsTo(method, "set"));
+        assertEquals(List.of(), callsTo(method, "get"));
+        assertEquals(1, countContaining(method, "putfield(this, v.i32"));
+        assertEquals(1, countContaining(method, "getfield(this, v.i32)"));
+
+        // The local t of the getter is renamed, since the caller has a parameter t
+        assertEquals(List.of(), OllirTestUtils.assignmentsOf(method, "t"));
+        assertEquals(2, inliner.getInlined());
+        assertTrue(messages(inliner).contains("Inlined 1 calls of method get into f"));
+    }
+
+    @Test
+    public void overridableMethodsAreInlinedOnlyInAClosedWorld() {
+        var code = GET.formatted("public") + """
+                .method public f().i32 {
+                    r.i32 :=.i32 invokevirtual(this, "get").i32;
+                    ret.i32 r.i32;
+                }
+                """;
+
+        // A subclass could override get, so the call on 'this' must stay
+        var classUnit = OllirTestUtils.parseClass(FIELDS, code);
+        var inliner = inline(classUnit, false);
+
+        assertEquals(List.of("this"), callsTo(OllirTestUtils.getMethod(classUnit, "f"), "get"));
+        assertEquals(0, inliner.getInlined());
+        assertTrue(messages(inliner).contains("Did not inline 1 calls of method get into f, which can be overridden"));
+
+        var closedClassUnit = OllirTestUtils.parseClass(FIELDS, code);
+        var closedInliner = inline(closedClassUnit, true);
+
+        assertEquals(List.of(), callsTo(OllirTestUtils.getMethod(closedClassUnit, "f"), "get"));
+        assertEquals(1, closedInliner.getInlined());
+    }
+
+    @Test
+    public void staticMethodsAreInlined() {
+        // The class of the static call in the callee must not be renamed like a variable
+        var classUnit = OllirTestUtils.parseClass(FIELDS, """
+                .method public static log(x.i32).V {
+                    invokestatic(io, "println", x.i32).V;
+                    ret.V;
+                }
+
+                .method public static square(x.i32).i32 {
+                    invokestatic(Foo, "log", x.i32).V;
+                    y.i32 :=.i32 x.i32 *.i32 x.i32;
+                    ret.i32 y.i32;
+                }
+
+                .method public f(a.i32).i32 {
+                    r.i32 :=.i32 invokestatic(Foo, "square", a.i32).i32;
+                    ret.i32 r.i32;
+                }
+                """);
+
+        var inliner = inline(classUnit, false);
+
+        var method = OllirTestUtils.getMethod(classUnit, "f");
+        assertEquals(List.of(), callsTo(method, "square"));
+        assertEquals(List.of(), callsTo(method, "log"));
+        assertEquals(List.of("io"), callsTo(method, "println"));
+        assertEquals(2, inliner.getInlined());
+    }
+
+    @Test
+    public void labelsOfCalleesAreRenamed() {
+        var classUnit = OllirTestUtils.parseClass(FIELDS, """
+                .method private abs(x.i32).i32 {
+                    c.bool :=.bool x.i32 <.bool 0.i32;
+                    if (c.bool) goto if0;
+                    goto endif0;
+                if0:
+                    x.i32 :=.i32 0.i32 -.i32 x.i32;
+                endif0:
+                    ret.i32 x.i32;
+                }
+
+                .method public f(a.i32).i32 {
+                if0:
+                    r.i32 :=.i32 invokevirtual(this, "abs", a.i32).i32;
+                    ret.i32 r.i32;
+                }
+                """);
+
+        inline(classUnit, false);
+
+        // The label of the caller stays on its first instruction, and the copied jumps reach the copied labels
+        var method = OllirTestUtils.getMethod(classUnit, "f");
+        var instructions = method.getInstructions();
+        assertEquals(List.of(), callsTo(method, "abs"));
+        assertSame(instructions.get(0), method.getLabels().get("if0"));
+        assertEquals(3, method.getLabels().size());
+        for (var line : OllirTestUtils.print(method)) {
+            if (line.contains("goto ")) {
+                var label = line.substring(line.indexOf("goto ") + 5);
+                assertNotEquals(line, "if0", label);
+                assertTrue(line, method.getLabels().containsKey(label));
+            }
+        }
+        assertEquals(0, countContaining(method, " x.i32"));
+    }
+
+    @Test
+    public void onlyKnownTargetsAreInlined() {
+        // o is only assigned a new Foo, through a copy, while p could be null or of a subclass
+        var classUnit = OllirTestUtils.parseClass(FIELDS, GET.formatted("public") + """
+                .method public static f(p.Foo).i32 {
+                    t.Foo :=.Foo new(Foo).Foo;
+                    invokespecial(t.Foo, "<init>").V;
+                    o.Foo :=.Foo t.Foo;
+                    a.i32 :=.i32 invokevirtual(o.Foo, "get").i32;
+                    b.i32 :=.i32 invokevirtual(p.Foo, "get").i32;
+                    c.i32 :=.i32 a.i32 +.i32 b.i32;
+                    ret.i32 c.i32;
+                }
+                """);
+
+        inline(classUnit, false);
+
+        var method = OllirTestUtils.getMethod(classUnit, "f");
+        assertEquals(List.of("p"), callsTo(method, "get"));
+        assertEquals(1, countContaining(method, "getfield(o.Foo, v.i32)"));
+    }
+
+    @Test
+    public void objectsNewOnlyOnSomePathsAreNotKnown() {
+        // o is a new Foo when c is true, and the parameter otherwise
+        var classUnit = OllirTestUtils.parseClass(FIELDS, GET.formatted("public") + """
+                .method public static f(c.bool, p.Foo).i32 {
+                    if (c.bool) goto then0;
+                    o.Foo :=.Foo p.Foo;
+                    goto endif0;
+                then0:
+                    t.Foo :=.Foo new(Foo).Foo;
+                    invokespecial(t.Foo, "<init>").V;
+                    o.Foo :=.Foo t.Foo;
+                endif0:
+                    a.i32 :=.i32 invokevirtual(o.Foo, "get").i32;
+                    ret.i32 a.i32;
+                }
+                """);
+
+        var inliner = inline(classUnit, false);
+
+        assertEquals(List.of("o"), callsTo(OllirTestUtils.getMethod(classUnit, "f"), "get"));
+        assertEquals(0, inliner.getInlined());
+    }
+
+    @Test
+    public void variablesOfInlinedBodiesAreNotReused() {
+        // The body of load has its own o, from a field, which must not become the new Foo of the caller
+        var classUnit = OllirTestUtils.parseClass(FIELDS, GET.formatted("public") + """
+                .method private load().i32 {
+                    o.Foo :=.Foo getfield(this, w.Foo).Foo;
+                    t.i32 :=.i32 invokevirtual(o.Foo, "get").i32;
+                    ret.i32 t.i32;
+                }
+
+                .method public f().i32 {
+                    t.Foo :=.Foo new(Foo).Foo;
+                    invokespecial(t.Foo, "<init>").V;
+                    o.Foo :=.Foo t.Foo;
+                    a.i32 :=.i32 invokevirtual(this, "load").i32;
+                    b.i32 :=.i32 invokevirtual(this, "load").i32;
+                    c.i32 :=.i32 invokevirtual(o.Foo, "get").i32;
+                    d.i32 :=.i32 a.i32 +.i32 b.i32;
+                    d.i32 :=.i32 d.i32 +.i32 c.i32;
+                    ret.i32 d.i32;
+                }
+                """);
+
+        var inliner = inline(classUnit, false);
+
+        var method = OllirTestUtils.getMethod(classUnit, "f");
+        assertEquals(List.of(), callsTo(method, "load"));
+        assertEquals(1, OllirTestUtils.assignmentsOf(method, "o").size());
+
+        // Each copy of load keeps the call on its own object from the field, under a name of its own
+        var receivers = callsTo(method, "get");
+        assertEquals(2, receivers.size());
+        assertFalse(receivers.contains("o"));
+        assertNotEquals(receivers.get(0), receivers.get(1));
+        assertEquals(1, countContaining(method, "getfield(o.Foo, v.i32)"));
+        assertEquals(3, inliner.getInlined());
+    }
+
+    @Test
+    public void recursiveAndLargeMethodsAreKept() {
+        var classUnit = OllirTestUtils.parseClass(FIELDS, """
+                .method private even(n.i32).bool {
+                    c.bool :=.bool n.i32 <.bool 1.i32;
+                    if (c.bool) goto end0;
+                    m.i32 :=.i32 n.i32 -.i32 1.i32;
+                    c.bool :=.bool invokevirtual(this, "odd", m.i32).bool;
+                    c.bool :=.bool !.bool c.bool;
+                end0:
+                    ret.bool c.bool;
+                }
+
+                .method private odd(n.i32).bool {
+                    c.bool :=.bool invokevirtual(this, "even", n.i32).bool;
+                    c.bool :=.bool !.bool c.bool;
+                    ret.bool c.bool;
+                }
+
+                .method private large(n.i32).i32 {
+                    n.i32 :=.i32 n.i32 +.i32 1.i32;
+                    n.i32 :=.i32 n.i32 +.i32 1.i32;
+                    n.i32 :=.i32 n.i32 +.i32 1.i32;
+                    n.i32 :=.i32 n.i32 +.i32 1.i32;
+                    n.i32 :=.i32 n.i32 +.i32 1.i32;
+                    n.i32 :=.i32 n.i32 +.i32 1.i32;
+                    n.i32 :=.i32 n.i32 +.i32 1.i32;
+                    n.i32 :=.i32 n.i32 +.i32 1.i32;
+                    n.i32 :=.i32 n.i32 +.i32 1.i32;
+                    n.i32 :=.i32 n.i32 +.i32 1.i32;
+                    n.i32 :=.i32 n.i32 +.i32 1.i32;
+                    n.i32 :=.i32 n.i32 +.i32 1.i32;
+                    ret.i32 n.i32;
+                }
+
+                .method public f(n.i32).i32 {
+                    c.bool :=.bool invokevirtual(this, "even", n.i32).bool;
+                    r.i32 :=.i32 invokevirtual(this, "large", n.i32).i32;
+                    ret.i32 r.i32;
+                }
+                """);
+
+        var inliner = inline(classUnit, false);
+
+        assertEquals(3, OllirTestUtils.getMethod(classUnit, "f").getInstructions().size());
+        assertEquals(0, inliner.getInlined());
+        assertTrue(messages(inliner).contains("Did not inline 1 calls of recursive method even into f"));
+        assertTrue(messages(inliner).contains(
+                "Did not inline 1 calls of method large into f, which has 13 instructions, more than 12"));
+    }
+}
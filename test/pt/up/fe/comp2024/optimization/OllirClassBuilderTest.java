@@ -0,0 +1,103 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.junit.Test;
+import pt.up.fe.comp.TestUtils;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp2024.backend.JasminBackendImpl;
+import pt.up.fe.specs.util.SpecsIo;
+import pt.up.fe.specs.util.SpecsStrings;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class OllirClassBuilderTest {
+
+    private static Map<String, String> directConfig(boolean dump) {
+        Map<String, String> config = new HashMap<>();
+        config.put("directOllir", "true");
+        config.put("ollirDump", Boolean.toString(dump));
+        return config;
+    }
+
+    private static void assertSameOutput(String resource) {
+        var code = SpecsIo.getResource(resource);
+
+        var expected = TestUtils.backend(code).run();
+        var actual = TestUtils.backend(code, directConfig(false)).run();
+
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void simpleApp() {
+        assertSameOutput("pt/up/fe/comp/cp2/apps/Simple.jmm");
+    }
+
+    @Test
+    public void nestedControlFlow() {
+        assertSameOutput("pt/up/fe/comp/cpf/4_jasmin/control_flow/IfWhileNested.jmm");
+    }
+
+    @Test
+    public void arraysAndVarargs() {
+        assertSameOutput("pt/up/fe/comp/cpf/4_jasmin/arrays/ArrayVarArgs.jmm");
+    }
+
+    @Test
+    public void comparisonsWithZeroOnTheLeftRun() {
+        // The builder swaps 'i > 0' into '0 < i' and 'i <= 0' into '0 >= i'
+        var code = """
+                import io;
+                class Loops {
+                    public static void main(String[] args) {
+                        int i;
+                        int n;
+                        n = 5;
+                        i = 3;
+                        while (i > 0) {
+                            i = i - 1;
+                            io.println(i * n);
+                        }
+                        i = 0 - 2;
+                        while (i <= 0) {
+                            io.println(i);
+                            i = i + 1;
+                        }
+                    }
+                }
+                """;
+
+        for (var optimize : new String[]{"false", "true"}) {
+            var config = directConfig(false);
+            config.put("optimize", optimize);
+
+            var output = TestUtils.backend(code, config).run();
+            assertEquals("optimize=" + optimize, "10\n5\n0\n-2\n-1\n0",
+                    SpecsStrings.normalizeFileContents(output, true));
+        }
+    }
+
+    @Test
+    public void noCodeWithoutDump() {
+        var result = TestUtils.optimize(SpecsIo.getResource("pt/up/fe/comp/cp2/apps/Simple.jmm"), directConfig(false));
+
+        TestUtils.noErrors(result);
+        assertNull(result.getOllirCode());
+        assertEquals("Simple", result.getOllirClass().getClassName());
+    }
+
+    @Test
+    public void dumpParsesToSameClass() {
+        var config = directConfig(true);
+        var result = TestUtils.optimize(SpecsIo.getResource("pt/up/fe/comp/cpf/4_jasmin/control_flow/IfWhileNested.jmm"),
+                config);
+        TestUtils.noErrors(result);
+
+        var reparsed = new OllirResult(result.getOllirCode(), config);
+
+        var backend = new JasminBackendImpl();
+        assertEquals(backend.toJasmin(result).getJasminCode(), backend.toJasmin(reparsed).getJasminCode());
+    }
+}
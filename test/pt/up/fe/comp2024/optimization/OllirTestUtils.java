@@ -0,0 +1,126 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.AssignInstruction;
+import org.specs.comp.ollir.ClassUnit;
+import org.specs.comp.ollir.Instruction;
+import org.specs.comp.ollir.Method;
+import org.specs.comp.ollir.Operand;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the OLLIR methods the optimization passes are tested on, and reads the result of the passes.
+ */
+final class OllirTestUtils {
+
+    private OllirTestUtils() {
+    }
+
+    /**
+     * @return class Foo, with a constructor and the methods given, parsed and with its CFGs built
+     */
+    static ClassUnit parseClass(String methodsCode) {
+        return parseClass("", methodsCode);
+    }
+
+    /**
+     * @return class Foo, with a constructor and the fields and methods given, parsed and with its CFGs built
+     */
+    static ClassUnit parseClass(String fieldsCode, String methodsCode) {
+        var code = "Foo {\n" + fieldsCode + """
+                    .construct Foo().V {
+                        invokespecial(this, "<init>").V;
+                    }
+
+                """ + methodsCode + """
+                }
+                """;
+
+        var ollirClass = new OllirResult(code, Map.of()).getOllirClass();
+        ollirClass.buildCFGs();
+
+        return ollirClass;
+    }
+
+    /**
+     * @return method f of class Foo, with the methods given
+     */
+    static Method parseMethod(String methodsCode) {
+        return getMethod(parseClass(methodsCode), "f");
+    }
+
+    /**
+     * @return method f of class Foo, with the fields and methods given
+     */
+    static Method parseMethod(String fieldsCode, String methodsCode) {
+        return getMethod(parseClass(fieldsCode, methodsCode), "f");
+    }
+
+    static Method getMethod(ClassUnit classUnit, String name) {
+        return classUnit.getMethods().stream()
+                .filter(candidate -> candidate.getMethodName().equals(name))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    /**
+     * @return the instructions of the method printed, each after its labels
+     */
+    static List<String> print(Method method) {
+        return print(method, method.getInstructions());
+    }
+
+    /**
+     * @return the assignments of the variable in the method, printed
+     */
+    static List<String> assignmentsOf(Method method, String variable) {
+        return method.getInstructions().stream()
+                .filter(instruction -> instruction instanceof AssignInstruction assign
+                        && assign.getDest() instanceof Operand dest && dest.getName().equals(variable))
+                .map(OllirPrinter::printInstruction)
+                .toList();
+    }
+
+    /**
+     * @return the instructions printed before the one with the label
+     */
+    static List<String> before(Method method, String label) {
+        var instructions = method.getInstructions();
+        return print(method, instructions.subList(0, indexOf(method, label)));
+    }
+
+    /**
+     * @return the instructions printed from the one with the first label until the one with the second
+     */
+    static List<String> between(Method method, String from, String to) {
+        var instructions = method.getInstructions();
+        return print(method, instructions.subList(indexOf(method, from), indexOf(method, to)));
+    }
+
+    private static List<String> print(Method method, List<Instruction> instructions) {
+        var lines = new ArrayList<String>();
+        for (var instruction : instructions) {
+            for (var label : OptUtils.getLabels(method, instruction)) {
+                lines.add(label + ":");
+            }
+            lines.add(OllirPrinter.printInstruction(instruction));
+        }
+
+        return lines;
+    }
+
+    private static int indexOf(Method method, String label) {
+        var labeled = method.getLabels().get(label);
+        var instructions = method.getInstructions();
+        for (int i = 0; i < instructions.size(); i++) {
+            if (instructions.get(i) == labeled) {
+                return i;
+            }
+        }
+
+        throw new IllegalArgumentException("Label '" + label + "' is not in method " + method.getMethodName());
+    }
+}
@@ -0,0 +1,153 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.junit.Test;
+import org.specs.comp.ollir.Method;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class StrengthReductionTest {
+
+    private static Method reduce(String methodCode) {
+        var method = OllirTestUtils.parseMethod(methodCode);
+        new StrengthReduction(method).run();
+
+        return method;
+    }
+
+    private static long countProducts(List<String> instructions) {
+        return instructions.stream().filter(instruction -> instruction.contains(" *.i32 ")).count();
+    }
+
+    /**
+     * @return the variable the product assigned to the variable was replaced with
+     */
+    private static String getReplacement(Method method, String variable) {
+        var assignments = OllirTestUtils.assignmentsOf(method, variable);
+        assertEquals(1, assignments.size());
+
+        var copy = assignments.get(0).split(" :=.i32 ");
+        assertTrue(copy[1], copy[1].matches("\\w+\\.i32"));
+        return copy[1].substring(0, copy[1].length() - ".i32".length());
+    }
+
+    @Test
+    public void productsOfCountersBecomeAdditions() {
+        var method = reduce("""
+                .method public f(a.array.i32).i32 {
+                    i.i32 :=.i32 0.i32;
+                whileCond0:
+                    c.bool :=.bool i.i32 <.bool 10.i32;
+                    if (c.bool) goto whileLoop0;
+                    goto whileEnd0;
+                whileLoop0:
+                    t.i32 :=.i32 i.i32 *.i32 4.i32;
+                    a.array.i32[t.i32].i32 :=.i32 i.i32;
+                    i.i32 :=.i32 i.i32 +.i32 1.i32;
+                    goto whileCond0;
+                whileEnd0:
+                    ret.i32 i.i32;
+                }
+                """);
+
+        var loop = OllirTestUtils.between(method, "whileCond0", "whileEnd0");
+        var variable = getReplacement(method, "t");
+        assertEquals(0, countProducts(loop));
+        assertTrue(OllirTestUtils.before(method, "whileCond0")
+                .contains(variable + ".i32 :=.i32 i.i32 *.i32 4.i32"));
+        assertTrue(loop.contains(variable + ".i32 :=.i32 " + variable + ".i32 +.i32 4.i32"));
+        assertTrue(method.getVarTable().containsKey(variable));
+    }
+
+    @Test
+    public void invariantFactorsAndDecrements() {
+        var method = reduce("""
+                .method public f(k.i32).i32 {
+                    i.i32 :=.i32 10.i32;
+                    s.i32 :=.i32 0.i32;
+                whileCond0:
+                    c.bool :=.bool 0.i32 <.bool i.i32;
+                    if (c.bool) goto whileLoop0;
+                    goto whileEnd0;
+                whileLoop0:
+                    t.i32 :=.i32 k.i32 *.i32 i.i32;
+                    s.i32 :=.i32 s.i32 +.i32 t.i32;
+                    i.i32 :=.i32 i.i32 -.i32 2.i32;
+                    goto whileCond0;
+                whileEnd0:
+                    ret.i32 s.i32;
+                }
+                """);
+
+        var loop = OllirTestUtils.between(method, "whileCond0", "whileEnd0");
+        var variable = getReplacement(method, "t");
+        assertEquals(0, countProducts(loop));
+
+        // The step of the new variable is -2 * k, computed before the loop
+        var preheader = OllirTestUtils.before(method, "whileCond0");
+        assertTrue(preheader.contains(variable + ".i32 :=.i32 i.i32 *.i32 k.i32"));
+        var update = loop.stream()
+                .filter(instruction -> instruction.startsWith(variable + ".i32 :=.i32 " + variable + ".i32 +.i32 "))
+                .findFirst()
+                .orElseThrow();
+        var step = update.substring(update.lastIndexOf(' ') + 1);
+        assertTrue(preheader.contains(step.replace(".i32", "") + ".i32 :=.i32 -2.i32 *.i32 k.i32"));
+    }
+
+    @Test
+    public void otherProductsAreKept() {
+        // j is assigned twice in the loop and n changes in it, so neither is a counter or a factor
+        var method = reduce("""
+                .method public f(n.i32).i32 {
+                    j.i32 :=.i32 0.i32;
+                whileCond0:
+                    c.bool :=.bool j.i32 <.bool n.i32;
+                    if (c.bool) goto whileLoop0;
+                    goto whileEnd0;
+                whileLoop0:
+                    t.i32 :=.i32 j.i32 *.i32 3.i32;
+                    u.i32 :=.i32 t.i32 *.i32 n.i32;
+                    n.i32 :=.i32 n.i32 -.i32 u.i32;
+                    j.i32 :=.i32 j.i32 +.i32 1.i32;
+                    j.i32 :=.i32 j.i32 +.i32 1.i32;
+                    goto whileCond0;
+                whileEnd0:
+                    ret.i32 n.i32;
+                }
+                """);
+
+        assertEquals(2, countProducts(OllirTestUtils.between(method, "whileCond0", "whileEnd0")));
+        assertEquals(11, method.getInstructions().size());
+    }
+
+    @Test
+    public void countersUpdatedInBranchesAreKept() {
+        // i is assigned once in the loop, but only on the iterations where s is small
+        var method = reduce("""
+                .method public f(n.i32).i32 {
+                    i.i32 :=.i32 0.i32;
+                    s.i32 :=.i32 0.i32;
+                whileCond0:
+                    c.bool :=.bool i.i32 <.bool n.i32;
+                    if (c.bool) goto whileLoop0;
+                    goto whileEnd0;
+                whileLoop0:
+                    t.i32 :=.i32 i.i32 *.i32 4.i32;
+                    s.i32 :=.i32 s.i32 +.i32 t.i32;
+                    d.bool :=.bool s.i32 <.bool 100.i32;
+                    if (d.bool) goto if0;
+                    goto endif0;
+                if0:
+                    i.i32 :=.i32 i.i32 +.i32 1.i32;
+                endif0:
+                    goto whileCond0;
+                whileEnd0:
+                    ret.i32 s.i32;
+                }
+                """);
+
+        assertEquals(List.of("t.i32 :=.i32 i.i32 *.i32 4.i32"), OllirTestUtils.assignmentsOf(method, "t"));
+        assertEquals(1, countProducts(OllirTestUtils.print(method)));
+    }
+}
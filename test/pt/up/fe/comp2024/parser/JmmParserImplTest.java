@@ -0,0 +1,60 @@
+package pt.up.fe.comp2024.parser;
+
+import org.junit.Test;
+import pt.up.fe.comp.TestUtils;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class JmmParserImplTest {
+
+    private static final String RESOURCE = "pt/up/fe/comp/cpf/4_jasmin/control_flow/IfWhileNested.jmm";
+
+    private static Map<String, String> profileConfig() {
+        Map<String, String> config = new HashMap<>();
+        config.put("parserProfile", "true");
+        return config;
+    }
+
+    private static String getProfile(Iterable<Report> reports) {
+        for (var report : reports) {
+            if (report.getType() == ReportType.LOG && report.getMessage().startsWith("Parser decisions:")) {
+                return report.getMessage();
+            }
+        }
+
+        return null;
+    }
+
+    @Test
+    public void validCodeNeedsOnlySll() {
+        var result = new JmmParserImpl().parse(SpecsIo.getResource(RESOURCE), profileConfig());
+        TestUtils.noErrors(result);
+
+        var profile = getProfile(result.getReports());
+        assertNotNull(profile);
+        assertTrue(profile.contains("classDecl"));
+        assertFalse(profile.contains("\nLL "));
+    }
+
+    @Test
+    public void syntaxErrorsFallBackToLl() {
+        var result = new JmmParserImpl().parse("class A { int a; public int f() { return a b; } }", profileConfig());
+
+        assertNull(result.getRootNode());
+        assertTrue(result.getReports().stream().anyMatch(report -> report.getType() == ReportType.ERROR));
+        assertTrue(getProfile(result.getReports()).contains("\nLL "));
+    }
+
+    @Test
+    public void noProfileByDefault() {
+        var result = new JmmParserImpl().parse(SpecsIo.getResource(RESOURCE), new HashMap<>());
+
+        assertNull(getProfile(result.getReports()));
+    }
+}
@@ -0,0 +1,129 @@
+package pt.up.fe.comp2024.parser;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import pt.up.fe.comp.jmm.ast.JmmNodeImpl;
+import pt.up.fe.comp.jmm.ast.antlr.AntlrParser;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.comp2024.JavammLexer;
+import pt.up.fe.comp2024.JavammParser;
+
+import java.lang.ref.Reference;
+import java.util.HashMap;
+import java.util.function.Supplier;
+
+/**
+ * Measures the parsing throughput on a generated class, with many methods before and after 'main'.
+ * <p>
+ * Reports the time of the ANTLR parse alone (lexing and SLL parsing to a parse tree), and the time of
+ * {@link JmmParserImpl#parse}, that also converts the parse tree to the AST. Also reports the memory kept by the AST,
+ * compared to the AST of {@link JmmNodeImpl}s built by the converter of the library.
+ * <p>
+ * Usage: ParseBenchmark [methods] [iterations]. Run with 'gradle parseBenchmark'.
+ */
+public class ParseBenchmark {
+
+    private static final int WARMUP = 3;
+
+    public static void main(String[] args) {
+        int methods = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        var code = generate(methods);
+        var parser = new JmmParserImpl();
+
+        for (int i = 0; i < WARMUP; i++) {
+            parseTree(code);
+            parse(parser, code);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            parseTree(code);
+        }
+        report("parse tree", methods, code, (System.nanoTime() - start) / 1e6 / iterations);
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            parse(parser, code);
+        }
+        report("AST", methods, code, (System.nanoTime() - start) / 1e6 / iterations);
+
+        long compact = retainedBytes(() -> parser.parse(code, new HashMap<>()).getRootNode());
+        long library = retainedBytes(() -> AntlrParser.parse(new JavammLexer(new ANTLRInputStream(code)),
+                new JavammParser(new CommonTokenStream(new JavammLexer(new ANTLRInputStream(code)))), "program")
+                .getRootNode());
+        System.out.printf("AST memory: %d KB, %d KB with %s%n", compact / 1024, library / 1024,
+                JmmNodeImpl.class.getSimpleName());
+    }
+
+    /**
+     * @return the heap still used after building the object, while it is reachable
+     */
+    private static long retainedBytes(Supplier<Object> build) {
+        long before = usedMemory();
+        var object = build.get();
+        long after = usedMemory();
+        Reference.reachabilityFence(object);
+
+        return after - before;
+    }
+
+    private static long usedMemory() {
+        var runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void report(String stage, int methods, String code, double millis) {
+        System.out.printf("%-10s %d methods, %d KB: %.1f ms per parse, %.0f KB/s%n", stage, methods,
+                code.length() / 1024, millis, code.length() / 1024.0 / (millis / 1000));
+    }
+
+    private static void parseTree(String code) {
+        var parser = new JavammParser(new CommonTokenStream(new JavammLexer(new ANTLRInputStream(code))));
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        parser.program();
+
+        if (parser.getNumberOfSyntaxErrors() > 0) {
+            throw new RuntimeException("Generated code does not parse");
+        }
+    }
+
+    private static void parse(JmmParserImpl parser, String code) {
+        var result = parser.parse(code, new HashMap<>());
+
+        if (result.getReports().stream().anyMatch(report -> report.getType() == ReportType.ERROR)) {
+            throw new RuntimeException("Generated code does not parse: " + result.getReports());
+        }
+    }
+
+    static String generate(int methods) {
+        var code = new StringBuilder();
+        code.append("import io;\n\nclass Generated {\n    int field;\n    int[] values;\n\n");
+
+        for (int i = 0; i < methods; i++) {
+            // Half of the methods come after main
+            if (i == methods / 2) {
+                code.append("    public static void main(String[] args) {\n        io.println(1);\n    }\n\n");
+            }
+
+            code.append("    public int m").append(i).append("(int a, int[] b, boolean c) {\n")
+                    .append("        int d;\n        int[] e;\n")
+                    .append("        d = a * 2 + b[a] - this.m").append(i).append("(a, b, c);\n")
+                    .append("        e = new int[b.length];\n")
+                    .append("        while (d < 10 && !c) {\n            d = d + 1;\n        }\n")
+                    .append("        if (d < a) {\n            io.println(d);\n        } else {\n")
+                    .append("            field = d;\n            e[0] = field;\n        }\n")
+                    .append("        return d;\n    }\n\n");
+        }
+
+        code.append("}\n");
+
+        return code.toString();
+    }
+}
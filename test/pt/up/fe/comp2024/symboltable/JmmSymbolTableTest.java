@@ -0,0 +1,82 @@
+package pt.up.fe.comp2024.symboltable;
+
+import org.junit.Test;
+import pt.up.fe.comp.TestUtils;
+import pt.up.fe.comp.jmm.analysis.table.Type;
+import pt.up.fe.comp2024.ast.Kind;
+import pt.up.fe.comp2024.ast.TypeUtils;
+import pt.up.fe.comp2024.symboltable.ResolvedSymbol.Scope;
+
+import static org.junit.Assert.*;
+
+public class JmmSymbolTableTest {
+
+    private static final String CODE = """
+            import io;
+            class A {
+                int a;
+                boolean b;
+                int f(int a, int c) {
+                    int b;
+                    b = a + c;
+                    io.println(b);
+                    return this.g(b);
+                }
+                int g(int x) {
+                    return a;
+                }
+                public static void main(String[] args) {
+                    int d;
+                    d = 1;
+                }
+            }
+            """;
+
+    @Test
+    public void resolveInOrder() {
+        var table = (JmmSymbolTable) TestUtils.analyse(CODE).getSymbolTable();
+
+        assertResolved(table, "f", "b", Scope.LOCAL, 0);
+        assertResolved(table, "f", "a", Scope.PARAM, 0);
+        assertResolved(table, "f", "c", Scope.PARAM, 1);
+        assertResolved(table, "g", "a", Scope.FIELD, 0);
+        assertResolved(table, "g", "b", Scope.FIELD, 1);
+        assertResolved(table, "main", "args", Scope.PARAM, 0);
+        assertEquals(Scope.IMPORT, table.resolve("f", "io").orElseThrow().getScope());
+        assertTrue(table.resolve("f", "x").isEmpty());
+        assertTrue(table.resolve("f", "i").isEmpty());
+    }
+
+    private static void assertResolved(JmmSymbolTable table, String method, String name, Scope scope, int slot) {
+        var resolved = table.resolve(method, name).orElseThrow();
+
+        assertEquals(scope, resolved.getScope());
+        assertEquals(name, resolved.getSymbol().getName());
+        assertEquals(slot, resolved.getSlot());
+    }
+
+    @Test
+    public void varRefsAreResolved() {
+        var result = TestUtils.analyse(CODE);
+        TestUtils.noErrors(result);
+
+        for (var varRef : result.getRootNode().getDescendants(Kind.VAR_REF_EXPR)) {
+            var resolved = varRef.getObject(ResolvedSymbol.ATTRIBUTE, ResolvedSymbol.class);
+            var expected = TypeUtils.getMethodName(varRef)
+                    .flatMap(method -> ((JmmSymbolTable) result.getSymbolTable()).resolve(method, varRef.get("name")))
+                    .orElseThrow();
+
+            assertEquals(expected.getScope(), resolved.getScope());
+            assertEquals(expected.getSymbol(), resolved.getSymbol());
+        }
+    }
+
+    @Test
+    public void returnTypes() {
+        var table = TestUtils.analyse(CODE).getSymbolTable();
+
+        assertEquals(new Type("int", false), table.getReturnType("f"));
+        assertEquals(new Type("void", false), table.getReturnType("main"));
+        assertEquals(new Type("void", false), table.getReturnType("undeclared"));
+    }
+}
@@ -0,0 +1,66 @@
+package pt.up.fe.comp2024.utils;
+
+import org.junit.Test;
+import pt.up.fe.comp2024.CompilerConfig;
+import pt.up.fe.comp2024.JmmCompiler;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PhaseProfilerTest {
+
+    private static final String RESOURCE = "pt/up/fe/comp/cpf/3_ollir/control_flow/SimpleWhileStat.jmm";
+
+    @Test
+    public void nestedPhasesAreChildren() {
+        PhaseProfiler.start();
+        try {
+            PhaseProfiler.measure("outer", () -> PhaseProfiler.measure("inner", () -> {
+            }));
+        } finally {
+            var profiler = PhaseProfiler.stop();
+
+            assertEquals(1, profiler.getPhases().size());
+            var outer = profiler.getPhases().get(0);
+            assertEquals("outer", outer.getName());
+            assertEquals("inner", outer.getChildren().get(0).getName());
+            assertTrue(outer.getWallNanos() >= outer.getChildren().get(0).getWallNanos());
+        }
+    }
+
+    @Test
+    public void disabledByDefault() {
+        assertEquals("value", PhaseProfiler.measure("phase", () -> "value"));
+        assertNull(PhaseProfiler.stop());
+    }
+
+    @Test
+    public void compilerRecordsEveryStage() {
+        var config = CompilerConfig.getDefault();
+        config.put("optimize", "true");
+        config.put("registerAllocation", "0");
+        config.put("timing", "true");
+
+        var result = JmmCompiler.compile(SpecsIo.getResource(RESOURCE), config);
+
+        assertTrue(result.isSuccess());
+        var names = result.getProfile().getPhases().stream().map(PhaseProfiler.Phase::getName).toList();
+        for (var expected : List.of("parse", "symbolTable", "analysisPass:FusedTraversal", "constantPropagation",
+                "ollirGeneration", "ollirParsing", "jasmin")) {
+            assertTrue("Missing phase " + expected, names.contains(expected));
+        }
+
+        // Fused analysis passes are timed separately
+        var analysis = result.getProfile().getPhases().stream()
+                .filter(phase -> phase.getName().equals("analysisPass:FusedTraversal"))
+                .findFirst()
+                .orElseThrow();
+        assertEquals(List.of("TypeAnnotation", "SemanticAnalyzer"),
+                analysis.getChildren().stream().map(PhaseProfiler.Phase::getName).toList());
+        assertTrue(result.getProfile().toJson().contains("\"allocatedBytes\""));
+    }
+}